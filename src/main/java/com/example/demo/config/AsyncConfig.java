@@ -0,0 +1,54 @@
+package com.example.demo.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableAsync;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.concurrent.Executor;
+
+@Configuration
+@EnableAsync
+public class AsyncConfig {
+
+    @Value("${notifications.executor.pool-size:4}")
+    private int notificationPoolSize;
+
+    @Value("${notifications.executor.queue-capacity:500}")
+    private int notificationQueueCapacity;
+
+    @Value("${projections.executor.pool-size:2}")
+    private int projectionPoolSize;
+
+    @Value("${projections.executor.queue-capacity:1000}")
+    private int projectionQueueCapacity;
+
+    /**
+     * Pool para el envío de correos fuera del hilo de la petición
+     */
+    @Bean(name = "notificationExecutor")
+    public Executor notificationExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(notificationPoolSize);
+        executor.setMaxPoolSize(notificationPoolSize);
+        executor.setQueueCapacity(notificationQueueCapacity);
+        executor.setThreadNamePrefix("notification-");
+        executor.initialize();
+        return executor;
+    }
+
+    /**
+     * Pool para mantener las proyecciones de lectura (búsqueda de clientes) tras cada escritura
+     */
+    @Bean(name = "projectionExecutor")
+    public Executor projectionExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(projectionPoolSize);
+        executor.setMaxPoolSize(projectionPoolSize);
+        executor.setQueueCapacity(projectionQueueCapacity);
+        executor.setThreadNamePrefix("projection-");
+        executor.initialize();
+        return executor;
+    }
+}
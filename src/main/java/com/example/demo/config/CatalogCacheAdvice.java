@@ -0,0 +1,65 @@
+package com.example.demo.config;
+
+import com.example.demo.service.CatalogCacheService;
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.MethodParameter;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.http.server.ServletServerHttpRequest;
+import org.springframework.http.server.ServletServerHttpResponse;
+import org.springframework.web.bind.annotation.ControllerAdvice;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyAdvice;
+
+/**
+ * Validación HTTP de los endpoints marcados con {@link CatalogCached}. Los controladores devuelven
+ * su {@code ApiResponse} tipado; aquí se añaden ETag, Last-Modified y Cache-Control, y si el cliente
+ * ya tiene la versión actual se responde 304 sin escribir el cuerpo.
+ *
+ * <p>El ETag se deriva del cuerpo que se va a enviar, así que coincide entre instancias y reinicios
+ * y nunca describe un contenido distinto del entregado. Con la validación suspendida para la
+ * colección, la respuesta sale sin validadores.
+ */
+@ControllerAdvice
+public class CatalogCacheAdvice implements ResponseBodyAdvice<Object> {
+
+    @Autowired
+    private CatalogCacheService catalogCacheService;
+
+    @Override
+    public boolean supports(MethodParameter returnType, Class<? extends HttpMessageConverter<?>> converterType) {
+        return returnType.hasMethodAnnotation(CatalogCached.class);
+    }
+
+    @Override
+    public Object beforeBodyWrite(Object body, MethodParameter returnType, MediaType selectedContentType,
+                                  Class<? extends HttpMessageConverter<?>> selectedConverterType,
+                                  ServerHttpRequest request, ServerHttpResponse response) {
+        if (body == null || !(request instanceof ServletServerHttpRequest servletRequest)
+                || !(response instanceof ServletServerHttpResponse servletResponse)
+                || servletResponse.getServletResponse().getStatus() != HttpStatus.OK.value()) {
+            return body;
+        }
+        String collection = returnType.getMethodAnnotation(CatalogCached.class).value();
+        if (catalogCacheService.isValidationSuspended(collection)) {
+            return body;
+        }
+        HttpServletRequest httpRequest = servletRequest.getServletRequest();
+        String eTag = catalogCacheService.eTag(collection, httpRequest, body);
+        HttpHeaders headers = response.getHeaders();
+        headers.setETag(eTag);
+        headers.setLastModified(catalogCacheService.lastModified(collection));
+        headers.setCacheControl(CacheControl.noCache().cachePrivate());
+
+        if (catalogCacheService.matches(httpRequest.getHeader(HttpHeaders.IF_NONE_MATCH), eTag)) {
+            response.setStatusCode(HttpStatus.NOT_MODIFIED);
+            return null;
+        }
+        return body;
+    }
+}
@@ -0,0 +1,19 @@
+package com.example.demo.config;
+
+import java.lang.annotation.*;
+
+/**
+ * Marca un endpoint de lectura del catálogo: la respuesta lleva un ETag derivado de su contenido y un
+ * {@code If-None-Match} vigente se responde con 304 sin cuerpo
+ * (ver {@link CatalogCacheAdvice}).
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface CatalogCached {
+
+    /**
+     * Colección del catálogo de la que sale la respuesta (su validación puede suspenderse)
+     */
+    String value();
+}
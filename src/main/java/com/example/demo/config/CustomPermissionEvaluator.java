@@ -1,9 +1,12 @@
 package com.example.demo.config;
 
+import com.example.demo.service.CacheInvalidationService;
 import com.google.cloud.firestore.DocumentSnapshot;
 import com.google.cloud.firestore.Firestore;
 import com.google.cloud.firestore.QueryDocumentSnapshot;
+import jakarta.annotation.PostConstruct;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.access.PermissionEvaluator;
 import org.springframework.security.core.Authentication;
 import org.springframework.stereotype.Component;
@@ -11,7 +14,12 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.Serializable;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
 
 
 @Component
@@ -21,6 +29,29 @@ public class CustomPermissionEvaluator implements PermissionEvaluator {
     @Autowired
     private Firestore firestore;
 
+    @Autowired
+    private CacheInvalidationService cacheInvalidationService;
+
+    // Límite de antigüedad de las entradas aunque se pierda algún evento de invalidación
+    @Value("${cache.permissions.ttl-ms:300000}")
+    private long ttlMs;
+
+    private final Map<String, Cached<List<String>>> userRolesCache = new ConcurrentHashMap<>();
+    private final Map<String, Cached<Set<String>>> rolePermissionsCache = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void registerInvalidationHandlers() {
+        cacheInvalidationService.onInvalidate(CacheInvalidationService.USERS, id -> {
+            if (id == null) {
+                userRolesCache.clear();
+            } else {
+                userRolesCache.remove(id);
+            }
+        });
+        // Los roles se cachean por nombre y los eventos llevan el ID del documento: se vacía todo
+        cacheInvalidationService.onInvalidate(CacheInvalidationService.ROLES, id -> rolePermissionsCache.clear());
+    }
+
     @Override
     public boolean hasPermission(Authentication authentication, Object targetDomainObject, Object permission) {
         //logger.info("ENTRA A LA FUNCION erronea");
@@ -37,15 +68,8 @@ public class CustomPermissionEvaluator implements PermissionEvaluator {
         String permissionStr = (String) permission;
 
         try {
-            // Obtener el documento del usuario
-            DocumentSnapshot userDoc = firestore.collection("users").document(username).get().get();
-            if (!userDoc.exists()) {
-                logger.debug("User document not found for username: {}", username);
-                return false;
-            }
-
-            // Obtener roles del usuario
-            List<String> userRoles = (List<String>) userDoc.get("roles");
+            // Obtener roles del usuario (cacheados; se invalidan al modificar el usuario en cualquier nodo)
+            List<String> userRoles = getUserRoles(username);
             logger.debug("Roles for user {}: {}", username, userRoles);
             if (userRoles == null || userRoles.isEmpty()) {
                 logger.debug("No roles found for user: {}", username);
@@ -56,21 +80,11 @@ public class CustomPermissionEvaluator implements PermissionEvaluator {
             for (String roleName : userRoles) {
                 logger.debug("Checking role by name: {}", roleName);
 
-                // Buscar el rol basado en el campo "name" en lugar del ID del documento
-                List<QueryDocumentSnapshot> roleDocs = firestore.collection("roles")
-                        .whereEqualTo("name", roleName)
-                        .get().get().getDocuments();
-
-                if (!roleDocs.isEmpty()) {
-                    DocumentSnapshot roleDoc = roleDocs.get(0);  // Tomar el primer documento si existe
-                    List<String> permissions = (List<String>) roleDoc.get("permissions");
-                    logger.debug("Permissions for role '{}': {}", roleName, permissions);
-                    if (permissions != null && permissions.contains(permissionStr)) {
-                        logger.info("Permission '{}' granted for user '{}' with role '{}'", permissionStr, username, roleName);
-                        return true;
-                    }
-                } else {
-                    logger.warn("Role not found for role name: {}", roleName);
+                Set<String> permissions = getRolePermissions(roleName);
+                logger.debug("Permissions for role '{}': {}", roleName, permissions);
+                if (permissions.contains(permissionStr)) {
+                    logger.info("Permission '{}' granted for user '{}' with role '{}'", permissionStr, username, roleName);
+                    return true;
                 }
             }
 
@@ -82,4 +96,64 @@ public class CustomPermissionEvaluator implements PermissionEvaluator {
         }
     }
 
-}
\ No newline at end of file
+    @SuppressWarnings("unchecked")
+    private List<String> getUserRoles(String username) throws ExecutionException, InterruptedException {
+        Cached<List<String>> cached = userRolesCache.get(username);
+        if (cached != null && cached.expiresAt() > System.currentTimeMillis()) {
+            return cached.value();
+        }
+        // Obtener el documento del usuario
+        DocumentSnapshot userDoc = firestore.collection("users").document(username).get().get();
+        if (!userDoc.exists()) {
+            logger.debug("User document not found for username: {}", username);
+            return Collections.emptyList();
+        }
+        List<String> roles = (List<String>) userDoc.get("roles");
+        roles = roles != null ? List.copyOf(roles) : Collections.emptyList();
+        userRolesCache.put(username, new Cached<>(roles, System.currentTimeMillis() + ttlMs));
+        return roles;
+    }
+
+    /**
+     * Carga en la caché los permisos de todos los roles con una sola consulta
+     */
+    @SuppressWarnings("unchecked")
+    public int preloadRolePermissions() throws ExecutionException, InterruptedException {
+        long expiresAt = System.currentTimeMillis() + ttlMs;
+        List<QueryDocumentSnapshot> roleDocs = firestore.collection("roles").get().get().getDocuments();
+        for (QueryDocumentSnapshot roleDoc : roleDocs) {
+            String name = roleDoc.getString("name");
+            if (name == null) {
+                continue;
+            }
+            List<String> values = (List<String>) roleDoc.get("permissions");
+            rolePermissionsCache.put(name, new Cached<>(values != null ? Set.copyOf(values) : Collections.emptySet(), expiresAt));
+        }
+        return roleDocs.size();
+    }
+
+    @SuppressWarnings("unchecked")
+    private Set<String> getRolePermissions(String roleName) throws ExecutionException, InterruptedException {
+        Cached<Set<String>> cached = rolePermissionsCache.get(roleName);
+        if (cached != null && cached.expiresAt() > System.currentTimeMillis()) {
+            return cached.value();
+        }
+        // Buscar el rol basado en el campo "name" en lugar del ID del documento
+        List<QueryDocumentSnapshot> roleDocs = firestore.collection("roles")
+                .whereEqualTo("name", roleName)
+                .get().get().getDocuments();
+
+        Set<String> permissions = Collections.emptySet();
+        if (!roleDocs.isEmpty()) {
+            List<String> values = (List<String>) roleDocs.get(0).get("permissions");
+            permissions = values != null ? Set.copyOf(values) : Collections.emptySet();
+        } else {
+            logger.warn("Role not found for role name: {}", roleName);
+        }
+        rolePermissionsCache.put(roleName, new Cached<>(permissions, System.currentTimeMillis() + ttlMs));
+        return permissions;
+    }
+
+    private record Cached<T>(T value, long expiresAt) {
+    }
+}
@@ -1,20 +1,38 @@
 package com.example.demo.config;
 
+import com.google.api.core.ApiFuture;
+import com.google.api.gax.grpc.ChannelPoolSettings;
+import com.google.api.gax.grpc.InstantiatingGrpcChannelProvider;
 import com.google.auth.oauth2.GoogleCredentials;
+import com.google.cloud.firestore.FirestoreOptions;
+import com.google.cloud.grpc.GrpcTransportOptions;
 import com.google.firebase.FirebaseApp;
 import com.google.firebase.FirebaseOptions;
 import com.google.cloud.firestore.Firestore;
 import com.google.firebase.auth.FirebaseAuth;
 import com.google.firebase.cloud.FirestoreClient;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.event.EventListener;
 import org.springframework.core.io.ClassPathResource;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 @Configuration
+@Slf4j
 public class FirebaseConfig {
 
     @Value("${firebase.database.url}")
@@ -23,6 +41,37 @@ public class FirebaseConfig {
     @Value("${firebase.config.path}")
     private String configPath;
 
+    // Los valores en 0 se calculan a partir de los núcleos disponibles
+    @Value("${firestore.channel-pool.initial-channels:0}")
+    private int initialChannels;
+
+    @Value("${firestore.channel-pool.max-channels:0}")
+    private int maxChannels;
+
+    @Value("${firestore.channel-pool.max-rpcs-per-channel:100}")
+    private int maxRpcsPerChannel;
+
+    @Value("${firestore.channel-pool.min-rpcs-per-channel:10}")
+    private int minRpcsPerChannel;
+
+    @Value("${firestore.keep-alive-seconds:60}")
+    private long keepAliveSeconds;
+
+    @Value("${firestore.keep-alive-timeout-seconds:20}")
+    private long keepAliveTimeoutSeconds;
+
+    @Value("${firestore.executor.threads:0}")
+    private int executorThreads;
+
+    @Value("${firestore.warmup.enabled:true}")
+    private boolean warmupEnabled;
+
+    @Value("${firestore.warmup.requests:0}")
+    private int warmupRequests;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
     @Bean
     public FirebaseApp firebaseApp() throws IOException {
         if (FirebaseApp.getApps().isEmpty()) {
@@ -31,6 +80,7 @@ public class FirebaseConfig {
             FirebaseOptions options = FirebaseOptions.builder()
                     .setCredentials(GoogleCredentials.fromStream(serviceAccount))
                     .setDatabaseUrl(databaseUrl)
+                    .setFirestoreOptions(firestoreOptions())
                     .build();
 
             return FirebaseApp.initializeApp(options);
@@ -48,4 +98,106 @@ public class FirebaseConfig {
     public FirebaseAuth firebaseAuth() throws IOException {
         return FirebaseAuth.getInstance(firebaseApp());
     }
+
+    /**
+     * Executor en el que el cliente de Firestore resuelve los {@link ApiFuture} y ejecuta sus callbacks
+     */
+    @Bean(name = "firestoreCallbackExecutor")
+    public ScheduledExecutorService firestoreCallbackExecutor() {
+        int threads = executorThreads > 0 ? executorThreads : Math.max(4, cores() * 2);
+        AtomicInteger threadCount = new AtomicInteger();
+        ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(threads, runnable -> {
+            Thread thread = new Thread(runnable, "firestore-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.setRemoveOnCancelPolicy(true);
+        return executor;
+    }
+
+    @Bean
+    public FirestoreRpcMetricsInterceptor firestoreRpcMetricsInterceptor() {
+        return new FirestoreRpcMetricsInterceptor(meterRegistry);
+    }
+
+    /**
+     * Opciones del cliente de Firestore: pool de canales gRPC, keep-alive, executor y métricas
+     */
+    private FirestoreOptions firestoreOptions() {
+        ScheduledExecutorService callbackExecutor = firestoreCallbackExecutor();
+        FirestoreOptions.Builder builder = FirestoreOptions.newBuilder()
+                .setTransportOptions(GrpcTransportOptions.newBuilder()
+                        .setExecutorFactory(new GrpcTransportOptions.ExecutorFactory<ScheduledExecutorService>() {
+                            @Override
+                            public ScheduledExecutorService get() {
+                                return callbackExecutor;
+                            }
+
+                            @Override
+                            public void release(ScheduledExecutorService executor) {
+                                // El ciclo de vida lo gestiona Spring
+                            }
+                        })
+                        .build());
+
+        // Con el emulador se conserva el canal en texto plano que configura el propio cliente
+        if (System.getenv("FIRESTORE_EMULATOR_HOST") != null) {
+            log.info("Firestore emulator detected, using the default channel provider");
+            return builder.build();
+        }
+
+        int maxCount = maxChannels > 0 ? maxChannels : Math.max(2, cores());
+        int initialCount = Math.min(maxCount, initialChannels > 0 ? initialChannels : Math.max(1, maxCount / 2));
+        FirestoreRpcMetricsInterceptor interceptor = firestoreRpcMetricsInterceptor();
+
+        InstantiatingGrpcChannelProvider channelProvider = FirestoreOptions.getDefaultTransportChannelProviderBuilder()
+                .setChannelPoolSettings(ChannelPoolSettings.builder()
+                        .setInitialChannelCount(initialCount)
+                        .setMinChannelCount(1)
+                        .setMaxChannelCount(maxCount)
+                        .setMinRpcsPerChannel(minRpcsPerChannel)
+                        .setMaxRpcsPerChannel(maxRpcsPerChannel)
+                        .setPreemptiveRefreshEnabled(true)
+                        .build())
+                .setKeepAliveTimeDuration(Duration.ofSeconds(keepAliveSeconds))
+                .setKeepAliveTimeoutDuration(Duration.ofSeconds(keepAliveTimeoutSeconds))
+                .setKeepAliveWithoutCalls(true)
+                .setInterceptorProvider(() -> List.of(interceptor))
+                .build();
+
+        log.info("Firestore channel pool: {} initial / {} max channels, {} RPCs per channel",
+                initialCount, maxCount, maxRpcsPerChannel);
+        return builder.setChannelProvider(channelProvider).build();
+    }
+
+    /**
+     * Abre los canales del pool antes de la primera petición con lecturas concurrentes de un documento inexistente
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUpFirestore() {
+        if (!warmupEnabled) {
+            return;
+        }
+        int requests = warmupRequests > 0 ? warmupRequests : Math.max(1, cores());
+        long startedAt = System.nanoTime();
+        try {
+            Firestore firestore = firestore();
+            List<ApiFuture<?>> futures = new ArrayList<>();
+            for (int i = 0; i < requests; i++) {
+                futures.add(firestore.collection("_warmup").document("ping-" + i).get());
+            }
+            for (ApiFuture<?> future : futures) {
+                future.get(30, TimeUnit.SECONDS);
+            }
+            log.info("Firestore warm-up finished: {} requests in {} ms",
+                    requests, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAt));
+        } catch (Exception e) {
+            // Si falla, los canales se abren igualmente con las primeras peticiones reales
+            log.warn("Firestore warm-up failed: {}", e.getMessage());
+        }
+    }
+
+    private static int cores() {
+        return Runtime.getRuntime().availableProcessors();
+    }
 }
@@ -0,0 +1,57 @@
+package com.example.demo.config;
+
+import io.grpc.*;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Interceptor gRPC del cliente de Firestore: publica las llamadas en curso y la duración por método
+ */
+public class FirestoreRpcMetricsInterceptor implements ClientInterceptor {
+
+    private final MeterRegistry meterRegistry;
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    public FirestoreRpcMetricsInterceptor(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+        Gauge.builder("firestore.rpc.inflight", inFlight, AtomicInteger::get)
+                .description("Llamadas RPC a Firestore en curso")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Llamadas en curso en este momento
+     */
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    @Override
+    public <ReqT, RespT> ClientCall<ReqT, RespT> interceptCall(MethodDescriptor<ReqT, RespT> method,
+                                                               CallOptions callOptions, Channel next) {
+        return new ForwardingClientCall.SimpleForwardingClientCall<>(next.newCall(method, callOptions)) {
+            @Override
+            public void start(Listener<RespT> responseListener, Metadata headers) {
+                long startedAt = System.nanoTime();
+                inFlight.incrementAndGet();
+                super.start(new ForwardingClientCallListener.SimpleForwardingClientCallListener<>(responseListener) {
+                    @Override
+                    public void onClose(Status status, Metadata trailers) {
+                        inFlight.decrementAndGet();
+                        Timer.builder("firestore.rpc")
+                                .description("Duración de las llamadas RPC a Firestore")
+                                .tag("method", method.getBareMethodName() != null ? method.getBareMethodName() : "unknown")
+                                .tag("status", status.getCode().name())
+                                .register(meterRegistry)
+                                .record(System.nanoTime() - startedAt, TimeUnit.NANOSECONDS);
+                        super.onClose(status, trailers);
+                    }
+                }, headers);
+            }
+        };
+    }
+}
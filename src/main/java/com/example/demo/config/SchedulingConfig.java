@@ -0,0 +1,73 @@
+package com.example.demo.config;
+
+import com.example.demo.service.ArchivalService;
+import com.example.demo.service.CascadeDeleteService;
+import com.example.demo.service.InventoryAlertService;
+import com.example.demo.service.JobDefinition;
+import com.example.demo.service.ReminderService;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.scheduling.annotation.EnableScheduling;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+
+@Configuration
+@EnableScheduling
+public class SchedulingConfig {
+
+    @Value("${jobs.scheduler.pool-size:2}")
+    private int schedulerPoolSize;
+
+    /**
+     * Planificador que solo dispara los trabajos; la ejecución ocurre en el pool de {@code JobCoordinator}
+     */
+    @Bean
+    public TaskScheduler taskScheduler() {
+        ThreadPoolTaskScheduler scheduler = new ThreadPoolTaskScheduler();
+        scheduler.setPoolSize(schedulerPoolSize);
+        scheduler.setThreadNamePrefix("job-scheduler-");
+        scheduler.initialize();
+        return scheduler;
+    }
+
+    @Bean
+    public JobDefinition appointmentRemindersJob(
+            ReminderService reminderService,
+            @Value("${jobs.appointment-reminders.interval-ms:3600000}") long interval,
+            @Value("${jobs.appointment-reminders.initial-delay-ms:60000}") long initialDelay,
+            @Value("${jobs.appointment-reminders.lease-ms:900000}") long lease) {
+        return new JobDefinition("appointment-reminders", JobDefinition.Priority.HIGH, 1,
+                interval, initialDelay, lease, reminderService::checkUpcomingAppointments);
+    }
+
+    @Bean
+    public JobDefinition inventoryLevelsJob(
+            InventoryAlertService inventoryAlertService,
+            @Value("${jobs.inventory-levels.interval-ms:3600000}") long interval,
+            @Value("${jobs.inventory-levels.initial-delay-ms:120000}") long initialDelay,
+            @Value("${jobs.inventory-levels.lease-ms:600000}") long lease) {
+        return new JobDefinition("inventory-levels", JobDefinition.Priority.NORMAL, 1,
+                interval, initialDelay, lease, inventoryAlertService::checkInventoryLevels);
+    }
+
+    @Bean
+    public JobDefinition cascadeDeletesJob(
+            CascadeDeleteService cascadeDeleteService,
+            @Value("${jobs.cascade-deletes.interval-ms:900000}") long interval,
+            @Value("${jobs.cascade-deletes.initial-delay-ms:300000}") long initialDelay,
+            @Value("${jobs.cascade-deletes.lease-ms:1800000}") long lease) {
+        return new JobDefinition("cascade-deletes", JobDefinition.Priority.LOW, 1,
+                interval, initialDelay, lease, cascadeDeleteService::resumeStale);
+    }
+
+    @Bean
+    public JobDefinition archivalJob(
+            ArchivalService archivalService,
+            @Value("${jobs.archival.interval-ms:21600000}") long interval,
+            @Value("${jobs.archival.initial-delay-ms:600000}") long initialDelay,
+            @Value("${jobs.archival.lease-ms:3600000}") long lease) {
+        return new JobDefinition("archival", JobDefinition.Priority.LOW, 1,
+                interval, initialDelay, lease, archivalService::archive);
+    }
+}
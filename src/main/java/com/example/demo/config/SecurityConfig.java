@@ -1,6 +1,7 @@
 package com.example.demo.config;
 
 import com.example.demo.security.FirebaseAuthenticationFilter;
+import com.example.demo.service.IdempotencyService;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.security.access.PermissionEvaluator;
@@ -31,6 +32,8 @@ public class SecurityConfig {
     private static final String[] WHITE_LIST_URL = {
             "/api/auth/login",
             "/api/auth/register",
+            "/api/auth/login-async",
+            "/identity-stub/**",
             "/v2/api-docs",
             "/v3/api-docs",
             "/v3/api-docs/**",
@@ -90,7 +93,9 @@ public class SecurityConfig {
         corsConfiguration.setAllowCredentials(true);
         corsConfiguration.setAllowedOrigins(Collections.singletonList("http://localhost:3000"));
         corsConfiguration.setAllowedMethods(Arrays.asList("GET", "POST", "PUT", "DELETE"));
-        corsConfiguration.setAllowedHeaders(Arrays.asList("Authorization", "Cache-Control", "Content-Type"));
+        corsConfiguration.setAllowedHeaders(Arrays.asList("Authorization", "Cache-Control", "Content-Type", "If-None-Match",
+                IdempotencyService.HEADER));
+        corsConfiguration.setExposedHeaders(Arrays.asList("ETag", "Last-Modified"));
 
         UrlBasedCorsConfigurationSource source = new UrlBasedCorsConfigurationSource();
         source.registerCorsConfiguration("/**", corsConfiguration);
@@ -0,0 +1,123 @@
+package com.example.demo.config;
+
+import com.example.demo.model.Appointment;
+import com.example.demo.model.Pet;
+import com.example.demo.model.User;
+import com.example.demo.service.CacheInvalidationService;
+import com.example.demo.service.CatalogCacheService;
+import com.example.demo.service.ClinicalSearchIndexService;
+import com.example.demo.service.JobCoordinator;
+import com.example.demo.service.ServiceCatalogIndex;
+import com.google.cloud.firestore.Firestore;
+import com.google.cloud.firestore.QueryDocumentSnapshot;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.TimeGauge;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.LazyInitializationExcludeFilter;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.context.event.EventListener;
+import org.springframework.security.access.PermissionEvaluator;
+import org.springframework.web.context.support.ServletRequestHandledEvent;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Arranque en frío: beans que deben crearse aunque el perfil "startup" active la inicialización
+ * diferida, precarga de cachés al quedar lista la aplicación y medición del tiempo hasta la
+ * primera petición atendida.
+ */
+@Configuration
+@Slf4j
+public class StartupConfig {
+
+    // Colecciones cuyo mapeo con toObject se ejercita en el warm-up para cargar las clases del mapper
+    private static final Map<String, Class<?>> MAPPED_COLLECTIONS = Map.of(
+            "users", User.class,
+            "pets", Pet.class,
+            "appointments", Appointment.class);
+
+    @Autowired
+    @Lazy
+    private Firestore firestore;
+
+    @Autowired
+    @Lazy
+    private CustomPermissionEvaluator permissionEvaluator;
+
+    @Autowired
+    @Lazy
+    private ServiceCatalogIndex serviceCatalogIndex;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${startup.warmup.enabled:true}")
+    private boolean warmupEnabled;
+
+    private final AtomicBoolean firstRequestSeen = new AtomicBoolean();
+    private final AtomicLong firstRequestMs = new AtomicLong(-1);
+
+    /**
+     * Con spring.main.lazy-initialization activo, estos beans se siguen creando al arrancar:
+     * el coordinador programa los trabajos en su inicialización, el índice de búsqueda clínica debe
+     * seguir los cambios desde el arranque y el resto se usa en cada petición. El filtro compara el
+     * tipo declarado: el evaluador de SecurityConfig se declara como {@link PermissionEvaluator}.
+     */
+    @Bean
+    public static LazyInitializationExcludeFilter eagerStartupBeans() {
+        return LazyInitializationExcludeFilter.forBeanTypes(JobCoordinator.class, CacheInvalidationService.class,
+                CatalogCacheService.class, CustomPermissionEvaluator.class, PermissionEvaluator.class,
+                Firestore.class, ClinicalSearchIndexService.class);
+    }
+
+    /**
+     * Precarga los permisos de los roles, el índice del catálogo de servicios y el mapeo de los modelos
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUpCaches() {
+        if (!warmupEnabled) {
+            return;
+        }
+        long startedAt = System.nanoTime();
+        try {
+            int roles = permissionEvaluator.preloadRolePermissions();
+            int services = serviceCatalogIndex.current().services().size();
+            for (Map.Entry<String, Class<?>> entry : MAPPED_COLLECTIONS.entrySet()) {
+                for (QueryDocumentSnapshot doc : firestore.collection(entry.getKey()).limit(1).get().get().getDocuments()) {
+                    doc.toObject(entry.getValue());
+                }
+            }
+            log.info("Startup warm-up finished in {} ms: {} roles, {} catalog services",
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAt), roles, services);
+        } catch (Exception e) {
+            // Las cachés se llenan igualmente con las primeras peticiones
+            log.warn("Startup warm-up failed: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Registra, una sola vez, el tiempo desde el arranque de la JVM hasta la primera petición atendida
+     */
+    @EventListener
+    public void onRequestHandled(ServletRequestHandledEvent event) {
+        if (!firstRequestSeen.compareAndSet(false, true)) {
+            return;
+        }
+        long elapsed = System.currentTimeMillis() - ManagementFactory.getRuntimeMXBean().getStartTime();
+        firstRequestMs.set(elapsed);
+        TimeGauge.builder("application.first-request.time", firstRequestMs, TimeUnit.MILLISECONDS, AtomicLong::get)
+                .description("Tiempo desde el arranque de la JVM hasta la primera petición atendida")
+                .register(meterRegistry);
+        log.info("First request ({} {}) handled {} ms after JVM start",
+                event.getMethod(), event.getRequestUrl(), elapsed);
+    }
+}
@@ -0,0 +1,63 @@
+package com.example.demo.config;
+
+import io.netty.channel.ChannelOption;
+import io.netty.handler.timeout.ReadTimeoutHandler;
+import io.netty.handler.timeout.WriteTimeoutHandler;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+@Configuration
+public class WebClientConfig {
+
+    @Value("${identity-toolkit.base-url:https://identitytoolkit.googleapis.com/v1}")
+    private String identityToolkitBaseUrl;
+
+    @Value("${identity-toolkit.pool.max-connections:100}")
+    private int maxConnections;
+
+    @Value("${identity-toolkit.pool.pending-acquire-timeout-ms:2000}")
+    private long pendingAcquireTimeoutMs;
+
+    @Value("${identity-toolkit.pool.max-idle-time-ms:30000}")
+    private long maxIdleTimeMs;
+
+    @Value("${identity-toolkit.connect-timeout-ms:2000}")
+    private int connectTimeoutMs;
+
+    @Value("${identity-toolkit.response-timeout-ms:5000}")
+    private long responseTimeoutMs;
+
+    /**
+     * Cliente compartido para la API de Identity Toolkit: un único pool de conexiones para todos
+     * los logins, con límites de espera en la conexión, en la obtención del pool y en la respuesta
+     */
+    @Bean(name = "identityToolkitWebClient")
+    public WebClient identityToolkitWebClient(WebClient.Builder builder) {
+        ConnectionProvider provider = ConnectionProvider.builder("identity-toolkit")
+                .maxConnections(maxConnections)
+                .pendingAcquireTimeout(Duration.ofMillis(pendingAcquireTimeoutMs))
+                .maxIdleTime(Duration.ofMillis(maxIdleTimeMs))
+                .evictInBackground(Duration.ofMillis(maxIdleTimeMs))
+                .build();
+
+        HttpClient httpClient = HttpClient.create(provider)
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, connectTimeoutMs)
+                .responseTimeout(Duration.ofMillis(responseTimeoutMs))
+                .doOnConnected(connection -> connection
+                        .addHandlerLast(new ReadTimeoutHandler(responseTimeoutMs, TimeUnit.MILLISECONDS))
+                        .addHandlerLast(new WriteTimeoutHandler(responseTimeoutMs, TimeUnit.MILLISECONDS)));
+
+        return builder.clone()
+                .baseUrl(identityToolkitBaseUrl)
+                .clientConnector(new ReactorClientHttpConnector(httpClient))
+                .build();
+    }
+}
@@ -6,6 +6,7 @@ import com.example.demo.dto.AppointmentDTOs.*;
 import com.example.demo.dto.PaginatedResponse;
 import com.example.demo.dto.PaginationRequest;
 import com.example.demo.service.AppointmentService;
+import com.example.demo.service.IdempotencyService;
 import jakarta.validation.Valid;
 
 import lombok.extern.slf4j.Slf4j;
@@ -25,19 +26,25 @@ public class AppointmentController {
     @Autowired
     private AppointmentService appointmentService;
 
+    @Autowired
+    private IdempotencyService idempotencyService;
+
     @GetMapping("/daily")
     @PreAuthorize("hasPermission(null, 'VER_CITAS_DIARIAS')")
     public ResponseEntity<ApiResponse<PaginatedResponse<AppointmentResponse>>> getDailyAppointments(
             @ModelAttribute PaginationRequest paginationRequest,
             @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) Date date,
-            @RequestParam String veterinarianId) {
+            @RequestParam String veterinarianId,
+            @RequestParam(required = false) String view,
+            @RequestParam(required = false) String fields) {
         try {
             log.info("Fetching daily appointments for date: {}, veterinarianId: {}", date, veterinarianId);
             if (date == null) {
                 date = new Date();
             }
             return ResponseEntity.ok(ApiResponse.success(
-                    appointmentService.getVeterinarianDailyAppointments(veterinarianId, date, paginationRequest)));
+                    appointmentService.getVeterinarianDailyAppointments(veterinarianId, date, paginationRequest,
+                            AppointmentProjection.of(view, fields))));
         } catch (Exception e) {
             log.error("Error fetching daily appointments: ", e);
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
@@ -48,16 +55,20 @@ public class AppointmentController {
     @GetMapping("/my-pets")
     @PreAuthorize("hasPermission('', 'VER_CITAS_MASCOTAS')")
     public ResponseEntity<ApiResponse<PaginatedResponse<AppointmentSummaryByPet>>> getClientPetsAppointments(
-            @ModelAttribute PaginationRequest paginationRequest) {
+            @ModelAttribute PaginationRequest paginationRequest,
+            @RequestParam(required = false) String view,
+            @RequestParam(required = false) String fields) {
         return ResponseEntity.ok(ApiResponse.success(
-                appointmentService.getClientPetsAppointments(paginationRequest)));
+                appointmentService.getClientPetsAppointments(paginationRequest, AppointmentProjection.of(view, fields))));
     }
     @PostMapping("/schedule")
     @PreAuthorize("hasPermission(null, 'PROGRAMAR_CITA')")
     public ResponseEntity<ApiResponse<AppointmentResponse>> scheduleAppointment(
+            @RequestHeader(value = IdempotencyService.HEADER, required = false) String idempotencyKey,
             @Valid @RequestBody CreateAppointmentRequest request) {
         return ResponseEntity.ok(ApiResponse.success(
-                appointmentService.createAppointment(request)
+                idempotencyService.execute("appointments.create", idempotencyKey, request, AppointmentResponse.class,
+                        () -> appointmentService.createAppointment(request))
         ));
     }
 
@@ -81,4 +92,17 @@ public class AppointmentController {
                 appointmentService.cancelAppointment(appointmentId)
         ));
     }
-}
\ No newline at end of file
+
+    /**
+     * Reprograma o cancela varias citas en una sola operación (uso del personal de la clínica)
+     */
+    @PostMapping("/batch")
+    @PreAuthorize("hasPermission(null, 'REPROGRAMAR_CITA') and hasPermission(null, 'VER_CITAS_DIARIAS')")
+    public ResponseEntity<ApiResponse<BatchAppointmentResponse>> processBatch(
+            @Valid @RequestBody BatchAppointmentRequest request
+    ) {
+        return ResponseEntity.ok(ApiResponse.success(
+                appointmentService.processBatch(request)
+        ));
+    }
+}
@@ -6,6 +6,7 @@ import com.example.demo.service.AuthService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Mono;
 
 import com.example.demo.dto.AuthDTOs.*;
 
@@ -28,6 +29,15 @@ public class AuthController {
         return ResponseEntity.ok(ApiResponse.success(response));
     }
 
+    /**
+     * Variante no bloqueante del login: el hilo del servidor se libera mientras se esperan las llamadas remotas
+     */
+    @PostMapping("/login-async")
+    public Mono<ResponseEntity<ApiResponse<AuthResponse>>> loginUserAsync(@RequestBody LoginRequest request) {
+        return authService.loginUserAsync(request)
+                .map(response -> ResponseEntity.ok(ApiResponse.success(response)));
+    }
+
     @PostMapping("/logout")
     public ResponseEntity<ApiResponse<Void>> logoutUser() {
         authService.logout();
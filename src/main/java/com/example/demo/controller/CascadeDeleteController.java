@@ -0,0 +1,26 @@
+package com.example.demo.controller;
+
+import com.example.demo.dto.ApiResponse;
+import com.example.demo.dto.CascadeDeleteDTOs.*;
+import com.example.demo.service.CascadeDeleteService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.*;
+
+@RestController
+@RequestMapping("/api/cascade-deletes")
+public class CascadeDeleteController {
+
+    @Autowired
+    private CascadeDeleteService cascadeDeleteService;
+
+    /**
+     * Progreso de un borrado en cascada (IDs con el formato PET_{id} o USER_{id})
+     */
+    @GetMapping("/{jobId}")
+    @PreAuthorize("hasPermission('', 'GESTIONAR_USUARIOS')")
+    public ResponseEntity<ApiResponse<CascadeDeleteStatus>> getStatus(@PathVariable String jobId) {
+        return ResponseEntity.ok(ApiResponse.success(cascadeDeleteService.getStatus(jobId)));
+    }
+}
@@ -0,0 +1,61 @@
+package com.example.demo.controller;
+
+import com.example.demo.dto.ApiResponse;
+import com.example.demo.dto.ClinicalSearchDTOs.*;
+import com.example.demo.dto.PaginatedResponse;
+import com.example.demo.dto.PaginationRequest;
+import com.example.demo.service.ClinicalSearchIndexService;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.Date;
+
+@RestController
+@RequestMapping("/api/clinical-search")
+@Tag(name = "Clinical Search", description = "Búsqueda de texto completo en historiales clínicos y registros médicos")
+public class ClinicalSearchController {
+
+    @Autowired
+    private ClinicalSearchIndexService clinicalSearchIndexService;
+
+    /**
+     * Busca por diagnóstico, tratamiento, motivo de consulta u observaciones, ordenado por relevancia
+     */
+    @GetMapping
+    @PreAuthorize("hasPermission('', 'VER_HISTORIAL_CLINICO')")
+    @Operation(summary = "Buscar en historiales clínicos",
+            description = "Resultados paginados por relevancia, con fragmentos resaltados por campo")
+    public ResponseEntity<ApiResponse<PaginatedResponse<ClinicalSearchHit>>> search(
+            @Parameter(description = "Texto a buscar", required = true)
+            @RequestParam String q,
+
+            @Parameter(description = "ID de la mascota")
+            @RequestParam(required = false) String petId,
+
+            @Parameter(description = "Origen (HISTORIAL_CLINICO, MEDICAL_RECORD)")
+            @RequestParam(required = false) String source,
+
+            @Parameter(description = "Fecha desde")
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) Date from,
+
+            @Parameter(description = "Fecha hasta (incluida)")
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) Date to,
+
+            @ModelAttribute PaginationRequest paginationRequest) {
+        return ResponseEntity.ok(ApiResponse.success(
+                clinicalSearchIndexService.search(q, petId, source, from, to, paginationRequest)));
+    }
+
+    @GetMapping("/status")
+    @PreAuthorize("hasPermission('', 'VER_HISTORIAL_CLINICO')")
+    @Operation(summary = "Estado del índice de búsqueda clínica")
+    public ResponseEntity<ApiResponse<ClinicalSearchIndexStatus>> status() {
+        return ResponseEntity.ok(ApiResponse.success(clinicalSearchIndexService.status()));
+    }
+}
@@ -0,0 +1,27 @@
+package com.example.demo.controller;
+
+import com.example.demo.service.RealtimeEventService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+@RestController
+@RequestMapping("/api/events")
+public class EventStreamController {
+
+    @Autowired
+    private RealtimeEventService realtimeEventService;
+
+    /**
+     * Suscribe al usuario actual a los eventos de citas y de inventario que le corresponden
+     */
+    @GetMapping(value = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamEvents() {
+        String userId = SecurityContextHolder.getContext().getAuthentication().getName();
+        return realtimeEventService.subscribe(userId);
+    }
+}
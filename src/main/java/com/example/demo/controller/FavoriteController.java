@@ -4,6 +4,7 @@ import com.example.demo.dto.ApiResponse;
 import com.example.demo.dto.FavoriteDTOs.*;
 import com.example.demo.model.ItemType;
 import com.example.demo.service.FavoriteService;
+import com.example.demo.service.IdempotencyService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
@@ -17,6 +18,9 @@ public class FavoriteController {
     @Autowired
     private FavoriteService favoriteService;
 
+    @Autowired
+    private IdempotencyService idempotencyService;
+
     /**
      * Obtiene todos los favoritos del veterinario actual
      */
@@ -33,9 +37,12 @@ public class FavoriteController {
     @PostMapping("/toggle")
     @PreAuthorize("hasPermission('', 'GESTIONAR_FAVORITOS')")
     public ResponseEntity<ApiResponse<FavoriteResponse>> toggleFavorite(
+            @RequestHeader(value = IdempotencyService.HEADER, required = false) String idempotencyKey,
             @RequestBody ToggleFavoriteRequest request) {
+        // Alternar no es idempotente por sí mismo: sin deduplicar, un reintento desharía el cambio
         return ResponseEntity.ok(ApiResponse.success(
-                favoriteService.toggleFavorite(request.getItemId(), ItemType.valueOf(request.getItemType()))));
+                idempotencyService.execute("favorites.toggle", idempotencyKey, request, FavoriteResponse.class,
+                        () -> favoriteService.toggleFavorite(request.getItemId(), ItemType.valueOf(request.getItemType())))));
     }
 
     /**
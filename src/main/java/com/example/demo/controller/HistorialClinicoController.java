@@ -3,6 +3,7 @@ package com.example.demo.controller;
 import com.example.demo.dto.ApiResponse;
 import com.example.demo.dto.HistorialClinicoDTOs.*;
 import com.example.demo.service.HistorialClinicoService;
+import com.example.demo.service.IdempotencyService;
 import jakarta.validation.Valid;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
@@ -18,13 +19,19 @@ public class HistorialClinicoController {
     @Autowired
     private HistorialClinicoService historialClinicoService;
 
+    @Autowired
+    private IdempotencyService idempotencyService;
+
     @PostMapping("/mascota/{petId}")
     @PreAuthorize("hasPermission('', 'CREAR_HISTORIAL_CLINICO')")
     public ResponseEntity<ApiResponse<HistorialClinicoResponse>> createHistorial(
+            @RequestHeader(value = IdempotencyService.HEADER, required = false) String idempotencyKey,
             @PathVariable String petId,
             @Valid @RequestBody CreateHistorialRequest request) {
         return ResponseEntity.ok(ApiResponse.success(
-                historialClinicoService.createHistorial(petId, request)));
+                idempotencyService.execute("historial.create:" + petId, idempotencyKey, request,
+                        HistorialClinicoResponse.class,
+                        () -> historialClinicoService.createHistorial(petId, request))));
     }
 
     @PutMapping("/{historialId}")
@@ -39,9 +46,10 @@ public class HistorialClinicoController {
     @GetMapping("/mascota/{petId}")
     @PreAuthorize("hasPermission('', 'VER_HISTORIAL_CLINICO')")
     public ResponseEntity<ApiResponse<List<HistorialClinicoResponse>>> getHistorialByPetId(
-            @PathVariable String petId) {
+            @PathVariable String petId,
+            @RequestParam(required = false) String view) {
         return ResponseEntity.ok(ApiResponse.success(
-                historialClinicoService.getHistorialByPetId(petId)));
+                historialClinicoService.getHistorialByPetId(petId, "summary".equalsIgnoreCase(view))));
     }
 
     @GetMapping("/{historialId}")
@@ -0,0 +1,53 @@
+package com.example.demo.controller;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Imitación local de los endpoints de Identity Toolkit usados en el login, para pruebas de carga
+ * sin salir a Google. Solo existe con el perfil "identity-stub", que además apunta
+ * identity-toolkit.base-url a este controlador.
+ */
+@RestController
+@Profile("identity-stub")
+@RequestMapping("/identity-stub/v1")
+public class IdentityToolkitStubController {
+
+    @Value("${identity-stub.latency-ms:50}")
+    private long latencyMs;
+
+    @Value("${identity-stub.invalid-password:invalid-password}")
+    private String invalidPassword;
+
+    @PostMapping("/accounts:signInWithPassword")
+    public Mono<ResponseEntity<Map<String, Object>>> signInWithPassword(@RequestBody Map<String, Object> body) {
+        if (invalidPassword.equals(body.get("password"))) {
+            return delayed(ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                    .body(Map.of("error", Map.of("code", 400, "message", "INVALID_PASSWORD"))));
+        }
+        return delayed(ResponseEntity.ok(Map.of(
+                "email", String.valueOf(body.get("email")),
+                "idToken", "stub-" + UUID.randomUUID(),
+                "registered", true)));
+    }
+
+    @PostMapping("/accounts:signInWithCustomToken")
+    public Mono<ResponseEntity<Map<String, Object>>> signInWithCustomToken(@RequestBody Map<String, Object> body) {
+        return delayed(ResponseEntity.ok(Map.of(
+                "idToken", "stub-" + UUID.randomUUID(),
+                "refreshToken", "stub-refresh-" + UUID.randomUUID(),
+                "expiresIn", "3600")));
+    }
+
+    private <T> Mono<T> delayed(T value) {
+        return Mono.just(value).delayElement(Duration.ofMillis(latencyMs));
+    }
+}
@@ -5,6 +5,7 @@ import com.example.demo.dto.InventoryDTOs.*;
 import com.example.demo.dto.PaginatedResponse;
 import com.example.demo.dto.PaginationRequest;
 import com.example.demo.service.InventoryService;
+import com.example.demo.service.IdempotencyService;
 import jakarta.validation.Valid;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
@@ -20,6 +21,9 @@ public class InventoryController {
     @Autowired
     private InventoryService inventoryService;
 
+    @Autowired
+    private IdempotencyService idempotencyService;
+
     @GetMapping
     @PreAuthorize("hasPermission('', 'GESTIONAR_INVENTARIO')")
     public ResponseEntity<ApiResponse<PaginatedResponse<InventoryItemResponse>>> getAllItems(
@@ -48,9 +52,11 @@ public class InventoryController {
     @PostMapping("/restock-orders")
     @PreAuthorize("hasPermission('', 'GESTIONAR_INVENTARIO')")
     public ResponseEntity<ApiResponse<RestockOrderDTO>> createRestockOrder(
+            @RequestHeader(value = IdempotencyService.HEADER, required = false) String idempotencyKey,
             @Valid @RequestBody CreateRestockOrderRequest request) {
         return ResponseEntity.ok(ApiResponse.success(
-                inventoryService.createRestockOrder(request)));
+                idempotencyService.execute("restock-orders.create", idempotencyKey, request, RestockOrderDTO.class,
+                        () -> inventoryService.createRestockOrder(request))));
     }
 
 }
\ No newline at end of file
@@ -0,0 +1,34 @@
+package com.example.demo.controller;
+
+import com.example.demo.dto.ApiResponse;
+import com.example.demo.dto.JobDTOs.*;
+import com.example.demo.service.JobCoordinator;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+
+@RestController
+@RequestMapping("/api/jobs")
+public class JobController {
+
+    @Autowired
+    private JobCoordinator jobCoordinator;
+
+    @GetMapping
+    @PreAuthorize("hasPermission('', 'GESTIONAR_USUARIOS')")
+    public ResponseEntity<ApiResponse<List<JobStatus>>> getJobs() {
+        return ResponseEntity.ok(ApiResponse.success(jobCoordinator.getStatuses()));
+    }
+
+    /**
+     * Ejecuta un trabajo en segundo plano de inmediato
+     */
+    @PostMapping("/{name}/run")
+    @PreAuthorize("hasPermission('', 'GESTIONAR_USUARIOS')")
+    public ResponseEntity<ApiResponse<TriggerResponse>> runJob(@PathVariable String name) {
+        return ResponseEntity.ok(ApiResponse.success(jobCoordinator.trigger(name, true)));
+    }
+}
@@ -5,6 +5,8 @@ import com.example.demo.dto.PaginatedResponse;
 import com.example.demo.dto.PaginationRequest;
 import com.example.demo.dto.PetDTOs.*;
 import com.example.demo.exception.CustomExceptions;
+import com.example.demo.dto.TimelineDTOs.*;
+import com.example.demo.service.ClinicalTimelineService;
 import com.example.demo.service.PetService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
@@ -20,6 +22,10 @@ public class PetController {
 
     @Autowired
     private PetService petService;
+
+    @Autowired
+    private ClinicalTimelineService clinicalTimelineService;
+
     @GetMapping("/me")
     @PreAuthorize("hasPermission('', 'VER_MIS_MASCOTAS')")
     public ResponseEntity<ApiResponse<List<PetResponse>>> getCurrentUserPets() {
@@ -52,6 +58,27 @@ public class PetController {
         return ResponseEntity.ok(ApiResponse.success(petService.getPetMedicalHistory(id, paginationRequest)));
     }
 
+    /**
+     * Línea de tiempo clínica unificada (registros médicos e historiales), paginada por cursor
+     */
+    @GetMapping("/{id}/timeline")
+    @PreAuthorize("hasPermission('', 'VER_HISTORIAL_MEDICO') or @petService.isOwner(#id)")
+    public ResponseEntity<ApiResponse<TimelinePage>> getTimeline(
+            @PathVariable String id,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "20") int size) {
+        return ResponseEntity.ok(ApiResponse.success(clinicalTimelineService.getTimeline(id, cursor, size)));
+    }
+
+    /**
+     * Migra los registros médicos e historiales existentes a la línea de tiempo
+     */
+    @PostMapping("/timeline/backfill")
+    @PreAuthorize("hasPermission('', 'GESTIONAR_USUARIOS')")
+    public ResponseEntity<ApiResponse<BackfillResult>> backfillTimeline() {
+        return ResponseEntity.ok(ApiResponse.success(clinicalTimelineService.backfill()));
+    }
+
     @PostMapping("/{id}/medical-record")
     @PreAuthorize("hasPermission('', 'AGREGAR_HISTORIAL_MEDICO')")
     public ResponseEntity<ApiResponse<MedicalRecordResponse>> addMedicalRecord(@PathVariable String id, @RequestBody AddMedicalRecordRequest request) {
@@ -1,8 +1,10 @@
 package com.example.demo.controller;
 
+import com.example.demo.config.CatalogCached;
 import com.example.demo.dto.ApiResponse;
 import com.example.demo.dto.UserDTOs;
 import com.example.demo.model.Role;
+import com.example.demo.service.CatalogCacheService;
 import com.example.demo.service.RolePermissionService;
 import com.example.demo.service.UserService;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -23,6 +25,7 @@ public class RoleController {
     private UserService userService;
 
     @GetMapping
+    @CatalogCached(CatalogCacheService.ROLES)
     public ResponseEntity<ApiResponse<List<UserDTOs.RolePermissionDTO>>> getAllRolePermissions() {
         return ResponseEntity.ok(ApiResponse.success(rolePermissionService.getAllRolePermissions()));
     }
@@ -1,7 +1,9 @@
 package com.example.demo.controller;
 
+import com.example.demo.config.CatalogCached;
 import com.example.demo.dto.*;
 import com.example.demo.model.ServiceCategory;
+import com.example.demo.service.CatalogCacheService;
 import com.example.demo.service.VetServiceListService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
@@ -20,15 +22,20 @@ public class ServiceController {
      */
     @GetMapping("/list")
     @PreAuthorize("hasPermission('', 'VER_SERVICIOS')")
+    @CatalogCached(CatalogCacheService.SERVICES)
     public ResponseEntity<ApiResponse<PaginatedResponse<ServiceDTO>>> getServiceList(
             @ModelAttribute PaginationRequest paginationRequest,
             @RequestParam(required = false) String searchTerm,
-            @RequestParam(required = false) ServiceCategory category) {
+            @RequestParam(required = false) ServiceCategory category,
+            @RequestParam(required = false) Double minPrice,
+            @RequestParam(required = false) Double maxPrice) {
 
         ServiceSearchRequest searchRequest = ServiceSearchRequest.builder()
                 .searchTerm(searchTerm)
                 .category(category != null ? category.name() : null)
                 .onlyActive(true) // Por defecto solo mostramos servicios activos
+                .minPrice(minPrice)
+                .maxPrice(maxPrice)
                 .build();
 
         return ResponseEntity.ok(ApiResponse.success(
@@ -40,12 +47,17 @@ public class ServiceController {
      */
     @GetMapping("/by-category")
     @PreAuthorize("hasPermission('', 'VER_SERVICIOS')")
+    @CatalogCached(CatalogCacheService.SERVICES)
     public ResponseEntity<ApiResponse<ServiceListResponse>> getServicesByCategory(
-            @RequestParam(required = false) String searchTerm) {
+            @RequestParam(required = false) String searchTerm,
+            @RequestParam(required = false) Double minPrice,
+            @RequestParam(required = false) Double maxPrice) {
 
         ServiceSearchRequest searchRequest = ServiceSearchRequest.builder()
                 .searchTerm(searchTerm)
                 .onlyActive(true)
+                .minPrice(minPrice)
+                .maxPrice(maxPrice)
                 .build();
 
         return ResponseEntity.ok(ApiResponse.success(
@@ -57,6 +69,8 @@ public class ServiceController {
      */
     @GetMapping("/categories")
     @PreAuthorize("hasPermission('', 'VER_SERVICIOS')")
+    // Las categorías se publican junto al catálogo de servicios y se validan con él
+    @CatalogCached(CatalogCacheService.SERVICES)
     public ResponseEntity<ApiResponse<ServiceCategory[]>> getServiceCategories() {
         return ResponseEntity.ok(ApiResponse.success(ServiceCategory.values()));
     }
@@ -56,4 +56,15 @@ public class ServiceReportController {
         return ResponseEntity.ok(ApiResponse.success(
                 serviceReportService.generateReport(filter)));
     }
+
+    /**
+     * Obtiene las estadísticas de la caché de reportes
+     */
+    @GetMapping("/services/cache-stats")
+    @PreAuthorize("hasPermission(null, 'GENERAR_REPORTE_SERVICIOS')")
+    @Operation(summary = "Estadísticas de la caché de reportes",
+            description = "Aciertos, fallos, entradas e invalidaciones de la caché de reportes de servicios")
+    public ResponseEntity<ApiResponse<ReportCacheStats>> getCacheStats() {
+        return ResponseEntity.ok(ApiResponse.success(serviceReportService.getCacheStats()));
+    }
 }
\ No newline at end of file
@@ -1,10 +1,12 @@
 package com.example.demo.controller;
 
+import com.example.demo.config.CatalogCached;
 import com.example.demo.dto.ApiResponse;
 import com.example.demo.dto.PaginatedResponse;
 import com.example.demo.dto.PaginationRequest;
 import com.example.demo.dto.ServiceVeterinaryDTOs.*;
 import com.example.demo.model.ServiceCategory;
+import com.example.demo.service.CatalogCacheService;
 import com.example.demo.service.ServiceVeterinaryService;
 import jakarta.validation.Valid;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -79,6 +81,7 @@ public class ServiceVeterinaryController {
 
     @GetMapping("/active")
     @PreAuthorize("hasPermission('', 'VER_SERVICIOS')")
+    @CatalogCached(CatalogCacheService.SERVICES)
     public ResponseEntity<ApiResponse<List<ServiceDetailResponse>>> getActiveServices() {
         return ResponseEntity.ok(ApiResponse.success(
                 serviceVeterinaryService.getActiveServices()));
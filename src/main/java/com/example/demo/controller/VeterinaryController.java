@@ -31,6 +31,15 @@ public class VeterinaryController {
                 veterinaryService.searchClients(criteria, paginationRequest)));
     }
 
+    /**
+     * Reconstruye la proyección usada por la búsqueda de clientes
+     */
+    @PostMapping("/search/rebuild-index")
+    @PreAuthorize("hasPermission(null, 'GESTIONAR_USUARIOS')")
+    public ResponseEntity<ApiResponse<Integer>> rebuildClientSearchIndex() {
+        return ResponseEntity.ok(ApiResponse.success(veterinaryService.rebuildClientSearchIndex()));
+    }
+
     @GetMapping("/clients/{clientId}/pets")
     @PreAuthorize("hasPermission(null, 'BUSCAR_CLIENTE_MASCOTA')")
     public ResponseEntity<ApiResponse<UserDTOs.ClientWithPetsDTO>> getClientWithPets(@PathVariable String clientId) {
@@ -1,12 +1,21 @@
 package com.example.demo.dto;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotEmpty;
 import jakarta.validation.constraints.NotNull;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
+import lombok.Getter;
 import lombok.NoArgsConstructor;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 public class AppointmentDTOs {
 
@@ -15,16 +24,54 @@ public class AppointmentDTOs {
     @NoArgsConstructor
     public static class AppointmentResponse {
         private String id;
+        private String petId;
+        private String clientId;
+        private String veterinarianId;
+        // Las entidades relacionadas se omiten cuando la proyección no las incluye
+        @JsonInclude(JsonInclude.Include.NON_NULL)
         private PetDTOs.PetResponse pet;
+        @JsonInclude(JsonInclude.Include.NON_NULL)
         private UserDTOs.UserResponse client;
+        @JsonInclude(JsonInclude.Include.NON_NULL)
         private UserDTOs.UserResponse veterinarian;
         private Date appointmentDate;
         private String reason;
         private String status;
         private String notes;
+        @JsonInclude(JsonInclude.Include.NON_NULL)
         private List<PetDTOs.MedicalRecordResponse> petHistory;
     }
 
+    /**
+     * Indica qué entidades relacionadas se cargan al construir un AppointmentResponse.
+     * Se obtiene de los parámetros {@code view=summary|full} y {@code fields=pet,client,veterinarian,petHistory}.
+     */
+    @Getter
+    @AllArgsConstructor
+    public static class AppointmentProjection {
+        public static final AppointmentProjection FULL = new AppointmentProjection(true, true, true, true);
+        public static final AppointmentProjection SUMMARY = new AppointmentProjection(false, false, false, false);
+
+        private final boolean pet;
+        private final boolean client;
+        private final boolean veterinarian;
+        private final boolean petHistory;
+
+        public static AppointmentProjection of(String view, String fields) {
+            if (fields != null && !fields.isBlank()) {
+                Set<String> requested = Arrays.stream(fields.split(","))
+                        .map(field -> field.trim().toLowerCase(Locale.ROOT))
+                        .collect(Collectors.toSet());
+                return new AppointmentProjection(
+                        requested.contains("pet"),
+                        requested.contains("client"),
+                        requested.contains("veterinarian"),
+                        requested.contains("pethistory"));
+            }
+            return "summary".equalsIgnoreCase(view) ? SUMMARY : FULL;
+        }
+    }
+
     @Data
     public static class CreateAppointmentRequest {
         private String petId;
@@ -80,4 +127,63 @@ public class AppointmentDTOs {
         private boolean canReschedule; // Para indicar si la cita puede ser reprogramada
     }
 
-}
\ No newline at end of file
+    public enum BatchOperationType {
+        RESCHEDULE,
+        CANCEL
+    }
+
+    @Data
+    public static class BatchOperation {
+        @NotBlank(message = "El id de la cita es obligatorio")
+        private String appointmentId;
+        @NotNull(message = "El tipo de operación es obligatorio")
+        private BatchOperationType type;
+        private Date newDate;       // Obligatoria para RESCHEDULE
+        private String reason;
+    }
+
+    @Data
+    public static class BatchAppointmentRequest {
+        @NotEmpty(message = "Debe indicar al menos una operación")
+        @Valid
+        private List<BatchOperation> operations;
+    }
+
+    @Data
+    @Builder
+    @AllArgsConstructor
+    @NoArgsConstructor
+    public static class BatchOperationResult {
+        private String appointmentId;
+        private BatchOperationType type;
+        private boolean success;
+        private String message;
+        private AppointmentResponse appointment;
+    }
+
+    @Data
+    @Builder
+    @AllArgsConstructor
+    @NoArgsConstructor
+    public static class BatchAppointmentResponse {
+        private List<BatchOperationResult> results;
+        private int succeeded;
+        private int failed;
+    }
+
+    /**
+     * Cambio aplicado a una cita, usado para agrupar las notificaciones por destinatario
+     */
+    @Data
+    @AllArgsConstructor
+    @NoArgsConstructor
+    public static class AppointmentChange {
+        private String appointmentId;
+        private String petId;
+        private String clientId;
+        private String veterinarianId;
+        private BatchOperationType type;
+        private Date previousDate;
+        private Date newDate;
+    }
+}
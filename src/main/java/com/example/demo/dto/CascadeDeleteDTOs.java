@@ -0,0 +1,36 @@
+package com.example.demo.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.Date;
+
+public class CascadeDeleteDTOs {
+
+    public enum CascadeStatus {
+        RUNNING,
+        COMPLETED,
+        FAILED
+    }
+
+    @Data
+    @Builder
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class CascadeDeleteStatus {
+        private String jobId;
+        private String rootType;
+        private String rootId;
+        private CascadeStatus status;
+        private int completedSteps;
+        private int totalSteps;
+        private String currentStep;
+        private long deleted;
+        private String error;
+        private Date startedAt;
+        private Date updatedAt;
+        private Date completedAt;
+    }
+}
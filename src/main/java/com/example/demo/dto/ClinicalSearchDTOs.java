@@ -0,0 +1,44 @@
+package com.example.demo.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.Date;
+import java.util.Map;
+
+public class ClinicalSearchDTOs {
+
+    /**
+     * Resultado de la búsqueda de texto completo sobre historiales clínicos y registros médicos
+     */
+    @Data
+    @Builder
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class ClinicalSearchHit {
+        private String source;        // HISTORIAL_CLINICO o MEDICAL_RECORD
+        private String id;
+        private String petId;
+        private String veterinarianId;
+        private Date date;
+        private float score;
+        private Map<String, String> highlights;  // Fragmentos resaltados por campo (diagnosis, treatment, ...)
+    }
+
+    /**
+     * Estado del índice local de búsqueda
+     */
+    @Data
+    @Builder
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class ClinicalSearchIndexStatus {
+        private boolean enabled;
+        private int documents;
+        private boolean historialReady;
+        private boolean archiveReady;
+        private boolean medicalRecordsReady;
+    }
+}
@@ -0,0 +1,55 @@
+package com.example.demo.dto;
+
+import com.example.demo.model.AlertStatus;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.Date;
+
+public class EventDTOs {
+
+    public enum AppointmentEventType {
+        APPOINTMENT_CREATED,
+        APPOINTMENT_RESCHEDULED,
+        APPOINTMENT_CANCELLED,
+        APPOINTMENT_UPDATED,
+        APPOINTMENT_REMOVED
+    }
+
+    public enum StockEventType {
+        STOCK_LOW,
+        STOCK_RESTORED
+    }
+
+    @Data
+    @Builder
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class AppointmentEvent {
+        private AppointmentEventType type;
+        private String appointmentId;
+        private String petId;
+        private String clientId;
+        private String veterinarianId;
+        private Date appointmentDate;
+        private Date previousAppointmentDate;
+        private String status;
+        private Date timestamp;
+    }
+
+    @Data
+    @Builder
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class StockEvent {
+        private StockEventType type;
+        private String productId;
+        private String productName;
+        private int currentStock;
+        private int minThreshold;
+        private AlertStatus status;
+        private Date timestamp;
+    }
+}
@@ -1,5 +1,6 @@
 package com.example.demo.dto;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import jakarta.validation.constraints.NotBlank;
 import lombok.*;
 import java.util.Date;
@@ -69,7 +70,8 @@ public class HistorialClinicoDTOs {
         private String veterinarianId;
         private String veterinarianName;  // Nombre completo del veterinario
         private String petName;           // Nombre de la mascota
-        private String ownerName;         // Nombre del dueño
+        @JsonInclude(JsonInclude.Include.NON_NULL)
+        private String ownerName;         // Nombre del dueño (se omite en la vista resumida)
         private Date fechaVisita;
         private String motivoConsulta;
         private String diagnostico;
@@ -79,8 +81,10 @@ public class HistorialClinicoDTOs {
         private Date fechaActualizacion;
         private String estado;
 
-        // Nuevos campos
+        // Nuevos campos (se omiten en la vista resumida)
+        @JsonInclude(JsonInclude.Include.NON_NULL)
         private List<ServicioRealizadoResponse> serviciosRealizados;
+        @JsonInclude(JsonInclude.Include.NON_NULL)
         private List<ServicioAdicionalResponse> serviciosAdicionales;
         private double precioTotal;
     }
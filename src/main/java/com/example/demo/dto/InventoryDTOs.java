@@ -61,6 +61,8 @@ public class InventoryDTOs {
 
     @Data
     @Builder
+    @NoArgsConstructor
+    @AllArgsConstructor
     public static class RestockOrderDTO {
         private String id;
         private String productId;
@@ -0,0 +1,43 @@
+package com.example.demo.dto;
+
+import com.example.demo.service.JobDefinition;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.Date;
+
+public class JobDTOs {
+
+    public enum TriggerStatus {
+        QUEUED,
+        ALREADY_RUNNING
+    }
+
+    @Data
+    @Builder
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class JobStatus {
+        private String name;
+        private JobDefinition.Priority priority;
+        private int maxConcurrency;
+        private long intervalMs;
+        private int running;
+        private long runs;
+        private long failures;
+        private long skipped;
+        private Date lastStartedAt;
+        private Long lastDurationMs;
+        private String lastOutcome;
+    }
+
+    @Data
+    @AllArgsConstructor
+    @NoArgsConstructor
+    public static class TriggerResponse {
+        private String name;
+        private TriggerStatus status;
+    }
+}
@@ -11,4 +11,5 @@ import java.util.Map;
 public class ServiceListResponse {
     private Map<String, List<ServiceDTO>> servicesByCategory;
     private long totalServices;
+    private Map<String, Long> priceRanges;
 }
@@ -72,4 +72,22 @@ public class ServiceReportDTOs {
         private String category;      // Opcional: filtrar por categoría
         private String serviceId;     // Opcional: filtrar por servicio específico
     }
-}
\ No newline at end of file
+
+    /**
+     * DTO con las estadísticas de la caché de reportes
+     */
+    @Data
+    @Builder
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class ReportCacheStats {
+        private boolean enabled;
+        private int entries;          // Reportes completos en caché
+        private int cachedMonths;     // Meses cerrados con acumulado en caché
+        private long hits;
+        private long misses;
+        private long monthHits;
+        private long monthMisses;
+        private long invalidations;
+    }
+}
@@ -10,4 +10,6 @@ public class ServiceSearchRequest {
     private String searchTerm;
     private String category;
     private Boolean onlyActive;
+    private Double minPrice;
+    private Double maxPrice;
 }
\ No newline at end of file
@@ -0,0 +1,31 @@
+package com.example.demo.dto;
+
+import com.example.demo.model.TimelineEntry;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+public class TimelineDTOs {
+
+    @Data
+    @Builder
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class TimelinePage {
+        private List<TimelineEntry> entries;
+        private String nextCursor; // null cuando no hay más entradas
+        private boolean hasMore;
+    }
+
+    @Data
+    @Builder
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class BackfillResult {
+        private int pets;
+        private int entries;
+    }
+}
@@ -42,6 +42,17 @@ public class CustomExceptions {
             super(message);
         }
     }
+    public static class ConflictException extends RuntimeException {
+        public ConflictException(String message) {
+            super(message);
+        }
+    }
+    // Parámetros de la petición no válidos (400)
+    public static class BadRequestException extends RuntimeException {
+        public BadRequestException(String message) {
+            super(message);
+        }
+    }
     public static class InvalidPasswordException extends InvalidCredentialsException{
         public InvalidPasswordException(String message){
             super(message);
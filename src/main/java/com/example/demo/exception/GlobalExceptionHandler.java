@@ -42,4 +42,18 @@ public class GlobalExceptionHandler {
                 .status(HttpStatus.CONFLICT)
                 .body(ApiResponse.error("EMAIL_EXISTS", ex.getMessage()));
     }
+
+    @ExceptionHandler(CustomExceptions.ConflictException.class)
+    public ResponseEntity<ApiResponse<Void>> handleConflictException(CustomExceptions.ConflictException ex) {
+        return ResponseEntity
+                .status(HttpStatus.CONFLICT)
+                .body(ApiResponse.error("CONFLICT", ex.getMessage()));
+    }
+
+    @ExceptionHandler(CustomExceptions.BadRequestException.class)
+    public ResponseEntity<ApiResponse<Void>> handleBadRequestException(CustomExceptions.BadRequestException ex) {
+        return ResponseEntity
+                .status(HttpStatus.BAD_REQUEST)
+                .body(ApiResponse.error("BAD_REQUEST", ex.getMessage()));
+    }
 }
\ No newline at end of file
@@ -0,0 +1,39 @@
+package com.example.demo.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Entrada de la línea de tiempo clínica de una mascota ({@code pets/{petId}/timeline}).
+ * Unifica registros médicos e historiales clínicos con los nombres ya resueltos.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class TimelineEntry {
+    private String id;
+    private String petId;
+    private String petName;
+    private String source; // MEDICAL_RECORD, HISTORIAL_CLINICO
+    private String sourceId;
+    private Date visitDate;
+    private String veterinarianId;
+    private String veterinarianName;
+    private String motivoConsulta;
+    private String diagnosis;
+    private String treatment;
+    private String notes;
+    private Double precioTotal;
+
+    @Builder.Default
+    private List<String> serviceNames = new ArrayList<>();
+    private Date createdAt;
+    private Date updatedAt;
+}
@@ -2,6 +2,7 @@ package com.example.demo.repository;
 
 import com.example.demo.model.Pet;
 import com.example.demo.exception.CustomExceptions;
+import com.example.demo.util.DocumentMappers;
 import com.google.api.core.ApiFuture;
 import com.google.cloud.firestore.Firestore;
 import com.google.cloud.firestore.QueryDocumentSnapshot;
@@ -30,7 +31,7 @@ public class PetRepository {
             List<QueryDocumentSnapshot> documents = future.get().getDocuments();
 
             return documents.stream()
-                    .map(doc -> doc.toObject(Pet.class)) // Convertir documentos Firestore a objetos Pet
+                    .map(DocumentMappers::toPet) // Convertir documentos Firestore a objetos Pet
                     .collect(Collectors.toList());
 
         } catch (InterruptedException | ExecutionException e) {
@@ -53,6 +53,7 @@ public class FirebaseAuthenticationFilter extends OncePerRequestFilter {
         String path = request.getRequestURI();
         return path.contains("/api/auth/login") ||
                 path.contains("/api/auth/register") ||
+                path.startsWith("/identity-stub/") ||
                 path.contains("/v3/api-docs") ||
                 path.contains("/swagger-ui/") ||
                 path.contains("/swagger-resources") ||
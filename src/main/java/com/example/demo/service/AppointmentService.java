@@ -4,10 +4,14 @@ import com.example.demo.dto.*;
 import com.example.demo.dto.AppointmentDTOs.*;
 import com.example.demo.exception.CustomExceptions;
 import com.example.demo.model.Appointment;
+import com.example.demo.model.MedicalRecord;
+import com.example.demo.util.DocumentMappers;
+import com.google.api.core.ApiFuture;
 import com.google.cloud.firestore.*;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Service;
 import java.util.*;
@@ -31,6 +35,21 @@ public class AppointmentService {
     @Autowired
     private NotificationService notificationService;
 
+    @Autowired
+    private VetScheduleService vetScheduleService;
+
+    @Autowired
+    private ArchivalService archivalService;
+
+    @Value("${appointments.batch.max-operations:500}")
+    private int maxBatchOperations;
+
+    @Value("${appointments.batch.chunk-size:100}")
+    private int batchChunkSize;
+
+    // Firestore admite como máximo 30 valores en un filtro whereIn
+    private static final int MAX_WHERE_IN_VALUES = 30;
+
     private static final long MINIMUM_CANCELLATION_HOURS = 24;
     private static final long MINIMUM_RESCHEDULE_HOURS = 24;
     private static final Logger logger = LoggerFactory.getLogger(AppointmentService.class);
@@ -39,10 +58,8 @@ public class AppointmentService {
      * Obtiene las citas del día para un veterinario específico
      */
     public PaginatedResponse<AppointmentResponse> getVeterinarianDailyAppointments(
-            String veterinarianId, Date date, PaginationRequest request) {
+            String veterinarianId, Date date, PaginationRequest request, AppointmentProjection projection) {
         try {
-            CollectionReference appointmentsRef = firestore.collection("appointments");
-
             // Convertir la fecha a LocalDate para comparar solo la fecha sin hora
             LocalDate appointmentDate = date.toInstant()
                     .atZone(ZoneId.systemDefault())
@@ -52,6 +69,15 @@ public class AppointmentService {
             Date startOfDay = Date.from(appointmentDate.atStartOfDay(ZoneId.systemDefault()).toInstant());
             Date endOfDay = Date.from(appointmentDate.plusDays(1).atStartOfDay(ZoneId.systemDefault()).toInstant());
 
+            if (archivalService.appointmentRangeNeedsArchive(startOfDay)) {
+                return getDailyAppointmentsWithArchive(veterinarianId, startOfDay, endOfDay, request, projection);
+            }
+            if (canServeFromSchedule(request)) {
+                return getDailyAppointmentsFromSchedule(veterinarianId, date, request, projection);
+            }
+
+            CollectionReference appointmentsRef = firestore.collection("appointments");
+
             // Construir query base con filtros de fecha y veterinario
             Query query = appointmentsRef
                     .whereEqualTo("veterinarianId", veterinarianId)
@@ -79,9 +105,9 @@ public class AppointmentService {
             // Convertir y enriquecer resultados
             List<AppointmentResponse> appointments = new ArrayList<>();
             for (DocumentSnapshot doc : querySnapshot.getDocuments()) {
-                Appointment appointment = doc.toObject(Appointment.class);
+                Appointment appointment = DocumentMappers.toAppointment(doc);
                 if (appointment != null) {
-                    appointments.add(enrichAppointmentResponse(appointment));
+                    appointments.add(enrichAppointmentResponse(appointment, projection));
                 }
             }
 
@@ -100,10 +126,8 @@ public class AppointmentService {
         }
     }
     public PaginatedResponse<AppointmentResponse> getDailyAppointments(
-            String veterinarianId, Date date, PaginationRequest request) {
+            String veterinarianId, Date date, PaginationRequest request, AppointmentProjection projection) {
         try {
-            CollectionReference appointmentsRef = firestore.collection("appointments");
-
             // Obtener inicio y fin del día
             LocalDate appointmentDate = date.toInstant()
                     .atZone(ZoneId.systemDefault())
@@ -111,6 +135,15 @@ public class AppointmentService {
             Date startOfDay = Date.from(appointmentDate.atStartOfDay(ZoneId.systemDefault()).toInstant());
             Date endOfDay = Date.from(appointmentDate.plusDays(1).atStartOfDay(ZoneId.systemDefault()).toInstant());
 
+            if (archivalService.appointmentRangeNeedsArchive(startOfDay)) {
+                return getDailyAppointmentsWithArchive(veterinarianId, startOfDay, endOfDay, request, projection);
+            }
+            if (canServeFromSchedule(request)) {
+                return getDailyAppointmentsFromSchedule(veterinarianId, date, request, projection);
+            }
+
+            CollectionReference appointmentsRef = firestore.collection("appointments");
+
             // Query base con filtros de fecha y veterinario
             Query query = appointmentsRef
                     .whereEqualTo("veterinarianId", veterinarianId)
@@ -136,9 +169,9 @@ public class AppointmentService {
 
             List<AppointmentResponse> appointments = querySnapshot.getDocuments().stream()
                     .map(doc -> {
-                        Appointment appointment = doc.toObject(Appointment.class);
+                        Appointment appointment = DocumentMappers.toAppointment(doc);
                         try {
-                            return enrichAppointmentResponse(appointment);
+                            return enrichAppointmentResponse(appointment, projection);
                         } catch (ExecutionException | InterruptedException e) {
                             throw new RuntimeException(e);
                         }
@@ -159,36 +192,151 @@ public class AppointmentService {
         }
     }
 
+    /**
+     * La agenda diaria solo guarda algunos campos de cada cita; otros filtros u órdenes usan la consulta
+     */
+    private boolean canServeFromSchedule(PaginationRequest request) {
+        boolean filterSupported = request.getFilterBy() == null || request.getFilterValue() == null
+                || VetScheduleService.ENTRY_FIELDS.contains(request.getFilterBy());
+        return filterSupported && request.getSortBy() != null
+                && VetScheduleService.ENTRY_FIELDS.contains(request.getSortBy());
+    }
+
+    /**
+     * Citas del día leídas del documento de agenda del veterinario: filtro, orden y página en memoria
+     */
+    private PaginatedResponse<AppointmentResponse> getDailyAppointmentsFromSchedule(
+            String veterinarianId, Date date, PaginationRequest request, AppointmentProjection projection)
+            throws ExecutionException, InterruptedException {
+        List<Appointment> day = new ArrayList<>(vetScheduleService.getDay(veterinarianId, date));
+        return pageInMemory(day, request, projection);
+    }
+
+    /**
+     * Citas de un día que puede estar en el archivo: une la colección viva con las citas archivadas
+     * (durante el movimiento una cita puede estar en ambos lados y se toma la viva) y filtra,
+     * ordena y pagina en memoria. La agenda diaria no se usa porque el archivo no la actualiza.
+     */
+    private PaginatedResponse<AppointmentResponse> getDailyAppointmentsWithArchive(
+            String veterinarianId, Date startOfDay, Date endOfDay, PaginationRequest request,
+            AppointmentProjection projection) throws ExecutionException, InterruptedException {
+        Map<String, Appointment> merged = new LinkedHashMap<>();
+        for (DocumentSnapshot doc : firestore.collection("appointments")
+                .whereEqualTo("veterinarianId", veterinarianId)
+                .whereGreaterThanOrEqualTo("appointmentDate", startOfDay)
+                .whereLessThan("appointmentDate", endOfDay)
+                .get().get().getDocuments()) {
+            Appointment appointment = DocumentMappers.toAppointment(doc);
+            if (appointment != null) {
+                merged.put(doc.getId(), appointment);
+            }
+        }
+        Date lastInstant = new Date(endOfDay.getTime() - 1);
+        for (Appointment appointment : archivalService.findArchivedAppointments(startOfDay, lastInstant,
+                query -> query.whereEqualTo("veterinarianId", veterinarianId))) {
+            merged.putIfAbsent(appointment.getId(), appointment);
+        }
+        return pageInMemory(new ArrayList<>(merged.values()), request, projection);
+    }
+
+    /**
+     * Filtro, orden y página de las citas de un día ya cargadas
+     */
+    private PaginatedResponse<AppointmentResponse> pageInMemory(
+            List<Appointment> day, PaginationRequest request, AppointmentProjection projection)
+            throws ExecutionException, InterruptedException {
+        if (request.getFilterBy() != null && request.getFilterValue() != null) {
+            day.removeIf(appointment -> !request.getFilterValue().equals(scheduleField(appointment, request.getFilterBy())));
+        }
+
+        Comparator<Appointment> order = (first, second) -> compareScheduleField(first, second, request.getSortBy());
+        day.sort(request.getSortDirection().equalsIgnoreCase("DESC") ? order.reversed() : order);
+
+        int from = Math.min(request.getPage() * request.getSize(), day.size());
+        int to = Math.min(from + request.getSize(), day.size());
+        List<AppointmentResponse> appointments = new ArrayList<>();
+        for (Appointment appointment : day.subList(from, to)) {
+            appointments.add(enrichAppointmentResponse(appointment, projection));
+        }
+        return PaginatedResponse.of(appointments, request, day.size());
+    }
+
+    @SuppressWarnings({"rawtypes", "unchecked"})
+    private static int compareScheduleField(Appointment first, Appointment second, String field) {
+        Comparable a = scheduleField(first, field);
+        Comparable b = scheduleField(second, field);
+        if (a == null || b == null) {
+            return a == null ? (b == null ? 0 : -1) : 1;
+        }
+        return a.compareTo(b);
+    }
+
+    @SuppressWarnings("rawtypes")
+    private static Comparable scheduleField(Appointment appointment, String field) {
+        return switch (field) {
+            case "id" -> appointment.getId();
+            case "petId" -> appointment.getPetId();
+            case "clientId" -> appointment.getClientId();
+            case "veterinarianId" -> appointment.getVeterinarianId();
+            case "appointmentDate" -> appointment.getAppointmentDate();
+            case "reason" -> appointment.getReason();
+            case "status" -> appointment.getStatus();
+            case "notes" -> appointment.getNotes();
+            case "createdAt" -> appointment.getCreatedAt();
+            case "updatedAt" -> appointment.getUpdatedAt();
+            default -> null;
+        };
+    }
+
     /**
      * Enriquece la respuesta de la cita con información detallada
      */
     private AppointmentResponse enrichAppointmentResponse(Appointment appointment) throws ExecutionException, InterruptedException {
+        return enrichAppointmentResponse(appointment, AppointmentProjection.FULL);
+    }
+
+    /**
+     * Enriquece la respuesta de la cita cargando solo las entidades que pide la proyección
+     */
+    private AppointmentResponse enrichAppointmentResponse(Appointment appointment, AppointmentProjection projection)
+            throws ExecutionException, InterruptedException {
         AppointmentResponse response = new AppointmentResponse();
         response.setId(appointment.getId());
+        response.setPetId(appointment.getPetId());
+        response.setClientId(appointment.getClientId());
+        response.setVeterinarianId(appointment.getVeterinarianId());
         response.setAppointmentDate(appointment.getAppointmentDate());
         response.setReason(appointment.getReason());
         response.setStatus(appointment.getStatus());
         response.setNotes(appointment.getNotes());
 
         // Obtener información del cliente
-        response.setClient(userService.getUserById(appointment.getClientId()));
+        if (projection.isClient()) {
+            response.setClient(userService.getUserById(appointment.getClientId()));
+        }
 
         // Obtener información del veterinario
-        response.setVeterinarian(userService.getUserById(appointment.getVeterinarianId()));
+        if (projection.isVeterinarian()) {
+            response.setVeterinarian(userService.getUserById(appointment.getVeterinarianId()));
+        }
 
         // Obtener información de la mascota
-        response.setPet(petService.getPetById(appointment.getPetId()));
+        if (projection.isPet()) {
+            response.setPet(petService.getPetById(appointment.getPetId()));
+        }
 
         // Obtener historial médico de la mascota - Agregamos el objeto de paginación
-        PaginationRequest defaultPagination = new PaginationRequest();
-        defaultPagination.setPage(0);
-        defaultPagination.setSize(5); // Limitamos a los últimos 5 registros
-        defaultPagination.setSortBy("date");
-        defaultPagination.setSortDirection("DESC");
-
-        PaginatedResponse<PetDTOs.MedicalRecordResponse> historyResponse =
-                petService.getPetMedicalHistory(appointment.getPetId(), defaultPagination);
-        response.setPetHistory(historyResponse.getContent());
+        if (projection.isPetHistory()) {
+            PaginationRequest defaultPagination = new PaginationRequest();
+            defaultPagination.setPage(0);
+            defaultPagination.setSize(5); // Limitamos a los últimos 5 registros
+            defaultPagination.setSortBy("date");
+            defaultPagination.setSortDirection("DESC");
+
+            PaginatedResponse<PetDTOs.MedicalRecordResponse> historyResponse =
+                    petService.getPetMedicalHistory(appointment.getPetId(), defaultPagination);
+            response.setPetHistory(historyResponse.getContent());
+        }
 
         return response;
     }
@@ -196,21 +344,34 @@ public class AppointmentService {
      * Obtiene todas las citas de las mascotas del cliente actual
      */
     public PaginatedResponse<AppointmentSummaryByPet> getClientPetsAppointments(
-            PaginationRequest paginationRequest) {
+            PaginationRequest paginationRequest, AppointmentProjection projection) {
         try {
             String clientId = SecurityContextHolder.getContext().getAuthentication().getName();
 
             // Obtener las mascotas del cliente
             List<PetDTOs.PetResponse> clientPets = petService.getPetsByUserId(clientId);
-
-            List<AppointmentSummaryByPet> summaries = new ArrayList<>();
-
-            for (PetDTOs.PetResponse pet : clientPets) {
-                // Consultar citas para cada mascota
-                CollectionReference appointmentsRef = firestore.collection("appointments");
-                Query query = appointmentsRef
-                        .whereEqualTo("petId", pet.getId())
-                        .whereGreaterThanOrEqualTo("appointmentDate", new Date());
+            if (clientPets.isEmpty()) {
+                return PaginatedResponse.of(new ArrayList<>(), paginationRequest, 0);
+            }
+            Map<String, PetDTOs.PetResponse> petsById = new LinkedHashMap<>();
+            clientPets.forEach(pet -> petsById.put(pet.getId(), pet));
+
+            boolean descending = "DESC".equalsIgnoreCase(paginationRequest.getSortDirection());
+            Query.Direction direction = descending ? Query.Direction.DESCENDING : Query.Direction.ASCENDING;
+            int offset = paginationRequest.getPage() * paginationRequest.getSize();
+            int window = offset + paginationRequest.getSize();
+
+            // Una consulta por cada grupo de hasta 30 mascotas, todas lanzadas a la vez. Cada grupo
+            // devuelve como máximo las citas necesarias para llegar al final de la página pedida.
+            Date now = new Date();
+            List<String> petIds = new ArrayList<>(petsById.keySet());
+            List<ApiFuture<QuerySnapshot>> pageFutures = new ArrayList<>();
+            List<ApiFuture<AggregateQuerySnapshot>> countFutures = new ArrayList<>();
+            for (int from = 0; from < petIds.size(); from += MAX_WHERE_IN_VALUES) {
+                List<String> chunk = petIds.subList(from, Math.min(from + MAX_WHERE_IN_VALUES, petIds.size()));
+                Query query = firestore.collection("appointments")
+                        .whereIn("petId", new ArrayList<>(chunk))
+                        .whereGreaterThanOrEqualTo("appointmentDate", now);
 
                 // Aplicar filtros si existen
                 if (paginationRequest.getFilterBy() != null &&
@@ -221,50 +382,33 @@ public class AppointmentService {
                     );
                 }
 
-                // Aplicar ordenamiento
-                String sortBy = paginationRequest.getSortBy().equals("id") ?
-                        "appointmentDate" : paginationRequest.getSortBy();
-                Query.Direction direction = paginationRequest.getSortDirection()
-                        .equalsIgnoreCase("DESC") ?
-                        Query.Direction.DESCENDING :
-                        Query.Direction.ASCENDING;
-
-                query = query.orderBy(sortBy, direction);
-
-                // Aplicar paginación
-                query = query
-                        .offset(paginationRequest.getPage() * paginationRequest.getSize())
-                        .limit(paginationRequest.getSize());
-
-                // Ejecutar query
-                QuerySnapshot querySnapshot = query.get().get();
-
-                // Convertir resultados
-                List<AppointmentResponse> appointments = querySnapshot.getDocuments()
-                        .stream()
-                        .map(doc -> {
-                            try {
-                                Appointment appointment = doc.toObject(Appointment.class);
-                                return enrichAppointmentResponse(appointment);
-                            } catch (Exception e) {
-                                logger.error("Error enriching appointment", e);
-                                return null;
-                            }
-                        })
-                        .filter(Objects::nonNull)
-                        .collect(Collectors.toList());
-
-                if (!appointments.isEmpty()) {
-                    summaries.add(new AppointmentSummaryByPet(
-                            pet,
-                            appointments,
-                            appointments.size()
-                    ));
-                }
+                countFutures.add(query.count().get());
+                pageFutures.add(query.orderBy("appointmentDate", direction).limit(window).get());
             }
 
-            // Calcular el total de elementos para la paginación
-            long totalElements = summaries.size();
+            // Mezcla k-way de los resultados ya ordenados de cada grupo
+            List<List<QueryDocumentSnapshot>> sources = new ArrayList<>();
+            for (ApiFuture<QuerySnapshot> future : pageFutures) {
+                sources.add(future.get().getDocuments());
+            }
+            List<Appointment> page = mergeByAppointmentDate(sources, descending, offset, window);
+
+            long totalElements = 0;
+            for (ApiFuture<AggregateQuerySnapshot> future : countFutures) {
+                totalElements += future.get().getCount();
+            }
+
+            // Enriquecer la página completa con lecturas agrupadas y agrupar por mascota
+            Map<String, List<AppointmentResponse>> byPet = new LinkedHashMap<>();
+            for (AppointmentResponse response : enrichAppointments(page, projection, petsById)) {
+                byPet.computeIfAbsent(response.getPetId(), key -> new ArrayList<>()).add(response);
+            }
+            List<AppointmentSummaryByPet> summaries = new ArrayList<>();
+            byPet.forEach((petId, appointments) -> summaries.add(new AppointmentSummaryByPet(
+                    petsById.get(petId),
+                    appointments,
+                    appointments.size()
+            )));
 
             return PaginatedResponse.of(
                     summaries,
@@ -279,6 +423,101 @@ public class AppointmentService {
         }
     }
 
+    /**
+     * Mezcla listas ya ordenadas por fecha de cita y devuelve solo las posiciones [offset, window)
+     */
+    private List<Appointment> mergeByAppointmentDate(List<List<QueryDocumentSnapshot>> sources,
+                                                     boolean descending, int offset, int window) {
+        Comparator<int[]> byDate = Comparator.comparing(cursor ->
+                sources.get(cursor[0]).get(cursor[1]).getDate("appointmentDate"),
+                Comparator.nullsFirst(Comparator.<Date>naturalOrder()));
+        PriorityQueue<int[]> heads = new PriorityQueue<>(descending ? byDate.reversed() : byDate);
+        for (int i = 0; i < sources.size(); i++) {
+            if (!sources.get(i).isEmpty()) {
+                heads.add(new int[]{i, 0});
+            }
+        }
+
+        List<Appointment> page = new ArrayList<>();
+        int position = 0;
+        while (!heads.isEmpty() && position < window) {
+            int[] head = heads.poll();
+            if (position >= offset) {
+                QueryDocumentSnapshot doc = sources.get(head[0]).get(head[1]);
+                Appointment appointment = DocumentMappers.toAppointment(doc);
+                appointment.setId(doc.getId());
+                page.add(appointment);
+            }
+            position++;
+            if (head[1] + 1 < sources.get(head[0]).size()) {
+                heads.add(new int[]{head[0], head[1] + 1});
+            }
+        }
+        return page;
+    }
+
+    /**
+     * Enriquece varias citas a la vez: usuarios con una sola lectura, mascotas ya conocidas
+     * y el historial de cada mascota una única vez, consultado en paralelo
+     */
+    private List<AppointmentResponse> enrichAppointments(List<Appointment> appointments,
+                                                         AppointmentProjection projection,
+                                                         Map<String, PetDTOs.PetResponse> knownPets)
+            throws ExecutionException, InterruptedException {
+        Set<String> userIds = new HashSet<>();
+        Set<String> petIds = new LinkedHashSet<>();
+        for (Appointment appointment : appointments) {
+            if (projection.isClient()) {
+                userIds.add(appointment.getClientId());
+            }
+            if (projection.isVeterinarian()) {
+                userIds.add(appointment.getVeterinarianId());
+            }
+            petIds.add(appointment.getPetId());
+        }
+        Map<String, UserDTOs.UserResponse> users = userIds.isEmpty()
+                ? Collections.emptyMap()
+                : userService.getUsersByIds(userIds);
+
+        Map<String, ApiFuture<QuerySnapshot>> historyFutures = new HashMap<>();
+        if (projection.isPetHistory()) {
+            for (String petId : petIds) {
+                historyFutures.put(petId, firestore.collection("pets")
+                        .document(petId)
+                        .collection("medicalRecords")
+                        .orderBy("date", Query.Direction.DESCENDING)
+                        .limit(5)
+                        .get());
+            }
+        }
+        Map<String, List<PetDTOs.MedicalRecordResponse>> histories = new HashMap<>();
+        for (Map.Entry<String, ApiFuture<QuerySnapshot>> entry : historyFutures.entrySet()) {
+            histories.put(entry.getKey(), entry.getValue().get().getDocuments().stream()
+                    .map(doc -> petService.convertToMedicalRecordResponse(doc.toObject(MedicalRecord.class)))
+                    .collect(Collectors.toList()));
+        }
+
+        List<AppointmentResponse> responses = new ArrayList<>();
+        for (Appointment appointment : appointments) {
+            AppointmentResponse response = enrichAppointmentResponse(appointment, AppointmentProjection.SUMMARY);
+            if (projection.isClient()) {
+                response.setClient(users.get(appointment.getClientId()));
+            }
+            if (projection.isVeterinarian()) {
+                response.setVeterinarian(users.get(appointment.getVeterinarianId()));
+            }
+            if (projection.isPet()) {
+                PetDTOs.PetResponse pet = knownPets.get(appointment.getPetId());
+                response.setPet(pet != null ? pet : petService.getPetById(appointment.getPetId()));
+            }
+            if (projection.isPetHistory()) {
+                response.setPetHistory(histories.get(appointment.getPetId()));
+            }
+            responses.add(response);
+        }
+        return responses;
+    }
+
     /**
      * Reprograma una cita existente
      */
@@ -294,7 +533,7 @@ public class AppointmentService {
                 throw new CustomExceptions.NotFoundException("Appointment not found");
             }
 
-            Appointment appointment = appointmentDoc.toObject(Appointment.class);
+            Appointment appointment = DocumentMappers.toAppointment(appointmentDoc);
 
             // Verificar tiempo mínimo para reprogramar
             if (!canReschedule(appointment.getAppointmentDate())) {
@@ -306,17 +545,22 @@ public class AppointmentService {
             // Guardar la fecha anterior para la notificación
             Date oldDate = appointment.getAppointmentDate();
 
-            // Actualizar la cita
+            // Actualizar la cita y su agenda; el nuevo horario no debe chocar con otra cita del veterinario
+            appointment.setId(appointmentId);
             appointment.setAppointmentDate(request.getNewDate());
             appointment.setNotes(appointment.getNotes() + "\nReprogramada: " + request.getReason());
             appointment.setUpdatedAt(new Date());
 
-            appointmentRef.set(appointment).get();
+            if (!vetScheduleService.save(appointmentRef, appointment, oldDate, true)) {
+                throw new CustomExceptions.ConflictException("El veterinario ya tiene una cita en ese horario");
+            }
 
             // Enviar notificaciones
             sendRescheduleNotifications(appointment, oldDate, request.getNewDate());
 
             return enrichAppointmentResponse(appointment);
+        } catch (CustomExceptions.ConflictException e) {
+            throw e;
         } catch (Exception e) {
             throw new CustomExceptions.ProcessingException("Error rescheduling appointment: " + e.getMessage());
         }
@@ -334,7 +578,7 @@ public class AppointmentService {
                 throw new CustomExceptions.NotFoundException("Appointment not found");
             }
 
-            Appointment appointment = appointmentDoc.toObject(Appointment.class);
+            Appointment appointment = DocumentMappers.toAppointment(appointmentDoc);
 
             // Verificar tiempo mínimo para cancelar
             if (!canCancel(appointment.getAppointmentDate())) {
@@ -343,21 +587,243 @@ public class AppointmentService {
                 );
             }
 
-            // Actualizar el estado de la cita
+            // Actualizar el estado de la cita y su agenda
+            appointment.setId(appointmentId);
             appointment.setStatus("CANCELLED");
             appointment.setUpdatedAt(new Date());
 
-            appointmentRef.set(appointment).get();
+            vetScheduleService.update(appointmentRef, appointment,
+                    Map.of("status", appointment.getStatus(), "updatedAt", appointment.getUpdatedAt()),
+                    appointmentDoc.getUpdateTime());
 
             // Enviar notificaciones
             sendCancellationNotifications(appointment);
 
             return enrichAppointmentResponse(appointment);
+        } catch (CustomExceptions.ConflictException e) {
+            throw e;
         } catch (Exception e) {
             throw new CustomExceptions.ProcessingException("Error canceling appointment: " + e.getMessage());
         }
     }
 
+    /**
+     * Aplica en bloque reprogramaciones y cancelaciones, por ejemplo cuando un veterinario no puede atender su agenda.
+     * Las operaciones se aplican en el orden de la solicitud, en transacciones por lotes que comprueban la agenda
+     * del veterinario, y se envía un único correo por cliente. Al ser una operación del personal no aplica la antelación mínima.
+     */
+    public BatchAppointmentResponse processBatch(BatchAppointmentRequest request) {
+        List<BatchOperation> operations = request.getOperations();
+        if (operations == null || operations.isEmpty()) {
+            throw new CustomExceptions.ProcessingException("La solicitud no contiene operaciones");
+        }
+        if (operations.size() > maxBatchOperations) {
+            throw new CustomExceptions.ProcessingException(
+                    "La solicitud supera el máximo de " + maxBatchOperations + " operaciones");
+        }
+
+        try {
+            Map<String, BatchOperationResult> results = new LinkedHashMap<>();
+            Map<String, BatchOperation> pending = new LinkedHashMap<>();
+            for (BatchOperation operation : operations) {
+                if (pending.containsKey(operation.getAppointmentId())) {
+                    continue; // Solo se aplica la primera operación sobre cada cita
+                }
+                pending.put(operation.getAppointmentId(), operation);
+            }
+
+            // Leer todas las citas en una sola llamada
+            DocumentReference[] refs = pending.keySet().stream()
+                    .map(id -> firestore.collection("appointments").document(id))
+                    .toArray(DocumentReference[]::new);
+            Map<String, DocumentSnapshot> snapshots = new HashMap<>();
+            for (DocumentSnapshot doc : firestore.getAll(refs).get()) {
+                snapshots.put(doc.getId(), doc);
+            }
+
+            // En el orden de la solicitud: ante dos operaciones que quieren el mismo horario gana la primera
+            Map<String, Appointment> appointments = new LinkedHashMap<>();
+            for (BatchOperation operation : pending.values()) {
+                String error = validateBatchOperation(operation, snapshots.get(operation.getAppointmentId()));
+                if (error != null) {
+                    results.put(operation.getAppointmentId(), failedResult(operation, error));
+                } else {
+                    Appointment appointment = DocumentMappers.toAppointment(snapshots.get(operation.getAppointmentId()));
+                    appointment.setId(operation.getAppointmentId());
+                    appointments.put(appointment.getId(), appointment);
+                }
+            }
+
+            // Escribir por lotes; cada lote es una transacción que verifica que las citas no cambiaron desde la
+            // lectura y comprueba los choques de horario contra la agenda leída en la misma transacción
+            List<String> accepted = pending.keySet().stream()
+                    .filter(id -> !results.containsKey(id))
+                    .collect(Collectors.toList());
+            List<AppointmentChange> changes = new ArrayList<>();
+            for (int from = 0; from < accepted.size(); from += batchChunkSize) {
+                List<String> chunk = accepted.subList(from, Math.min(from + batchChunkSize, accepted.size()));
+                Map<String, String> outcome = commitBatchChunk(chunk, pending, snapshots);
+                for (String id : chunk) {
+                    BatchOperation operation = pending.get(id);
+                    if (!outcome.containsKey(id)) {
+                        results.put(id, failedResult(operation, "La cita fue modificada por otra operación"));
+                        continue;
+                    }
+                    if (outcome.get(id) != null) {
+                        results.put(id, failedResult(operation, outcome.get(id)));
+                        continue;
+                    }
+                    Appointment appointment = appointments.get(id);
+                    Date previousDate = appointment.getAppointmentDate();
+                    applyBatchOperation(appointment, operation);
+                    changes.add(new AppointmentChange(id, appointment.getPetId(), appointment.getClientId(),
+                            appointment.getVeterinarianId(), operation.getType(), previousDate,
+                            appointment.getAppointmentDate()));
+                    results.put(id, BatchOperationResult.builder()
+                            .appointmentId(id)
+                            .type(operation.getType())
+                            .success(true)
+                            .appointment(enrichAppointmentResponse(appointment, AppointmentProjection.SUMMARY))
+                            .build());
+                }
+            }
+
+            // Un correo por cliente y por veterinario, enviado fuera del hilo de la petición
+            if (!changes.isEmpty()) {
+                notificationService.sendAppointmentChangesDigest(changes);
+            }
+
+            // Mantener el orden de la solicitud, incluyendo operaciones duplicadas
+            List<BatchOperationResult> ordered = new ArrayList<>();
+            Set<String> reported = new HashSet<>();
+            for (BatchOperation operation : operations) {
+                if (reported.add(operation.getAppointmentId())) {
+                    ordered.add(results.get(operation.getAppointmentId()));
+                } else {
+                    ordered.add(failedResult(operation, "Operación duplicada para la misma cita"));
+                }
+            }
+            int succeeded = (int) ordered.stream().filter(BatchOperationResult::isSuccess).count();
+
+            return BatchAppointmentResponse.builder()
+                    .results(ordered)
+                    .succeeded(succeeded)
+                    .failed(ordered.size() - succeeded)
+                    .build();
+        } catch (InterruptedException | ExecutionException e) {
+            throw new CustomExceptions.ProcessingException("Error processing appointment batch: " + e.getMessage());
+        }
+    }
+
+    private String validateBatchOperation(BatchOperation operation, DocumentSnapshot doc) {
+        if (doc == null || !doc.exists()) {
+            return "Cita no encontrada";
+        }
+        if (operation.getType() == null) {
+            return "Tipo de operación no indicado";
+        }
+        if ("CANCELLED".equals(doc.getString("status"))) {
+            return "La cita ya está cancelada";
+        }
+        if (operation.getType() == BatchOperationType.RESCHEDULE) {
+            if (operation.getNewDate() == null) {
+                return "La nueva fecha es obligatoria";
+            }
+            if (operation.getNewDate().before(new Date())) {
+                return "La nueva fecha debe ser futura";
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Aplica un lote en una transacción, en el orden de la solicitud. Devuelve, por cada cita escrita o
+     * rechazada, {@code null} o el motivo del rechazo; las citas que cambiaron desde la lectura no aparecen.
+     */
+    private Map<String, String> commitBatchChunk(List<String> chunk, Map<String, BatchOperation> pending,
+                                                 Map<String, DocumentSnapshot> snapshots)
+            throws ExecutionException, InterruptedException {
+        DocumentReference[] refs = chunk.stream()
+                .map(id -> firestore.collection("appointments").document(id))
+                .toArray(DocumentReference[]::new);
+
+        return firestore.runTransaction(transaction -> {
+            Map<String, String> outcome = new HashMap<>();
+            List<DocumentSnapshot> currents = transaction.getAll(refs).get();
+
+            // Las agendas de los días de origen y destino se leen antes de escribir
+            List<VetScheduleService.DayKey> days = new ArrayList<>();
+            for (DocumentSnapshot current : currents) {
+                String vetId = current.getString("veterinarianId");
+                Date date = current.getDate("appointmentDate");
+                if (current.exists() && vetId != null && date != null) {
+                    days.add(VetScheduleService.DayKey.of(vetId, date));
+                    BatchOperation operation = pending.get(current.getId());
+                    if (operation.getType() == BatchOperationType.RESCHEDULE) {
+                        days.add(VetScheduleService.DayKey.of(vetId, operation.getNewDate()));
+                    }
+                }
+            }
+            VetScheduleService.Editor schedule = vetScheduleService.open(transaction, days);
+
+            // La agenda acumula lo ya aplicado del lote, así que cada operación ve las anteriores
+            for (DocumentSnapshot current : currents) {
+                DocumentSnapshot read = snapshots.get(current.getId());
+                if (!current.exists() || !Objects.equals(current.getUpdateTime(), read.getUpdateTime())) {
+                    continue;
+                }
+                BatchOperation operation = pending.get(current.getId());
+                Appointment appointment = DocumentMappers.toAppointment(current);
+                appointment.setId(current.getId());
+                Date previousDate = appointment.getAppointmentDate();
+                applyBatchOperation(appointment, operation);
+                if (appointment.getVeterinarianId() != null && previousDate != null
+                        && !schedule.place(appointment, previousDate,
+                        operation.getType() == BatchOperationType.RESCHEDULE)) {
+                    outcome.put(current.getId(), "El veterinario ya tiene una cita en ese horario");
+                    continue;
+                }
+
+                Map<String, Object> updates = new HashMap<>();
+                if (operation.getType() == BatchOperationType.CANCEL) {
+                    updates.put("status", appointment.getStatus());
+                } else {
+                    updates.put("appointmentDate", appointment.getAppointmentDate());
+                    updates.put("notes", appointment.getNotes());
+                }
+                updates.put("updatedAt", appointment.getUpdatedAt());
+                transaction.update(current.getReference(), updates);
+                outcome.put(current.getId(), null);
+            }
+            schedule.commit();
+            return outcome;
+        }).get();
+    }
+
+    private void applyBatchOperation(Appointment appointment, BatchOperation operation) {
+        if (operation.getType() == BatchOperationType.CANCEL) {
+            appointment.setStatus("CANCELLED");
+        } else {
+            appointment.setNotes(rescheduleNotes(appointment.getNotes(), operation.getReason()));
+            appointment.setAppointmentDate(operation.getNewDate());
+        }
+        appointment.setUpdatedAt(new Date());
+    }
+
+    private String rescheduleNotes(String notes, String reason) {
+        String entry = "Reprogramada: " + (reason != null ? reason : "");
+        return notes != null && !notes.isEmpty() ? notes + "\n" + entry : entry;
+    }
+
+    private BatchOperationResult failedResult(BatchOperation operation, String message) {
+        return BatchOperationResult.builder()
+                .appointmentId(operation.getAppointmentId())
+                .type(operation.getType())
+                .success(false)
+                .message(message)
+                .build();
+    }
+
     /**
      * Verifica si el usuario autenticado es dueño de la cita
      */
@@ -373,7 +839,7 @@ public class AppointmentService {
                 return false;
             }
 
-            Appointment appointment = appointmentDoc.toObject(Appointment.class);
+            Appointment appointment = DocumentMappers.toAppointment(appointmentDoc);
             return appointment != null && appointment.getClientId().equals(currentUserId);
         } catch (Exception e) {
             //logger.error("Error checking appointment ownership: {}", e.getMessage());
@@ -447,7 +913,7 @@ public class AppointmentService {
 
             // Crear la cita
             Appointment appointment = Appointment.builder()
-                    .id(UUID.randomUUID().toString())
+                    .id(IdempotencyService.newId("appointment"))
                     .petId(request.getPetId())
                     .clientId(request.getClientId())
                     .veterinarianId(request.getVeterinarianId())
@@ -459,16 +925,18 @@ public class AppointmentService {
                     .updatedAt(new Date())
                     .build();
 
-            // Guardar en Firestore
-            firestore.collection("appointments")
-                    .document(appointment.getId())
-                    .set(appointment)
-                    .get();
+            // Guardar la cita y su entrada en la agenda del veterinario, rechazando choques de horario
+            DocumentReference appointmentRef = firestore.collection("appointments").document(appointment.getId());
+            if (!vetScheduleService.save(appointmentRef, appointment, null, true)) {
+                throw new CustomExceptions.ConflictException("El veterinario ya tiene una cita en ese horario");
+            }
 
             // Enviar notificaciones
             sendNewAppointmentNotifications(appointment);
 
             return enrichAppointmentResponse(appointment);
+        } catch (CustomExceptions.ConflictException e) {
+            throw e;
         } catch (Exception e) {
             throw new CustomExceptions.ProcessingException("Error creating appointment: " + e.getMessage());
         }
@@ -0,0 +1,367 @@
+package com.example.demo.service;
+
+import com.example.demo.exception.CustomExceptions;
+import com.example.demo.model.Appointment;
+import com.example.demo.model.HistorialClinico;
+import com.example.demo.util.DocumentMappers;
+import com.google.api.core.ApiFuture;
+import com.google.api.core.ApiFutures;
+import com.google.cloud.firestore.*;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.YearMonth;
+import java.time.ZoneId;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.function.UnaryOperator;
+
+/**
+ * Archivo de datos fríos. Los historiales clínicos y las citas cerradas más antiguos que la edad
+ * configurada se mueven a particiones mensuales ({@code historial_archive/{yyyy-MM}/historial_records},
+ * {@code appointments_archive/{yyyy-MM}/appointment_records}), de modo que las colecciones vivas
+ * solo contienen datos recientes.
+ *
+ * <p>El límite de cada nivel se publica en {@code configurations/archival} antes de mover nada: los
+ * lectores solo consultan el archivo cuando el rango pedido empieza antes de ese límite, y mientras
+ * dura el movimiento leen ambos lados y descartan duplicados por ID.
+ */
+@Service
+@Slf4j
+public class ArchivalService {
+
+    public static final String HISTORIAL_ARCHIVE = "historial_archive";
+    public static final String HISTORIAL_RECORDS = "historial_records";
+    public static final String APPOINTMENTS_ARCHIVE = "appointments_archive";
+    public static final String APPOINTMENT_RECORDS = "appointment_records";
+
+    static final String WATERMARKS = "configurations";
+    static final String WATERMARK_DOC = "archival";
+
+    private static final ZoneId ZONE = ZoneId.systemDefault();
+
+    @Autowired
+    private Firestore firestore;
+
+    @Value("${archival.enabled:true}")
+    private boolean enabled;
+
+    @Value("${archival.historial.max-age-days:730}")
+    private int historialMaxAgeDays;
+
+    @Value("${archival.appointments.max-age-days:365}")
+    private int appointmentsMaxAgeDays;
+
+    @Value("${archival.page-size:200}")
+    private int pageSize;
+
+    @Value("${archival.max-ops-per-second:200}")
+    private int maxOpsPerSecond;
+
+    @Value("${archival.watermark.cache-ms:60000}")
+    private long watermarkCacheMs;
+
+    private volatile Watermarks cachedWatermarks;
+
+    /**
+     * Historiales archivados con fecha de visita en el rango (extremos opcionales). Devuelve una
+     * lista vacía sin consultar nada si el rango no llega al límite de archivo.
+     */
+    public List<HistorialClinico> findArchivedHistoriales(Date start, Date end, UnaryOperator<Query> filter) {
+        List<HistorialClinico> historiales = new ArrayList<>();
+        for (DocumentSnapshot doc : findArchived(Tier.HISTORIAL, start, end, filter)) {
+            HistorialClinico historial = DocumentMappers.toHistorialClinico(doc);
+            if (historial != null) {
+                historial.setId(doc.getId());
+                historiales.add(historial);
+            }
+        }
+        return historiales;
+    }
+
+    /**
+     * Busca un historial archivado por su ID original, o {@code null} si no está en el archivo
+     */
+    public HistorialClinico findArchivedHistorial(String historialId) {
+        try {
+            List<QueryDocumentSnapshot> docs = firestore.collectionGroup(HISTORIAL_RECORDS)
+                    .whereEqualTo("archivedId", historialId)
+                    .limit(1)
+                    .get().get().getDocuments();
+            if (docs.isEmpty()) {
+                return null;
+            }
+            HistorialClinico historial = DocumentMappers.toHistorialClinico(docs.get(0));
+            if (historial != null) {
+                historial.setId(historialId);
+            }
+            return historial;
+        } catch (InterruptedException | ExecutionException e) {
+            throw new CustomExceptions.ProcessingException("Error fetching archived historial: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Citas archivadas con fecha en el rango (extremos opcionales). Devuelve una lista vacía sin
+     * consultar nada si el rango no llega al límite de archivo.
+     */
+    public List<Appointment> findArchivedAppointments(Date start, Date end, UnaryOperator<Query> filter) {
+        List<Appointment> appointments = new ArrayList<>();
+        for (DocumentSnapshot doc : findArchived(Tier.APPOINTMENTS, start, end, filter)) {
+            Appointment appointment = DocumentMappers.toAppointment(doc);
+            if (appointment != null) {
+                appointment.setId(doc.getId());
+                appointments.add(appointment);
+            }
+        }
+        return appointments;
+    }
+
+    /**
+     * Indica si un rango que empieza en {@code start} (o sin inicio) puede tener citas archivadas
+     */
+    public boolean appointmentRangeNeedsArchive(Date start) {
+        return needsArchive(Tier.APPOINTMENTS, start);
+    }
+
+    /**
+     * Indica si un rango que empieza en {@code start} (o sin inicio) puede tener historiales archivados
+     */
+    public boolean historialRangeNeedsArchive(Date start) {
+        return needsArchive(Tier.HISTORIAL, start);
+    }
+
+    /**
+     * Ejecución programada: mueve lo que ya quedó por debajo del límite publicado y, si corresponde,
+     * publica el siguiente límite para que se mueva en la próxima ejecución.
+     */
+    public void archive() {
+        if (!enabled) {
+            return;
+        }
+        BulkWriter writer = firestore.bulkWriter(BulkWriterOptions.builder()
+                .setThrottlingEnabled(true)
+                .setMaxOpsPerSecond(maxOpsPerSecond)
+                .build());
+        try {
+            Map<Tier, Integer> maxAges = Map.of(Tier.HISTORIAL, historialMaxAgeDays,
+                    Tier.APPOINTMENTS, appointmentsMaxAgeDays);
+            DocumentSnapshot stored = watermarkRef().get().get();
+            for (Tier tier : Tier.values()) {
+                Date cutoff = stored.getDate(tier.field + "Cutoff");
+                Date publishedAt = stored.getDate(tier.field + "PublishedAt");
+                // Se espera a que todas las instancias hayan visto el límite antes de mover registros
+                if (cutoff != null && publishedAt != null
+                        && publishedAt.getTime() + watermarkCacheMs < System.currentTimeMillis()) {
+                    long moved = move(tier, cutoff, writer);
+                    if (moved > 0) {
+                        log.info("Archived {} {} records older than {}", moved, tier.live, cutoff);
+                    }
+                }
+
+                Date target = new Date(System.currentTimeMillis() - maxAges.get(tier) * 86_400_000L);
+                if (cutoff == null || target.after(cutoff)) {
+                    watermarkRef().set(Map.of(tier.field + "Cutoff", target,
+                            tier.field + "PublishedAt", new Date()), SetOptions.merge()).get();
+                }
+            }
+            cachedWatermarks = null;
+        } catch (Exception e) {
+            throw new CustomExceptions.ProcessingException("Error archiving records: " + e.getMessage());
+        } finally {
+            try {
+                writer.close();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                log.warn("Interrupted while closing archival bulk writer");
+            } catch (ExecutionException e) {
+                log.warn("Error closing archival bulk writer: {}", e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Copia cada página al archivo y solo borra del origen cuando todas las copias se confirmaron;
+     * si el proceso se corta, la siguiente ejecución reescribe la copia (mismo ID) y completa el borrado.
+     * El borrado exige la versión copiada: un documento editado entretanto sigue vivo (los lectores
+     * prefieren la copia viva) y se archiva en la siguiente ejecución.
+     */
+    private long move(Tier tier, Date cutoff, BulkWriter writer) throws Exception {
+        long moved = 0;
+        long skipped = 0;
+        DocumentSnapshot last = null;
+        while (true) {
+            Query query = tier.closed(firestore.collection(tier.live))
+                    .whereLessThan(tier.dateField, cutoff)
+                    .orderBy(tier.dateField);
+            // Se avanza con cursor para no volver a leer los documentos que no se pudieron borrar
+            if (last != null) {
+                query = query.startAfter(last);
+            }
+            List<QueryDocumentSnapshot> page = query.limit(pageSize).get().get().getDocuments();
+            if (page.isEmpty()) {
+                break;
+            }
+            last = page.get(page.size() - 1);
+
+            Map<String, Long> perMonth = new HashMap<>();
+            List<ApiFuture<WriteResult>> copies = new ArrayList<>(page.size() + 12);
+            for (QueryDocumentSnapshot doc : page) {
+                String month = monthKey(doc.getDate(tier.dateField));
+                Map<String, Object> data = new HashMap<>(doc.getData());
+                data.put("archivedId", doc.getId());
+                data.put("archivedAt", new Date());
+                copies.add(writer.set(partition(tier, month).collection(tier.records).document(doc.getId()), data));
+                perMonth.merge(month, 1L, Long::sum);
+            }
+            // Los documentos de partición sirven para enumerar los meses que tienen datos; reescribirlos
+            // al reanudar una ejecución cortada no cambia nada
+            perMonth.keySet().forEach(month -> copies.add(writer.set(partition(tier, month),
+                    Map.of("month", month, "updatedAt", new Date()), SetOptions.merge())));
+            writer.flush().get();
+            ApiFutures.allAsList(copies).get();
+
+            List<ApiFuture<WriteResult>> deletes = new ArrayList<>(page.size());
+            for (QueryDocumentSnapshot doc : page) {
+                deletes.add(writer.delete(doc.getReference(), Precondition.updatedAt(doc.getUpdateTime())));
+            }
+            writer.flush().get();
+            for (ApiFuture<WriteResult> delete : deletes) {
+                try {
+                    FieldUpdateWriter.await(delete);
+                    moved++;
+                } catch (CustomExceptions.ConflictException e) {
+                    skipped++;
+                }
+            }
+
+            if (page.size() < pageSize) {
+                break;
+            }
+        }
+        if (skipped > 0) {
+            log.info("{} {} records changed while being archived; they will be archived in the next run",
+                    skipped, tier.live);
+        }
+        return moved;
+    }
+
+    private List<DocumentSnapshot> findArchived(Tier tier, Date start, Date end, UnaryOperator<Query> filter) {
+        if (!needsArchive(tier, start)) {
+            return List.of();
+        }
+        try {
+            Query months = firestore.collection(tier.archive);
+            if (start != null) {
+                months = months.whereGreaterThanOrEqualTo("month", monthKey(start));
+            }
+            if (end != null) {
+                months = months.whereLessThanOrEqualTo("month", monthKey(end));
+            }
+
+            // Una consulta por mes, todas en paralelo
+            List<ApiFuture<QuerySnapshot>> futures = new ArrayList<>();
+            for (QueryDocumentSnapshot month : months.select("month").get().get().getDocuments()) {
+                Query query = filter.apply(month.getReference().collection(tier.records));
+                if (start != null) {
+                    query = query.whereGreaterThanOrEqualTo(tier.dateField, start);
+                }
+                if (end != null) {
+                    query = query.whereLessThanOrEqualTo(tier.dateField, end);
+                }
+                futures.add(query.get());
+            }
+
+            List<DocumentSnapshot> docs = new ArrayList<>();
+            for (QuerySnapshot snapshot : ApiFutures.allAsList(futures).get()) {
+                docs.addAll(snapshot.getDocuments());
+            }
+            return docs;
+        } catch (InterruptedException | ExecutionException e) {
+            throw new CustomExceptions.ProcessingException("Error reading archived " + tier.live + ": " + e.getMessage());
+        }
+    }
+
+    private boolean needsArchive(Tier tier, Date start) {
+        Date cutoff = watermarks().cutoff(tier);
+        return cutoff != null && (start == null || start.before(cutoff));
+    }
+
+    private Watermarks watermarks() {
+        Watermarks current = cachedWatermarks;
+        if (current != null && current.loadedAt() + watermarkCacheMs > System.currentTimeMillis()) {
+            return current;
+        }
+        try {
+            DocumentSnapshot doc = watermarkRef().get().get();
+            Map<Tier, Date> cutoffs = new EnumMap<>(Tier.class);
+            for (Tier tier : Tier.values()) {
+                Date cutoff = doc.getDate(tier.field + "Cutoff");
+                if (cutoff != null) {
+                    cutoffs.put(tier, cutoff);
+                }
+            }
+            current = new Watermarks(cutoffs, System.currentTimeMillis());
+            cachedWatermarks = current;
+            return current;
+        } catch (InterruptedException | ExecutionException e) {
+            throw new CustomExceptions.ProcessingException("Error reading archival watermark: " + e.getMessage());
+        }
+    }
+
+    private DocumentReference watermarkRef() {
+        return firestore.collection(WATERMARKS).document(WATERMARK_DOC);
+    }
+
+    private DocumentReference partition(Tier tier, String month) {
+        return firestore.collection(tier.archive).document(month);
+    }
+
+    static String monthKey(Date date) {
+        return YearMonth.from(date.toInstant().atZone(ZONE)).toString();
+    }
+
+    /**
+     * Nivel archivable: colección viva, partición de archivo, campo de fecha y criterio de cierre
+     */
+    private enum Tier {
+        HISTORIAL("historial", "historial_clinico", HISTORIAL_ARCHIVE, HISTORIAL_RECORDS, "fechaVisita"),
+        APPOINTMENTS("appointments", "appointments", APPOINTMENTS_ARCHIVE, APPOINTMENT_RECORDS, "appointmentDate") {
+            @Override
+            Query closed(Query query) {
+                // Solo se archivan citas cerradas; las programadas siguen vivas aunque sean antiguas
+                return query.whereIn("status", List.of("COMPLETED", "CANCELLED"));
+            }
+        };
+
+        private final String field;
+        private final String live;
+        private final String archive;
+        private final String records;
+        private final String dateField;
+
+        Tier(String field, String live, String archive, String records, String dateField) {
+            this.field = field;
+            this.live = live;
+            this.archive = archive;
+            this.records = records;
+            this.dateField = dateField;
+        }
+
+        Query closed(Query query) {
+            return query;
+        }
+    }
+
+    /**
+     * Límites leídos de {@code configurations/archival} y el momento de la lectura
+     */
+    private record Watermarks(Map<Tier, Date> cutoffs, long loadedAt) {
+
+        Date cutoff(Tier tier) {
+            return cutoffs.get(tier);
+        }
+    }
+}
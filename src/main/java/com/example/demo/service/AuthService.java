@@ -10,11 +10,15 @@ import com.google.firebase.auth.FirebaseAuthException;
 import com.google.firebase.auth.FirebaseToken;
 import com.google.firebase.auth.UserRecord;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Service;
 import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
 
+import java.time.Duration;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -32,10 +36,13 @@ public class AuthService {
     @Value("${firebase.api.key}")
     private String firebaseApiKey;
 
+    @Value("${identity-toolkit.login-timeout-ms:10000}")
+    private long loginTimeoutMs;
+
     private final WebClient webClient;
 
-    public AuthService(WebClient.Builder webClientBuilder) {
-        this.webClient = webClientBuilder.baseUrl("https://identitytoolkit.googleapis.com/v1").build();
+    public AuthService(@Qualifier("identityToolkitWebClient") WebClient webClient) {
+        this.webClient = webClient;
     }
 
 //    public AuthResponse registerUser(RegisterRequest request) {
@@ -121,59 +128,65 @@ public class AuthService {
         }
     }
     public AuthResponse loginUser(LoginRequest request) {
-        try {
-            // Obtener el usuario por correo electrónico
-            UserRecord userRecord = FirebaseAuth.getInstance().getUserByEmail(request.getEmail());
-            UserResponse user = userService.getUserById(userRecord.getUid());
-
-            // Validar la contraseña
-            WebClient webClient = WebClient.builder().baseUrl("https://identitytoolkit.googleapis.com/v1").build();
-            Map<String, Object> loginData = Map.of(
-                    "email", request.getEmail(),
-                    "password", request.getPassword(),
-                    "returnSecureToken", true
-            );
-
-            Map<String, Object> response = webClient.post()
-                    .uri("/accounts:signInWithPassword?key=" + firebaseApiKey)
-                    .bodyValue(loginData)
-                    .retrieve()
-                    .bodyToMono(Map.class)
-                    .block();
-
-            if (response == null || response.containsKey("error")) {
-                throw new CustomExceptions.InvalidCredentialsException("Invalid email or password.");
-            }
-
-            // Si la contraseña es válida, generar el token personalizado
-            String customToken = FirebaseAuth.getInstance().createCustomToken(userRecord.getUid());
-            String idToken = exchangeCustomTokenForIdToken(customToken);
-
-            return new AuthResponse(idToken, user);
-        } catch (FirebaseAuthException e) {
-            throw new CustomExceptions.AuthenticationException("Invalid email or password.");
-        } catch (CustomExceptions.InvalidCredentialsException e) {
-            throw new CustomExceptions.InvalidCredentialsException(e.getMessage());
-        } catch (Exception e) {
-            // Captura cualquier excepción inesperada para evitar el error 500 sin contexto
-            //aqui esta el error cuando no se cumple correo y contraseña correctos
-            throw new CustomExceptions.AuthenticationException("Invalid email or password." );
-        }
+        return loginUserAsync(request).block();
     }
 
-
+    /**
+     * Login sin bloquear el hilo de la petición. La verificación de la contraseña y la lectura
+     * del perfil del usuario se hacen en paralelo; el token final se pide al terminar ambas.
+     */
+    @SuppressWarnings("rawtypes")
+    public Mono<AuthResponse> loginUserAsync(LoginRequest request) {
+        Map<String, Object> loginData = Map.of(
+                "email", request.getEmail(),
+                "password", request.getPassword(),
+                "returnSecureToken", true
+        );
+
+        Mono<Map> passwordCheck = webClient.post()
+                .uri("/accounts:signInWithPassword?key=" + firebaseApiKey)
+                .bodyValue(loginData)
+                .retrieve()
+                .bodyToMono(Map.class)
+                .filter(response -> !response.containsKey("error"))
+                .switchIfEmpty(Mono.error(() -> new CustomExceptions.InvalidCredentialsException("Invalid email or password.")));
+
+        // El SDK de Firebase Admin y Firestore son bloqueantes: se ejecutan en el scheduler elástico
+        Mono<LoginProfile> profile = Mono.fromCallable(() -> {
+                    UserRecord userRecord = firebaseAuth.getUserByEmail(request.getEmail());
+                    return new LoginProfile(userRecord.getUid(), userService.getUserById(userRecord.getUid()));
+                })
+                .subscribeOn(Schedulers.boundedElastic());
+
+        return Mono.zip(passwordCheck, profile)
+                .flatMap(result -> {
+                    LoginProfile login = result.getT2();
+                    return Mono.fromCallable(() -> firebaseAuth.createCustomToken(login.uid()))
+                            .subscribeOn(Schedulers.boundedElastic())
+                            .flatMap(this::exchangeCustomToken)
+                            .map(idToken -> new AuthResponse(idToken, login.user()));
+                })
+                .timeout(Duration.ofMillis(loginTimeoutMs))
+                // Cualquier otro fallo se informa igual, sin revelar si el email existe
+                .onErrorMap(e -> !(e instanceof CustomExceptions.InvalidCredentialsException),
+                        e -> new CustomExceptions.AuthenticationException("Invalid email or password."));
+    }
 
     private String exchangeCustomTokenForIdToken(String customToken) {
+        return exchangeCustomToken(customToken).block(Duration.ofMillis(loginTimeoutMs));
+    }
+
+    private Mono<String> exchangeCustomToken(String customToken) {
         return webClient.post()
                 .uri("/accounts:signInWithCustomToken?key=" + firebaseApiKey)
                 .bodyValue(Map.of("token", customToken, "returnSecureToken", true))
                 .retrieve()
                 .bodyToMono(Map.class)
-                .map(response -> (String) response.get("idToken"))
-                .block();
+                .map(response -> (String) response.get("idToken"));
     }
 
-
+    private record LoginProfile(String uid, UserResponse user) {
+    }
 
     public void logout() {
         // Obtener el token actual del contexto de seguridad
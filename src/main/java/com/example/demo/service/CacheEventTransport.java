@@ -0,0 +1,27 @@
+package com.example.demo.service;
+
+import java.util.Date;
+import java.util.function.Consumer;
+
+/**
+ * Transporte de los eventos de invalidación de caché entre instancias
+ */
+public interface CacheEventTransport {
+
+    /**
+     * Difunde un evento al resto de nodos
+     */
+    void publish(CacheEvent event);
+
+    /**
+     * Registra el receptor de los eventos publicados por cualquier nodo (incluido este)
+     */
+    void subscribe(Consumer<CacheEvent> listener);
+
+    /**
+     * Evento de invalidación. Un {@code documentId} nulo invalida toda la colección y un
+     * {@code collection} nulo invalida todas las cachés (por ejemplo, tras perder eventos).
+     */
+    record CacheEvent(String collection, String documentId, String origin, Date createdAt) {
+    }
+}
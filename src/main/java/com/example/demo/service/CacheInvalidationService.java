@@ -0,0 +1,88 @@
+package com.example.demo.service;
+
+import com.example.demo.service.CacheEventTransport.CacheEvent;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * Coordina la invalidación de las cachés en memoria entre instancias. Las cachés registran un
+ * manejador por colección; cada escritura invalida localmente y difunde el evento al resto de nodos
+ * a través del {@link CacheEventTransport} configurado.
+ */
+@Service
+@Slf4j
+public class CacheInvalidationService {
+
+    public static final String USERS = "users";
+    public static final String ROLES = "roles";
+    public static final String PETS = "pets";
+    public static final String SERVICES = "veterinary_services";
+    public static final String FAVORITES = "favorites";
+    // El ID invalidado es la fecha de visita (ISO-8601) del historial escrito, no su ID
+    public static final String HISTORIALES = "historial_clinico";
+
+    @Autowired
+    private CacheEventTransport transport;
+
+    private final String nodeId = UUID.randomUUID().toString();
+    private final Map<String, List<Consumer<String>>> handlers = new ConcurrentHashMap<>();
+    private volatile boolean subscribed;
+
+    /**
+     * Registra un manejador que recibe el ID invalidado, o {@code null} si se invalida toda la colección
+     */
+    public void onInvalidate(String collection, Consumer<String> handler) {
+        handlers.computeIfAbsent(collection, key -> new CopyOnWriteArrayList<>()).add(handler);
+        ensureSubscribed();
+    }
+
+    /**
+     * Invalida un documento (o toda la colección si {@code documentId} es nulo) en este nodo y en los demás
+     */
+    public void invalidate(String collection, String documentId) {
+        // Todos los nodos ejecutan el mismo código: si aquí nadie cachea la colección, allí tampoco
+        if (!handlers.containsKey(collection)) {
+            return;
+        }
+        apply(collection, documentId);
+        try {
+            transport.publish(new CacheEvent(collection, documentId, nodeId, new Date()));
+        } catch (Exception e) {
+            log.warn("Could not publish cache invalidation for {}/{}: {}", collection, documentId, e.getMessage());
+        }
+    }
+
+    private synchronized void ensureSubscribed() {
+        if (!subscribed) {
+            transport.subscribe(this::onEvent);
+            subscribed = true;
+        }
+    }
+
+    private void onEvent(CacheEvent event) {
+        if (nodeId.equals(event.origin())) {
+            return;
+        }
+        if (event.collection() == null) {
+            handlers.keySet().forEach(collection -> apply(collection, null));
+            return;
+        }
+        apply(event.collection(), event.documentId());
+    }
+
+    private void apply(String collection, String documentId) {
+        for (Consumer<String> handler : handlers.getOrDefault(collection, Collections.emptyList())) {
+            try {
+                handler.accept(documentId);
+            } catch (Exception e) {
+                log.warn("Cache invalidation handler for {} failed: {}", collection, e.getMessage());
+            }
+        }
+    }
+}
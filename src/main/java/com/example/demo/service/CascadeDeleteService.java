@@ -0,0 +1,444 @@
+package com.example.demo.service;
+
+import com.example.demo.dto.CascadeDeleteDTOs.*;
+import com.example.demo.exception.CustomExceptions;
+import com.google.api.core.ApiFuture;
+import com.google.api.core.ApiFutures;
+import com.google.cloud.firestore.*;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Function;
+
+/**
+ * Borrado en cascada de mascotas y usuarios. Cada borrado es un trabajo en {@code _cascade_deletes}
+ * con una lista fija de pasos; cada paso recorre los documentos dependientes por páginas y los borra
+ * con un {@link BulkWriter} con limitación de ritmo. El documento raíz se borra al final, de modo
+ * que si algo falla el borrado puede repetirse o reanudarse desde el último paso completado.
+ * <p>
+ * Una instancia toma el trabajo en una transacción escribiendo su token en {@code owner} y un
+ * {@code leaseExpiresAt}; mientras el lease esté vigente nadie más puede ejecutarlo. Cada avance
+ * comprueba el token y extiende el lease, y una instancia que lo pierde se detiene sin tocar el
+ * trabajo.
+ */
+@Service
+@Slf4j
+public class CascadeDeleteService {
+
+    public static final String TYPE_PET = "PET";
+    public static final String TYPE_USER = "USER";
+
+    static final String JOBS = "_cascade_deletes";
+
+    @Autowired
+    private Firestore firestore;
+
+    @Autowired
+    private ServiceReportCache serviceReportCache;
+
+    @Value("${cascade-delete.page-size:200}")
+    private int pageSize;
+
+    @Value("${cascade-delete.initial-ops-per-second:100}")
+    private int initialOpsPerSecond;
+
+    @Value("${cascade-delete.max-ops-per-second:500}")
+    private int maxOpsPerSecond;
+
+    @Value("${cascade-delete.stale-after-ms:600000}")
+    private long staleAfterMs;
+
+    @Value("${cascade-delete.lease-ms:120000}")
+    private long leaseMs;
+
+    /**
+     * Borra una mascota con sus registros médicos, línea de tiempo, historiales clínicos y citas
+     */
+    public CascadeDeleteStatus deletePet(String petId) {
+        return run(TYPE_PET, petId);
+    }
+
+    /**
+     * Borra un usuario con sus mascotas (en cascada), citas, favoritos, notas y su proyección de búsqueda
+     */
+    public CascadeDeleteStatus deleteUser(String userId) {
+        return run(TYPE_USER, userId);
+    }
+
+    public CascadeDeleteStatus getStatus(String jobId) {
+        try {
+            DocumentSnapshot job = firestore.collection(JOBS).document(jobId).get().get();
+            if (!job.exists()) {
+                throw new CustomExceptions.NotFoundException("Borrado en cascada no encontrado: " + jobId);
+            }
+            return toStatus(job);
+        } catch (InterruptedException | ExecutionException e) {
+            throw new CustomExceptions.ProcessingException("Error fetching cascade delete: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Reanuda los borrados que quedaron a medias (fallidos o sin progreso reciente)
+     */
+    public void resumeStale() {
+        try {
+            Date staleBefore = new Date(System.currentTimeMillis() - staleAfterMs);
+            List<QueryDocumentSnapshot> jobs = firestore.collection(JOBS)
+                    .whereIn("status", List.of(CascadeStatus.RUNNING.name(), CascadeStatus.FAILED.name()))
+                    .get().get().getDocuments();
+            for (QueryDocumentSnapshot job : jobs) {
+                Date updatedAt = job.getDate("updatedAt");
+                // Los hijos se reanudan desde el trabajo del usuario que los creó
+                if (job.getString("parentJobId") != null || (updatedAt != null && updatedAt.after(staleBefore))) {
+                    continue;
+                }
+                try {
+                    run(job.getString("rootType"), job.getString("rootId"));
+                } catch (Exception e) {
+                    log.warn("Could not resume cascade delete {}: {}", job.getId(), e.getMessage());
+                }
+            }
+        } catch (InterruptedException | ExecutionException e) {
+            throw new CustomExceptions.ProcessingException("Error resuming cascade deletes: " + e.getMessage());
+        }
+    }
+
+    private CascadeDeleteStatus run(String rootType, String rootId) {
+        return run(rootType, rootId, null);
+    }
+
+    private CascadeDeleteStatus run(String rootType, String rootId, Claim parent) {
+        String jobId = rootType + "_" + rootId;
+        DocumentReference jobRef = firestore.collection(JOBS).document(jobId);
+        List<Step> steps = plan(rootType, rootId);
+        Claim claim = new Claim(jobRef, UUID.randomUUID().toString(), parent);
+
+        BulkWriter writer = firestore.bulkWriter(BulkWriterOptions.builder()
+                .setThrottlingEnabled(true)
+                .setInitialOpsPerSecond(initialOpsPerSecond)
+                .setMaxOpsPerSecond(maxOpsPerSecond)
+                .build());
+        boolean claimed = false;
+        try {
+            Progress progress = claim(claim, rootType, rootId, steps.size());
+            claimed = true;
+            long deleted = progress.deleted();
+
+            for (int i = progress.completedSteps(); i < steps.size(); i++) {
+                Step step = steps.get(i);
+                deleted = runStep(step, writer, claim, deleted);
+                checkpoint(claim, "completedSteps", i + 1, "currentStep", null, "deleted", deleted);
+            }
+
+            checkpoint(claim, "status", CascadeStatus.COMPLETED.name(), "completedAt", new Date(),
+                    "leaseExpiresAt", null);
+            log.info("Cascade delete {} finished: {} documents", jobId, deleted);
+            return toStatus(jobRef.get().get());
+        } catch (CustomExceptions.ConflictException e) {
+            // Otra instancia tiene el trabajo (o lo tomó mientras este nodo lo ejecutaba): no se marca como fallido
+            throw e;
+        } catch (Exception e) {
+            if (claimed) {
+                markFailed(claim, e);
+            }
+            throw new CustomExceptions.ProcessingException("Error deleting " + rootType.toLowerCase() + " " + rootId
+                    + " (job " + jobId + "): " + e.getMessage());
+        } finally {
+            close(writer, jobId);
+            // Aunque el trabajo falle a medias ya pudo borrar historiales de cualquier mes
+            if (TYPE_PET.equals(rootType)) {
+                serviceReportCache.historialWritten(null);
+            }
+        }
+    }
+
+    /**
+     * Espera las escrituras pendientes y cierra el writer; un fallo aquí no oculta el resultado del trabajo
+     */
+    private static void close(BulkWriter writer, String jobId) {
+        try {
+            writer.close();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.warn("Interrupted while closing bulk writer of cascade delete {}", jobId);
+        } catch (ExecutionException e) {
+            log.warn("Error closing bulk writer of cascade delete {}: {}", jobId, e.getMessage());
+        }
+    }
+
+    /**
+     * Toma el trabajo para esta instancia si no tiene un lease vigente de otra y devuelve desde
+     * dónde continuar
+     */
+    private Progress claim(Claim claim, String rootType, String rootId, int totalSteps) throws InterruptedException {
+        DocumentReference jobRef = claim.ref();
+        try {
+            return firestore.runTransaction(transaction -> {
+                DocumentSnapshot existing = transaction.get(jobRef).get();
+                Date now = new Date();
+                int completedSteps = 0;
+                long deleted = 0;
+                if (existing.exists()) {
+                    String status = existing.getString("status");
+                    Date leaseExpiresAt = existing.getDate("leaseExpiresAt");
+                    if (CascadeStatus.RUNNING.name().equals(status) && leaseExpiresAt != null && leaseExpiresAt.after(now)) {
+                        throw new CustomExceptions.ConflictException(
+                                "El borrado en cascada " + jobRef.getId() + " ya está en curso");
+                    }
+                    if (!CascadeStatus.COMPLETED.name().equals(status)) {
+                        Long stored = existing.getLong("completedSteps");
+                        completedSteps = stored != null ? stored.intValue() : 0;
+                        Long storedDeleted = existing.getLong("deleted");
+                        deleted = storedDeleted != null ? storedDeleted : 0;
+                    }
+                }
+
+                Map<String, Object> data = new HashMap<>();
+                data.put("rootType", rootType);
+                data.put("rootId", rootId);
+                data.put("parentJobId", claim.parent() != null ? claim.parent().ref().getId() : null);
+                data.put("status", CascadeStatus.RUNNING.name());
+                data.put("owner", claim.owner());
+                data.put("leaseExpiresAt", new Date(now.getTime() + leaseMs));
+                data.put("completedSteps", completedSteps);
+                data.put("totalSteps", totalSteps);
+                data.put("deleted", deleted);
+                data.put("error", null);
+                data.put("updatedAt", now);
+                if (completedSteps == 0) {
+                    data.put("startedAt", now);
+                }
+                transaction.set(jobRef, data, SetOptions.merge());
+                return new Progress(completedSteps, deleted);
+            }).get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof CustomExceptions.ConflictException conflict) {
+                throw conflict;
+            }
+            throw new CustomExceptions.ProcessingException("Error claiming cascade delete " + jobRef.getId()
+                    + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Guarda el avance del trabajo si sigue siendo de esta instancia y extiende su lease y el de los
+     * trabajos que lo lanzaron
+     */
+    private void checkpoint(Claim claim, Object... fieldsAndValues) throws InterruptedException {
+        try {
+            firestore.runTransaction(transaction -> {
+                for (Claim current = claim; current != null; current = current.parent()) {
+                    DocumentSnapshot job = transaction.get(current.ref()).get();
+                    if (!current.owner().equals(job.getString("owner"))) {
+                        throw new CustomExceptions.ConflictException(
+                                "El borrado en cascada " + current.ref().getId() + " lo ha tomado otra instancia");
+                    }
+                }
+                Date now = new Date();
+                Date leaseExpiresAt = new Date(now.getTime() + leaseMs);
+                Map<String, Object> updates = new HashMap<>();
+                updates.put("leaseExpiresAt", leaseExpiresAt);
+                updates.put("updatedAt", now);
+                for (int i = 0; i + 1 < fieldsAndValues.length; i += 2) {
+                    updates.put((String) fieldsAndValues[i], fieldsAndValues[i + 1]);
+                }
+                transaction.update(claim.ref(), updates);
+                for (Claim ancestor = claim.parent(); ancestor != null; ancestor = ancestor.parent()) {
+                    transaction.update(ancestor.ref(), "leaseExpiresAt", leaseExpiresAt, "updatedAt", now);
+                }
+                return null;
+            }).get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof CustomExceptions.ConflictException conflict) {
+                log.warn("Stopping cascade delete {}: {}", claim.ref().getId(), conflict.getMessage());
+                throw conflict;
+            }
+            throw new CustomExceptions.ProcessingException("Error saving cascade delete progress: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Recorre el paso por páginas. Cada página se confirma antes de leer la siguiente, así la
+     * memoria usada no depende del número de documentos y el progreso queda registrado.
+     */
+    private long runStep(Step step, BulkWriter writer, Claim claim, long deleted) throws Exception {
+        if (step.document() != null) {
+            ApiFuture<WriteResult> write = writer.delete(step.document());
+            writer.flush().get();
+            write.get();
+            return deleted + 1;
+        }
+
+        Query base = step.query().orderBy(FieldPath.documentId()).limit(pageSize);
+        if (step.dependent() == null) {
+            base = base.select(FieldPath.documentId());
+        }
+        DocumentSnapshot last = null;
+        while (true) {
+            List<QueryDocumentSnapshot> page = (last == null ? base : base.startAfter(last)).get().get().getDocuments();
+            if (step.cascadePets()) {
+                for (QueryDocumentSnapshot doc : page) {
+                    deleted += run(TYPE_PET, doc.getId(), claim).getDeleted();
+                }
+            } else {
+                List<ApiFuture<WriteResult>> writes = new ArrayList<>(page.size());
+                for (QueryDocumentSnapshot doc : page) {
+                    writes.add(writer.delete(doc.getReference()));
+                }
+                writer.flush().get();
+                ApiFutures.allAsList(writes).get();
+                deleted += page.size();
+                deleteDependents(step, page, writer);
+            }
+            checkpoint(claim, "currentStep", step.name(), "deleted", deleted);
+
+            if (page.size() < pageSize) {
+                return deleted;
+            }
+            last = page.get(page.size() - 1);
+        }
+    }
+
+    /**
+     * Borra los documentos derivados de la página (por ejemplo, las agendas diarias de las citas),
+     * una vez confirmados los borrados de la página para que no se reconstruyan con datos viejos
+     */
+    private void deleteDependents(Step step, List<QueryDocumentSnapshot> page, BulkWriter writer) throws Exception {
+        if (step.dependent() == null) {
+            return;
+        }
+        Map<String, DocumentReference> dependents = new HashMap<>();
+        for (QueryDocumentSnapshot doc : page) {
+            DocumentReference dependent = step.dependent().apply(doc);
+            if (dependent != null) {
+                dependents.putIfAbsent(dependent.getPath(), dependent);
+            }
+        }
+        List<ApiFuture<WriteResult>> writes = new ArrayList<>(dependents.size());
+        for (DocumentReference dependent : dependents.values()) {
+            writes.add(writer.delete(dependent));
+        }
+        writer.flush().get();
+        ApiFutures.allAsList(writes).get();
+    }
+
+    /**
+     * Pasos del borrado; el documento raíz siempre va al final
+     */
+    private List<Step> plan(String rootType, String rootId) {
+        if (TYPE_PET.equals(rootType)) {
+            DocumentReference pet = firestore.collection("pets").document(rootId);
+            return List.of(
+                    Step.query("medicalRecords", pet.collection("medicalRecords")),
+                    Step.query("timeline", pet.collection("timeline")),
+                    Step.query("historial_clinico", firestore.collection("historial_clinico").whereEqualTo("petId", rootId)),
+                    appointmentsStep(firestore.collection("appointments").whereEqualTo("petId", rootId)),
+                    Step.query("historial_archive", firestore.collectionGroup(ArchivalService.HISTORIAL_RECORDS)
+                            .whereEqualTo("petId", rootId)),
+                    Step.query("appointments_archive", firestore.collectionGroup(ArchivalService.APPOINTMENT_RECORDS)
+                            .whereEqualTo("petId", rootId)),
+                    Step.document("pet", pet));
+        }
+        if (TYPE_USER.equals(rootType)) {
+            DocumentReference user = firestore.collection("users").document(rootId);
+            return List.of(
+                    new Step("pets", firestore.collection("pets").whereEqualTo("ownerId", rootId), null, true, null),
+                    appointmentsStep(firestore.collection("appointments").whereEqualTo("clientId", rootId)),
+                    Step.query("appointments_archive", firestore.collectionGroup(ArchivalService.APPOINTMENT_RECORDS)
+                            .whereEqualTo("clientId", rootId)),
+                    Step.query("favorites", firestore.collection("favorites").whereEqualTo("userId", rootId)),
+                    Step.query("notes", user.collection("notes")),
+                    Step.document("client_search", firestore.collection(ClientSearchIndexService.COLLECTION).document(rootId)),
+                    Step.document("user", user));
+        }
+        throw new IllegalArgumentException("Tipo de borrado en cascada desconocido: " + rootType);
+    }
+
+    /**
+     * Marca el trabajo como fallido y libera su lease, salvo que ya lo tenga otra instancia
+     */
+    private void markFailed(Claim claim, Exception error) {
+        DocumentReference jobRef = claim.ref();
+        try {
+            firestore.runTransaction(transaction -> {
+                DocumentSnapshot job = transaction.get(jobRef).get();
+                if (claim.owner().equals(job.getString("owner"))) {
+                    transaction.update(jobRef, "status", CascadeStatus.FAILED.name(),
+                            "error", String.valueOf(error.getMessage()),
+                            "leaseExpiresAt", null,
+                            "updatedAt", new Date());
+                }
+                return null;
+            }).get();
+        } catch (Exception e) {
+            log.warn("Could not mark cascade delete {} as failed: {}", jobRef.getId(), e.getMessage());
+        }
+    }
+
+    private CascadeDeleteStatus toStatus(DocumentSnapshot job) {
+        Long completedSteps = job.getLong("completedSteps");
+        Long totalSteps = job.getLong("totalSteps");
+        Long deleted = job.getLong("deleted");
+        String status = job.getString("status");
+        return CascadeDeleteStatus.builder()
+                .jobId(job.getId())
+                .rootType(job.getString("rootType"))
+                .rootId(job.getString("rootId"))
+                .status(status != null ? CascadeStatus.valueOf(status) : null)
+                .completedSteps(completedSteps != null ? completedSteps.intValue() : 0)
+                .totalSteps(totalSteps != null ? totalSteps.intValue() : 0)
+                .currentStep(job.getString("currentStep"))
+                .deleted(deleted != null ? deleted : 0)
+                .error(job.getString("error"))
+                .startedAt(job.getDate("startedAt"))
+                .updatedAt(job.getDate("updatedAt"))
+                .completedAt(job.getDate("completedAt"))
+                .build();
+    }
+
+    /**
+     * Trabajo tomado por esta instancia; {@code parent} es el trabajo que lo lanzó, si lo hay
+     */
+    private record Claim(DocumentReference ref, String owner, Claim parent) {
+    }
+
+    private record Progress(int completedSteps, long deleted) {
+    }
+
+    private Step appointmentsStep(Query query) {
+        return new Step("appointments", query, null, false, this::scheduleOf);
+    }
+
+    /**
+     * Agenda diaria en la que figura una cita; se borra y se reconstruye en la siguiente lectura
+     */
+    private DocumentReference scheduleOf(DocumentSnapshot appointment) {
+        String vetId = appointment.getString("veterinarianId");
+        Date date = appointment.getDate("appointmentDate");
+        if (vetId == null || date == null) {
+            return null;
+        }
+        return firestore.collection(VetScheduleService.COLLECTION)
+                .document(VetScheduleService.DayKey.of(vetId, date).id());
+    }
+
+    /**
+     * Paso del borrado: una consulta de dependientes, o un documento concreto. {@code dependent}
+     * indica un documento derivado de cada dependiente que también debe borrarse.
+     */
+    private record Step(String name, Query query, DocumentReference document, boolean cascadePets,
+                        Function<DocumentSnapshot, DocumentReference> dependent) {
+
+        static Step query(String name, Query query) {
+            return new Step(name, query, null, false, null);
+        }
+
+        static Step document(String name, DocumentReference document) {
+            return new Step(name, null, document, false, null);
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package com.example.demo.service;
+
+import com.example.demo.exception.CustomExceptions;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import jakarta.annotation.PostConstruct;
+import jakarta.servlet.http.HttpServletRequest;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Versiones de los catálogos de solo lectura (servicios y roles) y validadores HTTP de sus endpoints
+ * (ver {@code CatalogCacheAdvice}). Cada colección tiene un contador de versión local con el que los
+ * servicios indexan el contenido cacheado; el ETag, en cambio, se deriva del contenido para que todas
+ * las instancias emitan el mismo.
+ */
+@Service
+@Slf4j
+public class CatalogCacheService {
+
+    public static final String SERVICES = "veterinary_services";
+    public static final String ROLES = "roles";
+
+    // Bytes del ETag: 128 bits de SHA-256 bastan para distinguir versiones de un catálogo
+    private static final int ETAG_BYTES = 16;
+
+    @Autowired
+    private CacheInvalidationService cacheInvalidationService;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+    private final Map<String, CatalogVersion> versions = new ConcurrentHashMap<>();
+    // Colecciones cuya versión no es fiable por ahora (por ejemplo, con su listener caído)
+    private final Set<String> suspended = ConcurrentHashMap.newKeySet();
+
+    @PostConstruct
+    public void registerInvalidationHandlers() {
+        cacheInvalidationService.onInvalidate(SERVICES, id -> bumpLocal(SERVICES));
+        cacheInvalidationService.onInvalidate(ROLES, id -> bumpLocal(ROLES));
+    }
+
+    /**
+     * Marca una colección del catálogo como modificada en todas las instancias
+     */
+    public void bump(String collection) {
+        cacheInvalidationService.invalidate(collection, null);
+    }
+
+    /**
+     * Marca una colección como modificada solo en este nodo, para cambios que cada instancia
+     * detecta por sí misma (por ejemplo, mediante un listener de Firestore)
+     */
+    public void bumpLocal(String collection) {
+        CatalogVersion version = versions.compute(collection, (key, current) ->
+                new CatalogVersion(current == null ? 1 : current.number() + 1, System.currentTimeMillis()));
+        log.debug("Catalog '{}' bumped to version {}", collection, version.number());
+    }
+
+    /**
+     * Deja de emitir validadores para la colección hasta {@link #resumeValidation}: su contenido puede
+     * cambiar sin que la versión lo refleje
+     */
+    public void suspendValidation(String collection) {
+        suspended.add(collection);
+    }
+
+    /**
+     * Vuelve a emitir validadores con una versión nueva, ya que pudo haber cambios no registrados
+     */
+    public void resumeValidation(String collection) {
+        bumpLocal(collection);
+        suspended.remove(collection);
+    }
+
+    public boolean isValidationSuspended(String collection) {
+        return suspended.contains(collection);
+    }
+
+    /**
+     * Versión actual de una colección del catálogo
+     */
+    public long currentVersion(String collection) {
+        return getVersion(collection).number();
+    }
+
+    /**
+     * Fecha de la última modificación conocida de la colección
+     */
+    public long lastModified(String collection) {
+        return getVersion(collection).updatedAt();
+    }
+
+    /**
+     * ETag fuerte de una respuesta del catálogo: resumen de la variante (ruta y parámetros, en orden) y
+     * del cuerpo serializado, independiente de la instancia que responda
+     */
+    public String eTag(String collection, HttpServletRequest request, Object body) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            StringBuilder variant = new StringBuilder(request.getRequestURI());
+            new TreeMap<>(request.getParameterMap()).forEach((name, values) ->
+                    variant.append('&').append(name).append('=').append(String.join(",", values)));
+            digest.update(variant.toString().getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            digest.update(objectMapper.writer().with(SerializationFeature.ORDER_MAP_ENTRIES_BY_KEYS).writeValueAsBytes(body));
+            byte[] hash = digest.digest();
+            return "\"" + collection + "-" + HexFormat.of().formatHex(hash, 0, ETAG_BYTES) + "\"";
+        } catch (NoSuchAlgorithmException | JsonProcessingException e) {
+            throw new CustomExceptions.ProcessingException("Error computing catalog ETag: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Indica si algún valor de {@code If-None-Match} coincide con el ETag
+     */
+    public boolean matches(String ifNoneMatch, String eTag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String candidate : ifNoneMatch.split(",")) {
+            String value = candidate.trim();
+            if (value.startsWith("W/")) {
+                value = value.substring(2);
+            }
+            if (value.equals("*") || value.equals(eTag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private CatalogVersion getVersion(String collection) {
+        return versions.computeIfAbsent(collection, key -> new CatalogVersion(0, System.currentTimeMillis()));
+    }
+
+    private record CatalogVersion(long number, long updatedAt) {
+    }
+}
@@ -7,6 +7,7 @@ import com.example.demo.dto.UserDTOs;
 import com.example.demo.dto.PetDTOs;
 import com.example.demo.exception.CustomExceptions;
 import com.example.demo.model.Appointment;
+import com.example.demo.util.DocumentMappers;
 import com.google.cloud.firestore.*;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -17,6 +18,7 @@ import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.ExecutionException;
 
 @Service
@@ -38,6 +40,9 @@ public class ClientAppointmentService {
     @Autowired
     private PetService petService;
 
+    @Autowired
+    private VetScheduleService vetScheduleService;
+
     /**
      * Obtiene todas las citas del cliente actual
      */
@@ -70,7 +75,7 @@ public class ClientAppointmentService {
             // Convertir resultados
             List<AppointmentDTOs.ClientPetAppointmentDTO> appointments = new ArrayList<>();
             for (DocumentSnapshot doc : querySnapshot.getDocuments()) {
-                Appointment appointment = doc.toObject(Appointment.class);
+                Appointment appointment = DocumentMappers.toAppointment(doc);
                 if (appointment != null) {
                     appointments.add(convertToDTO(appointment));
                 }
@@ -106,7 +111,7 @@ public class ClientAppointmentService {
                 throw new CustomExceptions.NotFoundException("Appointment not found");
             }
 
-            Appointment appointment = appointmentDoc.toObject(Appointment.class);
+            Appointment appointment = DocumentMappers.toAppointment(appointmentDoc);
 
             // Verificar que la cita pertenece al cliente
             if (!appointment.getClientId().equals(clientId)) {
@@ -119,15 +124,19 @@ public class ClientAppointmentService {
                         "Appointments can only be cancelled " + MINIMUM_HOURS_BEFORE_CANCEL + " hours in advance");
             }
 
-            // Actualizar estado
+            // Actualizar estado y agenda del veterinario
+            appointment.setId(appointmentId);
             appointment.setStatus("CANCELLED");
-            appointmentDoc.getReference().set(appointment).get();
+            vetScheduleService.update(appointmentDoc.getReference(), appointment,
+                    Map.of("status", appointment.getStatus()), appointmentDoc.getUpdateTime());
 
             // Enviar notificaciones
             sendCancellationNotifications(appointment);
 
             return convertToDTO(appointment);
 
+        } catch (CustomExceptions.ConflictException e) {
+            throw e;
         } catch (Exception e) {
             log.error("Error cancelling appointment: {}", e.getMessage());
             throw new CustomExceptions.ProcessingException("Error cancelling appointment");
@@ -156,7 +165,7 @@ public class ClientAppointmentService {
                 throw new CustomExceptions.NotFoundException("Appointment not found");
             }
 
-            Appointment appointment = appointmentDoc.toObject(Appointment.class);
+            Appointment appointment = DocumentMappers.toAppointment(appointmentDoc);
 
             // Verificar que la cita pertenece al cliente
             if (!appointment.getClientId().equals(clientId)) {
@@ -174,15 +183,20 @@ public class ClientAppointmentService {
             // Guardar fecha anterior para notificación
             Date oldDate = appointment.getAppointmentDate();
 
-            // Actualizar fecha
+            // Actualizar fecha y agenda del veterinario, sin chocar con otra cita
+            appointment.setId(appointmentId);
             appointment.setAppointmentDate(request.getNewDate());
-            appointmentDoc.getReference().set(appointment).get();
+            if (!vetScheduleService.save(appointmentDoc.getReference(), appointment, oldDate, true)) {
+                throw new CustomExceptions.ConflictException("El veterinario ya tiene una cita en ese horario");
+            }
 
             // Enviar notificaciones
             sendRescheduleNotifications(appointment, oldDate);
 
             return convertToDTO(appointment);
 
+        } catch (CustomExceptions.ConflictException e) {
+            throw e;
         } catch (Exception e) {
             log.error("Error rescheduling appointment: {}", e.getMessage());
             throw new CustomExceptions.ProcessingException("Error rescheduling appointment");
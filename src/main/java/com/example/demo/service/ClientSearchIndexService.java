@@ -0,0 +1,227 @@
+package com.example.demo.service;
+
+import com.example.demo.exception.CustomExceptions;
+import com.example.demo.model.Pet;
+import com.example.demo.model.User;
+import com.example.demo.util.DocumentMappers;
+import com.google.api.core.ApiFuture;
+import com.google.cloud.firestore.*;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.stereotype.Service;
+
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Mantiene la proyección {@code client_search}: un documento por cliente con los datos de contacto,
+ * los nombres de sus mascotas y los días de consulta, para que la búsqueda de clientes se resuelva
+ * con una sola consulta paginada.
+ */
+@Service
+@Slf4j
+public class ClientSearchIndexService {
+
+    public static final String COLLECTION = "client_search";
+
+    // Longitud máxima de los fragmentos indexados de los nombres de mascota
+    static final int MAX_FRAGMENT_LENGTH = 15;
+
+    private static final DateTimeFormatter DAY_FORMAT = DateTimeFormatter.ISO_LOCAL_DATE;
+    private static final int REBUILD_PAGE_SIZE = 200;
+
+    @Autowired
+    private Firestore firestore;
+
+    // Clientes con un recálculo en curso; TRUE si se pidió otro mientras tanto
+    private final ConcurrentHashMap<String, Boolean> refreshing = new ConcurrentHashMap<>();
+
+    /**
+     * Recalcula la proyección de un cliente fuera del hilo de la petición
+     */
+    @Async("projectionExecutor")
+    public void refreshClientAsync(String clientId) {
+        if (clientId == null) {
+            return;
+        }
+        try {
+            refreshClient(clientId);
+        } catch (Exception e) {
+            // Una proyección desactualizada se corrige en la siguiente escritura o con la reconstrucción completa
+            log.warn("Could not refresh client search entry for {}: {}", clientId, e.getMessage());
+        }
+    }
+
+    /**
+     * Recalcula la proyección del dueño de una mascota fuera del hilo de la petición
+     */
+    @Async("projectionExecutor")
+    public void refreshPetOwnerAsync(String petId) {
+        try {
+            DocumentSnapshot petDoc = firestore.collection("pets").document(petId).get().get();
+            String ownerId = petDoc.getString("ownerId");
+            if (ownerId != null) {
+                refreshClient(ownerId);
+            }
+        } catch (Exception e) {
+            log.warn("Could not refresh client search entry for pet {}: {}", petId, e.getMessage());
+        }
+    }
+
+    /**
+     * Recalcula la proyección de un cliente a partir de su usuario, sus mascotas y sus registros médicos.
+     * Los recálculos de un mismo cliente no se solapan: si ya hay uno en curso, este solo le pide que
+     * vuelva a leer al terminar, así la última escritura siempre parte de los datos más recientes.
+     */
+    public void refreshClient(String clientId) throws ExecutionException, InterruptedException {
+        boolean[] owner = new boolean[1];
+        refreshing.compute(clientId, (key, again) -> {
+            owner[0] = again == null;
+            return owner[0] ? Boolean.FALSE : Boolean.TRUE;
+        });
+        if (!owner[0]) {
+            return;
+        }
+        try {
+            do {
+                writeEntry(clientId);
+            } while (refreshing.compute(clientId, (key, again) -> Boolean.TRUE.equals(again) ? Boolean.FALSE : null) != null);
+        } catch (ExecutionException | InterruptedException | RuntimeException e) {
+            refreshing.remove(clientId);
+            throw e;
+        }
+    }
+
+    private void writeEntry(String clientId) throws ExecutionException, InterruptedException {
+        DocumentReference entryRef = firestore.collection(COLLECTION).document(clientId);
+        DocumentSnapshot userDoc = firestore.collection("users").document(clientId).get().get();
+        if (!userDoc.exists()) {
+            entryRef.delete().get();
+            return;
+        }
+        User user = DocumentMappers.toUser(userDoc);
+        if (user == null) {
+            return;
+        }
+
+        List<QueryDocumentSnapshot> petDocs = firestore.collection("pets")
+                .whereEqualTo("ownerId", clientId)
+                .get().get().getDocuments();
+
+        // Las fechas de consulta de todas las mascotas se leen en paralelo y solo con el campo necesario
+        Map<String, ApiFuture<QuerySnapshot>> visitFutures = new LinkedHashMap<>();
+        for (QueryDocumentSnapshot petDoc : petDocs) {
+            visitFutures.put(petDoc.getId(), petDoc.getReference()
+                    .collection("medicalRecords")
+                    .select("date")
+                    .get());
+        }
+
+        List<Map<String, Object>> pets = new ArrayList<>();
+        List<String> petIds = new ArrayList<>();
+        Set<String> fragments = new TreeSet<>();
+        Set<String> visitDays = new TreeSet<>();
+        Date lastVisit = null;
+
+        for (QueryDocumentSnapshot petDoc : petDocs) {
+            Pet pet = DocumentMappers.toPet(petDoc);
+            String nameLower = ServiceCatalogIndex.normalize(pet.getName()).trim();
+
+            Set<String> petVisitDays = new TreeSet<>();
+            for (DocumentSnapshot recordDoc : visitFutures.get(petDoc.getId()).get().getDocuments()) {
+                Date date = recordDoc.getDate("date");
+                if (date == null) {
+                    continue;
+                }
+                petVisitDays.add(toDay(date));
+                if (lastVisit == null || date.after(lastVisit)) {
+                    lastVisit = date;
+                }
+            }
+
+            Map<String, Object> entry = new HashMap<>();
+            entry.put("id", petDoc.getId());
+            entry.put("name", pet.getName());
+            entry.put("nameLower", nameLower);
+            entry.put("visitDays", new ArrayList<>(petVisitDays));
+            pets.add(entry);
+
+            petIds.add(petDoc.getId());
+            fragments.addAll(nameFragments(nameLower));
+            visitDays.addAll(petVisitDays);
+        }
+
+        Map<String, Object> data = new HashMap<>();
+        data.put("uid", clientId);
+        data.put("nombre", user.getNombre());
+        data.put("apellido", user.getApellido());
+        data.put("email", user.getEmail());
+        data.put("telefono", user.getTelefono());
+        data.put("direccion", user.getDireccion());
+        data.put("nombreLower", ServiceCatalogIndex.normalize(user.getNombre()));
+        data.put("hasPets", !pets.isEmpty());
+        data.put("petIds", petIds);
+        data.put("pets", pets);
+        data.put("petNameFragments", new ArrayList<>(fragments));
+        data.put("visitDays", new ArrayList<>(visitDays));
+        data.put("lastVisit", lastVisit);
+        data.put("updatedAt", new Date());
+
+        entryRef.set(data).get();
+    }
+
+    /**
+     * Reconstruye la proyección de todos los usuarios, recorriéndolos por páginas
+     */
+    public int rebuildAll() {
+        int processed = 0;
+        try {
+            Query base = firestore.collection("users")
+                    .orderBy(FieldPath.documentId())
+                    .limit(REBUILD_PAGE_SIZE);
+            DocumentSnapshot last = null;
+            while (true) {
+                Query page = last == null ? base : base.startAfter(last);
+                List<QueryDocumentSnapshot> users = page.select(FieldPath.documentId()).get().get().getDocuments();
+                for (QueryDocumentSnapshot userDoc : users) {
+                    refreshClient(userDoc.getId());
+                    processed++;
+                }
+                if (users.size() < REBUILD_PAGE_SIZE) {
+                    break;
+                }
+                last = users.get(users.size() - 1);
+            }
+            log.info("Client search projection rebuilt for {} users", processed);
+            return processed;
+        } catch (InterruptedException | ExecutionException e) {
+            throw new CustomExceptions.ProcessingException("Error rebuilding client search index: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Día de consulta en el formato usado por la proyección
+     */
+    static String toDay(Date date) {
+        return date.toInstant().atZone(ZoneId.systemDefault()).toLocalDate().format(DAY_FORMAT);
+    }
+
+    /**
+     * Todas las subcadenas del nombre de hasta {@link #MAX_FRAGMENT_LENGTH} caracteres, para que un
+     * array-contains encuentre las mismas mascotas que {@code nameLower.contains(busqueda)}
+     */
+    static Set<String> nameFragments(String nameLower) {
+        Set<String> fragments = new HashSet<>();
+        for (int from = 0; from < nameLower.length(); from++) {
+            int max = Math.min(nameLower.length(), from + MAX_FRAGMENT_LENGTH);
+            for (int to = from + 1; to <= max; to++) {
+                fragments.add(nameLower.substring(from, to));
+            }
+        }
+        return fragments;
+    }
+}
@@ -0,0 +1,536 @@
+package com.example.demo.service;
+
+import com.example.demo.dto.ClinicalSearchDTOs.ClinicalSearchHit;
+import com.example.demo.dto.ClinicalSearchDTOs.ClinicalSearchIndexStatus;
+import com.example.demo.dto.PaginatedResponse;
+import com.example.demo.dto.PaginationRequest;
+import com.example.demo.exception.CustomExceptions;
+import com.example.demo.util.ReconnectingSnapshotListener;
+import com.google.cloud.Timestamp;
+import com.google.cloud.firestore.*;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.es.SpanishAnalyzer;
+import org.apache.lucene.document.*;
+import org.apache.lucene.index.*;
+import org.apache.lucene.queryparser.simple.SimpleQueryParser;
+import org.apache.lucene.search.*;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.uhighlight.UnifiedHighlighter;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.MMapDirectory;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.BytesRef;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Índice de texto completo (Lucene) sobre los campos clínicos de {@code historial_clinico}, su archivo
+ * y los {@code medicalRecords} de las mascotas. El índice vive en disco local ({@link MMapDirectory})
+ * y se mantiene con listeners de Firestore: cada cambio actualiza solo el documento afectado.
+ *
+ * <p>Tras un reinicio los listeners vuelven a entregar todos los documentos; los que conservan la
+ * misma versión ({@code updateTime}) que la copia indexada se omiten, y las entradas que ya no
+ * existen en Firestore se eliminan al recibir la primera instantánea de cada colección.
+ *
+ * <p>Si un listener falla, su colección deja de estar lista y se vuelve a registrar con espera
+ * creciente; la primera instantánea del nuevo registro repite la limpieza de entradas borradas.
+ */
+@Service
+@Slf4j
+public class ClinicalSearchIndexService {
+
+    static final String FIELD_KEY = "key";
+    static final String FIELD_ORIGIN = "origin";
+    static final String FIELD_VERSION = "version";
+    static final String FIELD_SOURCE = "source";
+    static final String FIELD_ID = "id";
+    static final String FIELD_PET_ID = "petId";
+    static final String FIELD_VETERINARIAN_ID = "veterinarianId";
+    static final String FIELD_DATE = "date";
+
+    // Campos de texto buscables y su peso en la relevancia
+    private static final Map<String, Float> TEXT_FIELDS = Map.of(
+            "diagnosis", 3.0f,
+            "reason", 2.0f,
+            "treatment", 1.5f,
+            "notes", 1.0f);
+
+    private static final String ORIGIN_LIVE = "live";
+    private static final String ORIGIN_ARCHIVE = "archive";
+    private static final int MAX_PAGE_SIZE = 100;
+    private static final int MAX_RESULT_WINDOW = 10_000;
+
+    // Texto almacenado (para resaltar) con offsets en el índice invertido
+    private static final FieldType TEXT_TYPE = new FieldType(TextField.TYPE_STORED);
+
+    static {
+        TEXT_TYPE.setIndexOptions(IndexOptions.DOCS_AND_FREQS_AND_POSITIONS_AND_OFFSETS);
+        TEXT_TYPE.freeze();
+    }
+
+    @Autowired
+    private Firestore firestore;
+
+    @Value("${clinical-search.enabled:true}")
+    private boolean enabled;
+
+    @Value("${clinical-search.index-dir:./data/clinical-index}")
+    private String indexDir;
+
+    @Value("${clinical-search.refresh-ms:1000}")
+    private long refreshMs;
+
+    @Value("${clinical-search.commit-interval-ms:30000}")
+    private long commitIntervalMs;
+
+    @Value("${clinical-search.reconnect-delay-ms:1000}")
+    private long reconnectDelayMs;
+
+    @Value("${clinical-search.max-reconnect-delay-ms:60000}")
+    private long maxReconnectDelayMs;
+
+    private final Analyzer analyzer = new SpanishAnalyzer();
+    private final Map<String, IndexedVersion> versions = new ConcurrentHashMap<>();
+    private final Map<Feed, ReconnectingSnapshotListener> listeners = new EnumMap<>(Feed.class);
+    private final Set<Feed> readyFeeds = ConcurrentHashMap.newKeySet();
+
+    private Directory directory;
+    private IndexWriter writer;
+    private SearcherManager searcherManager;
+    private ScheduledExecutorService maintenance;
+
+    @PostConstruct
+    public void open() throws IOException {
+        if (!enabled) {
+            return;
+        }
+        Path path = Path.of(indexDir);
+        Files.createDirectories(path);
+        directory = new MMapDirectory(path);
+        IndexWriterConfig config = new IndexWriterConfig(analyzer)
+                .setOpenMode(IndexWriterConfig.OpenMode.CREATE_OR_APPEND);
+        writer = new IndexWriter(directory, config);
+        searcherManager = new SearcherManager(writer, null);
+        loadVersions();
+
+        maintenance = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "clinical-search");
+            thread.setDaemon(true);
+            return thread;
+        });
+        maintenance.scheduleWithFixedDelay(this::refresh, refreshMs, refreshMs, TimeUnit.MILLISECONDS);
+        maintenance.scheduleWithFixedDelay(this::commit, commitIntervalMs, commitIntervalMs, TimeUnit.MILLISECONDS);
+        log.info("Clinical search index opened at {} with {} documents", path.toAbsolutePath(), versions.size());
+    }
+
+    /**
+     * Inicia los listeners cuando la aplicación está lista, para no retrasar el arranque
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public synchronized void startListeners() {
+        if (!enabled || !listeners.isEmpty()) {
+            return;
+        }
+        for (Feed feed : Feed.values()) {
+            ReconnectingSnapshotListener listener = new ReconnectingSnapshotListener("Clinical search " + feed,
+                    () -> feed.query(firestore), maintenance, reconnectDelayMs, maxReconnectDelayMs,
+                    new ReconnectingSnapshotListener.Handler() {
+                        @Override
+                        public void onSnapshot(QuerySnapshot snapshot, boolean initial) {
+                            ClinicalSearchIndexService.this.onSnapshot(feed, snapshot, initial);
+                        }
+
+                        @Override
+                        public void onDisconnect(FirestoreException error) {
+                            // Hasta la próxima instantánea completa el índice puede no reflejar la colección
+                            readyFeeds.remove(feed);
+                        }
+                    });
+            listeners.put(feed, listener);
+            listener.start();
+        }
+        log.info("Clinical search listeners started");
+    }
+
+    /**
+     * Busca en los campos clínicos. Admite la sintaxis simple de Lucene (frases entre comillas,
+     * prefijos con *, + y - para exigir o excluir términos); por defecto todos los términos son obligatorios.
+     * {@code from} y {@code to} son días completos: {@code to} incluye todo ese día.
+     */
+    public PaginatedResponse<ClinicalSearchHit> search(String text, String petId, String source,
+                                                       Date from, Date to, PaginationRequest request) {
+        if (!enabled) {
+            throw new CustomExceptions.ProcessingException("Clinical search is disabled");
+        }
+        if (text == null || text.isBlank()) {
+            throw new CustomExceptions.BadRequestException("Search text is required");
+        }
+        int size = request.getSize() > 0 ? Math.min(request.getSize(), MAX_PAGE_SIZE) : 20;
+        int page = Math.max(request.getPage(), 0);
+        int offset = page * size;
+        if (offset + size > MAX_RESULT_WINDOW) {
+            throw new CustomExceptions.BadRequestException("Results beyond " + MAX_RESULT_WINDOW + " hits are not available; refine the search");
+        }
+        request.setPage(page);
+        request.setSize(size);
+
+        SimpleQueryParser parser = new SimpleQueryParser(analyzer, TEXT_FIELDS);
+        parser.setDefaultOperator(BooleanClause.Occur.MUST);
+        Query textQuery = parser.parse(text);
+        BooleanQuery.Builder builder = new BooleanQuery.Builder().add(textQuery, BooleanClause.Occur.MUST);
+        if (petId != null && !petId.isBlank()) {
+            builder.add(new TermQuery(new Term(FIELD_PET_ID, petId)), BooleanClause.Occur.FILTER);
+        }
+        if (source != null && !source.isBlank()) {
+            builder.add(new TermQuery(new Term(FIELD_SOURCE, source)), BooleanClause.Occur.FILTER);
+        }
+        if (from != null || to != null) {
+            builder.add(LongPoint.newRangeQuery(FIELD_DATE,
+                    from != null ? from.getTime() : Long.MIN_VALUE,
+                    to != null ? endOfDay(to) : Long.MAX_VALUE), BooleanClause.Occur.FILTER);
+        }
+        Query query = builder.build();
+
+        IndexSearcher searcher = null;
+        try {
+            searcher = searcherManager.acquire();
+            TopDocs top = searcher.search(query, offset + size);
+            long total = top.totalHits.relation == TotalHits.Relation.EQUAL_TO
+                    ? top.totalHits.value
+                    : searcher.count(query);
+
+            ScoreDoc[] pageDocs = offset < top.scoreDocs.length
+                    ? Arrays.copyOfRange(top.scoreDocs, offset, top.scoreDocs.length)
+                    : new ScoreDoc[0];
+            String[] fields = TEXT_FIELDS.keySet().toArray(String[]::new);
+            int[] passages = new int[fields.length];
+            Arrays.fill(passages, 1);
+            Map<String, String[]> highlights = pageDocs.length == 0
+                    ? Map.of()
+                    : UnifiedHighlighter.builder(searcher, analyzer).withMaxNoHighlightPassages(0).build()
+                            .highlightFields(fields, textQuery, new TopDocs(top.totalHits, pageDocs), passages);
+
+            StoredFields stored = searcher.storedFields();
+            List<ClinicalSearchHit> hits = new ArrayList<>(pageDocs.length);
+            for (int i = 0; i < pageDocs.length; i++) {
+                Document doc = stored.document(pageDocs[i].doc);
+                Map<String, String> fragments = new LinkedHashMap<>();
+                for (String field : fields) {
+                    String fragment = highlights.containsKey(field) ? highlights.get(field)[i] : null;
+                    if (fragment != null) {
+                        fragments.put(field, fragment);
+                    }
+                }
+                IndexableField date = doc.getField(FIELD_DATE);
+                hits.add(ClinicalSearchHit.builder()
+                        .source(doc.get(FIELD_SOURCE))
+                        .id(doc.get(FIELD_ID))
+                        .petId(doc.get(FIELD_PET_ID))
+                        .veterinarianId(doc.get(FIELD_VETERINARIAN_ID))
+                        .date(date != null ? new Date(date.numericValue().longValue()) : null)
+                        .score(pageDocs[i].score)
+                        .highlights(fragments)
+                        .build());
+            }
+            return PaginatedResponse.of(hits, request, total);
+        } catch (IOException e) {
+            throw new CustomExceptions.ProcessingException("Error searching clinical records: " + e.getMessage());
+        } finally {
+            if (searcher != null) {
+                try {
+                    searcherManager.release(searcher);
+                } catch (IOException e) {
+                    log.warn("Could not release clinical search searcher: {}", e.getMessage());
+                }
+            }
+        }
+    }
+
+    public ClinicalSearchIndexStatus status() {
+        return ClinicalSearchIndexStatus.builder()
+                .enabled(enabled)
+                .documents(versions.size())
+                .historialReady(readyFeeds.contains(Feed.HISTORIAL))
+                .archiveReady(readyFeeds.contains(Feed.HISTORIAL_ARCHIVE))
+                .medicalRecordsReady(readyFeeds.contains(Feed.MEDICAL_RECORDS))
+                .build();
+    }
+
+    private void onSnapshot(Feed feed, QuerySnapshot snapshot, boolean initial) {
+        try {
+            int updated = 0;
+            for (DocumentChange change : snapshot.getDocumentChanges()) {
+                QueryDocumentSnapshot doc = change.getDocument();
+                String key = feed.key(doc);
+                if (change.getType() == DocumentChange.Type.REMOVED) {
+                    remove(feed, key);
+                } else if (upsert(feed, key, doc)) {
+                    updated++;
+                }
+            }
+            // La primera instantánea trae todo lo que existe: lo indexado que no aparece se borró estando caídos
+            if (initial) {
+                Set<String> present = new HashSet<>();
+                snapshot.getDocuments().forEach(doc -> present.add(feed.key(doc)));
+                int stale = 0;
+                for (Map.Entry<String, IndexedVersion> entry : versions.entrySet()) {
+                    if (entry.getKey().startsWith(feed.prefix) && feed.origin.equals(entry.getValue().origin())
+                            && !present.contains(entry.getKey())) {
+                        remove(feed, entry.getKey());
+                        stale++;
+                    }
+                }
+                readyFeeds.add(feed);
+                log.info("Clinical search {} feed ready: {} documents updated, {} stale entries removed",
+                        feed, updated, stale);
+            }
+        } catch (IOException e) {
+            log.error("Error updating clinical search index from {}: ", feed, e);
+        }
+    }
+
+    private boolean upsert(Feed feed, String key, DocumentSnapshot snapshot) throws IOException {
+        IndexedVersion version = new IndexedVersion(feed.origin, micros(snapshot.getUpdateTime()));
+        if (version.equals(versions.get(key))) {
+            return false;
+        }
+        Document doc;
+        try {
+            doc = feed.toDocument(snapshot);
+        } catch (RuntimeException e) {
+            log.warn("Skipping {} in clinical search index: {}", key, e.getMessage());
+            return false;
+        }
+        doc.add(new StringField(FIELD_KEY, key, Field.Store.NO));
+        doc.add(new SortedDocValuesField(FIELD_KEY, new BytesRef(key)));
+        doc.add(new StringField(FIELD_ORIGIN, feed.origin, Field.Store.NO));
+        doc.add(new SortedDocValuesField(FIELD_ORIGIN, new BytesRef(feed.origin)));
+        doc.add(new NumericDocValuesField(FIELD_VERSION, version.version()));
+        writer.updateDocument(new Term(FIELD_KEY, key), doc);
+        versions.put(key, version);
+        return true;
+    }
+
+    /**
+     * Solo se borra la copia del mismo origen: al archivar un historial, la copia del archivo
+     * reemplaza a la viva y el borrado posterior en la colección viva no debe eliminarla
+     */
+    private void remove(Feed feed, String key) throws IOException {
+        writer.deleteDocuments(new BooleanQuery.Builder()
+                .add(new TermQuery(new Term(FIELD_KEY, key)), BooleanClause.Occur.FILTER)
+                .add(new TermQuery(new Term(FIELD_ORIGIN, feed.origin)), BooleanClause.Occur.FILTER)
+                .build());
+        versions.computeIfPresent(key, (k, current) -> feed.origin.equals(current.origin()) ? null : current);
+    }
+
+    /**
+     * Carga la versión de cada documento ya indexado para omitir los que no cambiaron
+     */
+    private void loadVersions() throws IOException {
+        try (DirectoryReader reader = DirectoryReader.open(writer)) {
+            for (LeafReaderContext leaf : reader.leaves()) {
+                LeafReader leafReader = leaf.reader();
+                SortedDocValues keys = DocValues.getSorted(leafReader, FIELD_KEY);
+                SortedDocValues origins = DocValues.getSorted(leafReader, FIELD_ORIGIN);
+                NumericDocValues numbers = DocValues.getNumeric(leafReader, FIELD_VERSION);
+                Bits liveDocs = leafReader.getLiveDocs();
+                for (int doc = 0; doc < leafReader.maxDoc(); doc++) {
+                    if ((liveDocs != null && !liveDocs.get(doc))
+                            || !keys.advanceExact(doc) || !origins.advanceExact(doc) || !numbers.advanceExact(doc)) {
+                        continue;
+                    }
+                    versions.put(keys.lookupOrd(keys.ordValue()).utf8ToString(), new IndexedVersion(
+                            origins.lookupOrd(origins.ordValue()).utf8ToString(), numbers.longValue()));
+                }
+            }
+        }
+    }
+
+    private void refresh() {
+        try {
+            searcherManager.maybeRefresh();
+        } catch (Exception e) {
+            log.warn("Could not refresh clinical search index: {}", e.getMessage());
+        }
+    }
+
+    private void commit() {
+        try {
+            if (writer.hasUncommittedChanges()) {
+                writer.commit();
+            }
+        } catch (Exception e) {
+            log.warn("Could not commit clinical search index: {}", e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        if (!enabled) {
+            return;
+        }
+        synchronized (this) {
+            listeners.values().forEach(ReconnectingSnapshotListener::close);
+            listeners.clear();
+        }
+        maintenance.shutdownNow();
+        try {
+            searcherManager.close();
+            writer.close();
+            directory.close();
+        } catch (IOException e) {
+            log.warn("Error closing clinical search index: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Último milisegundo del día (zona del servidor, la misma con la que se interpreta el parámetro)
+     */
+    private static long endOfDay(Date day) {
+        LocalDate date = day.toInstant().atZone(ZoneId.systemDefault()).toLocalDate();
+        return date.plusDays(1).atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli() - 1;
+    }
+
+    private static long micros(Timestamp timestamp) {
+        return timestamp == null ? 0 : timestamp.getSeconds() * 1_000_000L + timestamp.getNanos() / 1_000;
+    }
+
+    private static void addText(Document doc, String field, String value) {
+        if (value != null && !value.isBlank()) {
+            doc.add(new Field(field, value, TEXT_TYPE));
+        }
+    }
+
+    private static void addKeyword(Document doc, String field, String value) {
+        if (value != null) {
+            doc.add(new StringField(field, value, Field.Store.YES));
+        }
+    }
+
+    private static void addDate(Document doc, Date date) {
+        if (date != null) {
+            doc.add(new LongPoint(FIELD_DATE, date.getTime()));
+            doc.add(new StoredField(FIELD_DATE, date.getTime()));
+        }
+    }
+
+    /**
+     * Colecciones que alimentan el índice: consulta escuchada, clave estable y conversión a documento
+     */
+    private enum Feed {
+        HISTORIAL(ORIGIN_LIVE, "historial_clinico/") {
+            @Override
+            com.google.cloud.firestore.Query query(Firestore firestore) {
+                return firestore.collection("historial_clinico");
+            }
+
+            @Override
+            String key(DocumentSnapshot doc) {
+                return prefix + doc.getId();
+            }
+
+            @Override
+            Document toDocument(DocumentSnapshot snapshot) {
+                return historial(snapshot.getId(), snapshot);
+            }
+        },
+        HISTORIAL_ARCHIVE(ORIGIN_ARCHIVE, "historial_clinico/") {
+            @Override
+            com.google.cloud.firestore.Query query(Firestore firestore) {
+                return firestore.collectionGroup(ArchivalService.HISTORIAL_RECORDS);
+            }
+
+            @Override
+            String key(DocumentSnapshot doc) {
+                // Misma clave que el original, para que la copia archivada lo reemplace
+                return prefix + archivedId(doc);
+            }
+
+            @Override
+            Document toDocument(DocumentSnapshot snapshot) {
+                return historial(archivedId(snapshot), snapshot);
+            }
+        },
+        MEDICAL_RECORDS(ORIGIN_LIVE, "pets/") {
+            @Override
+            com.google.cloud.firestore.Query query(Firestore firestore) {
+                return firestore.collectionGroup("medicalRecords");
+            }
+
+            @Override
+            String key(DocumentSnapshot doc) {
+                return doc.getReference().getPath();
+            }
+
+            @Override
+            Document toDocument(DocumentSnapshot snapshot) {
+                Document doc = new Document();
+                addKeyword(doc, FIELD_SOURCE, ClinicalTimelineService.SOURCE_MEDICAL_RECORD);
+                doc.add(new StoredField(FIELD_ID, snapshot.getId()));
+                addKeyword(doc, FIELD_PET_ID, snapshot.getReference().getParent().getParent().getId());
+                addKeyword(doc, FIELD_VETERINARIAN_ID, snapshot.getString("veterinarianId"));
+                addDate(doc, snapshot.getDate("date"));
+                addText(doc, "diagnosis", snapshot.getString("diagnosis"));
+                addText(doc, "treatment", snapshot.getString("treatment"));
+                addText(doc, "notes", snapshot.getString("notes"));
+                return doc;
+            }
+        };
+
+        final String origin;
+        final String prefix;
+
+        Feed(String origin, String prefix) {
+            this.origin = origin;
+            this.prefix = prefix;
+        }
+
+        abstract com.google.cloud.firestore.Query query(Firestore firestore);
+
+        abstract String key(DocumentSnapshot doc);
+
+        abstract Document toDocument(DocumentSnapshot snapshot);
+
+        static String archivedId(DocumentSnapshot doc) {
+            String archivedId = doc.getString("archivedId");
+            return archivedId != null ? archivedId : doc.getId();
+        }
+
+        static Document historial(String id, DocumentSnapshot snapshot) {
+            Document doc = new Document();
+            addKeyword(doc, FIELD_SOURCE, ClinicalTimelineService.SOURCE_HISTORIAL);
+            doc.add(new StoredField(FIELD_ID, id));
+            addKeyword(doc, FIELD_PET_ID, snapshot.getString("petId"));
+            addKeyword(doc, FIELD_VETERINARIAN_ID, snapshot.getString("veterinarianId"));
+            addDate(doc, snapshot.getDate("fechaVisita"));
+            addText(doc, "reason", snapshot.getString("motivoConsulta"));
+            addText(doc, "diagnosis", snapshot.getString("diagnostico"));
+            addText(doc, "treatment", snapshot.getString("tratamiento"));
+            addText(doc, "notes", snapshot.getString("observaciones"));
+            return doc;
+        }
+    }
+
+    /**
+     * Origen y versión ({@code updateTime} en microsegundos) de la copia indexada de un documento
+     */
+    private record IndexedVersion(String origin, long version) {
+    }
+}
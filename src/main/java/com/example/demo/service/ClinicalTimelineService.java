@@ -0,0 +1,285 @@
+package com.example.demo.service;
+
+import com.example.demo.dto.TimelineDTOs.*;
+import com.example.demo.exception.CustomExceptions;
+import com.example.demo.model.HistorialClinico;
+import com.example.demo.model.MedicalRecord;
+import com.example.demo.model.ServicioAdicional;
+import com.example.demo.model.ServicioRealizado;
+import com.example.demo.model.TimelineEntry;
+import com.example.demo.util.DocumentMappers;
+import com.google.cloud.firestore.*;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Function;
+
+/**
+ * Línea de tiempo clínica por mascota. Durante la transición, cada alta de registro médico o de
+ * historial clínico se escribe también aquí; el historial completo se lee con una sola consulta
+ * ordenada por fecha de visita y paginada por cursor.
+ */
+@Service
+@Slf4j
+public class ClinicalTimelineService {
+
+    public static final String SOURCE_MEDICAL_RECORD = "MEDICAL_RECORD";
+    public static final String SOURCE_HISTORIAL = "HISTORIAL_CLINICO";
+
+    private static final String TIMELINE = "timeline";
+    private static final int BACKFILL_PAGE_SIZE = 100;
+    private static final int MAX_BATCH_WRITES = 500;
+
+    @Autowired
+    private Firestore firestore;
+
+    @Value("${timeline.page.max-size:100}")
+    private int maxPageSize;
+
+    /**
+     * Agrega a la línea de tiempo un registro médico recién guardado
+     */
+    public void recordMedicalRecord(String petId, MedicalRecord record) {
+        write(petId, names -> fromMedicalRecord(petId, record, names));
+    }
+
+    /**
+     * Agrega (o reemplaza, si se editó) la entrada correspondiente a un historial clínico
+     */
+    public void recordHistorial(HistorialClinico historial) {
+        write(historial.getPetId(), names -> fromHistorial(historial, names));
+    }
+
+    /**
+     * Página de la línea de tiempo, de la visita más reciente a la más antigua
+     */
+    public TimelinePage getTimeline(String petId, String cursor, int size) {
+        int pageSize = Math.max(1, Math.min(size, maxPageSize));
+        try {
+            Query query = timeline(petId)
+                    .orderBy("visitDate", Query.Direction.DESCENDING)
+                    .orderBy(FieldPath.documentId(), Query.Direction.DESCENDING);
+
+            if (cursor != null && !cursor.isBlank()) {
+                Cursor position = Cursor.decode(cursor);
+                query = query.startAfter(position.visitDate(), position.entryId());
+            }
+
+            // Se pide una entrada de más para saber si existe una página siguiente
+            List<QueryDocumentSnapshot> docs = query.limit(pageSize + 1).get().get().getDocuments();
+            boolean hasMore = docs.size() > pageSize;
+            List<TimelineEntry> entries = new ArrayList<>();
+            for (QueryDocumentSnapshot doc : docs.subList(0, Math.min(docs.size(), pageSize))) {
+                TimelineEntry entry = doc.toObject(TimelineEntry.class);
+                entry.setId(doc.getId());
+                entries.add(entry);
+            }
+
+            String nextCursor = null;
+            if (hasMore) {
+                TimelineEntry last = entries.get(entries.size() - 1);
+                nextCursor = new Cursor(last.getVisitDate(), last.getId()).encode();
+            }
+
+            return TimelinePage.builder()
+                    .entries(entries)
+                    .nextCursor(nextCursor)
+                    .hasMore(hasMore)
+                    .build();
+        } catch (InterruptedException | ExecutionException e) {
+            throw new CustomExceptions.ProcessingException("Error fetching clinical timeline: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Migra a la línea de tiempo los registros médicos y los historiales clínicos existentes.
+     * Los IDs de las entradas se derivan del origen, por lo que se puede ejecutar más de una vez.
+     */
+    public BackfillResult backfill() {
+        int pets = 0;
+        int entries = 0;
+        NameResolver names = new NameResolver();
+        try {
+            Query base = firestore.collection("pets")
+                    .orderBy(FieldPath.documentId())
+                    .limit(BACKFILL_PAGE_SIZE);
+            DocumentSnapshot last = null;
+            while (true) {
+                List<QueryDocumentSnapshot> petDocs = (last == null ? base : base.startAfter(last))
+                        .get().get().getDocuments();
+                for (QueryDocumentSnapshot petDoc : petDocs) {
+                    names.petNames.put(petDoc.getId(), petDoc.getString("name"));
+                    entries += backfillPet(petDoc.getId(), names);
+                    pets++;
+                }
+                if (petDocs.size() < BACKFILL_PAGE_SIZE) {
+                    break;
+                }
+                last = petDocs.get(petDocs.size() - 1);
+            }
+            log.info("Clinical timeline backfill finished: {} pets, {} entries", pets, entries);
+            return BackfillResult.builder().pets(pets).entries(entries).build();
+        } catch (InterruptedException | ExecutionException e) {
+            throw new CustomExceptions.ProcessingException("Error backfilling clinical timeline: " + e.getMessage());
+        }
+    }
+
+    private int backfillPet(String petId, NameResolver names) throws ExecutionException, InterruptedException {
+        List<TimelineEntry> entries = new ArrayList<>();
+        for (QueryDocumentSnapshot doc : firestore.collection("pets").document(petId)
+                .collection("medicalRecords").get().get().getDocuments()) {
+            MedicalRecord record = doc.toObject(MedicalRecord.class);
+            if (record.getId() == null) {
+                record.setId(doc.getId());
+            }
+            entries.add(fromMedicalRecord(petId, record, names));
+        }
+        for (QueryDocumentSnapshot doc : firestore.collection("historial_clinico")
+                .whereEqualTo("petId", petId).get().get().getDocuments()) {
+            HistorialClinico historial = DocumentMappers.toHistorialClinico(doc);
+            if (historial.getId() == null) {
+                historial.setId(doc.getId());
+            }
+            entries.add(fromHistorial(historial, names));
+        }
+
+        for (int from = 0; from < entries.size(); from += MAX_BATCH_WRITES) {
+            WriteBatch batch = firestore.batch();
+            for (TimelineEntry entry : entries.subList(from, Math.min(from + MAX_BATCH_WRITES, entries.size()))) {
+                batch.set(timeline(petId).document(entry.getId()), entry);
+            }
+            batch.commit().get();
+        }
+        return entries.size();
+    }
+
+    private void write(String petId, Function<NameResolver, TimelineEntry> builder) {
+        try {
+            TimelineEntry entry = builder.apply(new NameResolver());
+            timeline(petId).document(entry.getId()).set(entry).get();
+        } catch (Exception e) {
+            // El origen ya está guardado: la entrada faltante se recupera con el backfill
+            log.warn("Could not write clinical timeline entry for pet {}: {}", petId, e.getMessage());
+        }
+    }
+
+    private TimelineEntry fromMedicalRecord(String petId, MedicalRecord record, NameResolver names) {
+        Date now = new Date();
+        return TimelineEntry.builder()
+                .id(SOURCE_MEDICAL_RECORD + "_" + record.getId())
+                .petId(petId)
+                .petName(names.petName(petId))
+                .source(SOURCE_MEDICAL_RECORD)
+                .sourceId(record.getId())
+                .visitDate(record.getDate())
+                .veterinarianId(record.getVeterinarianId())
+                .veterinarianName(names.userName(record.getVeterinarianId()))
+                .diagnosis(record.getDiagnosis())
+                .treatment(record.getTreatment())
+                .notes(record.getNotes())
+                .createdAt(now)
+                .updatedAt(now)
+                .build();
+    }
+
+    private TimelineEntry fromHistorial(HistorialClinico historial, NameResolver names) {
+        List<String> serviceNames = new ArrayList<>();
+        if (historial.getServiciosRealizados() != null) {
+            for (ServicioRealizado servicio : historial.getServiciosRealizados()) {
+                serviceNames.add(servicio.getServiceName());
+            }
+        }
+        if (historial.getServiciosAdicionales() != null) {
+            for (ServicioAdicional servicio : historial.getServiciosAdicionales()) {
+                serviceNames.add(servicio.getDescripcion());
+            }
+        }
+        return TimelineEntry.builder()
+                .id(SOURCE_HISTORIAL + "_" + historial.getId())
+                .petId(historial.getPetId())
+                .petName(names.petName(historial.getPetId()))
+                .source(SOURCE_HISTORIAL)
+                .sourceId(historial.getId())
+                .visitDate(historial.getFechaVisita())
+                .veterinarianId(historial.getVeterinarianId())
+                .veterinarianName(names.userName(historial.getVeterinarianId()))
+                .motivoConsulta(historial.getMotivoConsulta())
+                .diagnosis(historial.getDiagnostico())
+                .treatment(historial.getTratamiento())
+                .notes(historial.getObservaciones())
+                .precioTotal(historial.getPrecioTotal())
+                .serviceNames(serviceNames)
+                .createdAt(historial.getFechaCreacion())
+                .updatedAt(historial.getFechaActualizacion())
+                .build();
+    }
+
+    private CollectionReference timeline(String petId) {
+        return firestore.collection("pets").document(petId).collection(TIMELINE);
+    }
+
+    /**
+     * Resuelve nombres de mascotas y veterinarios memorizando cada lectura
+     */
+    private class NameResolver {
+        private final Map<String, String> petNames = new HashMap<>();
+        private final Map<String, String> userNames = new HashMap<>();
+
+        String petName(String petId) {
+            return petNames.computeIfAbsent(petId, id -> readField("pets", id, doc -> doc.getString("name")));
+        }
+
+        String userName(String userId) {
+            if (userId == null) {
+                return null;
+            }
+            return userNames.computeIfAbsent(userId, id -> readField("users", id,
+                    doc -> doc.getString("nombre") + " " + doc.getString("apellido")));
+        }
+
+        private String readField(String collection, String id,
+                                 Function<DocumentSnapshot, String> mapper) {
+            try {
+                DocumentSnapshot doc = firestore.collection(collection).document(id).get().get();
+                return doc.exists() ? mapper.apply(doc) : null;
+            } catch (InterruptedException | ExecutionException e) {
+                log.warn("Could not resolve name for {}/{}: {}", collection, id, e.getMessage());
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Posición de paginación: fecha de visita y ID de la última entrada devuelta
+     */
+    private record Cursor(Date visitDate, String entryId) {
+
+        String encode() {
+            // Sin fecha de visita el primer campo queda vacío: Firestore ordena los nulos aparte
+            String raw = (visitDate != null ? Long.toString(visitDate.getTime()) : "") + ":" + entryId;
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+        }
+
+        /**
+         * El cursor lo envía el cliente: uno mal formado es un error de la petición
+         */
+        static Cursor decode(String token) {
+            try {
+                String raw = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+                int separator = raw.indexOf(':');
+                if (separator < 0 || separator == raw.length() - 1) {
+                    throw new IllegalArgumentException("missing entry id");
+                }
+                String millis = raw.substring(0, separator);
+                return new Cursor(millis.isEmpty() ? null : new Date(Long.parseLong(millis)), raw.substring(separator + 1));
+            } catch (IllegalArgumentException e) {
+                throw new CustomExceptions.BadRequestException("Cursor de línea de tiempo inválido");
+            }
+        }
+    }
+}
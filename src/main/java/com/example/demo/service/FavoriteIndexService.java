@@ -0,0 +1,125 @@
+package com.example.demo.service;
+
+import com.example.demo.exception.CustomExceptions;
+import com.example.demo.util.LruCache;
+import com.google.cloud.firestore.Firestore;
+import com.google.cloud.firestore.QueryDocumentSnapshot;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Caché por usuario de sus favoritos ({@code tipo_item} → ID del documento), cargada con una sola
+ * consulta. Responde en memoria si un item es favorito y se invalida en todas las instancias
+ * cuando el usuario cambia sus favoritos. Guarda como mucho {@code MAX_CACHED_USERS} usuarios y
+ * descarta primero los consultados hace más tiempo.
+ */
+@Service
+public class FavoriteIndexService {
+
+    private static final int MAX_CACHED_USERS = 5000;
+
+    @Autowired
+    private Firestore firestore;
+
+    @Autowired
+    private CacheInvalidationService cacheInvalidationService;
+
+    @Value("${favorites.cache.ttl-ms:300000}")
+    private long ttlMs;
+
+    private final LruCache<String, CachedFavorites> cache = new LruCache<>(MAX_CACHED_USERS);
+
+    // Se incrementa en cada invalidación: una carga que empezó antes no se guarda
+    private final AtomicLong generation = new AtomicLong();
+
+    // Generación de la última invalidación de cada usuario y de la última limpieza completa
+    private final LruCache<String, Long> invalidatedAt = new LruCache<>(MAX_CACHED_USERS);
+    private long clearedAt;
+
+    @PostConstruct
+    public void registerInvalidationHandler() {
+        cacheInvalidationService.onInvalidate(CacheInvalidationService.FAVORITES, this::evict);
+    }
+
+    /**
+     * Indica si el item es favorito del usuario
+     */
+    public boolean isFavorite(String userId, String itemType, String itemId) {
+        return documentId(userId, itemType, itemId) != null;
+    }
+
+    /**
+     * ID del documento del favorito, o {@code null} si el item no es favorito del usuario
+     */
+    public String documentId(String userId, String itemType, String itemId) {
+        return favorites(userId).get(key(itemType, itemId));
+    }
+
+    /**
+     * Descarta la caché del usuario en esta y en las demás instancias
+     */
+    public void invalidate(String userId) {
+        cacheInvalidationService.invalidate(CacheInvalidationService.FAVORITES, userId);
+    }
+
+    private Map<String, String> favorites(String userId) {
+        CachedFavorites cached = cache.get(userId);
+        if (cached != null && cached.expiresAt() > System.currentTimeMillis()) {
+            return cached.documentIds();
+        }
+        long startedAt = generation.get();
+        try {
+            Map<String, String> documentIds = new HashMap<>();
+            for (QueryDocumentSnapshot doc : firestore.collection("favorites")
+                    .whereEqualTo("userId", userId)
+                    .select("itemId", "itemType")
+                    .get().get().getDocuments()) {
+                documentIds.put(key(doc.getString("itemType"), doc.getString("itemId")), doc.getId());
+            }
+            synchronized (cache) {
+                if (isCurrent(userId, startedAt)) {
+                    cache.put(userId, new CachedFavorites(Map.copyOf(documentIds), System.currentTimeMillis() + ttlMs));
+                }
+            }
+            return documentIds;
+        } catch (InterruptedException | ExecutionException e) {
+            throw new CustomExceptions.ProcessingException("Error loading favorites: " + e.getMessage());
+        }
+    }
+
+    private void evict(String userId) {
+        synchronized (cache) {
+            long current = generation.incrementAndGet();
+            if (userId == null) {
+                cache.clear();
+                invalidatedAt.clear();
+                clearedAt = current;
+            } else {
+                cache.remove(userId);
+                invalidatedAt.put(userId, current);
+            }
+        }
+    }
+
+    /**
+     * Indica si el usuario no se invalidó desde la generación {@code startedAt}
+     */
+    private boolean isCurrent(String userId, long startedAt) {
+        Long userInvalidatedAt = invalidatedAt.get(userId);
+        return clearedAt <= startedAt && (userInvalidatedAt == null || userInvalidatedAt <= startedAt);
+    }
+
+    private static String key(String itemType, String itemId) {
+        return itemType + "_" + itemId;
+    }
+
+    private record CachedFavorites(Map<String, String> documentIds, long expiresAt) {
+    }
+}
@@ -8,6 +8,7 @@ import com.example.demo.model.Favorite;
 import com.example.demo.model.InventoryItem;
 import com.example.demo.model.ItemType;
 import com.example.demo.model.ServiceVeterinary;
+import com.example.demo.util.DocumentMappers;
 import com.google.cloud.firestore.*;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.core.context.SecurityContextHolder;
@@ -25,6 +26,9 @@ public class FavoriteService {
     @Autowired
     private InventoryService inventoryService;
 
+    @Autowired
+    private FavoriteIndexService favoriteIndexService;
+
     /**
      * Obtiene todos los favoritos del veterinario actual
      */
@@ -38,16 +42,30 @@ public class FavoriteService {
                     .get()
                     .get();
 
-            List<FavoriteResponse> favorites = new ArrayList<>();
-
+            List<Favorite> userFavorites = new ArrayList<>();
+            List<DocumentReference> itemRefs = new ArrayList<>();
             for (DocumentSnapshot doc : snapshot.getDocuments()) {
                 Favorite favorite = doc.toObject(Favorite.class);
                 if (favorite != null) {
-                    // Obtener información adicional según el tipo de item
-                    FavoriteResponse response = enrichFavoriteResponse(favorite);
-                    if (response != null) {
-                        favorites.add(response);
-                    }
+                    userFavorites.add(favorite);
+                    itemRefs.add(itemReference(favorite));
+                }
+            }
+
+            // Los items referenciados se leen todos juntos con una sola llamada
+            Map<String, DocumentSnapshot> items = new HashMap<>();
+            if (!itemRefs.isEmpty()) {
+                for (DocumentSnapshot itemDoc : firestore.getAll(itemRefs.toArray(new DocumentReference[0])).get()) {
+                    items.put(itemDoc.getReference().getPath(), itemDoc);
+                }
+            }
+
+            List<FavoriteResponse> favorites = new ArrayList<>();
+            for (int i = 0; i < userFavorites.size(); i++) {
+                FavoriteResponse response = enrichFavoriteResponse(userFavorites.get(i),
+                        items.get(itemRefs.get(i).getPath()));
+                if (response != null) {
+                    favorites.add(response);
                 }
             }
 
@@ -71,37 +89,52 @@ public class FavoriteService {
                 throw new CustomExceptions.NotFoundException("Item not found");
             }
 
-            // Buscar si ya existe el favorito
-            QuerySnapshot existingFavorite = firestore.collection("favorites")
+            // El ID se deriva del usuario, el tipo y el item: un favorito solo puede existir una vez
+            DocumentReference favoriteRef = firestore.collection("favorites")
+                    .document(favoriteId(userId, itemType.name(), itemId));
+            // Favoritos creados antes de usar IDs deterministas: se localizan por sus campos
+            Query legacyQuery = firestore.collection("favorites")
                     .whereEqualTo("userId", userId)
-                    .whereEqualTo("itemId", itemId)
                     .whereEqualTo("itemType", itemType.name())
-                    .get()
-                    .get();
+                    .whereEqualTo("itemId", itemId);
+
+            // Lectura y escritura en una transacción para que dos toggles simultáneos no dupliquen el
+            // favorito; la consulta también se lee en ella, así que un favorito antiguo creado o borrado
+            // entretanto hace reintentar la transacción
+            Favorite favorite = firestore.runTransaction(transaction -> {
+                DocumentSnapshot current = transaction.get(favoriteRef).get();
+                List<QueryDocumentSnapshot> legacy = transaction.get(legacyQuery).get().getDocuments();
+
+                if (current.exists() || !legacy.isEmpty()) {
+                    if (current.exists()) {
+                        transaction.delete(favoriteRef);
+                    }
+                    for (QueryDocumentSnapshot doc : legacy) {
+                        if (!doc.getId().equals(favoriteRef.getId())) {
+                            transaction.delete(doc.getReference());
+                        }
+                    }
+                    return null;
+                }
 
-            // Si existe, eliminarlo
-            if (!existingFavorite.isEmpty()) {
-                existingFavorite.getDocuments().get(0).getReference().delete().get();
+                Favorite created = Favorite.builder()
+                        .id(favoriteRef.getId())
+                        .userId(userId)
+                        .itemId(itemId)
+                        .itemType(itemType.name())
+                        .createdAt(new Date())
+                        .build();
+                transaction.set(favoriteRef, created);
+                return created;
+            }).get();
+            favoriteIndexService.invalidate(userId);
+
+            if (favorite == null) {
                 return null; // Indicar que se eliminó el favorito
             }
 
-            // Si no existe, crearlo
-            Favorite favorite = Favorite.builder()
-                    .id(UUID.randomUUID().toString())
-                    .userId(userId)
-                    .itemId(itemId)
-                    .itemType(itemType.name())
-                    .createdAt(new Date())
-                    .build();
-
-            // Guardar en Firestore
-            firestore.collection("favorites")
-                    .document(favorite.getId())
-                    .set(favorite)
-                    .get();
-
             // Retornar respuesta enriquecida
-            return enrichFavoriteResponse(favorite);
+            return enrichFavoriteResponse(favorite, itemReference(favorite).get().get());
         } catch (Exception e) {
             throw new CustomExceptions.ProcessingException(
                     "Error toggling favorite: " + e.getMessage());
@@ -113,77 +146,64 @@ public class FavoriteService {
      */
     public boolean isFavorite(String itemId, String itemType) {
         String userId = getCurrentUserUid();
-        try {
-            QuerySnapshot snapshot = firestore.collection("favorites")
-                    .whereEqualTo("userId", userId)
-                    .whereEqualTo("itemId", itemId)
-                    .whereEqualTo("itemType", itemType)
-                    .get()
-                    .get();
-
-            return !snapshot.isEmpty();
-        } catch (Exception e) {
-            throw new CustomExceptions.ProcessingException(
-                    "Error checking favorite status: " + e.getMessage());
-        }
+        return favoriteIndexService.isFavorite(userId, itemType, itemId);
     }
 
     /**
-     * Enriquece la respuesta del favorito con información del item
+     * Enriquece la respuesta del favorito con el documento ya leído del item
      */
-    private FavoriteResponse enrichFavoriteResponse(Favorite favorite) {
-        try {
-            // Usamos el enum ItemType para mayor seguridad
-            if (ItemType.VETERINARY_SERVICE.name().equals(favorite.getItemType())) {
-                // Obtener de la colección veterinary_services
-                DocumentSnapshot serviceDoc = firestore.collection("veterinary_services")
-                        .document(favorite.getItemId())
-                        .get()
-                        .get();
-
-                if (serviceDoc.exists()) {
-                    ServiceVeterinary service = serviceDoc.toObject(ServiceVeterinary.class);
-                    return FavoriteResponse.builder()
-                            .id(favorite.getId())
-                            .itemId(favorite.getItemId())
-                            .itemType(favorite.getItemType())
-                            .itemName(service.getName())
-                            .price(service.getPrice())
-                            .createdAt(favorite.getCreatedAt())
-                            .build();
-                }
-
-            } else if (ItemType.INVENTORY.name().equals(favorite.getItemType())) {
-                // Obtener de la colección inventory
-                DocumentSnapshot inventoryDoc = firestore.collection("inventory")
-                        .document(favorite.getItemId())
-                        .get()
-                        .get();
-
-                if (inventoryDoc.exists()) {
-                    InventoryItem item = inventoryDoc.toObject(InventoryItem.class);
-                    return FavoriteResponse.builder()
-                            .id(favorite.getId())
-                            .itemId(favorite.getItemId())
-                            .itemType(favorite.getItemType())
-                            .itemName(item.getName())
-                            .price(item.getPrice())
-                            .createdAt(favorite.getCreatedAt())
-                            // Campos adicionales específicos de inventario
-                            .quantity(item.getQuantity())
-                            .minThreshold(item.getMinThreshold())
-                            .status(calculateStatus(item))
-                            .build();
-                }
-            }
+    private FavoriteResponse enrichFavoriteResponse(Favorite favorite, DocumentSnapshot itemDoc) {
+        if (itemDoc == null || !itemDoc.exists()) {
+            return null;
+        }
+        // Usamos el enum ItemType para mayor seguridad
+        if (ItemType.VETERINARY_SERVICE.name().equals(favorite.getItemType())) {
+            ServiceVeterinary service = itemDoc.toObject(ServiceVeterinary.class);
+            return FavoriteResponse.builder()
+                    .id(favorite.getId())
+                    .itemId(favorite.getItemId())
+                    .itemType(favorite.getItemType())
+                    .itemName(service.getName())
+                    .price(service.getPrice())
+                    .createdAt(favorite.getCreatedAt())
+                    .build();
+        }
 
+        if (!ItemType.INVENTORY.name().equals(favorite.getItemType())) {
             return null;
-        } catch (Exception e) {
-            throw new CustomExceptions.ProcessingException(
-                    "Error enriching favorite response: " + e.getMessage());
         }
+
+        InventoryItem item = DocumentMappers.toInventoryItem(itemDoc);
+        return FavoriteResponse.builder()
+                .id(favorite.getId())
+                .itemId(favorite.getItemId())
+                .itemType(favorite.getItemType())
+                .itemName(item.getName())
+                .price(item.getPrice())
+                .createdAt(favorite.getCreatedAt())
+                // Campos adicionales específicos de inventario
+                .quantity(item.getQuantity())
+                .minThreshold(item.getMinThreshold())
+                .status(calculateStatus(item))
+                .build();
+    }
+
+    /**
+     * Documento del item al que apunta el favorito
+     */
+    private DocumentReference itemReference(Favorite favorite) {
+        String collection = ItemType.VETERINARY_SERVICE.name().equals(favorite.getItemType())
+                ? "veterinary_services"
+                : "inventory";
+        return firestore.collection(collection).document(favorite.getItemId());
     }
 
+    /**
+     * ID determinista de un favorito
+     */
+    static String favoriteId(String userId, String itemType, String itemId) {
+        return userId + "_" + itemType + "_" + itemId;
+    }
 
     private String getCurrentUserUid() {
         return SecurityContextHolder.getContext().getAuthentication().getName();
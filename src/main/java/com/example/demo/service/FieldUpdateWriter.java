@@ -0,0 +1,216 @@
+package com.example.demo.service;
+
+import com.example.demo.exception.CustomExceptions;
+import com.google.api.core.ApiFuture;
+import com.google.api.core.ApiFutureCallback;
+import com.google.api.core.ApiFutures;
+import com.google.api.core.SettableApiFuture;
+import com.google.api.gax.rpc.ApiException;
+import com.google.api.gax.rpc.StatusCode;
+import com.google.cloud.Timestamp;
+import com.google.cloud.firestore.DocumentReference;
+import com.google.cloud.firestore.FirestoreException;
+import com.google.cloud.firestore.Precondition;
+import com.google.cloud.firestore.WriteResult;
+import com.google.common.util.concurrent.MoreExecutors;
+import io.grpc.Status;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Actualizaciones parciales de documentos: escribe solo los campos indicados con {@code update} y,
+ * si se pasa la {@code updateTime} leída, exige que el documento no haya cambiado desde entonces
+ * (concurrencia optimista, sin transacción).
+ *
+ * <p>Las actualizaciones de un mismo documento que llegan dentro de la ventana configurada se
+ * combinan en una sola escritura si tocan campos distintos; todas las llamadas reciben el resultado
+ * de esa escritura. Dos actualizaciones del mismo campo nunca se combinan: con la misma versión
+ * esperada, la segunda se envía aparte y falla su precondición como lo haría sin la ventana. Las
+ * escrituras de un mismo documento se envían en orden, una detrás de otra.
+ */
+@Service
+@Slf4j
+public class FieldUpdateWriter {
+
+    @Value("${field-updates.coalesce-window-ms:5}")
+    private long coalesceWindowMs;
+
+    // Actualizaciones aún abiertas a combinarse, por ruta del documento
+    private final Map<String, PendingUpdate> pending = new HashMap<>();
+    // Última escritura enviada de cada documento, para encadenar la siguiente
+    private final Map<String, ApiFuture<WriteResult>> inFlight = new ConcurrentHashMap<>();
+
+    private ScheduledExecutorService flusher;
+
+    @PostConstruct
+    public void init() {
+        flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "field-updates");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Programa la actualización de los campos indicados. {@code expectedUpdateTime} es opcional; solo
+     * se combinan actualizaciones que esperan la misma versión del documento y no comparten campos.
+     */
+    public ApiFuture<WriteResult> update(DocumentReference ref, Map<String, Object> fields,
+                                         Timestamp expectedUpdateTime) {
+        String path = ref.getPath();
+        synchronized (pending) {
+            if (coalesceWindowMs <= 0) {
+                return dispatch(new PendingUpdate(ref, expectedUpdateTime, fields));
+            }
+            PendingUpdate current = pending.get(path);
+            if (current != null && (!Objects.equals(current.expectedUpdateTime, expectedUpdateTime)
+                    || conflicts(current.fields.keySet(), fields.keySet()))) {
+                // No se pueden combinar: lo acumulado se envía y esta actualización abre otra ventana
+                pending.remove(path);
+                dispatch(current);
+                current = null;
+            }
+            if (current == null) {
+                PendingUpdate created = new PendingUpdate(ref, expectedUpdateTime, new LinkedHashMap<>());
+                pending.put(path, created);
+                flusher.schedule(() -> flush(path, created), coalesceWindowMs, TimeUnit.MILLISECONDS);
+                current = created;
+            }
+            current.fields.putAll(fields);
+            return current.result;
+        }
+    }
+
+    /**
+     * Espera una escritura y traduce los rechazos de Firestore: una precondición incumplida es un
+     * conflicto (409) y un documento inexistente, un {@code NotFoundException}
+     */
+    public static <T> T await(ApiFuture<T> future) throws ExecutionException, InterruptedException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            if (hasStatus(e, StatusCode.Code.FAILED_PRECONDITION)) {
+                throw new CustomExceptions.ConflictException(
+                        "El documento fue modificado por otra operación; vuelva a intentarlo");
+            }
+            if (hasStatus(e, StatusCode.Code.NOT_FOUND)) {
+                throw new CustomExceptions.NotFoundException("Document not found");
+            }
+            throw e;
+        }
+    }
+
+    private void flush(String path, PendingUpdate update) {
+        synchronized (pending) {
+            // Si ya se envió por no poder combinarse con una actualización posterior, no queda nada que hacer
+            if (!pending.remove(path, update)) {
+                return;
+            }
+            dispatch(update);
+        }
+    }
+
+    /**
+     * Envía una actualización detrás de la anterior del mismo documento; se llama con el bloqueo tomado
+     */
+    private ApiFuture<WriteResult> dispatch(PendingUpdate update) {
+        String path = update.ref.getPath();
+        ApiFuture<WriteResult> previous = inFlight.get(path);
+        ApiFuture<WriteResult> write;
+        if (previous == null || previous.isDone()) {
+            write = send(update);
+        } else {
+            // El resultado de la escritura anterior no importa aquí: ya se entregó a sus llamadores
+            ApiFuture<WriteResult> settled = ApiFutures.catching(previous, Throwable.class, error -> null,
+                    MoreExecutors.directExecutor());
+            write = ApiFutures.transformAsync(settled, ignored -> send(update), MoreExecutors.directExecutor());
+        }
+        inFlight.put(path, write);
+
+        ApiFutures.addCallback(write, new ApiFutureCallback<>() {
+            @Override
+            public void onSuccess(WriteResult result) {
+                inFlight.remove(path, write);
+                update.result.set(result);
+            }
+
+            @Override
+            public void onFailure(Throwable error) {
+                inFlight.remove(path, write);
+                update.result.setException(error);
+            }
+        }, MoreExecutors.directExecutor());
+        return update.result;
+    }
+
+    private static ApiFuture<WriteResult> send(PendingUpdate update) {
+        return update.expectedUpdateTime != null
+                ? update.ref.update(update.fields, Precondition.updatedAt(update.expectedUpdateTime))
+                : update.ref.update(update.fields);
+    }
+
+    /**
+     * Actualizaciones del mismo campo, o de un campo y uno de sus subcampos, van en escrituras
+     * separadas: combinadas, la segunda pisaría a la primera sin pasar por la versión esperada
+     */
+    private static boolean conflicts(Set<String> current, Set<String> incoming) {
+        for (String a : current) {
+            for (String b : incoming) {
+                if (a.equals(b) || a.startsWith(b + ".") || b.startsWith(a + ".")) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static boolean hasStatus(Throwable error, StatusCode.Code code) {
+        for (Throwable cause = error; cause != null; cause = cause.getCause()) {
+            if (cause instanceof ApiException api && api.getStatusCode().getCode() == code) {
+                return true;
+            }
+            if (cause instanceof FirestoreException firestore && firestore.getStatus() != null
+                    && firestore.getStatus().getCode() == Status.Code.valueOf(code.name())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        // Lo que siga pendiente se envía antes de cerrar
+        synchronized (pending) {
+            List<PendingUpdate> remaining = new ArrayList<>(pending.values());
+            pending.clear();
+            remaining.forEach(this::dispatch);
+        }
+        flusher.shutdownNow();
+    }
+
+    /**
+     * Campos acumulados de un documento, versión esperada y resultado compartido por los llamadores
+     */
+    private static final class PendingUpdate {
+        private final DocumentReference ref;
+        private final Timestamp expectedUpdateTime;
+        private final Map<String, Object> fields;
+        private final SettableApiFuture<WriteResult> result = SettableApiFuture.create();
+
+        PendingUpdate(DocumentReference ref, Timestamp expectedUpdateTime, Map<String, Object> fields) {
+            this.ref = ref;
+            this.expectedUpdateTime = expectedUpdateTime;
+            this.fields = fields;
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package com.example.demo.service;
+
+import com.google.cloud.firestore.*;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Transporte de invalidaciones basado en la colección {@code _cache_events}: cada nodo escribe sus
+ * eventos y escucha los nuevos documentos. Los eventos llevan {@code expiresAt} para que una política
+ * TTL de Firestore los elimine.
+ */
+@Service
+@Slf4j
+@ConditionalOnProperty(name = "cache.events.transport", havingValue = "firestore", matchIfMissing = true)
+public class FirestoreCacheEventTransport implements CacheEventTransport {
+
+    static final String COLLECTION = "_cache_events";
+
+    @Autowired
+    private Firestore firestore;
+
+    @Value("${cache.events.retention-ms:3600000}")
+    private long retentionMs;
+
+    @Value("${cache.events.reconnect-delay-ms:5000}")
+    private long reconnectDelayMs;
+
+    private final List<Consumer<CacheEvent>> listeners = new CopyOnWriteArrayList<>();
+    private final ScheduledExecutorService reconnector = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "cache-events-reconnect");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private ListenerRegistration registration;
+
+    @Override
+    public void publish(CacheEvent event) {
+        Map<String, Object> data = new HashMap<>();
+        data.put("collection", event.collection());
+        data.put("documentId", event.documentId());
+        data.put("origin", event.origin());
+        data.put("createdAt", event.createdAt());
+        data.put("expiresAt", new Date(event.createdAt().getTime() + retentionMs));
+        // No se espera la escritura: el nodo de origen ya aplicó la invalidación localmente
+        firestore.collection(COLLECTION).add(data);
+    }
+
+    @Override
+    public synchronized void subscribe(Consumer<CacheEvent> listener) {
+        listeners.add(listener);
+        if (registration == null) {
+            listen(new Date());
+        }
+    }
+
+    private synchronized void listen(Date since) {
+        registration = firestore.collection(COLLECTION)
+                .whereGreaterThanOrEqualTo("createdAt", since)
+                .addSnapshotListener((snapshot, error) -> {
+                    if (error != null) {
+                        onListenerError(error);
+                        return;
+                    }
+                    if (snapshot == null) {
+                        return;
+                    }
+                    for (DocumentChange change : snapshot.getDocumentChanges()) {
+                        if (change.getType() != DocumentChange.Type.ADDED) {
+                            continue;
+                        }
+                        QueryDocumentSnapshot doc = change.getDocument();
+                        deliver(new CacheEvent(doc.getString("collection"), doc.getString("documentId"),
+                                doc.getString("origin"), doc.getDate("createdAt")));
+                    }
+                });
+    }
+
+    private synchronized void onListenerError(FirestoreException error) {
+        log.error("Cache events listener failed, invalidating local caches and reconnecting: ", error);
+        if (registration != null) {
+            registration.remove();
+        }
+        Date since = new Date();
+        // Mientras el listener estuvo caído se pudieron perder eventos: se invalida todo
+        deliver(new CacheEvent(null, null, null, since));
+        reconnector.schedule(() -> listen(since), reconnectDelayMs, TimeUnit.MILLISECONDS);
+    }
+
+    private void deliver(CacheEvent event) {
+        for (Consumer<CacheEvent> listener : listeners) {
+            try {
+                listener.accept(event);
+            } catch (Exception e) {
+                log.warn("Cache event listener failed: {}", e.getMessage());
+            }
+        }
+    }
+
+    @PreDestroy
+    public synchronized void shutdown() {
+        if (registration != null) {
+            registration.remove();
+        }
+        reconnector.shutdownNow();
+    }
+}
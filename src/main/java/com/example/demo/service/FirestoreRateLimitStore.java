@@ -0,0 +1,74 @@
+package com.example.demo.service;
+
+import com.google.cloud.firestore.DocumentReference;
+import com.google.cloud.firestore.DocumentSnapshot;
+import com.google.cloud.firestore.Firestore;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.Map;
+
+/**
+ * Cubetas de tokens compartidas en la colección {@code _rate_limits}, actualizadas en una
+ * transacción por petición. Los documentos inactivos los elimina la política TTL sobre {@code expiresAt}.
+ */
+@Component
+@Slf4j
+@ConditionalOnProperty(name = "rate-limit.shared-store", havingValue = "firestore")
+public class FirestoreRateLimitStore implements RateLimitStore {
+
+    static final String COLLECTION = "_rate_limits";
+
+    @Autowired
+    private Firestore firestore;
+
+    @Override
+    public long tryConsume(String key, RateLimiterService.Limit limit) {
+        DocumentReference ref = firestore.collection(COLLECTION).document(hash(key));
+        try {
+            return firestore.runTransaction(transaction -> {
+                DocumentSnapshot bucket = transaction.get(ref).get();
+                long now = System.currentTimeMillis();
+                double tokens = limit.capacity();
+                if (bucket.exists()) {
+                    Double stored = bucket.getDouble("tokens");
+                    Long updatedAt = bucket.getLong("updatedAt");
+                    if (stored != null && updatedAt != null) {
+                        tokens = Math.min(limit.capacity(),
+                                stored + Math.max(0, now - updatedAt) * limit.tokensPerMilli());
+                    }
+                }
+                if (tokens < 1) {
+                    return (long) Math.ceil((1 - tokens) / limit.tokensPerMilli());
+                }
+
+                Map<String, Object> data = new HashMap<>();
+                data.put("tokens", tokens - 1);
+                data.put("updatedAt", now);
+                data.put("expiresAt", new Date(now + limit.fullRefillMillis()));
+                transaction.set(ref, data);
+                return 0L;
+            }).get();
+        } catch (Exception e) {
+            // Sin el almacén compartido se aplican solo los límites locales
+            log.warn("Shared rate limit store unavailable: {}", e.getMessage());
+            return 0;
+        }
+    }
+
+    private static String hash(String key) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(key.getBytes(StandardCharsets.UTF_8)));
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -9,6 +9,7 @@ import com.example.demo.exception.CustomExceptions;
 import com.example.demo.model.HistorialClinico;
 import com.example.demo.model.ServicioAdicional;
 import com.example.demo.model.ServicioRealizado;
+import com.example.demo.util.DocumentMappers;
 import com.google.cloud.firestore.*;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.core.context.SecurityContextHolder;
@@ -33,6 +34,15 @@ public class HistorialClinicoService {
     @Autowired
     private ServiceVeterinaryService serviceVeterinaryService;
 
+    @Autowired
+    private ClinicalTimelineService clinicalTimelineService;
+
+    @Autowired
+    private ArchivalService archivalService;
+
+    @Autowired
+    private ServiceReportCache serviceReportCache;
+
     public HistorialClinicoResponse createHistorial(String petId, CreateHistorialRequest request) {
         String veterinarianId = SecurityContextHolder.getContext().getAuthentication().getName();
 
@@ -89,7 +99,7 @@ public class HistorialClinicoService {
 
             // Crear el historial clínico
             HistorialClinico historial = HistorialClinico.builder()
-                    .id(UUID.randomUUID().toString())
+                    .id(IdempotencyService.newId("historial"))
                     .petId(petId)
                     .veterinarianId(veterinarianId)
                     .fechaVisita(new Date())
@@ -110,6 +120,8 @@ public class HistorialClinicoService {
                     .document(historial.getId())
                     .set(historial)
                     .get();
+            clinicalTimelineService.recordHistorial(historial);
+            serviceReportCache.historialWritten(historial.getFechaVisita());
 
             return enrichHistorialResponse(historial);
         } catch (Exception e) {
@@ -127,7 +139,7 @@ public class HistorialClinicoService {
                 throw new CustomExceptions.NotFoundException("Historial clínico no encontrado");
             }
 
-            HistorialClinico historial = historialDoc.toObject(HistorialClinico.class);
+            HistorialClinico historial = DocumentMappers.toHistorialClinico(historialDoc);
 
             // Actualizar campos básicos
             historial.setMotivoConsulta(request.getMotivoConsulta());
@@ -187,6 +199,8 @@ public class HistorialClinicoService {
 
             // Guardar cambios
             historialRef.set(historial).get();
+            clinicalTimelineService.recordHistorial(historial);
+            serviceReportCache.historialWritten(historial.getFechaVisita());
 
             return enrichHistorialResponse(historial);
         } catch (Exception e) {
@@ -194,7 +208,7 @@ public class HistorialClinicoService {
         }
     }
 
-    public List<HistorialClinicoResponse> getHistorialByPetId(String petId) {
+    public List<HistorialClinicoResponse> getHistorialByPetId(String petId, boolean summary) {
         try {
             QuerySnapshot querySnapshot = firestore.collection("historial_clinico")
                     .whereEqualTo("petId", petId)
@@ -202,10 +216,26 @@ public class HistorialClinicoService {
                     .get()
                     .get();
 
+            // Todos los registros son de la misma mascota: las consultas de usuarios se reutilizan
+            Map<String, UserDTOs.UserResponse> users = new HashMap<>();
+            Map<String, PetDTOs.PetResponse> pets = new HashMap<>();
             List<HistorialClinicoResponse> historialList = new ArrayList<>();
+            Set<String> seen = new HashSet<>();
             for (DocumentSnapshot doc : querySnapshot.getDocuments()) {
-                HistorialClinico historial = doc.toObject(HistorialClinico.class);
-                historialList.add(enrichHistorialResponse(historial));
+                HistorialClinico historial = DocumentMappers.toHistorialClinico(doc);
+                seen.add(doc.getId());
+                historialList.add(enrichHistorialResponse(historial, summary, users, pets));
+            }
+
+            // Las visitas archivadas son siempre anteriores a las vivas: van al final, también en orden descendente
+            List<HistorialClinico> archived = archivalService.findArchivedHistoriales(null, null,
+                    query -> query.whereEqualTo("petId", petId));
+            archived.sort(Comparator.comparing(HistorialClinico::getFechaVisita,
+                    Comparator.nullsLast(Comparator.reverseOrder())));
+            for (HistorialClinico historial : archived) {
+                if (seen.add(historial.getId())) {
+                    historialList.add(enrichHistorialResponse(historial, summary, users, pets));
+                }
             }
 
             return historialList;
@@ -221,11 +251,13 @@ public class HistorialClinicoService {
                     .get()
                     .get();
 
-            if (!doc.exists()) {
+            HistorialClinico historial = doc.exists()
+                    ? DocumentMappers.toHistorialClinico(doc)
+                    : archivalService.findArchivedHistorial(historialId);
+            if (historial == null) {
                 throw new CustomExceptions.NotFoundException("Historial clínico no encontrado");
             }
 
-            HistorialClinico historial = doc.toObject(HistorialClinico.class);
             return enrichHistorialResponse(historial);
         } catch (Exception e) {
             throw new CustomExceptions.ProcessingException("Error fetching historial clinico: " + e.getMessage());
@@ -233,15 +265,56 @@ public class HistorialClinicoService {
     }
 
     private HistorialClinicoResponse enrichHistorialResponse(HistorialClinico historial) {
+        return enrichHistorialResponse(historial, false, new HashMap<>(), new HashMap<>());
+    }
+
+    /**
+     * Construye la respuesta del historial. En la vista resumida se omiten los servicios y el dueño.
+     */
+    private HistorialClinicoResponse enrichHistorialResponse(HistorialClinico historial, boolean summary,
+                                                             Map<String, UserDTOs.UserResponse> users,
+                                                             Map<String, PetDTOs.PetResponse> pets) {
         try {
             // Obtener información del veterinario
-            UserDTOs.UserResponse veterinarian = userService.getUserById(historial.getVeterinarianId());
+            UserDTOs.UserResponse veterinarian = users.get(historial.getVeterinarianId());
+            if (veterinarian == null) {
+                veterinarian = userService.getUserById(historial.getVeterinarianId());
+                users.put(historial.getVeterinarianId(), veterinarian);
+            }
 
             // Obtener información de la mascota
-            PetDTOs.PetResponse pet = petService.getPetById(historial.getPetId());
+            PetDTOs.PetResponse pet = pets.get(historial.getPetId());
+            if (pet == null) {
+                pet = petService.getPetById(historial.getPetId());
+                pets.put(historial.getPetId(), pet);
+            }
+
+            HistorialClinicoResponse.HistorialClinicoResponseBuilder builder = HistorialClinicoResponse.builder()
+                    .id(historial.getId())
+                    .petId(historial.getPetId())
+                    .veterinarianId(historial.getVeterinarianId())
+                    .veterinarianName(veterinarian.getNombre() + " " + veterinarian.getApellido())
+                    .petName(pet.getName())
+                    .fechaVisita(historial.getFechaVisita())
+                    .motivoConsulta(historial.getMotivoConsulta())
+                    .diagnostico(historial.getDiagnostico())
+                    .tratamiento(historial.getTratamiento())
+                    .observaciones(historial.getObservaciones())
+                    .precioTotal(historial.getPrecioTotal())
+                    .fechaCreacion(historial.getFechaCreacion())
+                    .fechaActualizacion(historial.getFechaActualizacion())
+                    .estado(historial.getEstado());
+
+            if (summary) {
+                return builder.build();
+            }
 
             // Obtener información del dueño
-            UserDTOs.UserResponse owner = userService.getUserById(pet.getOwnerId());
+            UserDTOs.UserResponse owner = users.get(pet.getOwnerId());
+            if (owner == null) {
+                owner = userService.getUserById(pet.getOwnerId());
+                users.put(pet.getOwnerId(), owner);
+            }
 
             // Convertir servicios realizados
             List<ServicioRealizadoResponse> serviciosRealizadosResponse =
@@ -265,27 +338,13 @@ public class HistorialClinicoService {
                                     .build())
                             .collect(Collectors.toList());
 
-            return HistorialClinicoResponse.builder()
-                    .id(historial.getId())
-                    .petId(historial.getPetId())
-                    .veterinarianId(historial.getVeterinarianId())
-                    .veterinarianName(veterinarian.getNombre() + " " + veterinarian.getApellido())
-                    .petName(pet.getName())
+            return builder
                     .ownerName(owner.getNombre() + " " + owner.getApellido())
-                    .fechaVisita(historial.getFechaVisita())
-                    .motivoConsulta(historial.getMotivoConsulta())
-                    .diagnostico(historial.getDiagnostico())
-                    .tratamiento(historial.getTratamiento())
-                    .observaciones(historial.getObservaciones())
                     .serviciosRealizados(serviciosRealizadosResponse)
                     .serviciosAdicionales(serviciosAdicionalesResponse)
-                    .precioTotal(historial.getPrecioTotal())
-                    .fechaCreacion(historial.getFechaCreacion())
-                    .fechaActualizacion(historial.getFechaActualizacion())
-                    .estado(historial.getEstado())
                     .build();
         } catch (Exception e) {
             throw new CustomExceptions.ProcessingException("Error enriching historial response: " + e.getMessage());
         }
     }
-}
\ No newline at end of file
+}
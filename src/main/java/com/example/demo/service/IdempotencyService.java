@@ -0,0 +1,290 @@
+package com.example.demo.service;
+
+import com.example.demo.exception.CustomExceptions;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.cloud.firestore.DocumentReference;
+import com.google.cloud.firestore.DocumentSnapshot;
+import com.google.cloud.firestore.Firestore;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Deduplicación de escrituras reintentadas por el cliente con la cabecera {@code Idempotency-Key}.
+ * La primera petición con una clave reserva el registro en {@code _idempotency_keys} y guarda su
+ * respuesta; las repeticiones dentro del TTL devuelven esa respuesta sin volver a escribir ni a
+ * enviar correos. Los registros vencidos se ignoran y los elimina la política TTL de Firestore
+ * sobre {@code expiresAt}.
+ * <p>
+ * Cada reserva lleva un token de propietario ({@code owner}). Mientras la operación se ejecuta, el
+ * propietario renueva {@code lockedUntil}, de modo que otra petición solo puede tomar la clave si el
+ * propietario dejó de renovarla (proceso caído). Completar o liberar la clave comprueba el token
+ * dentro de una transacción, así que un propietario desplazado no pisa el registro del nuevo.
+ */
+@Service
+@Slf4j
+public class IdempotencyService {
+
+    public static final String HEADER = "Idempotency-Key";
+
+    static final String COLLECTION = "_idempotency_keys";
+
+    private static final String IN_PROGRESS = "IN_PROGRESS";
+    private static final String COMPLETED = "COMPLETED";
+    private static final int MAX_KEY_LENGTH = 255;
+    private static final int RENEWALS_PER_LOCK = 3;
+
+    // Clave de la operación en curso en este hilo, para derivar de ella los IDs de los documentos creados
+    private static final ThreadLocal<String> CURRENT_KEY = new ThreadLocal<>();
+
+    @Autowired
+    private Firestore firestore;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Value("${idempotency.ttl-hours:24}")
+    private long ttlHours;
+
+    @Value("${idempotency.lock-ms:30000}")
+    private long lockMs;
+
+    private final ScheduledExecutorService renewer = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "idempotency-lock-renewer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Ejecuta la operación una sola vez por clave. Sin clave la operación se ejecuta normalmente.
+     *
+     * @param scope        operación (p. ej. "appointments.create"); la misma clave puede usarse en operaciones distintas
+     * @param key          valor de la cabecera {@code Idempotency-Key}
+     * @param request      cuerpo de la petición, para rechazar la reutilización de una clave con otros datos
+     * @param responseType tipo de la respuesta guardada
+     */
+    public <T> T execute(String scope, String key, Object request, Class<T> responseType, Supplier<T> action) {
+        if (key == null || key.isBlank()) {
+            return action.get();
+        }
+        if (key.length() > MAX_KEY_LENGTH) {
+            throw new IllegalArgumentException("La cabecera " + HEADER + " no puede superar " + MAX_KEY_LENGTH + " caracteres");
+        }
+
+        String scopedKey = scope + ":" + currentUserId() + ":" + key;
+        String fingerprint = hash(toJson(request));
+        DocumentReference ref = firestore.collection(COLLECTION).document(hash(scopedKey));
+
+        String owner = UUID.randomUUID().toString();
+        DocumentSnapshot previous = reserve(ref, scope, fingerprint, owner);
+        if (previous != null) {
+            log.debug("Replaying stored response for idempotent {} request", scope);
+            String response = previous.getString("response");
+            return response != null ? fromJson(response, responseType) : null;
+        }
+
+        T result;
+        long period = Math.max(lockMs / RENEWALS_PER_LOCK, 1);
+        ScheduledFuture<?> heartbeat = renewer.scheduleAtFixedRate(() -> renew(ref, owner, scope),
+                period, period, TimeUnit.MILLISECONDS);
+        CURRENT_KEY.set(scopedKey);
+        try {
+            result = action.get();
+        } catch (RuntimeException e) {
+            // La operación falló: se libera la clave para que el reintento pueda ejecutarla
+            heartbeat.cancel(false);
+            release(ref, owner);
+            throw e;
+        } finally {
+            CURRENT_KEY.remove();
+        }
+        heartbeat.cancel(false);
+
+        complete(ref, owner, scope, result);
+        return result;
+    }
+
+    /**
+     * ID para un documento nuevo. Dentro de una operación con clave de idempotencia es
+     * determinista, de modo que un reintento sobrescribe el mismo documento en lugar de duplicarlo.
+     */
+    public static String newId(String entity) {
+        String scopedKey = CURRENT_KEY.get();
+        if (scopedKey == null) {
+            return UUID.randomUUID().toString();
+        }
+        return UUID.nameUUIDFromBytes((scopedKey + ":" + entity).getBytes(StandardCharsets.UTF_8)).toString();
+    }
+
+    /**
+     * Reserva la clave. Devuelve el registro completado si la operación ya se ejecutó, o
+     * {@code null} si esta petición debe ejecutarla.
+     */
+    private DocumentSnapshot reserve(DocumentReference ref, String scope, String fingerprint, String owner) {
+        try {
+            return firestore.runTransaction(transaction -> {
+                DocumentSnapshot existing = transaction.get(ref).get();
+                Date now = new Date();
+                if (existing.exists() && isAlive(existing, now)) {
+                    if (!fingerprint.equals(existing.getString("fingerprint"))) {
+                        throw new CustomExceptions.ConflictException(
+                                "La clave " + HEADER + " ya se usó con una petición distinta");
+                    }
+                    if (COMPLETED.equals(existing.getString("status"))) {
+                        return existing;
+                    }
+                    Date lockedUntil = existing.getDate("lockedUntil");
+                    if (lockedUntil != null && lockedUntil.after(now)) {
+                        throw new CustomExceptions.ConflictException(
+                                "Ya hay una petición en curso con la misma clave " + HEADER);
+                    }
+                }
+
+                Map<String, Object> data = new HashMap<>();
+                data.put("scope", scope);
+                data.put("fingerprint", fingerprint);
+                data.put("status", IN_PROGRESS);
+                data.put("owner", owner);
+                data.put("createdAt", now);
+                data.put("lockedUntil", new Date(now.getTime() + lockMs));
+                data.put("expiresAt", new Date(now.getTime() + ttlHours * 3_600_000L));
+                transaction.set(ref, data);
+                return null;
+            }).get();
+        } catch (Exception e) {
+            if (e.getCause() instanceof CustomExceptions.ConflictException conflict) {
+                throw conflict;
+            }
+            throw new CustomExceptions.ProcessingException("Error reserving idempotency key: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Extiende {@code lockedUntil} mientras la operación sigue en curso, solo si la reserva sigue
+     * siendo de este propietario
+     */
+    private void renew(DocumentReference ref, String owner, String scope) {
+        try {
+            boolean renewed = firestore.runTransaction(transaction -> {
+                DocumentSnapshot record = transaction.get(ref).get();
+                if (!isOwnedInProgress(record, owner)) {
+                    return false;
+                }
+                transaction.update(ref, "lockedUntil", new Date(System.currentTimeMillis() + lockMs));
+                return true;
+            }).get();
+            if (!renewed) {
+                log.warn("Idempotency key for {} was taken over while its request was still running", scope);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            // Se reintenta en el siguiente latido
+            log.warn("Could not renew idempotency lock for {}: {}", scope, e.getMessage());
+        }
+    }
+
+    /**
+     * Guarda la respuesta si la reserva sigue siendo de este propietario
+     */
+    private void complete(DocumentReference ref, String owner, String scope, Object result) {
+        String response = result != null ? toJson(result) : null;
+        try {
+            boolean stored = firestore.runTransaction(transaction -> {
+                DocumentSnapshot record = transaction.get(ref).get();
+                if (!isOwnedInProgress(record, owner)) {
+                    return false;
+                }
+                transaction.update(ref, "status", COMPLETED,
+                        "response", response,
+                        "completedAt", new Date());
+                return true;
+            }).get();
+            if (!stored) {
+                log.warn("Idempotency key for {} is no longer owned by this request; response not stored", scope);
+            }
+        } catch (Exception e) {
+            // Si no se guarda la respuesta, el reintento repite la escritura sobre el mismo ID (ver newId)
+            log.warn("Could not store idempotent response for {}: {}", scope, e.getMessage());
+        }
+    }
+
+    private void release(DocumentReference ref, String owner) {
+        try {
+            firestore.runTransaction(transaction -> {
+                DocumentSnapshot record = transaction.get(ref).get();
+                if (isOwnedInProgress(record, owner)) {
+                    transaction.delete(ref);
+                }
+                return null;
+            }).get();
+        } catch (Exception e) {
+            // El bloqueo vence igualmente tras lock-ms, al dejar de renovarse
+            log.warn("Could not release idempotency key: {}", e.getMessage());
+        }
+    }
+
+    private static boolean isOwnedInProgress(DocumentSnapshot record, String owner) {
+        return record.exists()
+                && owner.equals(record.getString("owner"))
+                && IN_PROGRESS.equals(record.getString("status"));
+    }
+
+    private boolean isAlive(DocumentSnapshot record, Date now) {
+        Date expiresAt = record.getDate("expiresAt");
+        return expiresAt == null || expiresAt.after(now);
+    }
+
+    private String currentUserId() {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        return authentication != null ? authentication.getName() : "anonymous";
+    }
+
+    private String toJson(Object value) {
+        try {
+            return objectMapper.writeValueAsString(value);
+        } catch (Exception e) {
+            throw new CustomExceptions.ProcessingException("Error serializing idempotent request: " + e.getMessage());
+        }
+    }
+
+    private <T> T fromJson(String json, Class<T> type) {
+        try {
+            return objectMapper.readValue(json, type);
+        } catch (Exception e) {
+            throw new CustomExceptions.ProcessingException("Error reading stored idempotent response: " + e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        renewer.shutdownNow();
+    }
+
+    private static String hash(String value) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(value.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -3,10 +3,10 @@ package com.example.demo.service;
 import com.example.demo.dto.InventoryDTOs;
 import com.example.demo.exception.CustomExceptions;
 import com.example.demo.model.*;
+import com.example.demo.util.DocumentMappers;
 import com.google.cloud.firestore.*;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Service;
 
@@ -23,22 +23,25 @@ public class InventoryAlertService {
     @Autowired
     private NotificationService notificationService;
 
+    @Autowired
+    private FieldUpdateWriter fieldUpdateWriter;
+
     /**
-     * Verifica periódicamente los niveles de stock
+     * Verifica periódicamente los niveles de stock (trabajo "inventory-levels" de JobCoordinator)
      */
-    @Scheduled(fixedRate = 3600000) // Cada hora
     public void checkInventoryLevels() {
         try {
             QuerySnapshot snapshot = firestore.collection("inventory").get().get();
 
             for (DocumentSnapshot doc : snapshot.getDocuments()) {
-                InventoryItem item = doc.toObject(InventoryItem.class);
+                InventoryItem item = DocumentMappers.toInventoryItem(doc);
                 if (item != null && isLowStock(item)) {
                     createStockAlert(item);
                 }
             }
         } catch (Exception e) {
             log.error("Error checking inventory levels: {}", e.getMessage());
+            throw new CustomExceptions.ProcessingException("Error checking inventory levels: " + e.getMessage());
         }
     }
 
@@ -52,7 +55,7 @@ public class InventoryAlertService {
                     .get().get();
 
             for (DocumentSnapshot doc : snapshot.getDocuments()) {
-                InventoryItem item = doc.toObject(InventoryItem.class);
+                InventoryItem item = DocumentMappers.toInventoryItem(doc);
                 if (item != null && isLowStock(item)) {
                     alerts.add(createAlertDTO(item));
                 }
@@ -74,14 +77,16 @@ public class InventoryAlertService {
 
             DocumentReference docRef = firestore.collection("inventory")
                     .document(productId);
-            InventoryItem item = docRef.get().get().toObject(InventoryItem.class);
+            DocumentSnapshot doc = docRef.get().get();
+            InventoryItem item = DocumentMappers.toInventoryItem(doc);
 
             if (item == null) {
                 throw new CustomExceptions.NotFoundException("Product not found");
             }
 
             item.setMinThreshold(newThreshold);
-            docRef.set(item).get();
+            FieldUpdateWriter.await(fieldUpdateWriter.update(docRef,
+                    Map.of("minThreshold", newThreshold), doc.getUpdateTime()));
 
             // Verificar si necesita generar alerta con el nuevo umbral
             if (isLowStock(item)) {
@@ -89,6 +94,8 @@ public class InventoryAlertService {
             }
 
             return convertToResponse(item);
+        } catch (CustomExceptions.ConflictException e) {
+            throw e;
         } catch (Exception e) {
             throw new CustomExceptions.ProcessingException("Error updating threshold");
         }
@@ -103,7 +110,7 @@ public class InventoryAlertService {
                     .getAuthentication().getName();
 
             RestockOrder order = RestockOrder.builder()
-                    .id(UUID.randomUUID().toString())
+                    .id(IdempotencyService.newId("restockOrder"))
                     .productId(request.getProductId())
                     .quantityToOrder(request.getQuantity())
                     .status(InventoryDTOs.OrderStatus.PENDING)
@@ -211,11 +218,10 @@ public class InventoryAlertService {
     private void notifyRestockOrderCreated(RestockOrder order) {
         try {
             // Obtener el producto
-            InventoryItem item = firestore.collection("inventory")
+            InventoryItem item = DocumentMappers.toInventoryItem(firestore.collection("inventory")
                     .document(order.getProductId())
                     .get()
-                    .get()
-                    .toObject(InventoryItem.class);
+                    .get());
 
             if (item == null) {
                 log.error("Producto no encontrado para notificación de reorden: {}",
@@ -7,8 +7,10 @@ import com.example.demo.dto.PaginationRequest;
 import com.example.demo.exception.CustomExceptions;
 import com.example.demo.model.AlertStatus;
 import com.example.demo.model.InventoryItem;
+import com.example.demo.model.ItemType;
 import com.example.demo.model.RestockOrder;
 import com.example.demo.util.FirestorePaginationUtils;
+import com.example.demo.util.DocumentMappers;
 import com.google.cloud.firestore.*;
 import com.google.firebase.cloud.FirestoreClient;
 import lombok.extern.slf4j.Slf4j;
@@ -26,6 +28,12 @@ public class InventoryService {
     @Autowired
     private Firestore firestore;
 
+    @Autowired
+    private FavoriteIndexService favoriteIndexService;
+
+    @Autowired
+    private FieldUpdateWriter fieldUpdateWriter;
+
     private Firestore getFirestore() {
         return FirestoreClient.getFirestore();
     }
@@ -54,7 +62,7 @@ public class InventoryService {
 
             List<InventoryItemResponse> items = querySnapshot.getDocuments().stream()
                     .map(doc -> {
-                        InventoryItem item = doc.toObject(InventoryItem.class);
+                        InventoryItem item = DocumentMappers.toInventoryItem(doc);
                         return convertToInventoryItemResponse(item);
                     })
                     .collect(Collectors.toList());
@@ -88,7 +96,7 @@ public class InventoryService {
 
     public InventoryItemResponse updateItem(String id, UpdateInventoryItemRequest request) {
         try {
-            InventoryItem item = getFirestore().collection("inventory").document(id).get().get().toObject(InventoryItem.class);
+            InventoryItem item = DocumentMappers.toInventoryItem(getFirestore().collection("inventory").document(id).get().get());
             if (item == null) {
                 throw new CustomExceptions.NotFoundException("Inventory item not found with id: " + id);
             }
@@ -138,7 +146,7 @@ public class InventoryService {
             // Convertir resultados
             List<LowStockAlertDTO> alerts = querySnapshot.getDocuments().stream()
                     .map(doc -> {
-                        InventoryItem item = doc.toObject(InventoryItem.class);
+                        InventoryItem item = DocumentMappers.toInventoryItem(doc);
                         // Asegurarse de establecer el ID del documento
                         if (item != null) {
                             item.setId(doc.getId());
@@ -219,14 +227,17 @@ public class InventoryService {
                 throw new CustomExceptions.NotFoundException("Product not found");
             }
 
-            InventoryItem item = doc.toObject(InventoryItem.class);
+            InventoryItem item = DocumentMappers.toInventoryItem(doc);
             if (item != null) {
                 item.setMinThreshold(newThreshold);
-                docRef.set(item).get();
+                FieldUpdateWriter.await(fieldUpdateWriter.update(docRef,
+                        Map.of("minThreshold", newThreshold), doc.getUpdateTime()));
                 return convertToInventoryItemResponse(item);
             }
 
             throw new CustomExceptions.ProcessingException("Error updating threshold");
+        } catch (CustomExceptions.ConflictException e) {
+            throw e;
         } catch (Exception e) {
             throw new CustomExceptions.ProcessingException(
                     "Error updating threshold: " + e.getMessage());
@@ -246,10 +257,10 @@ public class InventoryService {
                 throw new CustomExceptions.NotFoundException("Product not found");
             }
 
-            InventoryItem product = productDoc.toObject(InventoryItem.class);
+            InventoryItem product = DocumentMappers.toInventoryItem(productDoc);
 
             RestockOrder order = RestockOrder.builder()
-                    .id(UUID.randomUUID().toString())
+                    .id(IdempotencyService.newId("restockOrder"))
                     .productId(request.getProductId())
                     .productName(product.getName())
                     .currentStock(product.getQuantity())
@@ -283,7 +294,7 @@ public class InventoryService {
                 throw new CustomExceptions.NotFoundException("Item not found with id: " + id);
             }
 
-            InventoryItem item = doc.toObject(InventoryItem.class);
+            InventoryItem item = DocumentMappers.toInventoryItem(doc);
 
             // Verificar si el item es favorito para el usuario actual
             boolean isFavorite = checkIfFavorite(id);
@@ -322,15 +333,7 @@ public class InventoryService {
     private boolean checkIfFavorite(String itemId) {
         String userId = SecurityContextHolder.getContext().getAuthentication().getName();
         try {
-            // Buscar en la colección de favoritos
-            QuerySnapshot snapshot = firestore.collection("favorites")
-                    .whereEqualTo("userId", userId)
-                    .whereEqualTo("itemId", itemId)
-                    .whereEqualTo("itemType", "PRODUCT")
-                    .get()
-                    .get();
-
-            return !snapshot.isEmpty();
+            return favoriteIndexService.isFavorite(userId, ItemType.INVENTORY.name(), itemId);
         } catch (Exception e) {
             return false;
         }
@@ -0,0 +1,388 @@
+package com.example.demo.service;
+
+import com.example.demo.dto.JobDTOs.*;
+import com.example.demo.exception.CustomExceptions;
+import com.google.cloud.firestore.DocumentReference;
+import com.google.cloud.firestore.DocumentSnapshot;
+import com.google.cloud.firestore.Firestore;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.stereotype.Service;
+
+import java.net.InetAddress;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Ejecuta los trabajos en segundo plano en un pool propio con prioridades. Cada trabajo tiene un
+ * límite de ejecuciones simultáneas y un lease en Firestore ({@code _job_leases}) para que, con
+ * varias instancias, solo una lo ejecute en cada periodo. Mientras el trabajo corre, el lease se
+ * renueva varias veces por periodo; si la renovación falla (otro nodo lo tomó, o no se pudo
+ * confirmar antes de que venciera) la ejecución se interrumpe.
+ */
+@Service
+@Slf4j
+public class JobCoordinator {
+
+    static final String LEASES = "_job_leases";
+
+    // Margen para no saltar una ejecución programada por pequeñas diferencias de reloj entre nodos
+    private static final double INTERVAL_TOLERANCE = 0.9;
+
+    // Renovaciones del lease durante cada periodo de vigencia
+    private static final int RENEWALS_PER_LEASE = 3;
+
+    @Autowired
+    private Firestore firestore;
+
+    @Autowired
+    private TaskScheduler taskScheduler;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired(required = false)
+    private List<JobDefinition> definitions = new ArrayList<>();
+
+    @Value("${jobs.enabled:true}")
+    private boolean enabled;
+
+    @Value("${jobs.executor.pool-size:4}")
+    private int poolSize;
+
+    @Value("${jobs.node-id:}")
+    private String configuredNodeId;
+
+    private final Map<String, JobState> jobs = new ConcurrentHashMap<>();
+    private final AtomicLong submissions = new AtomicLong();
+    private ThreadPoolExecutor executor;
+    private String nodeId;
+
+    @PostConstruct
+    public void init() {
+        nodeId = configuredNodeId.isBlank() ? defaultNodeId() : configuredNodeId;
+
+        // Cola con prioridad: ante saturación se ejecuta antes lo más urgente, y por orden de llegada a igual prioridad
+        AtomicInteger threadCount = new AtomicInteger();
+        executor = new ThreadPoolExecutor(poolSize, poolSize, 60, TimeUnit.SECONDS,
+                new PriorityBlockingQueue<>(), runnable -> {
+            Thread thread = new Thread(runnable, "job-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        for (JobDefinition definition : definitions) {
+            jobs.put(definition.name(), new JobState(definition, new Semaphore(definition.maxConcurrency())));
+            if (enabled) {
+                taskScheduler.scheduleAtFixedRate(() -> trigger(definition.name(), false),
+                        Instant.now().plusMillis(definition.initialDelayMs()),
+                        Duration.ofMillis(definition.intervalMs()));
+            }
+        }
+        log.info("Job coordinator started on node {} with {} jobs (scheduling {})",
+                nodeId, jobs.size(), enabled ? "enabled" : "disabled");
+    }
+
+    /**
+     * Encola una ejecución del trabajo. Las ejecuciones manuales ignoran el intervalo mínimo
+     * entre ejecuciones, pero siguen respetando el lease y el límite de concurrencia.
+     */
+    public TriggerResponse trigger(String name, boolean manual) {
+        JobState state = jobs.get(name);
+        if (state == null) {
+            throw new CustomExceptions.NotFoundException("Trabajo no encontrado: " + name);
+        }
+        if (!state.permits.tryAcquire()) {
+            recordSkip(state, "busy");
+            return new TriggerResponse(name, TriggerStatus.ALREADY_RUNNING);
+        }
+        try {
+            executor.execute(new PrioritizedRun(state.definition.priority(), submissions.incrementAndGet(),
+                    () -> run(state, manual)));
+        } catch (RejectedExecutionException e) {
+            state.permits.release();
+            throw new CustomExceptions.ProcessingException("Job executor is shut down");
+        }
+        return new TriggerResponse(name, TriggerStatus.QUEUED);
+    }
+
+    /**
+     * Estado y estadísticas de todos los trabajos registrados
+     */
+    public List<JobStatus> getStatuses() {
+        List<JobStatus> statuses = new ArrayList<>();
+        for (JobState state : jobs.values()) {
+            JobDefinition definition = state.definition;
+            statuses.add(JobStatus.builder()
+                    .name(definition.name())
+                    .priority(definition.priority())
+                    .maxConcurrency(definition.maxConcurrency())
+                    .intervalMs(definition.intervalMs())
+                    .running(state.active.get())
+                    .runs(state.runs.get())
+                    .failures(state.failures.get())
+                    .skipped(state.skipped.get())
+                    .lastStartedAt(state.lastStartedAt)
+                    .lastDurationMs(state.lastDurationMs)
+                    .lastOutcome(state.lastOutcome)
+                    .build());
+        }
+        statuses.sort(Comparator.comparing(JobStatus::getName));
+        return statuses;
+    }
+
+    private void run(JobState state, boolean manual) {
+        JobDefinition definition = state.definition;
+        try {
+            // Las ejecuciones simultáneas en este nodo comparten el lease tomado por la primera
+            if (state.active.getAndIncrement() == 0) {
+                long requestedAt = System.currentTimeMillis();
+                if (!acquireLease(definition, manual)) {
+                    recordSkip(state, "lease");
+                    return;
+                }
+                state.aborted = false;
+                state.leaseExpiresAt = requestedAt + definition.leaseMs();
+                long period = Math.max(definition.leaseMs() / RENEWALS_PER_LEASE, 1);
+                state.heartbeat = taskScheduler.scheduleAtFixedRate(() -> renewLease(state),
+                        Instant.now().plusMillis(period), Duration.ofMillis(period));
+            }
+
+            Date startedAt = new Date();
+            Timer.Sample sample = Timer.start(meterRegistry);
+            String outcome = "success";
+            state.workers.add(Thread.currentThread());
+            try {
+                if (state.aborted) {
+                    throw new InterruptedException("lease lost");
+                }
+                definition.task().run();
+                if (state.aborted) {
+                    outcome = "aborted";
+                } else {
+                    state.runs.incrementAndGet();
+                }
+            } catch (Exception e) {
+                if (state.aborted) {
+                    outcome = "aborted";
+                    log.warn("Job {} aborted after losing its lease: {}", definition.name(), e.getMessage());
+                } else {
+                    outcome = "failure";
+                    state.failures.incrementAndGet();
+                    log.error("Job {} failed: ", definition.name(), e);
+                }
+            } finally {
+                state.workers.remove(Thread.currentThread());
+                // La interrupción por pérdida del lease no debe alcanzar a la siguiente tarea del hilo
+                Thread.interrupted();
+                long nanos = sample.stop(Timer.builder("jobs.run")
+                        .description("Duración de las ejecuciones de trabajos en segundo plano")
+                        .tag("job", definition.name())
+                        .tag("outcome", outcome)
+                        .tag("trigger", manual ? "manual" : "scheduled")
+                        .register(meterRegistry));
+                state.lastStartedAt = startedAt;
+                state.lastDurationMs = TimeUnit.NANOSECONDS.toMillis(nanos);
+                state.lastOutcome = outcome;
+            }
+        } catch (Exception e) {
+            log.warn("Could not run job {}: {}", definition.name(), e.getMessage());
+        } finally {
+            if (state.active.decrementAndGet() == 0) {
+                stopHeartbeat(state);
+                if (!state.aborted) {
+                    releaseLease(definition);
+                }
+            }
+            state.permits.release();
+        }
+    }
+
+    /**
+     * Extiende el lease mientras el trabajo sigue en curso. Si otro nodo lo tomó, o si no se pudo
+     * renovar antes de que venciera, interrumpe las ejecuciones del trabajo en este nodo.
+     */
+    private void renewLease(JobState state) {
+        JobDefinition definition = state.definition;
+        if (state.aborted || state.active.get() == 0) {
+            return;
+        }
+        long requestedAt = System.currentTimeMillis();
+        DocumentReference ref = firestore.collection(LEASES).document(definition.name());
+        try {
+            boolean renewed = firestore.runTransaction(transaction -> {
+                DocumentSnapshot lease = transaction.get(ref).get();
+                if (!lease.exists() || !nodeId.equals(lease.getString("holder"))) {
+                    return false;
+                }
+                transaction.update(ref, "expiresAt", new Date(System.currentTimeMillis() + definition.leaseMs()));
+                return true;
+            }).get();
+            if (renewed) {
+                state.leaseExpiresAt = requestedAt + definition.leaseMs();
+                return;
+            }
+            abort(state, "lease taken by another node");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            if (System.currentTimeMillis() < state.leaseExpiresAt) {
+                // Se reintenta en el siguiente latido mientras el lease siga vigente
+                log.warn("Could not renew lease for job {}: {}", definition.name(), e.getMessage());
+                return;
+            }
+            abort(state, "lease expired without renewal");
+        }
+    }
+
+    private void abort(JobState state, String reason) {
+        log.error("Aborting job {}: {}", state.definition.name(), reason);
+        state.aborted = true;
+        stopHeartbeat(state);
+        for (Thread worker : state.workers) {
+            worker.interrupt();
+        }
+    }
+
+    private void stopHeartbeat(JobState state) {
+        ScheduledFuture<?> heartbeat = state.heartbeat;
+        if (heartbeat != null) {
+            heartbeat.cancel(false);
+            state.heartbeat = null;
+        }
+    }
+
+    /**
+     * Toma el lease del trabajo si está libre, vencido o ya es de este nodo. Para ejecuciones
+     * programadas también exige que haya pasado el intervalo desde el último inicio en cualquier nodo.
+     */
+    private boolean acquireLease(JobDefinition definition, boolean manual) throws ExecutionException, InterruptedException {
+        DocumentReference ref = firestore.collection(LEASES).document(definition.name());
+        return firestore.runTransaction(transaction -> {
+            DocumentSnapshot lease = transaction.get(ref).get();
+            Date now = new Date();
+            if (lease.exists()) {
+                String holder = lease.getString("holder");
+                Date expiresAt = lease.getDate("expiresAt");
+                if (!nodeId.equals(holder) && expiresAt != null && expiresAt.after(now)) {
+                    return false;
+                }
+                Date lastStartedAt = lease.getDate("lastStartedAt");
+                long minInterval = (long) (definition.intervalMs() * INTERVAL_TOLERANCE);
+                if (!manual && lastStartedAt != null && now.getTime() - lastStartedAt.getTime() < minInterval) {
+                    return false;
+                }
+            }
+            Map<String, Object> data = new HashMap<>();
+            data.put("holder", nodeId);
+            data.put("acquiredAt", now);
+            data.put("lastStartedAt", now);
+            data.put("expiresAt", new Date(now.getTime() + definition.leaseMs()));
+            transaction.set(ref, data);
+            return true;
+        }).get();
+    }
+
+    private void releaseLease(JobDefinition definition) {
+        DocumentReference ref = firestore.collection(LEASES).document(definition.name());
+        try {
+            firestore.runTransaction(transaction -> {
+                DocumentSnapshot lease = transaction.get(ref).get();
+                if (lease.exists() && nodeId.equals(lease.getString("holder"))) {
+                    transaction.update(ref, "expiresAt", new Date(), "releasedAt", new Date());
+                }
+                return null;
+            }).get();
+        } catch (Exception e) {
+            // Si no se libera, el lease vence solo al cumplirse su duración
+            log.warn("Could not release lease for job {}: {}", definition.name(), e.getMessage());
+        }
+    }
+
+    private void recordSkip(JobState state, String reason) {
+        state.skipped.incrementAndGet();
+        Counter.builder("jobs.skipped")
+                .description("Ejecuciones de trabajos omitidas")
+                .tag("job", state.definition.name())
+                .tag("reason", reason)
+                .register(meterRegistry)
+                .increment();
+        log.debug("Job {} skipped ({})", state.definition.name(), reason);
+    }
+
+    private String defaultNodeId() {
+        String host;
+        try {
+            host = InetAddress.getLocalHost().getHostName();
+        } catch (Exception e) {
+            host = "node";
+        }
+        return host + "-" + UUID.randomUUID().toString().substring(0, 8);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(30, TimeUnit.SECONDS)) {
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Estado en memoria de un trabajo; los campos "last*" solo son informativos
+     */
+    private static final class JobState {
+        private final JobDefinition definition;
+        private final Semaphore permits;
+        private final AtomicInteger active = new AtomicInteger();
+        private final AtomicLong runs = new AtomicLong();
+        private final AtomicLong failures = new AtomicLong();
+        private final AtomicLong skipped = new AtomicLong();
+        private final Set<Thread> workers = ConcurrentHashMap.newKeySet();
+        private volatile ScheduledFuture<?> heartbeat;
+        private volatile long leaseExpiresAt;
+        private volatile boolean aborted;
+        private volatile Date lastStartedAt;
+        private volatile Long lastDurationMs;
+        private volatile String lastOutcome;
+
+        JobState(JobDefinition definition, Semaphore permits) {
+            this.definition = definition;
+            this.permits = permits;
+        }
+    }
+
+    /**
+     * Tarea comparable para la cola con prioridad del pool
+     */
+    private record PrioritizedRun(JobDefinition.Priority priority, long sequence, Runnable task)
+            implements Runnable, Comparable<PrioritizedRun> {
+
+        @Override
+        public void run() {
+            task.run();
+        }
+
+        @Override
+        public int compareTo(PrioritizedRun other) {
+            int byPriority = priority.compareTo(other.priority);
+            return byPriority != 0 ? byPriority : Long.compare(sequence, other.sequence);
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package com.example.demo.service;
+
+/**
+ * Definición de un trabajo en segundo plano gestionado por {@link JobCoordinator}
+ *
+ * @param name           identificador del trabajo (también ID del lease en Firestore)
+ * @param priority       prioridad en la cola del pool de trabajos
+ * @param maxConcurrency ejecuciones simultáneas permitidas en este nodo
+ * @param intervalMs     periodo entre ejecuciones programadas
+ * @param initialDelayMs espera antes de la primera ejecución tras el arranque
+ * @param leaseMs        duración del lease; debe superar la duración esperada de una ejecución
+ * @param task           trabajo a ejecutar
+ */
+public record JobDefinition(String name,
+                            Priority priority,
+                            int maxConcurrency,
+                            long intervalMs,
+                            long initialDelayMs,
+                            long leaseMs,
+                            Runnable task) {
+
+    public enum Priority {
+        HIGH,
+        NORMAL,
+        LOW
+    }
+}
@@ -0,0 +1,47 @@
+package com.example.demo.service;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * Transporte en memoria compartido por todos los contextos de Spring de la misma JVM.
+ * Permite probar varias instancias en un solo proceso o desplegar un único nodo sin escrituras extra.
+ */
+@Service
+@Slf4j
+@ConditionalOnProperty(name = "cache.events.transport", havingValue = "local")
+public class LocalCacheEventTransport implements CacheEventTransport {
+
+    // Estático a propósito: cada contexto de la JVM actúa como un nodo distinto del mismo bus
+    private static final List<Consumer<CacheEvent>> BUS = new CopyOnWriteArrayList<>();
+
+    private final List<Consumer<CacheEvent>> ownListeners = new CopyOnWriteArrayList<>();
+
+    @Override
+    public void publish(CacheEvent event) {
+        for (Consumer<CacheEvent> listener : BUS) {
+            try {
+                listener.accept(event);
+            } catch (Exception e) {
+                log.warn("Cache event listener failed: {}", e.getMessage());
+            }
+        }
+    }
+
+    @Override
+    public void subscribe(Consumer<CacheEvent> listener) {
+        ownListeners.add(listener);
+        BUS.add(listener);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        BUS.removeAll(ownListeners);
+    }
+}
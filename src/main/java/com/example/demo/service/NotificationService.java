@@ -1,28 +1,29 @@
 package com.example.demo.service;
 
 
+import com.example.demo.dto.AppointmentDTOs;
 import com.example.demo.dto.PetDTOs;
 import com.example.demo.dto.UserDTOs;
 import com.example.demo.model.AlertStatus;
 import com.example.demo.model.LowStockAlert;
 import com.example.demo.model.Role;
 
+import com.google.cloud.firestore.DocumentReference;
+import com.google.cloud.firestore.DocumentSnapshot;
 import com.google.cloud.firestore.Firestore;
 import com.google.cloud.firestore.QuerySnapshot;
 import jakarta.mail.internet.MimeMessage;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Service;
 import org.springframework.mail.javamail.JavaMailSender;
 import org.springframework.mail.javamail.MimeMessageHelper;
 
 
 import java.text.SimpleDateFormat;
-import java.util.ArrayList;
-import java.util.Date;
-import java.util.List;
-import java.util.Objects;
+import java.util.*;
 import java.util.concurrent.ExecutionException;
 import java.util.stream.Collectors;
 
@@ -126,6 +127,97 @@ public class NotificationService {
         }
     }
     //PARTE DE CITAS
+
+    /**
+     * Envía un único correo por cliente y por veterinario con todos los cambios de una operación en bloque
+     */
+    @Async("notificationExecutor")
+    public void sendAppointmentChangesDigest(List<AppointmentDTOs.AppointmentChange> changes) {
+        try {
+            Set<String> userIds = new HashSet<>();
+            Set<String> petIds = new HashSet<>();
+            for (AppointmentDTOs.AppointmentChange change : changes) {
+                userIds.add(change.getClientId());
+                userIds.add(change.getVeterinarianId());
+                petIds.add(change.getPetId());
+            }
+            userIds.remove(null);
+            petIds.remove(null);
+
+            // Una sola lectura por colección para todos los destinatarios y mascotas
+            Map<String, DocumentSnapshot> users = getAllById("users", userIds);
+            Map<String, DocumentSnapshot> pets = getAllById("pets", petIds);
+
+            Map<String, List<AppointmentDTOs.AppointmentChange>> byClient = changes.stream()
+                    .filter(change -> change.getClientId() != null)
+                    .collect(Collectors.groupingBy(AppointmentDTOs.AppointmentChange::getClientId));
+            Map<String, List<AppointmentDTOs.AppointmentChange>> byVet = changes.stream()
+                    .filter(change -> change.getVeterinarianId() != null)
+                    .collect(Collectors.groupingBy(AppointmentDTOs.AppointmentChange::getVeterinarianId));
+
+            byClient.forEach((clientId, clientChanges) -> sendDigest(users.get(clientId),
+                    "Cambios en sus citas", "Las siguientes citas de sus mascotas han sido modificadas:",
+                    clientChanges, pets));
+            byVet.forEach((vetId, vetChanges) -> sendDigest(users.get(vetId),
+                    "Cambios en su agenda", "Las siguientes citas de su agenda han sido modificadas:",
+                    vetChanges, pets));
+        } catch (Exception e) {
+            log.error("Error sending appointment changes digest: {}", e.getMessage());
+        }
+    }
+
+    private Map<String, DocumentSnapshot> getAllById(String collection, Set<String> ids)
+            throws ExecutionException, InterruptedException {
+        Map<String, DocumentSnapshot> result = new HashMap<>();
+        if (ids.isEmpty()) {
+            return result;
+        }
+        DocumentReference[] refs = ids.stream()
+                .map(id -> firestore.collection(collection).document(id))
+                .toArray(DocumentReference[]::new);
+        for (DocumentSnapshot doc : firestore.getAll(refs).get()) {
+            if (doc.exists()) {
+                result.put(doc.getId(), doc);
+            }
+        }
+        return result;
+    }
+
+    private void sendDigest(DocumentSnapshot recipient, String subject, String intro,
+                            List<AppointmentDTOs.AppointmentChange> changes, Map<String, DocumentSnapshot> pets) {
+        if (recipient == null || recipient.getString("email") == null) {
+            return;
+        }
+        StringBuilder rows = new StringBuilder();
+        for (AppointmentDTOs.AppointmentChange change : changes) {
+            DocumentSnapshot pet = pets.get(change.getPetId());
+            String petName = pet != null ? pet.getString("name") : "";
+            boolean cancelled = change.getType() == AppointmentDTOs.BatchOperationType.CANCEL;
+            rows.append(String.format("<tr><td>%s</td><td>%s</td><td>%s</td><td>%s</td></tr>",
+                    petName,
+                    cancelled ? "Cancelada" : "Reprogramada",
+                    formatDate(change.getPreviousDate()),
+                    cancelled ? "-" : formatDate(change.getNewDate())));
+        }
+        String content = String.format("""
+            <html>
+            <body>
+                <h2>%s</h2>
+                <p>%s</p>
+                <table border="1" cellpadding="6" style="border-collapse: collapse;">
+                    <tr><th>Paciente</th><th>Cambio</th><th>Fecha anterior</th><th>Nueva fecha</th></tr>
+                    %s
+                </table>
+                <p>Si necesita hacer algún cambio adicional, por favor contáctenos.</p>
+            </body>
+            </html>
+            """,
+                subject,
+                intro,
+                rows
+        );
+        sendEmail(recipient.getString("email"), subject, content);
+    }
     public void sendAppointmentRescheduledNotification(String clientId, String petId, Date oldDate, Date newDate) {
         try {
             PetDTOs.PetResponse pet = petService.getPetById(petId);
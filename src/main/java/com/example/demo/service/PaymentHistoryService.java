@@ -5,6 +5,7 @@ import com.example.demo.dto.PaginationRequest;
 import com.example.demo.dto.PaymentHistoryDTOs.*;
 import com.example.demo.exception.CustomExceptions;
 import com.example.demo.model.HistorialClinico;
+import com.example.demo.util.DocumentMappers;
 import com.google.cloud.firestore.*;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -18,6 +19,9 @@ import java.util.stream.Collectors;
 @Service
 public class PaymentHistoryService {
 
+    // Firestore admite como máximo 30 valores en un filtro whereIn
+    private static final int MAX_WHERE_IN_VALUES = 30;
+
     @Autowired
     private Firestore firestore;
 
@@ -27,6 +31,9 @@ public class PaymentHistoryService {
     @Autowired
     private PetService petService;
 
+    @Autowired
+    private ArchivalService archivalService;
+
     /**
      * Obtiene el historial de pagos filtrado y paginado para el cliente actual
      */
@@ -74,6 +81,10 @@ public class PaymentHistoryService {
             // Ordenar por fecha
             query = query.orderBy("fechaVisita", Query.Direction.DESCENDING);
 
+            if (archivalService.historialRangeNeedsArchive(filterRequest.getFechaInicio())) {
+                return getPaymentHistoryWithArchive(query, clientPetIds, filterRequest, paginationRequest);
+            }
+
             // Aplicar paginación
             query = query.offset(paginationRequest.getPage() * paginationRequest.getSize())
                     .limit(paginationRequest.getSize());
@@ -86,7 +97,7 @@ public class PaymentHistoryService {
             // Convertir documentos a DTOs
             List<PaymentHistoryResponse> payments = querySnapshot.getDocuments().stream()
                     .map(doc -> {
-                        HistorialClinico historial = doc.toObject(HistorialClinico.class);
+                        HistorialClinico historial = DocumentMappers.toHistorialClinico(doc);
                         if (historial != null) {
                             historial.setId(doc.getId()); // Importante: establecer el ID del documento
                         }
@@ -119,6 +130,63 @@ public class PaymentHistoryService {
         }
     }
 
+    /**
+     * Variante para rangos que llegan al archivo: une los registros vivos con las particiones
+     * mensuales y pagina en memoria, convirtiendo a DTO solo la página pedida.
+     */
+    private PaginatedResponse<PaymentHistoryResponse> getPaymentHistoryWithArchive(
+            Query liveQuery,
+            List<String> clientPetIds,
+            PaymentHistoryFilterRequest filterRequest,
+            PaginationRequest paginationRequest) throws Exception {
+
+        Map<String, HistorialClinico> merged = new LinkedHashMap<>();
+        for (DocumentSnapshot doc : liveQuery.get().get().getDocuments()) {
+            HistorialClinico historial = DocumentMappers.toHistorialClinico(doc);
+            if (historial != null) {
+                historial.setId(doc.getId());
+                merged.put(doc.getId(), historial);
+            }
+        }
+        List<String> petIds = filterRequest.getPetId() == null ? clientPetIds
+                : clientPetIds.contains(filterRequest.getPetId()) ? List.of(filterRequest.getPetId())
+                : List.of();
+        List<HistorialClinico> archived = findArchivedForPets(
+                filterRequest.getFechaInicio(), filterRequest.getFechaFin(), petIds);
+        for (HistorialClinico historial : archived) {
+            merged.putIfAbsent(historial.getId(), historial);
+        }
+
+        List<HistorialClinico> matching = merged.values().stream()
+                .filter(historial -> isWithinMontoRange(historial.getPrecioTotal(), filterRequest))
+                .sorted(Comparator.comparing(HistorialClinico::getFechaVisita,
+                        Comparator.nullsLast(Comparator.reverseOrder())))
+                .collect(Collectors.toList());
+
+        int from = Math.min(paginationRequest.getPage() * paginationRequest.getSize(), matching.size());
+        int to = Math.min(from + paginationRequest.getSize(), matching.size());
+        List<PaymentHistoryResponse> payments = matching.subList(from, to).stream()
+                .map(this::convertToPaymentResponse)
+                .collect(Collectors.toList());
+
+        log.info("Historial con archivo: {} registros, {} de ellos archivados", merged.size(), archived.size());
+
+        return PaginatedResponse.of(payments, paginationRequest, matching.size());
+    }
+
+    /**
+     * Historiales archivados de las mascotas indicadas, con una consulta por cada grupo de hasta 30 mascotas
+     */
+    private List<HistorialClinico> findArchivedForPets(Date fechaInicio, Date fechaFin, List<String> petIds) {
+        List<HistorialClinico> archived = new ArrayList<>();
+        for (int from = 0; from < petIds.size(); from += MAX_WHERE_IN_VALUES) {
+            List<String> chunk = new ArrayList<>(petIds.subList(from, Math.min(from + MAX_WHERE_IN_VALUES, petIds.size())));
+            archived.addAll(archivalService.findArchivedHistoriales(fechaInicio, fechaFin,
+                    query -> query.whereIn("petId", chunk)));
+        }
+        return archived;
+    }
+
     /**
      * Obtiene el detalle completo de un pago específico
      */
@@ -129,12 +197,14 @@ public class PaymentHistoryService {
                     .get()
                     .get();
 
-            if (!doc.exists()) {
+            // Los registros antiguos ya no están en la colección viva
+            HistorialClinico historial = doc.exists()
+                    ? DocumentMappers.toHistorialClinico(doc)
+                    : archivalService.findArchivedHistorial(paymentId);
+            if (historial == null) {
                 throw new CustomExceptions.NotFoundException("Payment record not found");
             }
 
-            HistorialClinico historial = doc.toObject(HistorialClinico.class);
-
             // Verificar que la mascota pertenece al cliente actual
             String clientId = SecurityContextHolder.getContext().getAuthentication().getName();
             if (!isPetOwner(historial.getPetId(), clientId)) {
@@ -167,22 +237,30 @@ public class PaymentHistoryService {
                     .get()
                     .get();
 
+            Map<String, HistorialClinico> historiales = new LinkedHashMap<>();
+            for (DocumentSnapshot doc : querySnapshot.getDocuments()) {
+                HistorialClinico historial = DocumentMappers.toHistorialClinico(doc);
+                if (historial != null) {
+                    historiales.put(doc.getId(), historial);
+                }
+            }
+            for (HistorialClinico historial : findArchivedForPets(fechaInicio, fechaFin, clientPetIds)) {
+                historiales.putIfAbsent(historial.getId(), historial);
+            }
+
             double totalGastado = 0.0;
             Map<String, Double> gastosPorMascota = new HashMap<>();
             Map<String, Double> gastosPorServicio = new HashMap<>();
 
-            for (DocumentSnapshot doc : querySnapshot.getDocuments()) {
-                HistorialClinico historial = doc.toObject(HistorialClinico.class);
-                if (historial != null) {
-                    double montoHistorial = historial.getPrecioTotal();
-                    totalGastado += montoHistorial;
+            for (HistorialClinico historial : historiales.values()) {
+                double montoHistorial = historial.getPrecioTotal();
+                totalGastado += montoHistorial;
 
-                    // Acumular por mascota
-                    gastosPorMascota.merge(historial.getPetId(), montoHistorial, Double::sum);
+                // Acumular por mascota
+                gastosPorMascota.merge(historial.getPetId(), montoHistorial, Double::sum);
 
-                    // Acumular por tipo de servicio
-                    procesarServiciosParaResumen(historial, gastosPorServicio);
-                }
+                // Acumular por tipo de servicio
+                procesarServiciosParaResumen(historial, gastosPorServicio);
             }
 
             return Map.of(
@@ -247,10 +325,14 @@ public class PaymentHistoryService {
      * Verifica si el monto del pago está dentro del rango especificado en el filtro
      */
     private boolean isWithinMontoRange(PaymentHistoryResponse payment, PaymentHistoryFilterRequest filter) {
-        if (filter.getMontoMinimo() != null && payment.getMontoTotal() < filter.getMontoMinimo()) {
+        return isWithinMontoRange(payment.getMontoTotal(), filter);
+    }
+
+    private boolean isWithinMontoRange(double monto, PaymentHistoryFilterRequest filter) {
+        if (filter.getMontoMinimo() != null && monto < filter.getMontoMinimo()) {
             return false;
         }
-        if (filter.getMontoMaximo() != null && payment.getMontoTotal() > filter.getMontoMaximo()) {
+        if (filter.getMontoMaximo() != null && monto > filter.getMontoMaximo()) {
             return false;
         }
         return true;
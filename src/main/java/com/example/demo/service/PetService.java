@@ -9,6 +9,7 @@ import com.example.demo.model.Pet;
 import com.example.demo.model.User;
 import com.example.demo.repository.PetRepository;
 import com.example.demo.util.FirestorePaginationUtils;
+import com.example.demo.util.DocumentMappers;
 import com.google.cloud.firestore.*;
 import com.google.firebase.cloud.FirestoreClient;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -25,6 +26,15 @@ public class PetService {
     private Firestore firestore;
     @Autowired
     private PetRepository petRepository;
+    @Autowired
+    private ClientSearchIndexService clientSearchIndexService;
+
+    @Autowired
+    private CascadeDeleteService cascadeDeleteService;
+    @Autowired
+    private ClinicalTimelineService clinicalTimelineService;
+    @Autowired
+    private CacheInvalidationService cacheInvalidationService;
 
     private Firestore getFirestore() {
         return FirestoreClient.getFirestore();
@@ -52,6 +62,7 @@ public class PetService {
         try {
             // Guardar la mascota en Firestore usando el ID generado
             newPetRef.set(pet).get();
+            clientSearchIndexService.refreshClientAsync(ownerId);
 
             // Crear y devolver la respuesta
             return convertToPetResponse(pet);
@@ -66,7 +77,7 @@ public class PetService {
 
     public PetResponse updatePet(String id, UpdatePetRequest request) {
         try {
-            Pet pet = getFirestore().collection("pets").document(id).get().get().toObject(Pet.class);
+            Pet pet = DocumentMappers.toPet(getFirestore().collection("pets").document(id).get().get());
             if (pet == null) {
                 throw new CustomExceptions.NotFoundException("Pet not found with id: " + id);
             }
@@ -76,6 +87,8 @@ public class PetService {
             pet.setAge(request.getAge());
 
             getFirestore().collection("pets").document(id).set(pet).get();
+            clientSearchIndexService.refreshClientAsync(pet.getOwnerId());
+            cacheInvalidationService.invalidate(CacheInvalidationService.PETS, id);
             return convertToPetResponse(pet);
         } catch (InterruptedException | ExecutionException e) {
             throw new CustomExceptions.ProcessingException("Error updating pet: " + e.getMessage());
@@ -83,7 +96,7 @@ public class PetService {
     }
     public PetResponse getPetById(String id) {
         try {
-            Pet pet = getFirestore().collection("pets").document(id).get().get().toObject(Pet.class);
+            Pet pet = DocumentMappers.toPet(getFirestore().collection("pets").document(id).get().get());
             if (pet == null) {
                 throw new CustomExceptions.NotFoundException("Pet not found with id: " + id);
             }
@@ -97,7 +110,7 @@ public class PetService {
         try {
             List<PetResponse> pets = new ArrayList<>();
             getFirestore().collection("pets").whereEqualTo("ownerId", userId).get().get().getDocuments().forEach(doc -> {
-                Pet pet = doc.toObject(Pet.class);
+                Pet pet = DocumentMappers.toPet(doc);
                 pets.add(convertToPetResponse(pet));
             });
             return pets;
@@ -156,6 +169,14 @@ public class PetService {
             record.setVeterinarianId(getCurrentUserUid());
 
             getFirestore().collection("pets").document(petId).collection("medicalRecords").document(record.getId()).set(record).get();
+            clinicalTimelineService.recordMedicalRecord(petId, MedicalRecord.builder()
+                    .id(record.getId())
+                    .date(record.getDate())
+                    .diagnosis(record.getDiagnosis())
+                    .treatment(record.getTreatment())
+                    .veterinarianId(record.getVeterinarianId())
+                    .build());
+            clientSearchIndexService.refreshPetOwnerAsync(petId);
             return record;
         } catch (InterruptedException | ExecutionException e) {
             throw new CustomExceptions.ProcessingException("Error adding medical record: " + e.getMessage());
@@ -165,7 +186,7 @@ public class PetService {
     public boolean isOwner(String petId) {
         String currentUserId = getCurrentUserUid();
         try {
-            Pet pet = getFirestore().collection("pets").document(petId).get().get().toObject(Pet.class);
+            Pet pet = DocumentMappers.toPet(getFirestore().collection("pets").document(petId).get().get());
             if (pet == null) {
                 throw new CustomExceptions.NotFoundException("Pet not found with id: " + petId);
             }
@@ -208,18 +229,15 @@ public class PetService {
                 throw new CustomExceptions.NotFoundException("Mascota no encontrada con id: " + id);
             }
 
-            Pet pet = petDoc.toObject(Pet.class);
+            Pet pet = DocumentMappers.toPet(petDoc);
             if (pet == null || !pet.getOwnerId().equals(currentUserUid)) {
                 throw new CustomExceptions.UnauthorizedException("No tienes permiso para eliminar esta mascota");
             }
 
-            // Eliminar la mascota
-            firestore.collection("pets").document(id).delete().get();
-
-            // Opcionalmente, puedes también eliminar registros relacionados, como historial médico
-            // Esto depende de cómo esté estructurada tu base de datos
-            firestore.collection("pets").document(id).collection("medicalRecords").get().get()
-                    .getDocuments().forEach(doc -> doc.getReference().delete());
+            // Eliminar la mascota junto con sus registros médicos, historiales clínicos y citas
+            cascadeDeleteService.deletePet(id);
+            clientSearchIndexService.refreshClientAsync(currentUserUid);
+            cacheInvalidationService.invalidate(CacheInvalidationService.PETS, id);
 
         } catch (InterruptedException | ExecutionException e) {
             throw new CustomExceptions.ProcessingException("Error al eliminar la mascota: " + e.getMessage());
@@ -243,7 +261,7 @@ public class PetService {
             // Convertir documentos a PetResponse
             List<PetResponse> pets = querySnapshot.getDocuments().stream()
                     .map(doc -> {
-                        Pet pet = doc.toObject(Pet.class);
+                        Pet pet = DocumentMappers.toPet(doc);
                         return convertToPetResponse(pet);
                     })
                     .collect(Collectors.toList());
@@ -284,7 +302,7 @@ public class PetService {
             // Convertir resultados
             List<PetResponse> pets = querySnapshot.getDocuments().stream()
                     .map(doc -> {
-                        Pet pet = doc.toObject(Pet.class);
+                        Pet pet = DocumentMappers.toPet(doc);
                         return convertToPetResponse(pet);
                     })
                     .collect(Collectors.toList());
@@ -323,7 +341,7 @@ public class PetService {
                         .get();
 
                 if (vetDoc.exists()) {
-                    User vet = vetDoc.toObject(User.class);
+                    User vet = DocumentMappers.toUser(vetDoc);
                     if (vet != null) {
                         response.setVeterinarianName(vet.getNombre() + " " + vet.getApellido());
                     }
@@ -0,0 +1,15 @@
+package com.example.demo.service;
+
+/**
+ * Almacén compartido de cubetas de tokens, para aplicar los límites de forma conjunta cuando
+ * hay varias instancias. Las cubetas en memoria de {@link RateLimiterService} se consultan antes.
+ */
+public interface RateLimitStore {
+
+    /**
+     * Consume un token de la cubeta de la clave
+     *
+     * @return 0 si se permitió la petición, o los milisegundos hasta que haya un token disponible
+     */
+    long tryConsume(String key, RateLimiterService.Limit limit);
+}
@@ -0,0 +1,146 @@
+package com.example.demo.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Limitador por cubetas de tokens para los endpoints públicos de autenticación, con una cubeta
+ * por endpoint y por IP o email. Las cubetas viven en memoria y se actualizan sin bloqueos (CAS);
+ * si hay un {@link RateLimitStore} configurado, las peticiones permitidas localmente se
+ * comprueban también contra él.
+ */
+@Service
+public class RateLimiterService {
+
+    public static final String SCOPE_IP = "ip";
+    public static final String SCOPE_EMAIL = "email";
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired(required = false)
+    private RateLimitStore sharedStore;
+
+    @Value("${rate-limit.ip.capacity:20}")
+    private int ipCapacity;
+
+    @Value("${rate-limit.ip.refill-per-minute:20}")
+    private int ipRefillPerMinute;
+
+    @Value("${rate-limit.email.capacity:5}")
+    private int emailCapacity;
+
+    @Value("${rate-limit.email.refill-per-minute:5}")
+    private int emailRefillPerMinute;
+
+    @Value("${rate-limit.max-keys:100000}")
+    private int maxKeys;
+
+    private final Map<String, Bucket> buckets = new ConcurrentHashMap<>();
+    private final AtomicBoolean evicting = new AtomicBoolean();
+
+    /**
+     * Consume un token de la cubeta de la clave para el endpoint indicado
+     */
+    public Decision tryAcquire(String endpoint, String scope, String key) {
+        Limit limit = SCOPE_EMAIL.equals(scope)
+                ? new Limit(emailCapacity, emailRefillPerMinute)
+                : new Limit(ipCapacity, ipRefillPerMinute);
+        String bucketKey = endpoint + ":" + scope + ":" + key;
+        long now = System.nanoTime();
+
+        long waitMillis = buckets.computeIfAbsent(bucketKey, k -> new Bucket(limit.capacity(), now))
+                .tryConsume(limit, now);
+        if (waitMillis == 0 && sharedStore != null) {
+            waitMillis = sharedStore.tryConsume(bucketKey, limit);
+        }
+        if (buckets.size() > maxKeys) {
+            evictIdle(now);
+        }
+
+        boolean allowed = waitMillis == 0;
+        Counter.builder("auth.rate_limit.requests")
+                .description("Peticiones a los endpoints de autenticación evaluadas por el limitador")
+                .tag("endpoint", endpoint)
+                .tag("scope", scope)
+                .tag("outcome", allowed ? "allowed" : "rejected")
+                .register(meterRegistry)
+                .increment();
+        return new Decision(allowed, Math.max(1, TimeUnit.MILLISECONDS.toSeconds(waitMillis + 999)));
+    }
+
+    /**
+     * Descarta las cubetas que ya estarían llenas: equivalen a no tener cubeta
+     */
+    private void evictIdle(long now) {
+        if (!evicting.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            long idleNanos = TimeUnit.MILLISECONDS.toNanos(
+                    new Limit(Math.max(ipCapacity, emailCapacity), Math.min(ipRefillPerMinute, emailRefillPerMinute))
+                            .fullRefillMillis());
+            buckets.values().removeIf(bucket -> now - bucket.state.get().updatedAt() > idleNanos);
+        } finally {
+            evicting.set(false);
+        }
+    }
+
+    /**
+     * Resultado de la comprobación; {@code retryAfterSeconds} solo es relevante si se rechazó
+     */
+    public record Decision(boolean allowed, long retryAfterSeconds) {
+    }
+
+    /**
+     * Capacidad de la cubeta y tokens repuestos por minuto
+     */
+    public record Limit(int capacity, int refillPerMinute) {
+
+        public double tokensPerMilli() {
+            return Math.max(1, refillPerMinute) / 60_000.0;
+        }
+
+        public long fullRefillMillis() {
+            return (long) Math.ceil(capacity / tokensPerMilli());
+        }
+    }
+
+    private static final class Bucket {
+        private final AtomicReference<State> state;
+
+        Bucket(double tokens, long now) {
+            this.state = new AtomicReference<>(new State(tokens, now));
+        }
+
+        /**
+         * @return 0 si se consumió un token, o los milisegundos hasta el siguiente token
+         */
+        long tryConsume(Limit limit, long now) {
+            double tokensPerNano = limit.tokensPerMilli() / 1_000_000.0;
+            while (true) {
+                State current = state.get();
+                long elapsed = Math.max(0, now - current.updatedAt());
+                double tokens = Math.min(limit.capacity(), current.tokens() + elapsed * tokensPerNano);
+                if (tokens < 1) {
+                    return Math.max(1, (long) Math.ceil((1 - tokens) / limit.tokensPerMilli()));
+                }
+                if (state.compareAndSet(current, new State(tokens - 1, Math.max(now, current.updatedAt())))) {
+                    return 0;
+                }
+            }
+        }
+    }
+
+    private record State(double tokens, long updatedAt) {
+    }
+}
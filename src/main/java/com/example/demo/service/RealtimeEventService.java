@@ -0,0 +1,426 @@
+package com.example.demo.service;
+
+import com.example.demo.dto.EventDTOs.*;
+import com.example.demo.model.AlertStatus;
+import com.example.demo.model.Appointment;
+import com.example.demo.model.AppointmentStatus;
+import com.example.demo.model.InventoryItem;
+import com.example.demo.util.DocumentMappers;
+import com.example.demo.util.ReconnectingSnapshotListener;
+import com.google.cloud.firestore.*;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.time.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Canal de eventos en tiempo real (SSE). Mantiene un único listener de Firestore por colección
+ * y reparte los cambios a los clientes conectados filtrando por usuario y rol.
+ *
+ * <p>Cada cliente tiene su propia cola de envío: un cliente lento solo retrasa sus propios eventos y,
+ * si acumula más de {@code events.sse.max-pending}, se desconecta. Los listeners se vuelven a
+ * registrar si fallan, y el de citas se renueva cada medianoche para seguir el día en curso.
+ */
+@Service
+@Slf4j
+public class RealtimeEventService {
+
+    private static final Set<String> ALL_APPOINTMENTS_ROLES = Set.of("RECEPCIONISTA", "ADMINISTRADOR");
+    private static final Set<String> STOCK_ROLES = Set.of("RECEPCIONISTA", "ADMINISTRADOR", "VETERINARIO");
+
+    @Autowired
+    private Firestore firestore;
+
+    @Value("${events.sse.timeout-ms:1800000}")
+    private long emitterTimeout;
+
+    @Value("${events.sse.heartbeat-seconds:25}")
+    private long heartbeatSeconds;
+
+    @Value("${events.sse.max-pending:100}")
+    private int maxPendingEvents;
+
+    @Value("${events.sse.reconnect-delay-ms:1000}")
+    private long reconnectDelayMs;
+
+    @Value("${events.sse.max-reconnect-delay-ms:60000}")
+    private long maxReconnectDelayMs;
+
+    // Reloj y zona del "hoy" de la agenda; reemplazable en las pruebas
+    Clock clock = Clock.systemDefaultZone();
+
+    private final List<Subscriber> subscribers = new CopyOnWriteArrayList<>();
+    private final Map<String, AppointmentState> appointmentStates = new ConcurrentHashMap<>();
+    private final Map<String, Boolean> lowStockStates = new ConcurrentHashMap<>();
+    private final AtomicLong eventSequence = new AtomicLong();
+
+    // Latido, reconexiones y cambio de día; no hace E/S con los clientes
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "sse-scheduler");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // Envíos a los clientes: como mucho un hilo por cliente a la vez, así que uno bloqueado no frena al resto
+    private final ExecutorService senders = Executors.newCachedThreadPool(r -> {
+        Thread thread = new Thread(r, "sse-sender");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private ReconnectingSnapshotListener appointmentsListener;
+    private ReconnectingSnapshotListener inventoryListener;
+    private volatile boolean appointmentsInitialized;
+    private volatile boolean inventoryInitialized;
+
+    /**
+     * Registra una nueva suscripción para el usuario indicado
+     */
+    public SseEmitter subscribe(String userId) {
+        return subscribe(userId, new SseEmitter(emitterTimeout));
+    }
+
+    SseEmitter subscribe(String userId, SseEmitter emitter) {
+        SubscriberScope scope = resolveScope(userId);
+        Subscriber subscriber = new Subscriber(userId, scope, emitter);
+
+        emitter.onCompletion(() -> subscribers.remove(subscriber));
+        emitter.onTimeout(() -> subscribers.remove(subscriber));
+        emitter.onError(e -> subscribers.remove(subscriber));
+
+        subscribers.add(subscriber);
+        ensureListeners();
+        log.debug("SSE subscriber registered for user {} (active: {})", userId, subscribers.size());
+        return emitter;
+    }
+
+    /**
+     * Inicia los listeners compartidos la primera vez que alguien se suscribe
+     */
+    private synchronized void ensureListeners() {
+        if (appointmentsListener != null) {
+            return;
+        }
+        appointmentsListener = new ReconnectingSnapshotListener("Appointments", this::appointmentsQuery,
+                scheduler, reconnectDelayMs, maxReconnectDelayMs, this::onAppointmentsSnapshot);
+        inventoryListener = new ReconnectingSnapshotListener("Inventory", () -> firestore.collection("inventory"),
+                scheduler, reconnectDelayMs, maxReconnectDelayMs, this::onInventorySnapshot);
+        appointmentsListener.start();
+        inventoryListener.start();
+        scheduler.scheduleAtFixedRate(this::sendHeartbeat, heartbeatSeconds, heartbeatSeconds, TimeUnit.SECONDS);
+        scheduleDayRollover();
+        log.info("Shared appointments and inventory listeners started");
+    }
+
+    private Query appointmentsQuery() {
+        return firestore.collection("appointments")
+                .whereGreaterThanOrEqualTo("appointmentDate", startOfToday());
+    }
+
+    private Date startOfToday() {
+        ZoneId zone = clock.getZone();
+        return Date.from(LocalDate.now(clock).atStartOfDay(zone).toInstant());
+    }
+
+    private void scheduleDayRollover() {
+        ZonedDateTime now = ZonedDateTime.now(clock);
+        ZonedDateTime nextDay = now.toLocalDate().plusDays(1).atStartOfDay(clock.getZone());
+        // Un segundo de margen para no registrar la consulta aún con el día anterior
+        long delay = Duration.between(now, nextDay).toMillis() + 1000;
+        scheduler.schedule(this::rollOverDay, delay, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Vuelve a registrar el listener de citas con el nuevo día
+     */
+    void rollOverDay() {
+        try {
+            appointmentsListener.restart();
+            log.info("Appointments listener moved to {}", LocalDate.now(clock));
+        } finally {
+            scheduleDayRollover();
+        }
+    }
+
+    private synchronized void onAppointmentsSnapshot(QuerySnapshot snapshot, boolean initial) {
+        // La primera instantánea contiene todo el estado actual: se memoriza sin emitir eventos.
+        // Tras una reconexión o un cambio de día se compara con lo memorizado.
+        boolean emit = appointmentsInitialized;
+        Set<String> present = initial ? new HashSet<>() : null;
+        for (DocumentChange change : snapshot.getDocumentChanges()) {
+            QueryDocumentSnapshot doc = change.getDocument();
+            Appointment appointment = DocumentMappers.toAppointment(doc);
+            appointment.setId(doc.getId());
+            AppointmentState previous = appointmentStates.get(doc.getId());
+
+            AppointmentEventType type;
+            if (change.getType() == DocumentChange.Type.REMOVED) {
+                appointmentStates.remove(doc.getId());
+                type = AppointmentEventType.APPOINTMENT_REMOVED;
+            } else {
+                if (present != null) {
+                    present.add(doc.getId());
+                }
+                appointmentStates.put(doc.getId(), AppointmentState.of(appointment));
+                type = resolveAppointmentEventType(previous, appointment);
+            }
+
+            if (emit && type != null) {
+                dispatchAppointmentEvent(AppointmentEvent.builder()
+                        .type(type)
+                        .appointmentId(appointment.getId())
+                        .petId(appointment.getPetId())
+                        .clientId(appointment.getClientId())
+                        .veterinarianId(appointment.getVeterinarianId())
+                        .appointmentDate(appointment.getAppointmentDate())
+                        .previousAppointmentDate(previous != null ? previous.appointmentDate() : null)
+                        .status(appointment.getStatus())
+                        .timestamp(new Date())
+                        .build());
+            }
+        }
+        if (initial && emit) {
+            forgetMissingAppointments(present);
+        }
+        appointmentsInitialized = true;
+    }
+
+    /**
+     * Citas memorizadas que no llegaron en la instantánea completa: las de días anteriores se olvidan
+     * sin avisar y las de hoy en adelante se borraron mientras el listener no estaba registrado
+     */
+    private void forgetMissingAppointments(Set<String> present) {
+        long startOfToday = startOfToday().getTime();
+        Iterator<Map.Entry<String, AppointmentState>> iterator = appointmentStates.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<String, AppointmentState> entry = iterator.next();
+            if (present.contains(entry.getKey())) {
+                continue;
+            }
+            iterator.remove();
+            AppointmentState state = entry.getValue();
+            if (state.appointmentDate() != null && state.appointmentDate().getTime() >= startOfToday) {
+                dispatchAppointmentEvent(AppointmentEvent.builder()
+                        .type(AppointmentEventType.APPOINTMENT_REMOVED)
+                        .appointmentId(entry.getKey())
+                        .clientId(state.clientId())
+                        .veterinarianId(state.veterinarianId())
+                        .appointmentDate(state.appointmentDate())
+                        .status(state.status())
+                        .timestamp(new Date())
+                        .build());
+            }
+        }
+    }
+
+    private AppointmentEventType resolveAppointmentEventType(AppointmentState previous, Appointment current) {
+        if (previous == null) {
+            return AppointmentEventType.APPOINTMENT_CREATED;
+        }
+        boolean cancelled = AppointmentStatus.CANCELLED.name().equals(current.getStatus());
+        if (cancelled && !AppointmentStatus.CANCELLED.name().equals(previous.status())) {
+            return AppointmentEventType.APPOINTMENT_CANCELLED;
+        }
+        if (!Objects.equals(previous.appointmentDate(), current.getAppointmentDate())) {
+            return AppointmentEventType.APPOINTMENT_RESCHEDULED;
+        }
+        if (!Objects.equals(previous.status(), current.getStatus())) {
+            return AppointmentEventType.APPOINTMENT_UPDATED;
+        }
+        // Cambios en notas u otros campos no relevantes para la agenda
+        return null;
+    }
+
+    private synchronized void onInventorySnapshot(QuerySnapshot snapshot, boolean initial) {
+        boolean emit = inventoryInitialized;
+        if (initial) {
+            // Tras una reconexión llega el inventario completo: lo borrado mientras tanto se olvida
+            Set<String> present = new HashSet<>();
+            snapshot.getDocuments().forEach(doc -> present.add(doc.getId()));
+            lowStockStates.keySet().retainAll(present);
+        }
+        for (DocumentChange change : snapshot.getDocumentChanges()) {
+            QueryDocumentSnapshot doc = change.getDocument();
+            if (change.getType() == DocumentChange.Type.REMOVED) {
+                lowStockStates.remove(doc.getId());
+                continue;
+            }
+
+            InventoryItem item = DocumentMappers.toInventoryItem(doc);
+            item.setId(doc.getId());
+            boolean lowStock = item.getMinThreshold() > 0 && item.getQuantity() <= item.getMinThreshold();
+            Boolean wasLowStock = lowStockStates.put(doc.getId(), lowStock);
+
+            // Solo se notifica al cruzar el umbral, no en cada cambio de cantidad
+            if (!emit || Objects.equals(wasLowStock, lowStock) || (wasLowStock == null && !lowStock)) {
+                continue;
+            }
+
+            StockEvent event = StockEvent.builder()
+                    .type(lowStock ? StockEventType.STOCK_LOW : StockEventType.STOCK_RESTORED)
+                    .productId(item.getId())
+                    .productName(item.getName())
+                    .currentStock(item.getQuantity())
+                    .minThreshold(item.getMinThreshold())
+                    .status(calculateAlertStatus(item))
+                    .timestamp(new Date())
+                    .build();
+            dispatchStockEvent(event);
+        }
+        inventoryInitialized = true;
+    }
+
+    private AlertStatus calculateAlertStatus(InventoryItem item) {
+        if (item.getQuantity() <= 0) {
+            return AlertStatus.CRITICAL;
+        } else if (item.getQuantity() <= item.getMinThreshold()) {
+            double ratio = (double) item.getQuantity() / item.getMinThreshold();
+            return ratio <= 0.5 ? AlertStatus.CRITICAL : AlertStatus.WARNING;
+        }
+        return AlertStatus.OK;
+    }
+
+    private void dispatchAppointmentEvent(AppointmentEvent event) {
+        for (Subscriber subscriber : subscribers) {
+            if (subscriber.scope().receives(event)) {
+                send(subscriber, event.getType().name(), event);
+            }
+        }
+    }
+
+    private void dispatchStockEvent(StockEvent event) {
+        for (Subscriber subscriber : subscribers) {
+            if (subscriber.scope().receivesStock()) {
+                send(subscriber, event.getType().name(), event);
+            }
+        }
+    }
+
+    private void sendHeartbeat() {
+        for (Subscriber subscriber : subscribers) {
+            enqueue(subscriber, SseEmitter.event().comment("keep-alive"));
+        }
+    }
+
+    private void send(Subscriber subscriber, String name, Object payload) {
+        enqueue(subscriber, SseEmitter.event()
+                .id(String.valueOf(eventSequence.incrementAndGet()))
+                .name(name)
+                .data(payload, MediaType.APPLICATION_JSON));
+    }
+
+    /**
+     * Encola el evento para el cliente y, si nadie está enviando sus eventos, inicia el envío
+     */
+    private void enqueue(Subscriber subscriber, SseEmitter.SseEventBuilder event) {
+        if (subscriber.pending().incrementAndGet() > maxPendingEvents) {
+            drop(subscriber, new IOException("More than " + maxPendingEvents + " events pending"));
+            return;
+        }
+        subscriber.queue().add(event);
+        if (subscriber.draining().compareAndSet(false, true)) {
+            senders.execute(() -> drain(subscriber));
+        }
+    }
+
+    private void drain(Subscriber subscriber) {
+        try {
+            SseEmitter.SseEventBuilder event;
+            while ((event = subscriber.queue().poll()) != null) {
+                subscriber.pending().decrementAndGet();
+                try {
+                    subscriber.emitter().send(event);
+                } catch (IOException | IllegalStateException e) {
+                    drop(subscriber, e);
+                    return;
+                }
+            }
+        } finally {
+            subscriber.draining().set(false);
+        }
+        // Un evento encolado entre el último poll y la liberación del indicador no debe quedar esperando
+        if (!subscriber.queue().isEmpty() && subscribers.contains(subscriber)
+                && subscriber.draining().compareAndSet(false, true)) {
+            senders.execute(() -> drain(subscriber));
+        }
+    }
+
+    private void drop(Subscriber subscriber, Exception cause) {
+        if (!subscribers.remove(subscriber)) {
+            return;
+        }
+        log.debug("Dropping SSE subscriber for user {}: {}", subscriber.userId(), cause.getMessage());
+        subscriber.queue().clear();
+        subscriber.emitter().completeWithError(cause);
+    }
+
+    /**
+     * Determina qué eventos puede recibir el usuario según sus roles
+     */
+    @SuppressWarnings("unchecked")
+    private SubscriberScope resolveScope(String userId) {
+        List<String> roles = Collections.emptyList();
+        try {
+            DocumentSnapshot userDoc = firestore.collection("users").document(userId).get().get();
+            if (userDoc.exists() && userDoc.get("roles") != null) {
+                roles = (List<String>) userDoc.get("roles");
+            }
+        } catch (InterruptedException | ExecutionException e) {
+            log.warn("Could not resolve roles for SSE subscriber {}: {}", userId, e.getMessage());
+        }
+
+        boolean allAppointments = roles.stream().anyMatch(ALL_APPOINTMENTS_ROLES::contains);
+        boolean stock = roles.stream().anyMatch(STOCK_ROLES::contains);
+        return new SubscriberScope(userId, allAppointments, stock);
+    }
+
+    @PreDestroy
+    public synchronized void shutdown() {
+        if (appointmentsListener != null) {
+            appointmentsListener.close();
+            inventoryListener.close();
+        }
+        subscribers.forEach(subscriber -> subscriber.emitter().complete());
+        subscribers.clear();
+        scheduler.shutdownNow();
+        senders.shutdownNow();
+    }
+
+    /**
+     * Cliente conectado con su cola de envío; {@code draining} indica que un hilo está enviando sus eventos
+     */
+    private record Subscriber(String userId, SubscriberScope scope, SseEmitter emitter,
+                              Queue<SseEmitter.SseEventBuilder> queue, AtomicInteger pending,
+                              AtomicBoolean draining) {
+        Subscriber(String userId, SubscriberScope scope, SseEmitter emitter) {
+            this(userId, scope, emitter, new ConcurrentLinkedQueue<>(), new AtomicInteger(), new AtomicBoolean());
+        }
+    }
+
+    private record SubscriberScope(String userId, boolean allAppointments, boolean receivesStock) {
+        boolean receives(AppointmentEvent event) {
+            // El veterinario y el cliente solo reciben sus propias citas
+            return allAppointments
+                    || userId.equals(event.getClientId())
+                    || userId.equals(event.getVeterinarianId());
+        }
+    }
+
+    private record AppointmentState(String status, Date appointmentDate, String clientId, String veterinarianId) {
+        static AppointmentState of(Appointment appointment) {
+            return new AppointmentState(appointment.getStatus(), appointment.getAppointmentDate(),
+                    appointment.getClientId(), appointment.getVeterinarianId());
+        }
+    }
+}
@@ -1,9 +1,10 @@
 package com.example.demo.service;
 import com.example.demo.model.*;
 import com.example.demo.dto.*;
+import com.example.demo.exception.CustomExceptions;
+import com.example.demo.util.DocumentMappers;
 import com.google.cloud.firestore.Firestore;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 import java.util.*;
 import java.util.concurrent.ExecutionException;
@@ -20,6 +21,9 @@ public class ReminderService {
     @Autowired
     private NotificationService notificationService;
 
+    @Autowired
+    private VetScheduleService vetScheduleService;
+
     private static final String DEFAULT_TEMPLATE = """
         <html>
         <body>
@@ -40,8 +44,7 @@ public class ReminderService {
         </html>
     """;
 
-    // Ejecutar cada hora para verificar próximas citas
-    @Scheduled(fixedRate = 3600000)
+    // Ejecutado cada hora por JobCoordinator (trabajo "appointment-reminders")
     public void checkUpcomingAppointments() {
         try {
             AppointmentReminderConfig config = getConfig();
@@ -62,7 +65,7 @@ public class ReminderService {
                     .get();
 
             for (var doc : appointments.getDocuments()) {
-                Appointment appointment = doc.toObject(Appointment.class);
+                Appointment appointment = DocumentMappers.toAppointment(doc);
                 sendReminder(appointment, config);
 
                 // Marcar recordatorio como enviado
@@ -71,6 +74,7 @@ public class ReminderService {
 
         } catch (Exception e) {
             logger.error("Error checking upcoming appointments: {}", e.getMessage());
+            throw new CustomExceptions.ProcessingException("Error checking upcoming appointments: " + e.getMessage());
         }
     }
 
@@ -81,9 +85,9 @@ public class ReminderService {
             var petDoc = firestore.collection("pets").document(appointment.getPetId()).get().get();
             var vetDoc = firestore.collection("users").document(appointment.getVeterinarianId()).get().get();
 
-            User client = clientDoc.toObject(User.class);
-            Pet pet = petDoc.toObject(Pet.class);
-            User vet = vetDoc.toObject(User.class);
+            User client = DocumentMappers.toUser(clientDoc);
+            Pet pet = DocumentMappers.toPet(petDoc);
+            User vet = DocumentMappers.toUser(vetDoc);
 
             // Generar enlace de confirmación único
             String confirmationLink = generateConfirmationLink(appointment.getId());
@@ -152,15 +156,16 @@ public class ReminderService {
                 throw new RuntimeException("Appointment not found");
             }
 
-            Appointment appointment = appointmentDoc.toObject(Appointment.class);
+            Appointment appointment = DocumentMappers.toAppointment(appointmentDoc);
+            appointment.setId(appointmentId);
             appointment.setStatus(AppointmentStatus.CONFIRMED.toString());
 
-            firestore.collection("appointments")
-                    .document(appointmentId)
-                    .set(appointment)
-                    .get();
+            vetScheduleService.update(appointmentDoc.getReference(), appointment,
+                    Map.of("status", appointment.getStatus()), appointmentDoc.getUpdateTime());
 
             logger.info("Appointment {} confirmed successfully", appointmentId);
+        } catch (CustomExceptions.ConflictException e) {
+            throw e;
         } catch (Exception e) {
             logger.error("Error confirming appointment {}: {}", appointmentId, e.getMessage());
             throw new RuntimeException("Error confirming appointment");
@@ -16,6 +16,7 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -26,12 +27,17 @@ import java.util.stream.Collectors;
 public class RolePermissionService {
     @Autowired
     private Firestore firestore;
+    @Autowired
+    private CatalogCacheService catalogCacheService;
     private Firestore getFirestore() {
         return FirestoreClient.getFirestore();
     }
 
     private final Map<Role, List<String>> rolePermissions;
 
+    // Permisos de todos los roles asociados a la versión del catálogo con la que se cargaron
+    private volatile RolePermissionsSnapshot allRolePermissions;
+
     public RolePermissionService() {
         rolePermissions = new HashMap<>();
         rolePermissions.put(Role.VETERINARIO, List.of("VER_USUARIOS", "GESTIONAR_USUARIOS", "GESTIONAR_ROLES"));
@@ -62,6 +68,7 @@ public class RolePermissionService {
             if (!documents.isEmpty()) {
                 String docId = documents.get(0).getId();
                 firestore.collection("roles").document(docId).update("permissions", newPermissions).get();
+                catalogCacheService.bump(CatalogCacheService.ROLES);
                 return new UserDTOs.RolePermissionDTO(roleName, newPermissions);
             } else {
                 throw new RuntimeException("Role not found");
@@ -71,6 +78,11 @@ public class RolePermissionService {
         }
     }
     public List<UserDTOs.RolePermissionDTO> getAllRolePermissions() {
+        long version = catalogCacheService.currentVersion(CatalogCacheService.ROLES);
+        RolePermissionsSnapshot cached = allRolePermissions;
+        if (cached != null && cached.version() == version) {
+            return cached.roles();
+        }
         try {
             List<UserDTOs.RolePermissionDTO> rolePermissions = new ArrayList<>();
             ApiFuture<QuerySnapshot> future = getFirestore().collection("roles").get();
@@ -90,7 +102,9 @@ public class RolePermissionService {
                 rolePermissions.add(dto);
             }
 
-            return rolePermissions;
+            List<UserDTOs.RolePermissionDTO> roles = Collections.unmodifiableList(rolePermissions);
+            allRolePermissions = new RolePermissionsSnapshot(version, roles);
+            return roles;
         } catch (InterruptedException | ExecutionException e) {
             throw new CustomExceptions.ProcessingException("Error fetching role permissions: " + e.getMessage());
         }
@@ -132,4 +146,7 @@ public class RolePermissionService {
             throw new RuntimeException("Error fetching role permissions", e);
         }
     }
+
+    private record RolePermissionsSnapshot(long version, List<UserDTOs.RolePermissionDTO> roles) {
+    }
 }
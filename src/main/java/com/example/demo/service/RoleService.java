@@ -16,6 +16,8 @@ import java.util.stream.Collectors;
 public class RoleService {
     @Autowired
     private Firestore firestore;
+    @Autowired
+    private CatalogCacheService catalogCacheService;
 
     public List<RoleDTOs.RoleResponse> getAllRoles() {
         try {
@@ -56,6 +58,7 @@ public class RoleService {
 
         try {
             docRef.set(data).get();
+            catalogCacheService.bump(CatalogCacheService.ROLES);
             RoleDTOs.RoleDTO roleDTO = new RoleDTOs.RoleDTO(docRef.getId(), request.getName(), request.getPermissions());
             return new RoleDTOs.RoleResponse(roleDTO);
         } catch (Exception e) {
@@ -87,6 +90,7 @@ public class RoleService {
 
         try {
             docRef.update(updates).get();
+            catalogCacheService.bump(CatalogCacheService.ROLES);
             DocumentSnapshot updatedDoc = docRef.get().get();
             return new RoleDTOs.RoleResponse(convertToDTO(updatedDoc));
         } catch (Exception e) {
@@ -97,6 +101,7 @@ public class RoleService {
     public void deleteRole(String roleId) {
         try {
             firestore.collection("roles").document(roleId).delete().get();
+            catalogCacheService.bump(CatalogCacheService.ROLES);
         } catch (Exception e) {
             throw new RuntimeException("Error deleting role", e);
         }
@@ -109,6 +114,7 @@ public class RoleService {
 
         try {
             docRef.update(updates).get();
+            catalogCacheService.bump(CatalogCacheService.ROLES);
             DocumentSnapshot updatedDoc = docRef.get().get();
             return convertToDTO(updatedDoc);
         } catch (Exception e) {
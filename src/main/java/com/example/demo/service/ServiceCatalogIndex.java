@@ -0,0 +1,331 @@
+package com.example.demo.service;
+
+import com.example.demo.dto.ServiceDTO;
+import com.example.demo.exception.CustomExceptions;
+import com.example.demo.model.ServiceCategory;
+import com.example.demo.model.ServiceVeterinary;
+import com.example.demo.util.ReconnectingSnapshotListener;
+import com.google.cloud.firestore.*;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.text.Normalizer;
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * Índice en memoria del catálogo de servicios veterinarios activos.
+ * Se reconstruye con cada cambio recibido por el listener de la colección, de modo que las
+ * búsquedas y agrupaciones no necesitan consultar Firestore.
+ *
+ * <p>Si el listener falla, el índice deja de usarse hasta que vuelve a registrarse: mientras tanto
+ * cada consulta lee la colección directamente y los endpoints del catálogo no emiten ETags.
+ */
+@Service
+@Slf4j
+public class ServiceCatalogIndex {
+
+    private static final Pattern DIACRITICS = Pattern.compile("\\p{M}+");
+    private static final Pattern TOKEN_SEPARATOR = Pattern.compile("[^\\p{L}\\p{N}]+");
+
+    // Límites superiores (exclusivos) de los rangos de precio usados como facetas
+    private static final double[] PRICE_BOUNDS = {50, 100, 200, 500};
+
+    @Autowired
+    private Firestore firestore;
+
+    @Autowired
+    private CatalogCacheService catalogCacheService;
+
+    @Value("${catalog.index.initial-load-timeout-ms:5000}")
+    private long initialLoadTimeout;
+
+    @Value("${catalog.index.reconnect-delay-ms:1000}")
+    private long reconnectDelayMs;
+
+    @Value("${catalog.index.max-reconnect-delay-ms:60000}")
+    private long maxReconnectDelayMs;
+
+    private final CountDownLatch firstSnapshot = new CountDownLatch(1);
+    private final ScheduledExecutorService reconnector = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "catalog-index-reconnect");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // Nulo mientras el listener no está sincronizado con la colección
+    private volatile CatalogSnapshot snapshot;
+    private boolean everLoaded;
+    private ReconnectingSnapshotListener listener;
+
+    /**
+     * Devuelve la vista actual del catálogo, iniciando el listener si aún no existe. Si el listener
+     * no está sincronizado, la vista se construye con una lectura directa de la colección.
+     */
+    public CatalogSnapshot current() {
+        CatalogSnapshot current = snapshot;
+        if (current != null) {
+            return current;
+        }
+        ensureListener();
+        try {
+            // Solo la primera vez se espera al listener; tras una caída se lee directamente
+            if (firstSnapshot.await(initialLoadTimeout, TimeUnit.MILLISECONDS) && (current = snapshot) != null) {
+                return current;
+            }
+            log.debug("Service catalog index not ready, loading catalog directly");
+            return build(firestore.collection("veterinary_services").get().get().getDocuments());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CustomExceptions.ProcessingException("Interrupted while loading service catalog");
+        } catch (ExecutionException e) {
+            throw new CustomExceptions.ProcessingException("Error loading service catalog: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Indica si las consultas se responden desde el índice sincronizado con el listener
+     */
+    public boolean isReady() {
+        return snapshot != null;
+    }
+
+    private synchronized void ensureListener() {
+        if (listener != null) {
+            return;
+        }
+        listener = new ReconnectingSnapshotListener("Service catalog", () -> firestore.collection("veterinary_services"),
+                reconnector, reconnectDelayMs, maxReconnectDelayMs, new ReconnectingSnapshotListener.Handler() {
+                    @Override
+                    public void onSnapshot(QuerySnapshot value, boolean initial) {
+                        onCatalogSnapshot(value);
+                    }
+
+                    @Override
+                    public void onDisconnect(FirestoreException error) {
+                        onCatalogDisconnect();
+                    }
+                });
+        listener.start();
+    }
+
+    private synchronized void onCatalogSnapshot(QuerySnapshot value) {
+        boolean resumed = snapshot == null && everLoaded;
+        snapshot = build(value.getDocuments());
+        if (resumed) {
+            catalogCacheService.resumeValidation(CatalogCacheService.SERVICES);
+            log.info("Service catalog index back in sync with {} active services", snapshot.services().size());
+        } else if (everLoaded) {
+            // Cambios hechos desde otra instancia o desde la consola también invalidan los ETags
+            catalogCacheService.bumpLocal(CatalogCacheService.SERVICES);
+        }
+        everLoaded = true;
+        firstSnapshot.countDown();
+        log.debug("Service catalog index rebuilt with {} active services", snapshot.services().size());
+    }
+
+    private synchronized void onCatalogDisconnect() {
+        // Hasta volver a sincronizar, el índice podría no reflejar cambios: ni se usa ni se validan ETags con él
+        snapshot = null;
+        catalogCacheService.suspendValidation(CatalogCacheService.SERVICES);
+    }
+
+    private CatalogSnapshot build(List<? extends DocumentSnapshot> documents) {
+        List<ServiceDTO> services = new ArrayList<>();
+        for (DocumentSnapshot doc : documents) {
+            ServiceVeterinary service = doc.toObject(ServiceVeterinary.class);
+            if (service == null || !service.isActive()) {
+                continue;
+            }
+            service.setId(doc.getId());
+            services.add(ServiceDTO.builder()
+                    .id(service.getId())
+                    .name(service.getName() != null ? service.getName() : "")
+                    .category(service.getCategory() != null ? service.getCategory() : ServiceCategory.OTROS)
+                    .description(service.getDescription())
+                    .price(service.getPrice())
+                    .isActive(true)
+                    .build());
+        }
+        services.sort(Comparator.comparing(ServiceDTO::getName, String.CASE_INSENSITIVE_ORDER));
+
+        Map<ServiceCategory, List<Integer>> buckets = new EnumMap<>(ServiceCategory.class);
+        TreeMap<String, List<Integer>> tokens = new TreeMap<>();
+        long[] priceCounts = new long[PRICE_BOUNDS.length + 1];
+
+        for (int i = 0; i < services.size(); i++) {
+            ServiceDTO service = services.get(i);
+            buckets.computeIfAbsent(service.getCategory(), key -> new ArrayList<>()).add(i);
+            for (String token : tokenize(service.getName())) {
+                List<Integer> postings = tokens.computeIfAbsent(token, key -> new ArrayList<>());
+                if (postings.isEmpty() || postings.get(postings.size() - 1) != i) {
+                    postings.add(i);
+                }
+            }
+            priceCounts[priceBucket(service.getPrice())]++;
+        }
+
+        Map<ServiceCategory, int[]> categoryIndex = new EnumMap<>(ServiceCategory.class);
+        buckets.forEach((category, positions) -> categoryIndex.put(category, toArray(positions)));
+        TreeMap<String, int[]> tokenIndex = new TreeMap<>();
+        tokens.forEach((token, positions) -> tokenIndex.put(token, toArray(positions)));
+
+        return new CatalogSnapshot(List.copyOf(services), categoryIndex, tokenIndex, priceCounts);
+    }
+
+    /**
+     * Normaliza un texto: minúsculas y sin tildes
+     */
+    static String normalize(String text) {
+        if (text == null) {
+            return "";
+        }
+        String decomposed = Normalizer.normalize(text, Normalizer.Form.NFD);
+        return DIACRITICS.matcher(decomposed).replaceAll("").toLowerCase(Locale.ROOT);
+    }
+
+    private static List<String> tokenize(String text) {
+        List<String> result = new ArrayList<>();
+        for (String token : TOKEN_SEPARATOR.split(normalize(text))) {
+            if (!token.isEmpty()) {
+                result.add(token);
+            }
+        }
+        return result;
+    }
+
+    private static int priceBucket(double price) {
+        for (int i = 0; i < PRICE_BOUNDS.length; i++) {
+            if (price < PRICE_BOUNDS[i]) {
+                return i;
+            }
+        }
+        return PRICE_BOUNDS.length;
+    }
+
+    private static String priceBucketLabel(int bucket) {
+        if (bucket == 0) {
+            return "0-" + (int) PRICE_BOUNDS[0];
+        }
+        if (bucket == PRICE_BOUNDS.length) {
+            return (int) PRICE_BOUNDS[PRICE_BOUNDS.length - 1] + "+";
+        }
+        return (int) PRICE_BOUNDS[bucket - 1] + "-" + (int) PRICE_BOUNDS[bucket];
+    }
+
+    private static int[] toArray(List<Integer> positions) {
+        int[] array = new int[positions.size()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = positions.get(i);
+        }
+        return array;
+    }
+
+    @PreDestroy
+    public synchronized void shutdown() {
+        if (listener != null) {
+            listener.close();
+        }
+        reconnector.shutdownNow();
+    }
+
+    /**
+     * Vista inmutable del catálogo. Las posiciones de los índices apuntan a {@code services},
+     * que está ordenada por nombre.
+     */
+    public record CatalogSnapshot(List<ServiceDTO> services,
+                                  Map<ServiceCategory, int[]> categoryIndex,
+                                  NavigableMap<String, int[]> tokenIndex,
+                                  long[] priceCounts) {
+
+        /**
+         * Busca servicios por término (prefijo de palabra, sin distinguir mayúsculas ni tildes),
+         * categoría y rango de precio. El resultado mantiene el orden por nombre.
+         */
+        public List<ServiceDTO> search(String term, ServiceCategory category, Double minPrice, Double maxPrice) {
+            BitSet matches = new BitSet(services.size());
+            if (category != null) {
+                for (int position : categoryIndex.getOrDefault(category, new int[0])) {
+                    matches.set(position);
+                }
+            } else {
+                matches.set(0, services.size());
+            }
+
+            List<String> termTokens = tokenize(term);
+            if (!termTokens.isEmpty()) {
+                BitSet byTerm = matchTokens(termTokens);
+                if (byTerm.isEmpty()) {
+                    byTerm = matchSubstring(normalize(term).trim());
+                }
+                matches.and(byTerm);
+            }
+
+            List<ServiceDTO> result = new ArrayList<>(matches.cardinality());
+            for (int i = matches.nextSetBit(0); i >= 0; i = matches.nextSetBit(i + 1)) {
+                double price = services.get(i).getPrice();
+                if ((minPrice == null || price >= minPrice) && (maxPrice == null || price <= maxPrice)) {
+                    result.add(services.get(i));
+                }
+            }
+            return result;
+        }
+
+        /**
+         * Cantidad de servicios por rango de precio dentro de un resultado de búsqueda
+         */
+        public Map<String, Long> priceFacets(List<ServiceDTO> subset) {
+            long[] counts;
+            if (subset == null) {
+                counts = priceCounts;
+            } else {
+                counts = new long[PRICE_BOUNDS.length + 1];
+                for (ServiceDTO service : subset) {
+                    counts[priceBucket(service.getPrice())]++;
+                }
+            }
+            Map<String, Long> facets = new LinkedHashMap<>();
+            for (int i = 0; i < counts.length; i++) {
+                facets.put(priceBucketLabel(i), counts[i]);
+            }
+            return facets;
+        }
+
+        // Cada palabra del término debe ser prefijo de alguna palabra del nombre
+        private BitSet matchTokens(List<String> termTokens) {
+            BitSet result = null;
+            for (String termToken : termTokens) {
+                BitSet tokenMatches = new BitSet(services.size());
+                for (int[] positions : tokenIndex.subMap(termToken, true, termToken + Character.MAX_VALUE, false).values()) {
+                    for (int position : positions) {
+                        tokenMatches.set(position);
+                    }
+                }
+                if (result == null) {
+                    result = tokenMatches;
+                } else {
+                    result.and(tokenMatches);
+                }
+            }
+            return result != null ? result : new BitSet();
+        }
+
+        private BitSet matchSubstring(String normalizedTerm) {
+            BitSet result = new BitSet(services.size());
+            for (int i = 0; i < services.size(); i++) {
+                if (normalize(services.get(i).getName()).contains(normalizedTerm)) {
+                    result.set(i);
+                }
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,256 @@
+package com.example.demo.service;
+
+import com.example.demo.dto.ServiceReportDTOs.MonthlyMetric;
+import com.example.demo.dto.ServiceReportDTOs.ServiceMetricsDTO;
+import com.example.demo.model.HistorialClinico;
+import com.example.demo.model.ServicioAdicional;
+import com.example.demo.model.ServicioRealizado;
+
+import java.time.YearMonth;
+import java.time.ZoneId;
+import java.util.*;
+
+/**
+ * Acumulador de métricas del reporte de servicios en una sola pasada sobre los historiales. Cada
+ * servicio recibe un ordinal y sus totales mensuales viven en arreglos primitivos indexados por
+ * {@code ordinal * meses + mes}; el mes de cada visita se obtiene con una búsqueda binaria sobre los
+ * inicios de mes precalculados, sin crear calendarios, claves de texto ni valores en caja por registro.
+ */
+final class ServiceReportAggregator {
+
+    static final String ADDITIONAL_ID_PREFIX = "adicional-";
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final int firstEpochMonth;
+    private final int months;
+    // Inicio de cada mes del rango más el inicio del mes siguiente al último, en milisegundos
+    private final long[] monthStarts;
+
+    private final Bucket regular;
+    private final Bucket additional;
+    private long historiales;
+
+    /**
+     * Prepara los meses que cubre el rango [start, end] en la zona horaria indicada
+     */
+    ServiceReportAggregator(Date start, Date end, ZoneId zone) {
+        YearMonth first = YearMonth.from(start.toInstant().atZone(zone));
+        YearMonth last = YearMonth.from(end.toInstant().atZone(zone));
+        this.firstEpochMonth = epochMonth(first);
+        this.months = epochMonth(last) - firstEpochMonth + 1;
+        this.monthStarts = new long[months + 1];
+        for (int i = 0; i <= months; i++) {
+            monthStarts[i] = first.plusMonths(i).atDay(1).atStartOfDay(zone).toInstant().toEpochMilli();
+        }
+        this.regular = new Bucket();
+        this.additional = new Bucket();
+    }
+
+    /**
+     * Suma los servicios de un historial. {@code allowedServices} limita los servicios regulares
+     * (nulo = todos) y {@code includeAdditional} indica si se cuentan los servicios adicionales.
+     */
+    void add(HistorialClinico historial, boolean includeRegular, Set<String> allowedServices,
+             boolean includeAdditional) {
+        historiales++;
+        int month = historial.getFechaVisita() != null ? monthIndex(historial.getFechaVisita().getTime()) : -1;
+
+        if (includeRegular && historial.getServiciosRealizados() != null) {
+            for (ServicioRealizado servicio : historial.getServiciosRealizados()) {
+                if (servicio == null || servicio.getServiceId() == null
+                        || (allowedServices != null && !allowedServices.contains(servicio.getServiceId()))) {
+                    continue;
+                }
+                double amount = servicio.getPrecioPersonalizado() != null
+                        ? servicio.getPrecioPersonalizado()
+                        : servicio.getPrecioBase();
+                regular.add(servicio.getServiceId(), servicio.getServiceName(), month, amount);
+            }
+        }
+
+        if (includeAdditional && historial.getServiciosAdicionales() != null) {
+            for (ServicioAdicional servicio : historial.getServiciosAdicionales()) {
+                if (servicio == null) {
+                    continue;
+                }
+                String descripcion = servicio.getDescripcion();
+                additional.add(descripcion, descripcion, month, servicio.getPrecio());
+            }
+        }
+    }
+
+    /**
+     * Suma a este acumulador un resultado parcial cuyos meses están contenidos en el rango de este.
+     * El parcial no se modifica, por lo que puede seguir guardado en caché.
+     */
+    ServiceReportAggregator merge(ServiceReportAggregator other) {
+        int offset = other.firstEpochMonth - firstEpochMonth;
+        if (offset < 0 || offset + other.months > months) {
+            throw new IllegalArgumentException("El resultado parcial cubre meses fuera del rango del reporte");
+        }
+        regular.merge(other.regular, offset, other.months);
+        additional.merge(other.additional, offset, other.months);
+        historiales += other.historiales;
+        return this;
+    }
+
+    long historiales() {
+        return historiales;
+    }
+
+    /**
+     * Claves (IDs) de los servicios regulares acumulados
+     */
+    List<String> regularServiceIds() {
+        return Arrays.asList(Arrays.copyOf(regular.keys, regular.size));
+    }
+
+    /**
+     * Métricas de los servicios regulares, una por servicio
+     */
+    List<ServiceMetricsDTO> regularMetrics() {
+        return regular.toMetrics(null);
+    }
+
+    /**
+     * Métricas de los servicios adicionales agrupados por descripción
+     */
+    List<ServiceMetricsDTO> additionalMetrics() {
+        return additional.toMetrics(ADDITIONAL_ID_PREFIX);
+    }
+
+    long additionalUsage() {
+        return additional.usageTotal();
+    }
+
+    double additionalRevenue() {
+        return additional.revenueTotal();
+    }
+
+    /**
+     * Posición del mes dentro del rango, o -1 si la fecha queda fuera
+     */
+    private int monthIndex(long millis) {
+        int position = Arrays.binarySearch(monthStarts, millis);
+        int index = position >= 0 ? position : -position - 2;
+        return index >= 0 && index < months ? index : -1;
+    }
+
+    private static int epochMonth(YearMonth month) {
+        return month.getYear() * 12 + month.getMonthValue() - 1;
+    }
+
+    /**
+     * Servicios de un mismo tipo: diccionario de claves a ordinales y acumuladores primitivos
+     */
+    private final class Bucket {
+        private final Map<String, Integer> ordinals = new HashMap<>();
+        private String[] keys = new String[INITIAL_CAPACITY];
+        private String[] names = new String[INITIAL_CAPACITY];
+        private long[] usage = new long[INITIAL_CAPACITY];
+        private double[] revenue = new double[INITIAL_CAPACITY];
+        private long[] monthlyUsage;
+        private double[] monthlyRevenue;
+        private int size;
+
+        Bucket() {
+            this.monthlyUsage = new long[INITIAL_CAPACITY * months];
+            this.monthlyRevenue = new double[INITIAL_CAPACITY * months];
+        }
+
+        void add(String key, String name, int month, double amount) {
+            int ordinal = ordinal(key, name);
+            usage[ordinal]++;
+            revenue[ordinal] += amount;
+            if (month >= 0) {
+                int slot = ordinal * months + month;
+                monthlyUsage[slot]++;
+                monthlyRevenue[slot] += amount;
+            }
+        }
+
+        void merge(Bucket other, int offset, int otherMonths) {
+            for (int source = 0; source < other.size; source++) {
+                int target = ordinal(other.keys[source], other.names[source]);
+                usage[target] += other.usage[source];
+                revenue[target] += other.revenue[source];
+                int from = source * otherMonths;
+                int to = target * months + offset;
+                for (int month = 0; month < otherMonths; month++) {
+                    monthlyUsage[to + month] += other.monthlyUsage[from + month];
+                    monthlyRevenue[to + month] += other.monthlyRevenue[from + month];
+                }
+            }
+        }
+
+        private int ordinal(String key, String name) {
+            Integer existing = ordinals.get(key);
+            if (existing != null) {
+                return existing;
+            }
+            if (size == keys.length) {
+                int capacity = size * 2;
+                keys = Arrays.copyOf(keys, capacity);
+                names = Arrays.copyOf(names, capacity);
+                usage = Arrays.copyOf(usage, capacity);
+                revenue = Arrays.copyOf(revenue, capacity);
+                monthlyUsage = Arrays.copyOf(monthlyUsage, capacity * months);
+                monthlyRevenue = Arrays.copyOf(monthlyRevenue, capacity * months);
+            }
+            keys[size] = key;
+            names[size] = name;
+            ordinals.put(key, size);
+            return size++;
+        }
+
+        long usageTotal() {
+            long total = 0;
+            for (int i = 0; i < size; i++) {
+                total += usage[i];
+            }
+            return total;
+        }
+
+        double revenueTotal() {
+            double total = 0;
+            for (int i = 0; i < size; i++) {
+                total += revenue[i];
+            }
+            return total;
+        }
+
+        /**
+         * Con {@code idPrefix} el ID del servicio es el prefijo más su posición; si no, la clave
+         */
+        List<ServiceMetricsDTO> toMetrics(String idPrefix) {
+            List<ServiceMetricsDTO> metrics = new ArrayList<>(size);
+            for (int ordinal = 0; ordinal < size; ordinal++) {
+                List<MonthlyMetric> monthly = new ArrayList<>();
+                for (int month = 0; month < months; month++) {
+                    int slot = ordinal * months + month;
+                    if (monthlyUsage[slot] == 0) {
+                        continue;
+                    }
+                    int epochMonth = firstEpochMonth + month;
+                    // El mes sigue la numeración de Calendar (0 = enero), como hasta ahora
+                    monthly.add(MonthlyMetric.builder()
+                            .year(epochMonth / 12)
+                            .month(epochMonth % 12)
+                            .usage(monthlyUsage[slot])
+                            .revenue(monthlyRevenue[slot])
+                            .build());
+                }
+                metrics.add(ServiceMetricsDTO.builder()
+                        .serviceId(idPrefix != null ? idPrefix + (ordinal + 1) : keys[ordinal])
+                        .serviceName(names[ordinal])
+                        .totalUsage(usage[ordinal])
+                        .totalRevenue(revenue[ordinal])
+                        .averageRevenue(revenue[ordinal] / usage[ordinal])
+                        .monthlyMetrics(monthly)
+                        .build());
+            }
+            return metrics;
+        }
+    }
+}
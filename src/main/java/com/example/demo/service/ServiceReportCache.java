@@ -0,0 +1,217 @@
+package com.example.demo.service;
+
+import com.example.demo.dto.ServiceReportDTOs.MonthlyMetric;
+import com.example.demo.dto.ServiceReportDTOs.ReportCacheStats;
+import com.example.demo.dto.ServiceReportDTOs.ServiceMetricsDTO;
+import com.example.demo.dto.ServiceReportDTOs.ServiceReportResponse;
+import com.example.demo.util.LruCache;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Caché en memoria de los reportes de servicios, en dos niveles:
+ * <ul>
+ *   <li>Resultados completos por (inicio, fin, categoría).</li>
+ *   <li>Acumulados parciales de meses cerrados, con los que se componen rangos largos sin volver a
+ *       leer los meses que no cambiaron.</li>
+ * </ul>
+ * Una escritura de historial solo invalida los resultados cuyo rango contiene su fecha de visita y el
+ * parcial de ese mes. Un cambio en el catálogo de servicios invalida los resultados (las categorías se
+ * aplican al armar el reporte), pero no los parciales.
+ * <p>
+ * Ambos niveles están acotados y, al llenarse, descartan la entrada usada hace más tiempo. Los
+ * reportes se guardan y se devuelven como copias, de modo que quien los reciba puede modificarlos
+ * sin alterar lo que ven las siguientes peticiones.
+ */
+@Service
+@Slf4j
+public class ServiceReportCache {
+
+    @Autowired
+    private CacheInvalidationService cacheInvalidationService;
+
+    @Value("${reports.cache.enabled:true}")
+    private boolean enabled;
+
+    @Value("${reports.cache.max-entries:200}")
+    private int maxEntries;
+
+    @Value("${reports.cache.max-months:120}")
+    private int maxMonths;
+
+    private LruCache<ReportKey, ServiceReportResponse> results;
+    private LruCache<String, ServiceReportAggregator> months;
+
+    // Se incrementa en cada invalidación: un cálculo que empezó antes no se guarda
+    private final AtomicLong generation = new AtomicLong();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong monthHits = new AtomicLong();
+    private final AtomicLong monthMisses = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+
+    @PostConstruct
+    public void init() {
+        results = new LruCache<>(maxEntries);
+        months = new LruCache<>(maxMonths);
+        cacheInvalidationService.onInvalidate(CacheInvalidationService.HISTORIALES, this::evictVisit);
+        cacheInvalidationService.onInvalidate(CacheInvalidationService.SERVICES, id -> evictResults());
+    }
+
+    /**
+     * Invalida en todas las instancias lo que depende de un historial con esa fecha de visita
+     * ({@code null} = todo, por ejemplo tras un borrado en cascada)
+     */
+    public void historialWritten(Date fechaVisita) {
+        cacheInvalidationService.invalidate(CacheInvalidationService.HISTORIALES,
+                fechaVisita != null ? fechaVisita.toInstant().toString() : null);
+    }
+
+    /**
+     * Generación actual; se pasa a los métodos {@code put} para descartar resultados calculados
+     * mientras llegaba una invalidación
+     */
+    long generation() {
+        return generation.get();
+    }
+
+    ServiceReportResponse getResult(Date startDate, Date endDate, String category) {
+        if (!enabled) {
+            return null;
+        }
+        ServiceReportResponse cached = results.get(new ReportKey(startDate.getTime(), endDate.getTime(), category));
+        (cached != null ? hits : misses).incrementAndGet();
+        return cached != null ? copy(cached) : null;
+    }
+
+    void putResult(Date startDate, Date endDate, String category, ServiceReportResponse report, long startedAt) {
+        if (!enabled || generation.get() != startedAt) {
+            return;
+        }
+        results.put(new ReportKey(startDate.getTime(), endDate.getTime(), category), copy(report));
+    }
+
+    /**
+     * Acumulado de un mes cerrado ({@code yyyy-MM}); no debe modificarse
+     */
+    ServiceReportAggregator getMonth(String month) {
+        if (!enabled) {
+            return null;
+        }
+        ServiceReportAggregator cached = months.get(month);
+        (cached != null ? monthHits : monthMisses).incrementAndGet();
+        return cached;
+    }
+
+    void putMonth(String month, ServiceReportAggregator aggregator, long startedAt) {
+        if (!enabled || generation.get() != startedAt) {
+            return;
+        }
+        months.put(month, aggregator);
+    }
+
+    public ReportCacheStats stats() {
+        return ReportCacheStats.builder()
+                .enabled(enabled)
+                .entries(results.size())
+                .cachedMonths(months.size())
+                .hits(hits.get())
+                .misses(misses.get())
+                .monthHits(monthHits.get())
+                .monthMisses(monthMisses.get())
+                .invalidations(invalidations.get())
+                .build();
+    }
+
+    private void evictVisit(String visit) {
+        generation.incrementAndGet();
+        invalidations.incrementAndGet();
+        if (visit == null) {
+            results.clear();
+            months.clear();
+            return;
+        }
+        Date date;
+        try {
+            date = Date.from(Instant.parse(visit));
+        } catch (Exception e) {
+            log.warn("Invalid visit date in report cache invalidation: {}", visit);
+            results.clear();
+            months.clear();
+            return;
+        }
+        long millis = date.getTime();
+        results.removeIf((key, report) -> key.startDate() <= millis && millis <= key.endDate());
+        months.remove(ArchivalService.monthKey(date));
+    }
+
+    private void evictResults() {
+        generation.incrementAndGet();
+        invalidations.incrementAndGet();
+        results.clear();
+    }
+
+    /**
+     * Copia profunda del reporte: listas, mapas, métricas y fechas
+     */
+    private static ServiceReportResponse copy(ServiceReportResponse report) {
+        List<ServiceMetricsDTO> metrics = null;
+        if (report.getServicesMetrics() != null) {
+            metrics = new ArrayList<>(report.getServicesMetrics().size());
+            for (ServiceMetricsDTO metric : report.getServicesMetrics()) {
+                metrics.add(copy(metric));
+            }
+        }
+        return ServiceReportResponse.builder()
+                .startDate(copy(report.getStartDate()))
+                .endDate(copy(report.getEndDate()))
+                .totalRevenue(report.getTotalRevenue())
+                .totalServicesUsed(report.getTotalServicesUsed())
+                .servicesMetrics(metrics)
+                .revenueByCategory(report.getRevenueByCategory() != null ? new HashMap<>(report.getRevenueByCategory()) : null)
+                .usageByCategory(report.getUsageByCategory() != null ? new HashMap<>(report.getUsageByCategory()) : null)
+                .build();
+    }
+
+    private static ServiceMetricsDTO copy(ServiceMetricsDTO metric) {
+        if (metric == null) {
+            return null;
+        }
+        List<MonthlyMetric> monthly = null;
+        if (metric.getMonthlyMetrics() != null) {
+            monthly = new ArrayList<>(metric.getMonthlyMetrics().size());
+            for (MonthlyMetric month : metric.getMonthlyMetrics()) {
+                monthly.add(month != null
+                        ? new MonthlyMetric(month.getYear(), month.getMonth(), month.getUsage(), month.getRevenue())
+                        : null);
+            }
+        }
+        return ServiceMetricsDTO.builder()
+                .serviceId(metric.getServiceId())
+                .serviceName(metric.getServiceName())
+                .totalUsage(metric.getTotalUsage())
+                .totalRevenue(metric.getTotalRevenue())
+                .averageRevenue(metric.getAverageRevenue())
+                .monthlyMetrics(monthly)
+                .topPets(metric.getTopPets() != null ? new ArrayList<>(metric.getTopPets()) : null)
+                .build();
+    }
+
+    private static Date copy(Date date) {
+        return date != null ? new Date(date.getTime()) : null;
+    }
+
+    private record ReportKey(long startDate, long endDate, String category) {
+    }
+}
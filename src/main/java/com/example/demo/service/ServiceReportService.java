@@ -3,14 +3,31 @@ package com.example.demo.service;
 import com.example.demo.dto.ServiceReportDTOs.*;
 import com.example.demo.exception.CustomExceptions;
 import com.example.demo.model.*;
+import com.example.demo.util.DocumentMappers;
+import com.google.api.core.ApiFuture;
 import com.google.cloud.firestore.*;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import java.time.YearMonth;
+import java.time.ZoneId;
+import java.time.temporal.ChronoUnit;
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.TimeUnit;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+/**
+ * Reportes de servicios. El rango se divide en particiones mensuales que se consultan en paralelo;
+ * cada partición se acumula por separado en un pool fork-join propio y los resultados parciales se
+ * combinan al volver de la recursión.
+ */
 @Service
 public class ServiceReportService {
     private static final Logger logger = LoggerFactory.getLogger(ServiceReportService.class);
@@ -18,6 +35,27 @@ public class ServiceReportService {
     @Autowired
     private Firestore firestore;
 
+    @Autowired
+    private ArchivalService archivalService;
+
+    @Autowired
+    private ServiceReportCache reportCache;
+
+    @Value("${reports.parallelism:0}")
+    private int parallelism;
+
+    private ForkJoinPool reportPool;
+
+    @PostConstruct
+    public void init() {
+        int threads = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+        reportPool = new ForkJoinPool(threads, pool -> {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            thread.setName("report-" + thread.getPoolIndex());
+            return thread;
+        }, null, false);
+    }
+
     /**
      * Genera un reporte de servicios basado en los filtros proporcionados
      */
@@ -25,96 +63,23 @@ public class ServiceReportService {
         try {
             validateDates(filter.getStartDate(), filter.getEndDate());
 
-            List<HistorialClinico> historiales = getHistorialesInPeriod(
-                    filter.getStartDate(),
-                    filter.getEndDate()
-            );
-
-            logger.info("Found {} clinical records in period", historiales.size());
-
-            // Si es categoría OTROS, manejamos solo servicios adicionales
-            if (filter.getCategory() != null && filter.getCategory().equals("OTROS")) {
-                return generateAdditionalServicesReport(historiales, filter);
-            }
-
-            // Si no hay historiales, retornar reporte vacío
-            if (historiales.isEmpty()) {
-                return createEmptyReport(filter.getStartDate(), filter.getEndDate());
+            String category = filter.getCategory() == null || filter.getCategory().isEmpty()
+                    ? null
+                    : filter.getCategory();
+            ServiceReportResponse cached = reportCache.getResult(filter.getStartDate(), filter.getEndDate(), category);
+            if (cached != null) {
+                return cached;
             }
 
-            // Extraer servicios regulares
-            List<ServicioRealizado> serviciosRealizados = extractServiciosRealizados(
-                    historiales,
-                    filter.getCategory()
-            );
-
-            // Si no hay filtro de categoría, incluir también servicios adicionales
-            List<ServiceMetricsDTO> servicesMetrics = new ArrayList<>();
-
-            if (filter.getCategory() == null) {
-                // Procesar servicios regulares
-                servicesMetrics.addAll(calculateServicesMetrics(serviciosRealizados, historiales));
-
-                // Procesar servicios adicionales
-                List<ServicioAdicionalWrapper> serviciosAdicionales = new ArrayList<>();
-                for (HistorialClinico historial : historiales) {
-                    if (historial.getServiciosAdicionales() != null) {
-                        for (ServicioAdicional servicio : historial.getServiciosAdicionales()) {
-                            serviciosAdicionales.add(new ServicioAdicionalWrapper(
-                                    servicio,
-                                    historial.getFechaVisita()
-                            ));
-                        }
-                    }
-                }
-
-                // Agrupar servicios adicionales por descripción
-                Map<String, List<ServicioAdicionalWrapper>> serviciosPorDescripcion =
-                        serviciosAdicionales.stream()
-                                .collect(Collectors.groupingBy(w -> w.servicio.getDescripcion()));
-
-                // Agregar métricas de servicios adicionales
-                serviciosPorDescripcion.forEach((descripcion, servicios) -> {
-                    double serviceRevenue = servicios.stream()
-                            .mapToDouble(w -> w.servicio.getPrecio())
-                            .sum();
-
-                    servicesMetrics.add(ServiceMetricsDTO.builder()
-                            .serviceId("adicional-" + UUID.randomUUID().toString())
-                            .serviceName(descripcion)
-                            .totalUsage(servicios.size())
-                            .totalRevenue(serviceRevenue)
-                            .averageRevenue(serviceRevenue / servicios.size())
-                            .monthlyMetrics(calculateMonthlyMetricsForAdicionales(servicios))
-                            .build());
-                });
-            } else {
-                // Si hay filtro de categoría, solo incluir servicios regulares
-                servicesMetrics.addAll(calculateServicesMetrics(serviciosRealizados, historiales));
-            }
+            long generation = reportCache.generation();
+            ServiceReportAggregator aggregator = aggregate(filter.getStartDate(), filter.getEndDate(), generation);
 
-            // Calcular métricas por categoría
-            Map<String, Double> revenueByCategory = calculateRevenueByCategory(servicesMetrics);
-            Map<String, Long> usageByCategory = calculateUsageByCategory(servicesMetrics);
-
-            // Calcular totales
-            double totalRevenue = servicesMetrics.stream()
-                    .mapToDouble(ServiceMetricsDTO::getTotalRevenue)
-                    .sum();
-
-            long totalServicesUsed = servicesMetrics.stream()
-                    .mapToLong(ServiceMetricsDTO::getTotalUsage)
-                    .sum();
-
-            return ServiceReportResponse.builder()
-                    .startDate(filter.getStartDate())
-                    .endDate(filter.getEndDate())
-                    .totalRevenue(totalRevenue)
-                    .totalServicesUsed(totalServicesUsed)
-                    .servicesMetrics(servicesMetrics)
-                    .revenueByCategory(revenueByCategory)
-                    .usageByCategory(usageByCategory)
-                    .build();
+            // Si es categoría OTROS, manejamos solo servicios adicionales
+            ServiceReportResponse report = "OTROS".equals(category)
+                    ? createAdditionalServicesReport(filter, aggregator)
+                    : createReport(filter, category, aggregator);
+            reportCache.putResult(filter.getStartDate(), filter.getEndDate(), category, report, generation);
+            return report;
 
         } catch (Exception e) {
             logger.error("Error generating service report: ", e);
@@ -124,79 +89,82 @@ public class ServiceReportService {
     }
 
     /**
-     * Genera un reporte específico para servicios adicionales
+     * Estadísticas de la caché de reportes
      */
-    private ServiceReportResponse generateAdditionalServicesReport(
-            List<HistorialClinico> historiales,
-            ReportFilterRequest filter) {
-
-        // Extraer todos los servicios adicionales
-        List<ServicioAdicionalWrapper> serviciosAdicionales = new ArrayList<>();
-
-        for (HistorialClinico historial : historiales) {
-            if (historial.getServiciosAdicionales() != null) {
-                for (ServicioAdicional servicio : historial.getServiciosAdicionales()) {
-                    serviciosAdicionales.add(new ServicioAdicionalWrapper(
-                            servicio,
-                            historial.getFechaVisita()
-                    ));
-                }
+    public ReportCacheStats getCacheStats() {
+        return reportCache.stats();
+    }
+
+    /**
+     * Arma el reporte de servicios regulares (de una categoría, o de todas más los adicionales)
+     */
+    private ServiceReportResponse createReport(ReportFilterRequest filter, String category,
+                                               ServiceReportAggregator aggregator) throws Exception {
+        // Con filtro de categoría solo se incluyen los servicios regulares de esa categoría
+        boolean allCategories = category == null;
+
+        logger.info("Found {} clinical records in period", aggregator.historiales());
+
+        // Si no hay historiales, retornar reporte vacío
+        if (aggregator.historiales() == 0) {
+            return createEmptyReport(filter.getStartDate(), filter.getEndDate());
+        }
+
+        // Categorías de todos los servicios del reporte en una sola lectura
+        Map<String, ServiceCategory> categories = getServiceCategories(aggregator.regularServiceIds());
+
+        List<ServiceMetricsDTO> servicesMetrics = new ArrayList<>();
+        ServiceCategory targetCategory = allCategories ? null : parseCategory(category);
+        for (ServiceMetricsDTO metric : aggregator.regularMetrics()) {
+            if (allCategories || (targetCategory != null && targetCategory == categories.get(metric.getServiceId()))) {
+                servicesMetrics.add(metric);
             }
         }
+        if (allCategories) {
+            servicesMetrics.addAll(aggregator.additionalMetrics());
+        }
+
+        // Calcular métricas por categoría
+        Map<String, Double> revenueByCategory = calculateRevenueByCategory(servicesMetrics, categories);
+        Map<String, Long> usageByCategory = calculateUsageByCategory(servicesMetrics, categories);
 
-        // Calcular métricas
-        double totalRevenue = serviciosAdicionales.stream()
-                .mapToDouble(w -> w.servicio.getPrecio())
+        // Calcular totales
+        double totalRevenue = servicesMetrics.stream()
+                .mapToDouble(ServiceMetricsDTO::getTotalRevenue)
                 .sum();
 
-        // Agrupar por descripción para calcular uso
-        Map<String, List<ServicioAdicionalWrapper>> serviciosPorDescripcion =
-                serviciosAdicionales.stream()
-                        .collect(Collectors.groupingBy(w -> w.servicio.getDescripcion()));
-
-        // Crear métricas por servicio
-        List<ServiceMetricsDTO> servicesMetrics = serviciosPorDescripcion.entrySet().stream()
-                .map(entry -> {
-                    String descripcion = entry.getKey();
-                    List<ServicioAdicionalWrapper> servicios = entry.getValue();
-
-                    double serviceRevenue = servicios.stream()
-                            .mapToDouble(w -> w.servicio.getPrecio())
-                            .sum();
-
-                    return ServiceMetricsDTO.builder()
-                            .serviceId("adicional-" + UUID.randomUUID().toString())
-                            .serviceName(descripcion)
-                            .totalUsage(servicios.size())
-                            .totalRevenue(serviceRevenue)
-                            .averageRevenue(serviceRevenue / servicios.size())
-                            .monthlyMetrics(calculateMonthlyMetricsForAdicionales(servicios))
-                            .build();
-                })
-                .collect(Collectors.toList());
+        long totalServicesUsed = servicesMetrics.stream()
+                .mapToLong(ServiceMetricsDTO::getTotalUsage)
+                .sum();
 
         return ServiceReportResponse.builder()
                 .startDate(filter.getStartDate())
                 .endDate(filter.getEndDate())
                 .totalRevenue(totalRevenue)
-                .totalServicesUsed(serviciosAdicionales.size())
+                .totalServicesUsed(totalServicesUsed)
                 .servicesMetrics(servicesMetrics)
-                .revenueByCategory(Map.of("OTROS", totalRevenue))
-                .usageByCategory(Map.of("OTROS", (long) serviciosAdicionales.size()))
+                .revenueByCategory(revenueByCategory)
+                .usageByCategory(usageByCategory)
                 .build();
     }
 
     /**
-     * Clase auxiliar para mantener juntos el servicio adicional y su fecha
+     * Genera un reporte específico para servicios adicionales
      */
-    private static class ServicioAdicionalWrapper {
-        final ServicioAdicional servicio;
-        final Date fecha;
+    private ServiceReportResponse createAdditionalServicesReport(ReportFilterRequest filter,
+                                                                 ServiceReportAggregator aggregator) {
+        double totalRevenue = aggregator.additionalRevenue();
+        long totalUsage = aggregator.additionalUsage();
 
-        ServicioAdicionalWrapper(ServicioAdicional servicio, Date fecha) {
-            this.servicio = servicio;
-            this.fecha = fecha;
-        }
+        return ServiceReportResponse.builder()
+                .startDate(filter.getStartDate())
+                .endDate(filter.getEndDate())
+                .totalRevenue(totalRevenue)
+                .totalServicesUsed(totalUsage)
+                .servicesMetrics(aggregator.additionalMetrics())
+                .revenueByCategory(Map.of("OTROS", totalRevenue))
+                .usageByCategory(Map.of("OTROS", totalUsage))
+                .build();
     }
 
     /**
@@ -227,342 +195,261 @@ public class ServiceReportService {
     }
 
     /**
-     * Obtiene los historiales clínicos en un período específico
+     * Acumula los historiales del período mes a mes. Los meses cerrados y completos se toman de la
+     * caché de reportes; el resto se lee con una consulta por mes, todas lanzadas a la vez, y se
+     * acumula en el pool de reportes. Los meses anteriores al límite de archivo se completan con las
+     * particiones mensuales del archivo.
      */
-    private List<HistorialClinico> getHistorialesInPeriod(Date startDate, Date endDate)
-            throws Exception {
-        QuerySnapshot snapshot = firestore.collection("historial_clinico")
-                .whereGreaterThanOrEqualTo("fechaVisita", startDate)
-                .whereLessThanOrEqualTo("fechaVisita", endDate)
-                .get()
-                .get();
-
-        return snapshot.getDocuments().stream()
-                .map(doc -> {
-                    HistorialClinico historial = doc.toObject(HistorialClinico.class);
-                    if (historial != null) {
-                        historial.setId(doc.getId());
-                    }
-                    return historial;
-                })
-                .filter(Objects::nonNull)
-                .collect(Collectors.toList());
-    }
+    private ServiceReportAggregator aggregate(Date startDate, Date endDate, long generation) throws Exception {
+        ZoneId zone = ZoneId.systemDefault();
+        List<Date> bounds = monthBounds(startDate, endDate, zone);
+        int partitions = bounds.size() - 1;
+        YearMonth firstMonth = YearMonth.from(startDate.toInstant().atZone(zone));
+        YearMonth currentMonth = YearMonth.now(zone);
+
+        List<ServiceReportAggregator> cached = new ArrayList<>(partitions);
+        List<ApiFuture<QuerySnapshot>> futures = new ArrayList<>(partitions);
+        boolean[] cacheable = new boolean[partitions];
+        Date fetchStart = null;
+        Date fetchEnd = null;
+        for (int i = 0; i < partitions; i++) {
+            YearMonth month = firstMonth.plusMonths(i);
+            long nextMonthStart = monthStart(month.plusMonths(1), zone);
+            // Solo se reutiliza un mes cerrado que el rango cubre entero
+            cacheable[i] = month.isBefore(currentMonth)
+                    && bounds.get(i).getTime() == monthStart(month, zone)
+                    && (i < partitions - 1 || endDate.getTime() >= nextMonthStart - 1);
+            ServiceReportAggregator partial = cacheable[i] ? reportCache.getMonth(month.toString()) : null;
+            cached.add(partial);
+            if (partial != null) {
+                futures.add(null);
+                continue;
+            }
 
-    /**
-     * Extrae y filtra los servicios realizados
-     */
-    private List<ServicioRealizado> extractServiciosRealizados(
-            List<HistorialClinico> historiales,
-            String categoryFilter) {
-
-        List<ServicioRealizado> servicios = historiales.stream()
-                .filter(h -> h.getServiciosRealizados() != null)
-                .flatMap(h -> h.getServiciosRealizados().stream())
-                .collect(Collectors.toList());
-
-        // Si no hay filtro de categoría, retornamos todos
-        if (categoryFilter == null || categoryFilter.isEmpty()) {
-            return servicios;
+            Query query = firestore.collection("historial_clinico")
+                    .whereGreaterThanOrEqualTo("fechaVisita", bounds.get(i));
+            // El último mes incluye la fecha de fin, como la consulta sobre el rango completo
+            query = i == partitions - 1
+                    ? query.whereLessThanOrEqualTo("fechaVisita", endDate)
+                    : query.whereLessThan("fechaVisita", bounds.get(i + 1));
+            futures.add(query.get());
+            if (fetchStart == null) {
+                fetchStart = bounds.get(i);
+            }
+            fetchEnd = bounds.get(i + 1);
         }
-
-        // Filtrar por categoría
-        try {
-            ServiceCategory targetCategory = ServiceCategory.valueOf(categoryFilter);
-            return servicios.stream()
-                    .filter(s -> {
-                        try {
-                            DocumentSnapshot serviceDoc = firestore.collection("veterinary_services")
-                                    .document(s.getServiceId())
-                                    .get()
-                                    .get();
-
-                            return serviceDoc.exists() &&
-                                    targetCategory.equals(serviceDoc.get("category", ServiceCategory.class));
-                        } catch (Exception e) {
-                            logger.warn("Error checking service category: {}", e.getMessage());
-                            return false;
-                        }
-                    })
-                    .collect(Collectors.toList());
-        } catch (IllegalArgumentException e) {
-            logger.warn("Invalid category filter: {}", categoryFilter);
-            return new ArrayList<>();
+        List<HistorialClinico> archived = fetchStart == null
+                ? List.of()
+                : archivalService.findArchivedHistoriales(fetchStart, fetchEnd, query -> query);
+
+        List<Partition> parts = new ArrayList<>(partitions);
+        Set<String> liveIds = new HashSet<>();
+        for (int i = 0; i < partitions; i++) {
+            List<QueryDocumentSnapshot> docs = futures.get(i) != null
+                    ? futures.get(i).get().getDocuments()
+                    : List.of();
+            docs.forEach(doc -> liveIds.add(doc.getId()));
+            // Los extremos del mes son inclusivos, como los del rango del reporte
+            Date partitionEnd = i == partitions - 1 ? endDate : new Date(bounds.get(i + 1).getTime() - 1);
+            parts.add(new Partition(firstMonth.plusMonths(i).toString(), bounds.get(i), partitionEnd,
+                    cacheable[i], cached.get(i), docs, new ArrayList<>()));
+        }
+        // Mientras dura un movimiento al archivo un registro puede estar en ambos lados
+        for (HistorialClinico historial : archived) {
+            if (historial.getFechaVisita() == null || liveIds.contains(historial.getId())) {
+                continue;
+            }
+            int index = (int) firstMonth.until(YearMonth.from(historial.getFechaVisita().toInstant().atZone(zone)),
+                    ChronoUnit.MONTHS);
+            Partition partition = parts.get(Math.max(0, Math.min(index, partitions - 1)));
+            if (partition.cached() == null) {
+                partition.archived().add(historial);
+            }
         }
+
+        return reportPool.invoke(new AggregateTask(parts, 0, partitions, startDate, endDate, zone, generation));
     }
 
-    /**
-     * Calcula las métricas para cada servicio
-     */
-    private List<ServiceMetricsDTO> calculateServicesMetrics(
-            List<ServicioRealizado> servicios,
-            List<HistorialClinico> historiales) {
-
-        // Agrupar servicios por ID
-        Map<String, List<ServicioRealizado>> serviciosPorId = servicios.stream()
-                .collect(Collectors.groupingBy(ServicioRealizado::getServiceId));
-
-        // Obtener fechas por servicio
-        Map<String, List<Date>> fechasPorServicio = createFechasPorServicio(
-                historiales,
-                serviciosPorId.keySet()
-        );
-
-        // Calcular métricas para cada servicio
-        return serviciosPorId.entrySet().stream()
-                .map(entry -> {
-                    String serviceId = entry.getKey();
-                    List<ServicioRealizado> usos = entry.getValue();
-                    List<Date> fechasUso = fechasPorServicio.get(serviceId);
-
-                    double totalRevenue = usos.stream()
-                            .mapToDouble(s -> s.getPrecioPersonalizado() != null ?
-                                    s.getPrecioPersonalizado() : s.getPrecioBase())
-                            .sum();
-
-                    return ServiceMetricsDTO.builder()
-                            .serviceId(serviceId)
-                            .serviceName(usos.get(0).getServiceName())
-                            .totalUsage(usos.size())
-                            .totalRevenue(totalRevenue)
-                            .averageRevenue(totalRevenue / usos.size())
-                            .monthlyMetrics(calculateMonthlyMetricsForServicios(usos, fechasUso))
-                            .build();
-                })
-                .collect(Collectors.toList());
+    private static long monthStart(YearMonth month, ZoneId zone) {
+        return month.atDay(1).atStartOfDay(zone).toInstant().toEpochMilli();
     }
 
     /**
-     * Crea un mapa de fechas de uso por servicio
+     * Inicios de cada mes del rango: el primero es la fecha de inicio y el último el fin del rango
      */
-    private Map<String, List<Date>> createFechasPorServicio(
-            List<HistorialClinico> historiales,
-            Set<String> serviceIds) {
-
-        Map<String, List<Date>> fechasPorServicio = new HashMap<>();
-
-        for (HistorialClinico historial : historiales) {
-            Date fecha = historial.getFechaVisita();
-            if (fecha == null) continue;
-
-            if (historial.getServiciosRealizados() != null) {
-                for (ServicioRealizado servicio : historial.getServiciosRealizados()) {
-                    if (servicio != null && serviceIds.contains(servicio.getServiceId())) {
-                        fechasPorServicio
-                                .computeIfAbsent(servicio.getServiceId(), k -> new ArrayList<>())
-                                .add(fecha);
-                    }
-                }
-            }
+    private static List<Date> monthBounds(Date startDate, Date endDate, ZoneId zone) {
+        List<Date> bounds = new ArrayList<>();
+        bounds.add(startDate);
+        YearMonth month = YearMonth.from(startDate.toInstant().atZone(zone)).plusMonths(1);
+        YearMonth last = YearMonth.from(endDate.toInstant().atZone(zone));
+        while (!month.isAfter(last)) {
+            bounds.add(Date.from(month.atDay(1).atStartOfDay(zone).toInstant()));
+            month = month.plusMonths(1);
         }
-
-        return fechasPorServicio;
+        bounds.add(endDate);
+        return bounds;
     }
 
     /**
-     * Calcula métricas mensuales para servicios regulares
+     * Categoría de cada servicio, leída con un único getAll
      */
-    private List<MonthlyMetric> calculateMonthlyMetricsForServicios(
-            List<ServicioRealizado> servicios,
-            List<Date> fechas) {
-
-        if (fechas == null || fechas.isEmpty()) {
-            return new ArrayList<>();
+    private Map<String, ServiceCategory> getServiceCategories(Collection<String> serviceIds)
+            throws ExecutionException, InterruptedException {
+        Map<String, ServiceCategory> categories = new HashMap<>();
+        if (serviceIds.isEmpty()) {
+            return categories;
         }
-
-        Map<String, MonthlyMetricBuilder> monthlyData = new HashMap<>();
-
-        for (int i = 0; i < servicios.size(); i++) {
-            ServicioRealizado servicio = servicios.get(i);
-            Date fecha = fechas.get(i);
-
-            if (fecha != null) {
-                Calendar cal = Calendar.getInstance();
-                cal.setTime(fecha);
-                String key = cal.get(Calendar.YEAR) + "-" + cal.get(Calendar.MONTH);
-
-                MonthlyMetricBuilder builder = monthlyData.computeIfAbsent(
-                        key,
-                        k -> new MonthlyMetricBuilder(
-                                cal.get(Calendar.YEAR),
-                                cal.get(Calendar.MONTH)
-                        )
-                );
-
-                builder.addUsage();
-                builder.addRevenue(servicio.getPrecioPersonalizado() != null ?
-                        servicio.getPrecioPersonalizado() : servicio.getPrecioBase());
+        DocumentReference[] refs = serviceIds.stream()
+                .map(id -> firestore.collection("veterinary_services").document(id))
+                .toArray(DocumentReference[]::new);
+        for (DocumentSnapshot serviceDoc : firestore.getAll(refs).get()) {
+            if (!serviceDoc.exists()) {
+                continue;
             }
-        }
-
-        return monthlyData.values().stream()
-                .map(MonthlyMetricBuilder::build)
-                .sorted(Comparator
-                        .comparingInt(MonthlyMetric::getYear)
-                        .thenComparingInt(MonthlyMetric::getMonth))
-                .collect(Collectors.toList());
-    }
-
-    /**
-     * Calcula métricas mensuales para servicios adicionales
-     */
-    private List<MonthlyMetric> calculateMonthlyMetricsForAdicionales(
-            List<ServicioAdicionalWrapper> servicios) {
-
-        Map<String, MonthlyMetricBuilder> monthlyData = new HashMap<>();
-
-        for (ServicioAdicionalWrapper wrapper : servicios) {
-            if (wrapper.fecha != null) {
-                Calendar cal = Calendar.getInstance();
-                cal.setTime(wrapper.fecha);
-                String key = cal.get(Calendar.YEAR) + "-" + cal.get(Calendar.MONTH);
-
-                MonthlyMetricBuilder builder = monthlyData.computeIfAbsent(
-                        key,
-                        k -> new MonthlyMetricBuilder(
-                                cal.get(Calendar.YEAR),
-                                cal.get(Calendar.MONTH)
-                        )
-                );
-
-                builder.addUsage();
-                builder.addRevenue(wrapper.servicio.getPrecio());
+            try {
+                ServiceCategory category = serviceDoc.get("category", ServiceCategory.class);
+                if (category != null) {
+                    categories.put(serviceDoc.getId(), category);
+                }
+            } catch (Exception e) {
+                logger.warn("Error reading category of service {}: {}", serviceDoc.getId(), e.getMessage());
             }
         }
-
-        return monthlyData.values().stream()
-                .map(MonthlyMetricBuilder::build)
-                .sorted(Comparator
-                        .comparingInt(MonthlyMetric::getYear)
-                        .thenComparingInt(MonthlyMetric::getMonth))
-                .collect(Collectors.toList());
+        return categories;
     }
-    private static class MonthlyMetricBuilder {
-        private final int year;
-        private final int month;
-        private long usage;
-        private double revenue;
-
-        MonthlyMetricBuilder(int year, int month) {
-            this.year = year;
-            this.month = month;
-            this.usage = 0;
-            this.revenue = 0.0;
-        }
-
-        void addUsage() {
-            usage++;
-        }
 
-        void addRevenue(double amount) {
-            revenue += amount;
-        }
-
-        MonthlyMetric build() {
-            return MonthlyMetric.builder()
-                    .year(year)
-                    .month(month)
-                    .usage(usage)
-                    .revenue(revenue)
-                    .build();
+    private ServiceCategory parseCategory(String categoryFilter) {
+        try {
+            return ServiceCategory.valueOf(categoryFilter);
+        } catch (IllegalArgumentException e) {
+            logger.warn("Invalid category filter: {}", categoryFilter);
+            return null;
         }
     }
 
     /**
      * Calcula los ingresos por categoría
      */
-    private Map<String, Double> calculateRevenueByCategory(List<ServiceMetricsDTO> servicesMetrics) {
+    private Map<String, Double> calculateRevenueByCategory(List<ServiceMetricsDTO> servicesMetrics,
+                                                           Map<String, ServiceCategory> categories) {
         Map<String, Double> revenueByCategory = new HashMap<>();
-
         for (ServiceMetricsDTO metric : servicesMetrics) {
-            try {
-                // Si es un servicio adicional
-                if (metric.getServiceId().startsWith("adicional-")) {
-                    revenueByCategory.merge(
-                            ServiceCategory.OTROS.name(),
-                            metric.getTotalRevenue(),
-                            Double::sum
-                    );
-                    continue;
-                }
-
-                // Para servicios regulares
-                DocumentSnapshot serviceDoc = firestore.collection("veterinary_services")
-                        .document(metric.getServiceId())
-                        .get()
-                        .get();
-
-                if (serviceDoc.exists()) {
-                    ServiceCategory category = serviceDoc.get("category", ServiceCategory.class);
-                    if (category != null) {
-                        revenueByCategory.merge(
-                                category.name(),
-                                metric.getTotalRevenue(),
-                                Double::sum
-                        );
-                    }
-                }
-            } catch (Exception e) {
-                logger.warn("Error calculating revenue for service {}: {}",
-                        metric.getServiceId(), e.getMessage());
+            String category = categoryOf(metric, categories);
+            if (category != null) {
+                revenueByCategory.merge(category, metric.getTotalRevenue(), Double::sum);
             }
         }
-
         return revenueByCategory;
     }
 
     /**
      * Calcula el uso por categoría
      */
-    private Map<String, Long> calculateUsageByCategory(List<ServiceMetricsDTO> servicesMetrics) {
+    private Map<String, Long> calculateUsageByCategory(List<ServiceMetricsDTO> servicesMetrics,
+                                                       Map<String, ServiceCategory> categories) {
         Map<String, Long> usageByCategory = new HashMap<>();
-
         for (ServiceMetricsDTO metric : servicesMetrics) {
-            try {
-                // Si es un servicio adicional
-                if (metric.getServiceId().startsWith("adicional-")) {
-                    usageByCategory.merge(
-                            ServiceCategory.OTROS.name(),
-                            metric.getTotalUsage(),
-                            Long::sum
-                    );
-                    continue;
-                }
-
-                // Para servicios regulares
-                DocumentSnapshot serviceDoc = firestore.collection("veterinary_services")
-                        .document(metric.getServiceId())
-                        .get()
-                        .get();
-
-                if (serviceDoc.exists()) {
-                    ServiceCategory category = serviceDoc.get("category", ServiceCategory.class);
-                    if (category != null) {
-                        usageByCategory.merge(
-                                category.name(),
-                                metric.getTotalUsage(),
-                                Long::sum
-                        );
-                    }
-                }
-            } catch (Exception e) {
-                logger.warn("Error calculating usage for service {}: {}",
-                        metric.getServiceId(), e.getMessage());
+            String category = categoryOf(metric, categories);
+            if (category != null) {
+                usageByCategory.merge(category, metric.getTotalUsage(), Long::sum);
             }
         }
-
         return usageByCategory;
     }
 
     /**
-     * Calcula el ingreso total de todos los servicios
+     * Los servicios adicionales cuentan como OTROS; los regulares sin categoría conocida no se agrupan
      */
-    private double calculateTotalRevenue(List<ServicioRealizado> servicios) {
-        return servicios.stream()
-                .mapToDouble(s -> s.getPrecioPersonalizado() != null ?
-                        s.getPrecioPersonalizado() : s.getPrecioBase())
-                .sum();
+    private static String categoryOf(ServiceMetricsDTO metric, Map<String, ServiceCategory> categories) {
+        if (metric.getServiceId().startsWith(ServiceReportAggregator.ADDITIONAL_ID_PREFIX)) {
+            return ServiceCategory.OTROS.name();
+        }
+        ServiceCategory category = categories.get(metric.getServiceId());
+        return category != null ? category.name() : null;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        reportPool.shutdown();
+        try {
+            if (!reportPool.awaitTermination(10, TimeUnit.SECONDS)) {
+                reportPool.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            reportPool.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Historiales de un mes: el acumulado en caché o, si no lo hay, los documentos vivos (se
+     * convierten dentro de la tarea) y los registros archivados
+     */
+    private record Partition(String month, Date start, Date end, boolean cacheable,
+                             ServiceReportAggregator cached, List<QueryDocumentSnapshot> live,
+                             List<HistorialClinico> archived) {
     }
-}
 
+    /**
+     * Divide las particiones en mitades hasta llegar a un mes, que se acumula por separado (y se
+     * guarda en caché si está cerrado); los resultados parciales se combinan al volver
+     */
+    private final class AggregateTask extends RecursiveTask<ServiceReportAggregator> {
+        private final List<Partition> partitions;
+        private final int from;
+        private final int to;
+        private final Date startDate;
+        private final Date endDate;
+        private final ZoneId zone;
+        private final long generation;
+
+        AggregateTask(List<Partition> partitions, int from, int to, Date startDate, Date endDate, ZoneId zone,
+                      long generation) {
+            this.partitions = partitions;
+            this.from = from;
+            this.to = to;
+            this.startDate = startDate;
+            this.endDate = endDate;
+            this.zone = zone;
+            this.generation = generation;
+        }
+
+        @Override
+        protected ServiceReportAggregator compute() {
+            if (to - from <= 1) {
+                ServiceReportAggregator aggregator = new ServiceReportAggregator(startDate, endDate, zone);
+                for (int i = from; i < to; i++) {
+                    aggregator.merge(monthAggregate(partitions.get(i)));
+                }
+                return aggregator;
+            }
+            int middle = (from + to) >>> 1;
+            AggregateTask left = new AggregateTask(partitions, from, middle, startDate, endDate, zone, generation);
+            AggregateTask right = new AggregateTask(partitions, middle, to, startDate, endDate, zone, generation);
+            left.fork();
+            ServiceReportAggregator rightResult = right.compute();
+            return left.join().merge(rightResult);
+        }
 
+        private ServiceReportAggregator monthAggregate(Partition partition) {
+            if (partition.cached() != null) {
+                return partition.cached();
+            }
+            // Se acumulan servicios regulares y adicionales: la categoría se aplica al armar el reporte
+            ServiceReportAggregator month = new ServiceReportAggregator(partition.start(), partition.end(), zone);
+            for (QueryDocumentSnapshot doc : partition.live()) {
+                HistorialClinico historial = DocumentMappers.toHistorialClinico(doc);
+                if (historial != null) {
+                    month.add(historial, true, null, true);
+                }
+            }
+            for (HistorialClinico historial : partition.archived()) {
+                month.add(historial, true, null, true);
+            }
+            if (partition.cacheable()) {
+                reportCache.putMonth(partition.month(), month, generation);
+            }
+            return month;
+        }
+    }
+}
@@ -13,6 +13,7 @@ import org.springframework.stereotype.Service;
 import java.util.Date;
 import java.util.UUID;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.ExecutionException;
 import java.util.stream.Collectors;
 
@@ -22,6 +23,15 @@ public class ServiceVeterinaryService {
     @Autowired
     private Firestore firestore;
 
+    @Autowired
+    private CatalogCacheService catalogCacheService;
+
+    @Autowired
+    private FieldUpdateWriter fieldUpdateWriter;
+
+    // Lista de servicios activos asociada a la versión del catálogo con la que se cargó
+    private volatile ActiveServicesSnapshot activeServices;
+
     /**
      * Obtiene todos los servicios veterinarios con paginación
      */
@@ -113,6 +123,7 @@ public class ServiceVeterinaryService {
                     .document(service.getId())
                     .set(service)
                     .get();
+            catalogCacheService.bump(CatalogCacheService.SERVICES);
 
             return convertToServiceResponse(service);
         } catch (Exception e) {
@@ -154,6 +165,7 @@ public class ServiceVeterinaryService {
                     .document(id)
                     .set(service)
                     .get();
+            catalogCacheService.bump(CatalogCacheService.SERVICES);
 
             return convertToServiceResponse(service);
         } catch (Exception e) {
@@ -194,6 +206,7 @@ public class ServiceVeterinaryService {
                     .document(id)
                     .delete()
                     .get();
+            catalogCacheService.bump(CatalogCacheService.SERVICES);
 
         } catch (Exception e) {
             throw new CustomExceptions.ProcessingException(
@@ -219,12 +232,15 @@ public class ServiceVeterinaryService {
             service.setActive(!service.isActive());
             service.setUpdatedAt(new Date());
 
-            firestore.collection("veterinary_services")
-                    .document(id)
-                    .set(service)
-                    .get();
+            // Si otro cambio llegó después de la lectura, el estado invertido ya no es válido: conflicto
+            FieldUpdateWriter.await(fieldUpdateWriter.update(doc.getReference(),
+                    Map.of("active", service.isActive(), "updatedAt", service.getUpdatedAt()),
+                    doc.getUpdateTime()));
+            catalogCacheService.bump(CatalogCacheService.SERVICES);
 
             return convertToServiceResponse(service);
+        } catch (CustomExceptions.ConflictException e) {
+            throw e;
         } catch (Exception e) {
             throw new CustomExceptions.ProcessingException(
                     "Error toggling service status: " + e.getMessage());
@@ -254,6 +270,11 @@ public class ServiceVeterinaryService {
      * @return Lista de servicios activos
      */
     public List<ServiceDetailResponse> getActiveServices() {
+        long version = catalogCacheService.currentVersion(CatalogCacheService.SERVICES);
+        ActiveServicesSnapshot cached = activeServices;
+        if (cached != null && cached.version() == version) {
+            return cached.services();
+        }
         try {
             QuerySnapshot snapshot = firestore.collection("veterinary_services")
                     .whereEqualTo("active", true)
@@ -261,10 +282,12 @@ public class ServiceVeterinaryService {
                     .get()
                     .get();
 
-            return snapshot.getDocuments().stream()
+            List<ServiceDetailResponse> services = snapshot.getDocuments().stream()
                     .map(doc -> doc.toObject(ServiceVeterinary.class))
                     .map(this::convertToServiceDetailResponse)
-                    .collect(Collectors.toList());
+                    .collect(Collectors.toUnmodifiableList());
+            activeServices = new ActiveServicesSnapshot(version, services);
+            return services;
         } catch (Exception e) {
             throw new CustomExceptions.ProcessingException(
                     "Error obteniendo servicios activos: " + e.getMessage());
@@ -306,4 +329,7 @@ public class ServiceVeterinaryService {
                 .category(service.getCategory())
                 .build();
     }
-}
\ No newline at end of file
+
+    private record ActiveServicesSnapshot(long version, List<ServiceDetailResponse> services) {
+    }
+}
@@ -8,6 +8,7 @@ import com.example.demo.dto.UserDTOs.*;
 import com.example.demo.exception.CustomExceptions;
 import com.example.demo.model.Role;
 import com.example.demo.model.User;
+import com.example.demo.util.DocumentMappers;
 import com.google.cloud.firestore.*;
 import com.google.firebase.auth.FirebaseAuth;
 import com.google.firebase.auth.FirebaseAuthException;
@@ -37,6 +38,15 @@ public class UserService {
     private FirebaseAuth firebaseAuth;
     @Autowired
     private Firestore firestore;
+    @Autowired
+    private ClientSearchIndexService clientSearchIndexService;
+
+    @Autowired
+    private CascadeDeleteService cascadeDeleteService;
+    @Autowired
+    private CacheInvalidationService cacheInvalidationService;
+    @Autowired
+    private FieldUpdateWriter fieldUpdateWriter;
     private Firestore getFirestore() {
         return FirestoreClient.getFirestore();
     }
@@ -63,7 +73,7 @@ public class UserService {
 
             // Filtrar en memoria por el término de búsqueda (case insensitive)
             List<UserResponse> filteredUsers = allClientsSnapshot.getDocuments().stream()
-                    .map(doc -> doc.toObject(User.class))
+                    .map(DocumentMappers::toUser)
                     .filter(user ->
                             (user.getNombre() + " " + user.getApellido())
                                     .toLowerCase()
@@ -121,6 +131,8 @@ public class UserService {
 
             // Guarda el nuevo usuario en Firestore
             getFirestore().collection("users").document(newUser.getUid()).set(newUser).get();
+            // Los nodos que consultaron el usuario antes de crearlo tienen cacheado que no tenía roles
+            cacheInvalidationService.invalidate(CacheInvalidationService.USERS, newUser.getUid());
 
             return convertToUserResponse(newUser);
         } catch (InterruptedException | ExecutionException e) {
@@ -151,6 +163,7 @@ public class UserService {
 
             // Save the user to Firestore
             getFirestore().collection("users").document(newUser.getUid()).set(newUser).get();
+            cacheInvalidationService.invalidate(CacheInvalidationService.USERS, newUser.getUid());
 
             // Set custom claims for roles in Firebase Authentication
             Map<String, Object> claims = new HashMap<>();
@@ -175,12 +188,10 @@ public class UserService {
         // Actualiza el usuario en Firestore
         try {
             getFirestore().collection("users").document(user.getUid()).set(user).get();
-        } catch (InterruptedException e) {
-            System.err.println(e);
-            throw new RuntimeException(e);
-        } catch (ExecutionException e) {
-            System.err.println(e);
-            throw new RuntimeException(e);
+            cacheInvalidationService.invalidate(CacheInvalidationService.USERS, user.getUid());
+        } catch (InterruptedException | ExecutionException e) {
+            logger.error("Error updating user {}", user.getUid(), e);
+            throw new CustomExceptions.ProcessingException("Error updating user: " + e.getMessage());
         }
     }
     public Optional<User> findByEmail(String email) {
@@ -191,7 +202,7 @@ public class UserService {
                     .get();
             if (!querySnapshot.isEmpty()) {
                 DocumentSnapshot document = querySnapshot.getDocuments().get(0);
-                return Optional.of(document.toObject(User.class));
+                return Optional.of(DocumentMappers.toUser(document));
             }
             return Optional.empty();
         } catch (InterruptedException | ExecutionException e) {
@@ -201,7 +212,7 @@ public class UserService {
 
     public UserResponse getUserById(String id) {
         try {
-            User user = getFirestore().collection("users").document(id).get().get().toObject(User.class);
+            User user = DocumentMappers.toUser(getFirestore().collection("users").document(id).get().get());
             if (user == null) {
                 throw new CustomExceptions.UserNotFoundException("User not found with id: " + id);
             }
@@ -211,6 +222,32 @@ public class UserService {
         }
     }
 
+    /**
+     * Obtiene varios usuarios con una sola lectura; los IDs inexistentes se omiten
+     */
+    public Map<String, UserResponse> getUsersByIds(Collection<String> ids) {
+        DocumentReference[] refs = ids.stream()
+                .filter(Objects::nonNull)
+                .distinct()
+                .map(id -> getFirestore().collection("users").document(id))
+                .toArray(DocumentReference[]::new);
+        Map<String, UserResponse> users = new HashMap<>();
+        if (refs.length == 0) {
+            return users;
+        }
+        try {
+            for (DocumentSnapshot doc : getFirestore().getAll(refs).get()) {
+                User user = doc.exists() ? DocumentMappers.toUser(doc) : null;
+                if (user != null) {
+                    users.put(doc.getId(), convertToUserResponse(user));
+                }
+            }
+            return users;
+        } catch (InterruptedException | ExecutionException e) {
+            throw new CustomExceptions.ProcessingException("Error fetching users: " + e.getMessage());
+        }
+    }
+
     // En UserService.java
     // En UserService.java
     public PaginatedResponse<UserResponse> getAllUsers(PaginationRequest request,
@@ -248,7 +285,7 @@ public class UserService {
             // Convertir resultados
             List<UserResponse> users = querySnapshot.getDocuments().stream()
                     .map(doc -> {
-                        User user = doc.toObject(User.class);
+                        User user = DocumentMappers.toUser(doc);
                         user.setUid(doc.getId());
                         return convertToUserResponse(user);
                     })
@@ -288,7 +325,7 @@ public class UserService {
             // Convertir resultados
             List<UserResponse> veterinarians = querySnapshot.getDocuments().stream()
                     .map(doc -> {
-                        User user = doc.toObject(User.class);
+                        User user = DocumentMappers.toUser(doc);
                         user.setUid(doc.getId()); // Asegurar que el ID esté establecido
                         return convertToUserResponse(user);
                     })
@@ -309,7 +346,7 @@ public class UserService {
 
     public UserResponse updateUser(String id, UpdateUserRequest request) {
         try {
-            User user = getFirestore().collection("users").document(id).get().get().toObject(User.class);
+            User user = DocumentMappers.toUser(getFirestore().collection("users").document(id).get().get());
             if (user == null) {
                 throw new CustomExceptions.UserNotFoundException("User not found with id: " + id);
             }
@@ -321,6 +358,8 @@ public class UserService {
             user.setRoles(request.getRoles());
 
             getFirestore().collection("users").document(id).set(user).get();
+            clientSearchIndexService.refreshClientAsync(id);
+            cacheInvalidationService.invalidate(CacheInvalidationService.USERS, id);
             return convertToUserResponse(user);
         } catch (InterruptedException | ExecutionException e) {
             throw new CustomExceptions.ProcessingException("Error updating user: " + e.getMessage());
@@ -330,8 +369,11 @@ public class UserService {
     public void deleteUser(String id) {
         try {
             FirebaseAuth.getInstance().deleteUser(id);
-            getFirestore().collection("users").document(id).delete().get();
-        } catch (FirebaseAuthException | InterruptedException | ExecutionException e) {
+            // Mascotas, citas, favoritos, notas, proyección de búsqueda y el propio usuario
+            cascadeDeleteService.deleteUser(id);
+            cacheInvalidationService.invalidate(CacheInvalidationService.USERS, id);
+            cacheInvalidationService.invalidate(CacheInvalidationService.FAVORITES, id);
+        } catch (FirebaseAuthException e) {
             throw new CustomExceptions.ProcessingException("Error deleting user: " + e.getMessage());
         }
     }
@@ -391,12 +433,15 @@ public class UserService {
 
     public UserResponse toggleUserStatus(String id, ToggleUserStatusRequest request) {
         try {
-            User user = getFirestore().collection("users").document(id).get().get().toObject(User.class);
+            DocumentSnapshot userDoc = getFirestore().collection("users").document(id).get().get();
+            User user = DocumentMappers.toUser(userDoc);
             if (user == null) {
                 throw new CustomExceptions.UserNotFoundException("User not found with id: " + id);
             }
             user.setActive(request.isActive());
-            getFirestore().collection("users").document(id).set(user).get();
+            FieldUpdateWriter.await(fieldUpdateWriter.update(userDoc.getReference(),
+                    Map.of("active", request.isActive()), userDoc.getUpdateTime()));
+            cacheInvalidationService.invalidate(CacheInvalidationService.USERS, id);
             return convertToUserResponse(user);
         } catch (InterruptedException | ExecutionException e) {
             throw new CustomExceptions.ProcessingException("Error toggling user status: " + e.getMessage());
@@ -432,7 +477,7 @@ public class UserService {
     public UserResponse updateUserProfile(UpdateProfileRequest request) {
         String uid = getCurrentUserUid();
         try {
-            User user = getFirestore().collection("users").document(uid).get().get().toObject(User.class);
+            User user = DocumentMappers.toUser(getFirestore().collection("users").document(uid).get().get());
             if (user == null) {
                 throw new CustomExceptions.UserNotFoundException("User not found with id: " + uid);
             }
@@ -478,7 +523,7 @@ public class UserService {
     public UserResponse updateUserProfile(UpdateProfileRequest request) {
         String uid = getCurrentUserUid();
         try {
-            User user = getFirestore().collection("users").document(uid).get().get().toObject(User.class);
+            User user = DocumentMappers.toUser(getFirestore().collection("users").document(uid).get().get());
             if (user == null) {
                 throw new CustomExceptions.UserNotFoundException("User not found with id: " + uid);
             }
@@ -505,12 +550,16 @@ public class UserService {
     }
     public UserResponse updateUserRoles(String id, List<Role> roles) {
         try {
-            User user = getFirestore().collection("users").document(id).get().get().toObject(User.class);
+            DocumentSnapshot userDoc = getFirestore().collection("users").document(id).get().get();
+            User user = DocumentMappers.toUser(userDoc);
             if (user == null) {
                 throw new CustomExceptions.UserNotFoundException("User not found with id: " + id);
             }
             user.setRoles(roles);
-            getFirestore().collection("users").document(id).set(user).get();
+            FieldUpdateWriter.await(fieldUpdateWriter.update(userDoc.getReference(),
+                    Map.of("roles", roles.stream().map(Role::name).collect(Collectors.toList())),
+                    userDoc.getUpdateTime()));
+            cacheInvalidationService.invalidate(CacheInvalidationService.USERS, id);
             return convertToUserResponse(user);
         } catch (InterruptedException | ExecutionException e) {
             throw new CustomExceptions.ProcessingException("Error updating user roles: " + e.getMessage());
@@ -523,7 +572,7 @@ public class UserService {
     public UserResponse updateCurrentUserProfile(UpdateProfileRequest request) {
         String uid = getCurrentUserUid();
         try {
-            User user = getFirestore().collection("users").document(uid).get().get().toObject(User.class);
+            User user = DocumentMappers.toUser(getFirestore().collection("users").document(uid).get().get());
             if (user == null) {
                 throw new CustomExceptions.UserNotFoundException("User not found with id: " + uid);
             }
@@ -540,6 +589,8 @@ public class UserService {
                     .build();
 
             getFirestore().collection("users").document(uid).set(updatedUser).get();
+            clientSearchIndexService.refreshClientAsync(uid);
+            cacheInvalidationService.invalidate(CacheInvalidationService.USERS, uid);
             return convertToUserResponse(user);
         } catch (InterruptedException | ExecutionException e) {
             throw new CustomExceptions.ProcessingException("Error updating user profile: " + e.getMessage());
@@ -570,7 +621,7 @@ public class UserService {
                 throw new CustomExceptions.UserNotFoundException("User not found with id: " + id);
             }
 
-            User user = document.toObject(User.class);
+            User user = DocumentMappers.toUser(document);
             if (user == null) {
                 throw new CustomExceptions.ProcessingException("Error converting Firestore document to User object");
             }
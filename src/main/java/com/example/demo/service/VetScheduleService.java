@@ -0,0 +1,379 @@
+package com.example.demo.service;
+
+import com.example.demo.exception.CustomExceptions;
+import com.example.demo.model.Appointment;
+import com.example.demo.util.DocumentMappers;
+import com.google.cloud.Timestamp;
+import com.google.cloud.firestore.*;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Agenda diaria por veterinario: un documento {@code vet_schedules/{vetId}_{yyyy-MM-dd}} con las
+ * citas del día en un arreglo ordenado por hora. Se mantiene en la misma transacción que escribe la
+ * cita (alta, reprogramación, cancelación), de modo que la agenda de un día es una sola lectura y
+ * sirve para detectar choques de horario al reservar. Si el documento de un día no existe se
+ * reconstruye a partir de {@code appointments}.
+ */
+@Service
+@Slf4j
+public class VetScheduleService {
+
+    public static final String COLLECTION = "vet_schedules";
+
+    /**
+     * Campos de la cita que se copian en cada entrada de la agenda
+     */
+    public static final Set<String> ENTRY_FIELDS = Set.of(
+            "id", "petId", "clientId", "veterinarianId", "appointmentDate", "reason", "status", "notes");
+
+    private static final ZoneId ZONE = ZoneId.systemDefault();
+
+    @Autowired
+    private Firestore firestore;
+
+    @Value("${appointments.slot-minutes:30}")
+    private int slotMinutes;
+
+    /**
+     * Citas del día de un veterinario en orden de hora, incluidas las canceladas
+     */
+    public List<Appointment> getDay(String veterinarianId, Date date) {
+        try {
+            DocumentSnapshot doc = firestore.collection(COLLECTION).document(DayKey.of(veterinarianId, date).id()).get().get();
+            if (doc.exists()) {
+                return toAppointments(entries(doc));
+            }
+            // Día sin documento: se reconstruye dentro de una transacción y se guarda para las siguientes lecturas
+            return firestore.runTransaction(transaction -> {
+                Editor editor = open(transaction, List.of(DayKey.of(veterinarianId, date)));
+                editor.commit();
+                return editor.appointments(veterinarianId, date);
+            }).get();
+        } catch (InterruptedException | ExecutionException e) {
+            throw new CustomExceptions.ProcessingException("Error fetching veterinarian schedule: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Guarda la cita y actualiza su agenda en una misma transacción. Con {@code previousDate} la
+     * entrada se mueve desde el día anterior; con {@code checkConflict} no se escribe nada y se
+     * devuelve {@code false} si el veterinario ya tiene una cita activa en ese turno.
+     */
+    public boolean save(DocumentReference appointmentRef, Appointment appointment, Date previousDate,
+                        boolean checkConflict) throws ExecutionException, InterruptedException {
+        if (appointment.getVeterinarianId() == null || appointment.getAppointmentDate() == null) {
+            appointmentRef.set(appointment).get();
+            return true;
+        }
+        List<DayKey> days = new ArrayList<>();
+        days.add(DayKey.of(appointment.getVeterinarianId(), appointment.getAppointmentDate()));
+        if (previousDate != null) {
+            days.add(DayKey.of(appointment.getVeterinarianId(), previousDate));
+        }
+        return firestore.runTransaction(transaction -> {
+            Editor editor = open(transaction, days);
+            if (!editor.place(appointment, previousDate, checkConflict)) {
+                return false;
+            }
+            transaction.set(appointmentRef, appointment);
+            editor.commit();
+            return true;
+        }).get();
+    }
+
+    /**
+     * Cambia solo los campos indicados de una cita (por ejemplo su estado) y su entrada en la agenda,
+     * sin reescribir el documento completo. Si la cita ya no está en la versión leída
+     * ({@code expectedUpdateTime}), la escritura se rechaza como conflicto.
+     */
+    public void update(DocumentReference appointmentRef, Appointment appointment, Map<String, Object> fields,
+                       Timestamp expectedUpdateTime) throws ExecutionException, InterruptedException {
+        Precondition precondition = expectedUpdateTime != null
+                ? Precondition.updatedAt(expectedUpdateTime)
+                : Precondition.NONE;
+        if (appointment.getVeterinarianId() == null || appointment.getAppointmentDate() == null) {
+            FieldUpdateWriter.await(appointmentRef.update(fields, precondition));
+            return;
+        }
+        List<DayKey> days = List.of(DayKey.of(appointment.getVeterinarianId(), appointment.getAppointmentDate()));
+        FieldUpdateWriter.await(firestore.runTransaction(transaction -> {
+            Editor editor = open(transaction, days);
+            transaction.update(appointmentRef, fields, precondition);
+            editor.put(appointment);
+            editor.commit();
+            return null;
+        }));
+    }
+
+    /**
+     * Lee dentro de la transacción las agendas de los días indicados (y de los días vecinos cuando una
+     * cita cae cerca de medianoche). Debe llamarse antes de cualquier escritura de la transacción.
+     */
+    public Editor open(Transaction transaction, Collection<DayKey> days)
+            throws ExecutionException, InterruptedException {
+        List<DayKey> keys = new ArrayList<>(withNeighbours(days));
+        DocumentReference[] refs = keys.stream()
+                .map(day -> firestore.collection(COLLECTION).document(day.id()))
+                .toArray(DocumentReference[]::new);
+
+        Map<String, Day> loaded = new HashMap<>();
+        List<DocumentSnapshot> snapshots = refs.length == 0 ? List.of() : transaction.getAll(refs).get();
+        for (int i = 0; i < keys.size(); i++) {
+            DayKey key = keys.get(i);
+            DocumentSnapshot snapshot = snapshots.get(i);
+            if (snapshot.exists()) {
+                loaded.put(key.id(), new Day(key, refs[i], entries(snapshot), false));
+                continue;
+            }
+            List<Map<String, Object>> entries = new ArrayList<>();
+            for (DocumentSnapshot doc : transaction.get(firestore.collection("appointments")
+                    .whereEqualTo("veterinarianId", key.veterinarianId())
+                    .whereGreaterThanOrEqualTo("appointmentDate", key.start())
+                    .whereLessThan("appointmentDate", key.end())).get().getDocuments()) {
+                Appointment appointment = DocumentMappers.toAppointment(doc);
+                if (appointment != null) {
+                    appointment.setId(doc.getId());
+                    entries.add(toEntry(appointment));
+                }
+            }
+            Day day = new Day(key, refs[i], entries, true);
+            day.sort();
+            loaded.put(key.id(), day);
+        }
+        return new Editor(transaction, loaded, slotMinutes * 60_000L);
+    }
+
+    /**
+     * Días (y veterinarios) que hay que leer para tocar una cita en esa fecha
+     */
+    private Set<DayKey> withNeighbours(Collection<DayKey> days) {
+        long slotMillis = slotMinutes * 60_000L;
+        Set<DayKey> keys = new LinkedHashSet<>();
+        for (DayKey day : days) {
+            keys.add(day);
+            if (day.date() == null) {
+                continue;
+            }
+            long time = day.date().getTime();
+            if (time - day.start().getTime() < slotMillis) {
+                keys.add(DayKey.of(day.veterinarianId(), new Date(day.start().getTime() - 1)));
+            }
+            if (day.end().getTime() - time < slotMillis) {
+                keys.add(DayKey.of(day.veterinarianId(), day.end()));
+            }
+        }
+        return keys;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<Map<String, Object>> entries(DocumentSnapshot doc) {
+        Object value = doc.get("appointments");
+        List<Map<String, Object>> entries = new ArrayList<>();
+        if (value instanceof List<?> list) {
+            for (Object item : list) {
+                if (item instanceof Map<?, ?> entry) {
+                    entries.add(new HashMap<>((Map<String, Object>) entry));
+                }
+            }
+        }
+        return entries;
+    }
+
+    private static List<Appointment> toAppointments(List<Map<String, Object>> entries) {
+        List<Appointment> appointments = new ArrayList<>(entries.size());
+        for (Map<String, Object> entry : entries) {
+            appointments.add(DocumentMappers.toAppointment(entry));
+        }
+        return appointments;
+    }
+
+    private static Map<String, Object> toEntry(Appointment appointment) {
+        Map<String, Object> entry = new HashMap<>();
+        entry.put("id", appointment.getId());
+        entry.put("petId", appointment.getPetId());
+        entry.put("clientId", appointment.getClientId());
+        entry.put("veterinarianId", appointment.getVeterinarianId());
+        entry.put("appointmentDate", appointment.getAppointmentDate());
+        entry.put("reason", appointment.getReason());
+        entry.put("status", appointment.getStatus());
+        entry.put("notes", appointment.getNotes());
+        return entry;
+    }
+
+    private static Date entryDate(Map<String, Object> entry) {
+        Object value = entry.get("appointmentDate");
+        if (value instanceof Timestamp timestamp) {
+            return timestamp.toDate();
+        }
+        return value instanceof Date date ? date : null;
+    }
+
+    /**
+     * Día de agenda de un veterinario. {@code date} es la hora de la cita que motivó la lectura.
+     */
+    public record DayKey(String veterinarianId, LocalDate day, Date date) {
+
+        public static DayKey of(String veterinarianId, Date date) {
+            return new DayKey(veterinarianId, date.toInstant().atZone(ZONE).toLocalDate(), date);
+        }
+
+        public String id() {
+            return veterinarianId + "_" + day;
+        }
+
+        Date start() {
+            return Date.from(day.atStartOfDay(ZONE).toInstant());
+        }
+
+        Date end() {
+            return Date.from(day.plusDays(1).atStartOfDay(ZONE).toInstant());
+        }
+
+        // Dos claves del mismo día son iguales aunque vengan de horas distintas
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof DayKey key && key.id().equals(id());
+        }
+
+        @Override
+        public int hashCode() {
+            return id().hashCode();
+        }
+    }
+
+    /**
+     * Agendas leídas en una transacción. Acumula los cambios y los escribe todos en {@link #commit()}.
+     */
+    public static final class Editor {
+        private final Transaction transaction;
+        private final Map<String, Day> days;
+        private final long slotMillis;
+
+        private Editor(Transaction transaction, Map<String, Day> days, long slotMillis) {
+            this.transaction = transaction;
+            this.days = days;
+            this.slotMillis = slotMillis;
+        }
+
+        /**
+         * Indica si el veterinario tiene otra cita activa a menos de un turno de {@code date}
+         */
+        public boolean hasConflict(String veterinarianId, Date date, String excludeAppointmentId) {
+            long target = date.getTime();
+            for (Day day : days.values()) {
+                if (!day.key.veterinarianId().equals(veterinarianId)) {
+                    continue;
+                }
+                for (Map<String, Object> entry : day.entries) {
+                    Date occupied = entryDate(entry);
+                    if (occupied != null
+                            && !"CANCELLED".equals(entry.get("status"))
+                            && !Objects.equals(entry.get("id"), excludeAppointmentId)
+                            && Math.abs(occupied.getTime() - target) < slotMillis) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Coloca la cita en su fecha actual, quitándola antes de {@code previousDate} si se indica. Con
+         * {@code checkConflict} no cambia nada y devuelve {@code false} si el veterinario ya tiene otra
+         * cita activa en ese turno. Es la comprobación que usan tanto las reservas sueltas como los lotes.
+         */
+        public boolean place(Appointment appointment, Date previousDate, boolean checkConflict) {
+            if (checkConflict && hasConflict(appointment.getVeterinarianId(),
+                    appointment.getAppointmentDate(), appointment.getId())) {
+                return false;
+            }
+            if (previousDate != null) {
+                remove(appointment.getVeterinarianId(), previousDate, appointment.getId());
+            }
+            put(appointment);
+            return true;
+        }
+
+        /**
+         * Agrega o reemplaza la entrada de la cita en el día de su fecha actual
+         */
+        public void put(Appointment appointment) {
+            Day day = day(appointment.getVeterinarianId(), appointment.getAppointmentDate());
+            day.entries.removeIf(entry -> Objects.equals(entry.get("id"), appointment.getId()));
+            day.entries.add(toEntry(appointment));
+            day.sort();
+            day.dirty = true;
+        }
+
+        /**
+         * Quita la cita del día en que estaba (por ejemplo, antes de reprogramarla)
+         */
+        public void remove(String veterinarianId, Date date, String appointmentId) {
+            Day day = day(veterinarianId, date);
+            if (day.entries.removeIf(entry -> Objects.equals(entry.get("id"), appointmentId))) {
+                day.dirty = true;
+            }
+        }
+
+        public List<Appointment> appointments(String veterinarianId, Date date) {
+            return toAppointments(day(veterinarianId, date).entries);
+        }
+
+        /**
+         * Escribe los días modificados o reconstruidos
+         */
+        public void commit() {
+            Date now = new Date();
+            for (Day day : days.values()) {
+                if (!day.dirty) {
+                    continue;
+                }
+                Map<String, Object> data = new HashMap<>();
+                data.put("veterinarianId", day.key.veterinarianId());
+                data.put("day", day.key.day().toString());
+                data.put("appointments", day.entries);
+                data.put("count", day.entries.stream().filter(entry -> !"CANCELLED".equals(entry.get("status"))).count());
+                data.put("updatedAt", now);
+                transaction.set(day.ref, data);
+            }
+        }
+
+        private Day day(String veterinarianId, Date date) {
+            Day day = days.get(DayKey.of(veterinarianId, date).id());
+            if (day == null) {
+                throw new IllegalStateException("Agenda no leída en la transacción: " + DayKey.of(veterinarianId, date).id());
+            }
+            return day;
+        }
+    }
+
+    /**
+     * Estado en memoria de un día de agenda dentro de una transacción
+     */
+    private static final class Day {
+        private final DayKey key;
+        private final DocumentReference ref;
+        private final List<Map<String, Object>> entries;
+        private boolean dirty;
+
+        Day(DayKey key, DocumentReference ref, List<Map<String, Object>> entries, boolean dirty) {
+            this.key = key;
+            this.ref = ref;
+            this.entries = entries;
+            this.dirty = dirty;
+        }
+
+        void sort() {
+            entries.sort(Comparator.comparing(VetScheduleService::entryDate,
+                    Comparator.nullsLast(Comparator.naturalOrder())));
+        }
+    }
+}
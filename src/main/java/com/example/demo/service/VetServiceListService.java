@@ -17,6 +17,9 @@ public class VetServiceListService {
     @Autowired
     private Firestore firestore;
 
+    @Autowired
+    private ServiceCatalogIndex serviceCatalogIndex;
+
     /**
      * Obtiene la lista de servicios aplicando filtros y paginación
      */
@@ -101,76 +104,40 @@ public class VetServiceListService {
      */
     public PaginatedResponse<ServiceDTO> getServiceList(ServiceSearchRequest searchRequest, PaginationRequest paginationRequest) {
         try {
-            CollectionReference servicesRef = firestore.collection("veterinary_services");
-            Query query = servicesRef.whereEqualTo("active", true);
-
-            // Obtener todos los servicios activos
-            QuerySnapshot allServices = query.get().get();
-            List<ServiceDTO> filteredServices = new ArrayList<>();
-
-            // Verificar si hay filtros
-            boolean hasNameFilter = paginationRequest.getFilterBy() != null &&
+            // El término puede llegar como searchTerm o como filtro por nombre de la paginación
+            String searchTerm = searchRequest.getSearchTerm();
+            if ((searchTerm == null || searchTerm.isEmpty()) &&
                     paginationRequest.getFilterValue() != null &&
-                    !paginationRequest.getFilterValue().isEmpty() &&
-                    "name".equalsIgnoreCase(paginationRequest.getFilterBy());
+                    "name".equalsIgnoreCase(paginationRequest.getFilterBy())) {
+                searchTerm = paginationRequest.getFilterValue();
+            }
 
-            boolean hasCategoryFilter = searchRequest.getCategory() != null;
-
-            // Aplicar filtros
-            filteredServices = allServices.getDocuments().stream()
-                    .map(doc -> {
-                        ServiceVeterinary service = doc.toObject(ServiceVeterinary.class);
-                        if (service != null) {
-                            service.setId(doc.getId());
-                            return service;
-                        }
-                        return null;
-                    })
-                    .filter(Objects::nonNull)
-                    .filter(service -> {
-                        boolean matchesName = true;
-                        boolean matchesCategory = true;
-
-                        // Filtrar por nombre si existe el filtro
-                        if (hasNameFilter) {
-                            String searchTerm = paginationRequest.getFilterValue().toLowerCase();
-                            matchesName = service.getName().toLowerCase().contains(searchTerm);
-                        }
-
-                        // Filtrar por categoría si existe el filtro
-                        if (hasCategoryFilter) {
-                            matchesCategory = service.getCategory().equals(ServiceCategory.valueOf(searchRequest.getCategory()));
-                        }
-
-                        return matchesName && matchesCategory;
-                    })
-                    .map(this::convertToServiceDTO)
-                    .collect(Collectors.toList());
+            ServiceCategory category = searchRequest.getCategory() != null
+                    ? ServiceCategory.valueOf(searchRequest.getCategory())
+                    : null;
 
-            // Ordenar resultados si se especifica
+            List<ServiceDTO> filteredServices = serviceCatalogIndex.current().search(
+                    searchTerm, category, searchRequest.getMinPrice(), searchRequest.getMaxPrice());
+
+            // El índice ya está ordenado por nombre ascendente; solo se reordena si se pide otra cosa
             if (paginationRequest.getSortBy() != null && paginationRequest.getSortDirection() != null) {
                 boolean isAscending = paginationRequest.getSortDirection().equalsIgnoreCase("ASC");
-                filteredServices.sort((s1, s2) -> {
-                    int comparison = s1.getName().compareToIgnoreCase(s2.getName());
-                    return isAscending ? comparison : -comparison;
-                });
+                if ("price".equalsIgnoreCase(paginationRequest.getSortBy())) {
+                    filteredServices.sort(Comparator.comparingDouble(ServiceDTO::getPrice));
+                }
+                if (!isAscending) {
+                    Collections.reverse(filteredServices);
+                }
             }
 
             // Aplicar paginación
-            int startIndex = paginationRequest.getPage() * paginationRequest.getSize();
+            int startIndex = Math.min(paginationRequest.getPage() * paginationRequest.getSize(), filteredServices.size());
             int endIndex = Math.min(startIndex + paginationRequest.getSize(), filteredServices.size());
 
-            List<ServiceDTO> paginatedServices = filteredServices.subList(
-                    startIndex,
-                    Math.max(startIndex, endIndex)
-            );
-
-            return new PaginatedResponse<>(
-                    paginatedServices,
-                    paginationRequest.getPage(),
-                    paginationRequest.getSize(),
-                    filteredServices.size(),
-                    (int) Math.ceil((double) filteredServices.size() / paginationRequest.getSize())
+            return PaginatedResponse.of(
+                    new ArrayList<>(filteredServices.subList(startIndex, endIndex)),
+                    paginationRequest,
+                    filteredServices.size()
             );
 
         } catch (Exception e) {
@@ -182,24 +149,12 @@ public class VetServiceListService {
      */
     public ServiceListResponse getServicesByCategory(ServiceSearchRequest searchRequest) {
         try {
-            // Obtener todos los servicios activos
-            CollectionReference servicesRef = firestore.collection("veterinary_services");
-            Query query = servicesRef.whereEqualTo("active", true);
-
-            // Aplicar búsqueda si existe término
-            if (searchRequest.getSearchTerm() != null && !searchRequest.getSearchTerm().isEmpty()) {
-                String searchTermLower = searchRequest.getSearchTerm().toLowerCase();
-                query = query.orderBy("name")
-                        .startAt(searchTermLower)
-                        .endAt(searchTermLower + "\uf8ff");
-            }
-
-            // Ejecutar query
-            QuerySnapshot querySnapshot = query.get().get();
+            ServiceCatalogIndex.CatalogSnapshot catalog = serviceCatalogIndex.current();
+            List<ServiceDTO> services = catalog.search(
+                    searchRequest.getSearchTerm(), null, searchRequest.getMinPrice(), searchRequest.getMaxPrice());
 
             // Agrupar por categoría
-            Map<String, List<ServiceDTO>> servicesByCategory = querySnapshot.getDocuments().stream()
-                    .map(doc -> convertToServiceDTO(doc.toObject(ServiceVeterinary.class)))
+            Map<String, List<ServiceDTO>> servicesByCategory = services.stream()
                     .collect(Collectors.groupingBy(
                             service -> service.getCategory().name(),
                             TreeMap::new,
@@ -208,7 +163,8 @@ public class VetServiceListService {
 
             return ServiceListResponse.builder()
                     .servicesByCategory(servicesByCategory)
-                    .totalServices(querySnapshot.size())
+                    .totalServices(services.size())
+                    .priceRanges(catalog.priceFacets(services))
                     .build();
 
         } catch (Exception e) {
@@ -216,18 +172,4 @@ public class VetServiceListService {
                     "Error fetching services by category: " + e.getMessage());
         }
     }
-
-    /**
-     * Convierte un ServiceVeterinary a ServiceDTO
-     */
-    private ServiceDTO convertToServiceDTO(ServiceVeterinary service) {
-        return ServiceDTO.builder()
-                .id(service.getId())
-                .name(service.getName())
-                .category(ServiceCategory.valueOf(service.getCategory().name()))
-                .description(service.getDescription())
-                .price(service.getPrice())
-                .isActive(service.isActive())
-                .build();
-    }
-}
\ No newline at end of file
+}
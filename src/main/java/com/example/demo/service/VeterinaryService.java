@@ -10,19 +10,22 @@ import com.example.demo.model.Pet;
 import com.example.demo.model.Role;
 import com.example.demo.model.User;
 import com.example.demo.util.FirestorePaginationUtils;
+import com.example.demo.util.DocumentMappers;
+import com.google.api.core.ApiFuture;
 import com.google.cloud.firestore.*;
+import jakarta.annotation.PostConstruct;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Service;
 
 import java.time.LocalDate;
 import java.time.ZoneId;
-import java.util.ArrayList;
-import java.util.Date;
-import java.util.List;
-import java.util.UUID;
+import java.time.format.DateTimeFormatter;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
 import java.util.stream.Collectors;
 
@@ -46,6 +49,34 @@ public class VeterinaryService {
     @Autowired
     private PetService petService;
 
+    @Autowired
+    private ClientSearchIndexService clientSearchIndexService;
+
+    @Autowired
+    private ClinicalTimelineService clinicalTimelineService;
+
+    @Autowired
+    private CacheInvalidationService cacheInvalidationService;
+
+    @Value("${veterinary.vet-name-cache-ttl-seconds:600}")
+    private long veterinarianNameTtlSeconds;
+
+    private static final int VETERINARIAN_NAME_CACHE_MAX_ENTRIES = 1000;
+
+    // Nombres de veterinarios ya resueltos, para no leer el usuario en cada registro médico
+    private final Map<String, CachedName> veterinarianNames = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void registerInvalidationHandlers() {
+        cacheInvalidationService.onInvalidate(CacheInvalidationService.USERS, id -> {
+            if (id == null) {
+                veterinarianNames.clear();
+            } else {
+                veterinarianNames.remove(id);
+            }
+        });
+    }
+
     /**
      * Busca clientes y sus mascotas según los criterios especificados
      */
@@ -66,7 +97,7 @@ public class VeterinaryService {
             List<UserDTOs.ClientWithPetsDTO> results = new ArrayList<>();
 
             for (DocumentSnapshot document : querySnapshot.getDocuments()) {
-                User user = document.toObject(User.class);
+                User user = DocumentMappers.toUser(document);
                 if (user != null) {
                     // Obtener mascotas del cliente
                     List<PetDTOs.PetWithHistoryDTO> pets = getPetsWithHistory(user.getUid());
@@ -102,61 +133,62 @@ public class VeterinaryService {
     public PaginatedResponse<UserDTOs.ClientWithPetsDTO> searchClients(
             UserDTOs.ClientSearchCriteria criteria, PaginationRequest request) {
         try {
-            CollectionReference usersRef = firestore.collection("users");
-            Query query = usersRef;
+            // La búsqueda se resuelve sobre la proyección client_search, que ya trae mascotas y días de consulta
+            Query query = firestore.collection(ClientSearchIndexService.COLLECTION)
+                    .whereEqualTo("hasPets", true);
+
+            String clientName = ServiceCatalogIndex.normalize(criteria.getClientName()).trim();
+            if (!clientName.isEmpty()) {
+                query = query.whereGreaterThanOrEqualTo("nombreLower", clientName)
+                        .whereLessThanOrEqualTo("nombreLower", clientName + '\uf8ff');
+            }
 
-            // Aplicar filtros de búsqueda
-            if (criteria.getClientName() != null) {
-                query = query.whereGreaterThanOrEqualTo("nombre", criteria.getClientName())
-                        .whereLessThanOrEqualTo("nombre", criteria.getClientName() + '\uf8ff');
+            String petName = ServiceCatalogIndex.normalize(criteria.getPetName()).trim();
+            String consultationDay = criteria.getConsultationDate() != null
+                    ? criteria.getConsultationDate().format(DateTimeFormatter.ISO_LOCAL_DATE)
+                    : null;
+
+            // Firestore solo admite un array-contains por consulta: con ambos filtros se usa el día,
+            // que es el más selectivo, y el nombre de la mascota se filtra en memoria. Lo mismo ocurre con
+            // nombres más largos que los fragmentos indexados: la consulta usa el comienzo y la subcadena
+            // completa se comprueba después, para que el total coincida con las mascotas devueltas.
+            boolean filterPetNameInMemory = !petName.isEmpty()
+                    && (consultationDay != null || petName.length() > ClientSearchIndexService.MAX_FRAGMENT_LENGTH);
+            if (consultationDay != null) {
+                query = query.whereArrayContains("visitDays", consultationDay);
+            } else if (!petName.isEmpty()) {
+                query = query.whereArrayContains("petNameFragments",
+                        petName.substring(0, Math.min(petName.length(), ClientSearchIndexService.MAX_FRAGMENT_LENGTH)));
             }
 
-            // Aplicar filtros adicionales
             if (request.getFilterBy() != null && request.getFilterValue() != null) {
                 query = query.whereEqualTo(request.getFilterBy(), request.getFilterValue());
             }
 
-            // Ordenamiento
-            Query.Direction direction = request.getSortDirection().equalsIgnoreCase("DESC")
+            Query.Direction direction = "DESC".equalsIgnoreCase(request.getSortDirection())
                     ? Query.Direction.DESCENDING
                     : Query.Direction.ASCENDING;
-            query = query.orderBy(request.getSortBy(), direction);
-
-            // Paginación
-            query = query.offset(request.getPage() * request.getSize())
-                    .limit(request.getSize());
-
-            QuerySnapshot querySnapshot = query.get().get();
-
-            List<UserDTOs.ClientWithPetsDTO> clients = new ArrayList<>();
-
-            for (DocumentSnapshot doc : querySnapshot.getDocuments()) {
-                User user = doc.toObject(User.class);
-                if (user != null) {
-                    List<PetDTOs.PetWithHistoryDTO> pets = getPetsWithHistory(user.getUid());
-
-                    // Filtrar por nombre de mascota si es necesario
-                    if (criteria.getPetName() != null) {
-                        pets = pets.stream()
-                                .filter(pet -> pet.getName().toLowerCase()
-                                        .contains(criteria.getPetName().toLowerCase()))
-                                .collect(Collectors.toList());
-                    }
+            query = query.orderBy("nombreLower", direction);
 
-                    // Filtrar por fecha de consulta si es necesario
-                    if (criteria.getConsultationDate() != null) {
-                        pets = filterPetsByConsultationDate(pets, criteria.getConsultationDate());
-                    }
-
-                    if (!pets.isEmpty()) {
-                        clients.add(convertToClientWithPetsDTO(user, pets));
-                    }
-                }
+            List<DocumentSnapshot> entries;
+            long totalElements;
+            if (filterPetNameInMemory) {
+                List<DocumentSnapshot> matching = query.get().get().getDocuments().stream()
+                        .filter(doc -> entryMatches(doc, petName, consultationDay))
+                        .collect(Collectors.toList());
+                totalElements = matching.size();
+                int from = Math.min(request.getPage() * request.getSize(), matching.size());
+                int to = Math.min(from + request.getSize(), matching.size());
+                entries = matching.subList(from, to);
+            } else {
+                ApiFuture<AggregateQuerySnapshot> count = query.count().get();
+                entries = new ArrayList<>(query.offset(request.getPage() * request.getSize())
+                        .limit(request.getSize())
+                        .get().get().getDocuments());
+                totalElements = count.get().getCount();
             }
 
-            long totalElements = firestore.collection("users")
-                    .get().get().size();
-
+            List<UserDTOs.ClientWithPetsDTO> clients = buildClientPage(entries, petName, consultationDay);
             return PaginatedResponse.of(clients, request, totalElements);
 
         } catch (Exception e) {
@@ -165,6 +197,13 @@ public class VeterinaryService {
         }
     }
 
+    /**
+     * Reconstruye la proyección de búsqueda de clientes (para la carga inicial o tras una importación)
+     */
+    public int rebuildClientSearchIndex() {
+        return clientSearchIndexService.rebuildAll();
+    }
+
     /**
      * Agrega un registro médico a una mascota
      */
@@ -194,6 +233,11 @@ public class VeterinaryService {
                     .set(record)
                     .get();
 
+            clinicalTimelineService.recordMedicalRecord(petId, record);
+
+            // Actualizar los días de consulta en la proyección de búsqueda
+            clientSearchIndexService.refreshClientAsync(pet.getOwnerId());
+
             // Notificar al dueño
             notifyOwner(pet.getOwnerId(), "Nuevo registro médico",
                     "Se ha actualizado el historial médico de " + pet.getName());
@@ -299,14 +343,8 @@ public class VeterinaryService {
         response.setNotes(record.getNotes());
         response.setVeterinarianId(record.getVeterinarianId());
 
-        // Obtener el nombre del veterinario
-        try {
-            UserDTOs.UserResponse veterinarian = userService.getUserById(record.getVeterinarianId());
-            response.setVeterinarianName(veterinarian.getNombre() + " " + veterinarian.getApellido());
-        } catch (Exception e) {
-            response.setVeterinarianName("Veterinario no encontrado");
-            //logger.warn("No se pudo obtener el nombre del veterinario para el registro médico: " + record.getId());
-        }
+        // Obtener el nombre del veterinario (cacheado)
+        response.setVeterinarianName(getVeterinarianName(record.getVeterinarianId()));
 
         return response;
     }
@@ -321,32 +359,199 @@ public class VeterinaryService {
                 .get()
                 .get();
 
-        List<PetDTOs.PetWithHistoryDTO> petsWithHistory = new ArrayList<>();
+        List<Pet> pets = new ArrayList<>();
         for (DocumentSnapshot petDoc : petsSnapshot.getDocuments()) {
-            Pet pet = petDoc.toObject(Pet.class);
+            Pet pet = DocumentMappers.toPet(petDoc);
             if (pet != null) {
-                // Obtener historial médico básico (últimas 5 entradas)
-                QuerySnapshot historySnapshot = firestore.collection("pets")
-                        .document(pet.getId())
-                        .collection("medicalRecords")
-                        .orderBy("date", Query.Direction.DESCENDING)
-                        .limit(5)
-                        .get()
-                        .get();
-
-                List<PetDTOs.MedicalRecordResponse> history = historySnapshot.getDocuments().stream()
-                        .map(doc -> {
-                            MedicalRecord record = doc.toObject(MedicalRecord.class);
-                            return convertToMedicalRecordResponse(record);
-                        })
-                        .collect(Collectors.toList());
+                pets.add(pet);
+            }
+        }
 
-                petsWithHistory.add(convertToPetWithHistoryDTO(pet, history));
+        // Historial médico básico (últimas 5 entradas) de todas las mascotas en paralelo
+        return loadPetsWithHistory(pets);
+    }
+
+    /**
+     * Arma la página de clientes: las mascotas de toda la página se leen con una sola llamada
+     * y sus historiales se consultan en paralelo
+     */
+    @SuppressWarnings("unchecked")
+    private List<UserDTOs.ClientWithPetsDTO> buildClientPage(List<DocumentSnapshot> entries,
+                                                             String petName, String consultationDay)
+            throws ExecutionException, InterruptedException {
+        Map<DocumentSnapshot, List<String>> petIdsByEntry = new LinkedHashMap<>();
+        List<String> allPetIds = new ArrayList<>();
+        for (DocumentSnapshot entry : entries) {
+            List<String> petIds = new ArrayList<>();
+            List<Map<String, Object>> pets = (List<Map<String, Object>>) entry.get("pets");
+            if (pets != null) {
+                for (Map<String, Object> pet : pets) {
+                    if (petMatches(pet, petName, consultationDay)) {
+                        petIds.add((String) pet.get("id"));
+                    }
+                }
             }
+            petIdsByEntry.put(entry, petIds);
+            allPetIds.addAll(petIds);
         }
 
-        return petsWithHistory;
+        Map<String, PetDTOs.PetWithHistoryDTO> petsById = new HashMap<>();
+        if (!allPetIds.isEmpty()) {
+            DocumentReference[] refs = allPetIds.stream()
+                    .map(id -> firestore.collection("pets").document(id))
+                    .toArray(DocumentReference[]::new);
+            List<Pet> pets = new ArrayList<>();
+            for (DocumentSnapshot petDoc : firestore.getAll(refs).get()) {
+                Pet pet = petDoc.exists() ? DocumentMappers.toPet(petDoc) : null;
+                if (pet != null) {
+                    pet.setId(petDoc.getId());
+                    pets.add(pet);
+                }
+            }
+            for (PetDTOs.PetWithHistoryDTO pet : loadPetsWithHistory(pets)) {
+                petsById.put(pet.getId(), pet);
+            }
+        }
+
+        List<UserDTOs.ClientWithPetsDTO> clients = new ArrayList<>();
+        petIdsByEntry.forEach((entry, petIds) -> {
+            List<PetDTOs.PetWithHistoryDTO> pets = petIds.stream()
+                    .map(petsById::get)
+                    .filter(Objects::nonNull)
+                    .collect(Collectors.toList());
+            UserDTOs.ClientWithPetsDTO dto = new UserDTOs.ClientWithPetsDTO();
+            dto.setUid(entry.getId());
+            dto.setNombre(entry.getString("nombre"));
+            dto.setApellido(entry.getString("apellido"));
+            dto.setEmail(entry.getString("email"));
+            dto.setTelefono(entry.getString("telefono"));
+            dto.setDireccion(entry.getString("direccion"));
+            dto.setMascotas(pets);
+            clients.add(dto);
+        });
+        return clients;
     }
+
+    @SuppressWarnings("unchecked")
+    private boolean entryMatches(DocumentSnapshot entry, String petName, String consultationDay) {
+        List<Map<String, Object>> pets = (List<Map<String, Object>>) entry.get("pets");
+        return pets != null && pets.stream().anyMatch(pet -> petMatches(pet, petName, consultationDay));
+    }
+
+    @SuppressWarnings("unchecked")
+    private boolean petMatches(Map<String, Object> pet, String petName, String consultationDay) {
+        if (!petName.isEmpty()) {
+            String nameLower = (String) pet.get("nameLower");
+            if (nameLower == null || !nameLower.contains(petName)) {
+                return false;
+            }
+        }
+        if (consultationDay != null) {
+            List<String> visitDays = (List<String>) pet.get("visitDays");
+            return visitDays != null && visitDays.contains(consultationDay);
+        }
+        return true;
+    }
+
+    /**
+     * Carga las últimas consultas de varias mascotas lanzando todas las consultas a la vez
+     */
+    private List<PetDTOs.PetWithHistoryDTO> loadPetsWithHistory(List<Pet> pets)
+            throws ExecutionException, InterruptedException {
+        Map<String, ApiFuture<QuerySnapshot>> historyFutures = new LinkedHashMap<>();
+        for (Pet pet : pets) {
+            historyFutures.put(pet.getId(), firestore.collection("pets")
+                    .document(pet.getId())
+                    .collection("medicalRecords")
+                    .orderBy("date", Query.Direction.DESCENDING)
+                    .limit(5)
+                    .get());
+        }
+
+        Map<String, List<MedicalRecord>> recordsByPet = new HashMap<>();
+        Set<String> veterinarianIds = new HashSet<>();
+        for (Map.Entry<String, ApiFuture<QuerySnapshot>> entry : historyFutures.entrySet()) {
+            List<MedicalRecord> records = new ArrayList<>();
+            for (DocumentSnapshot doc : entry.getValue().get().getDocuments()) {
+                MedicalRecord record = doc.toObject(MedicalRecord.class);
+                if (record != null) {
+                    records.add(record);
+                    veterinarianIds.add(record.getVeterinarianId());
+                }
+            }
+            recordsByPet.put(entry.getKey(), records);
+        }
+        preloadVeterinarianNames(veterinarianIds);
+
+        List<PetDTOs.PetWithHistoryDTO> result = new ArrayList<>();
+        for (Pet pet : pets) {
+            List<PetDTOs.MedicalRecordResponse> history = recordsByPet.get(pet.getId()).stream()
+                    .map(this::convertToMedicalRecordResponse)
+                    .collect(Collectors.toList());
+            result.add(convertToPetWithHistoryDTO(pet, history));
+        }
+        return result;
+    }
+
+    /**
+     * Carga en la caché los nombres de veterinarios que aún no están, con una sola lectura
+     */
+    private void preloadVeterinarianNames(Set<String> veterinarianIds) {
+        long now = System.currentTimeMillis();
+        DocumentReference[] missing = veterinarianIds.stream()
+                .filter(Objects::nonNull)
+                .filter(id -> {
+                    CachedName cached = veterinarianNames.get(id);
+                    return cached == null || cached.expiresAt() < now;
+                })
+                .map(id -> firestore.collection("users").document(id))
+                .toArray(DocumentReference[]::new);
+        if (missing.length == 0) {
+            return;
+        }
+        try {
+            for (DocumentSnapshot doc : firestore.getAll(missing).get()) {
+                if (doc.exists()) {
+                    cacheVeterinarianName(doc.getId(), doc.getString("nombre") + " " + doc.getString("apellido"));
+                }
+            }
+        } catch (InterruptedException | ExecutionException e) {
+            logger.warn("No se pudieron precargar los nombres de veterinarios: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Nombre del veterinario desde la caché; si no está, se consulta y se guarda
+     */
+    private String getVeterinarianName(String veterinarianId) {
+        if (veterinarianId == null) {
+            return "Veterinario no encontrado";
+        }
+        CachedName cached = veterinarianNames.get(veterinarianId);
+        if (cached != null && cached.expiresAt() >= System.currentTimeMillis()) {
+            return cached.name();
+        }
+        try {
+            UserDTOs.UserResponse veterinarian = userService.getUserById(veterinarianId);
+            String name = veterinarian.getNombre() + " " + veterinarian.getApellido();
+            cacheVeterinarianName(veterinarianId, name);
+            return name;
+        } catch (Exception e) {
+            return "Veterinario no encontrado";
+        }
+    }
+
+    private void cacheVeterinarianName(String veterinarianId, String name) {
+        if (veterinarianNames.size() >= VETERINARIAN_NAME_CACHE_MAX_ENTRIES) {
+            veterinarianNames.clear();
+        }
+        veterinarianNames.put(veterinarianId,
+                new CachedName(name, System.currentTimeMillis() + veterinarianNameTtlSeconds * 1000L));
+    }
+
+    private record CachedName(String name, long expiresAt) {
+    }
+
     /**
      * Convierte un AddMedicalRecordRequest a MedicalRecord
      */
@@ -405,7 +610,7 @@ public class VeterinaryService {
                 throw new CustomExceptions.NotFoundException("Cliente no encontrado");
             }
 
-            User client = clientDoc.toObject(User.class);
+            User client = DocumentMappers.toUser(clientDoc);
             if (client == null) {
                 logger.error("Error al convertir documento a User para el cliente ID: {}", clientId);
                 throw new CustomExceptions.ProcessingException("Error al procesar información del cliente");
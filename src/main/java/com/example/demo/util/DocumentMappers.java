@@ -0,0 +1,197 @@
+package com.example.demo.util;
+
+import com.example.demo.model.*;
+import com.google.cloud.Timestamp;
+import com.google.cloud.firestore.DocumentSnapshot;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Conversión de documentos de Firestore a los modelos leyendo directamente el mapa de campos,
+ * sin el mapeo por reflexión de {@code toObject}. Siguen las mismas reglas que {@code toObject}:
+ * los nombres de campo son los de las propiedades del modelo, los campos ausentes quedan con su
+ * valor por defecto y un documento inexistente devuelve {@code null}.
+ */
+public final class DocumentMappers {
+
+    private DocumentMappers() {
+    }
+
+    public static Appointment toAppointment(DocumentSnapshot doc) {
+        return toAppointment(doc.getData());
+    }
+
+    /**
+     * Cita a partir de un mapa de campos, por ejemplo las entradas de la agenda diaria de un veterinario
+     */
+    public static Appointment toAppointment(Map<String, Object> data) {
+        if (data == null) {
+            return null;
+        }
+        Appointment appointment = new Appointment();
+        appointment.setId(string(data, "id"));
+        appointment.setPetId(string(data, "petId"));
+        appointment.setClientId(string(data, "clientId"));
+        appointment.setVeterinarianId(string(data, "veterinarianId"));
+        appointment.setAppointmentDate(date(data, "appointmentDate"));
+        appointment.setReason(string(data, "reason"));
+        appointment.setStatus(string(data, "status"));
+        appointment.setNotes(string(data, "notes"));
+        appointment.setCreatedAt(date(data, "createdAt"));
+        appointment.setUpdatedAt(date(data, "updatedAt"));
+        return appointment;
+    }
+
+    public static HistorialClinico toHistorialClinico(DocumentSnapshot doc) {
+        Map<String, Object> data = doc.getData();
+        if (data == null) {
+            return null;
+        }
+        HistorialClinico historial = new HistorialClinico();
+        historial.setId(string(data, "id"));
+        historial.setPetId(string(data, "petId"));
+        historial.setVeterinarianId(string(data, "veterinarianId"));
+        historial.setFechaVisita(date(data, "fechaVisita"));
+        historial.setMotivoConsulta(string(data, "motivoConsulta"));
+        historial.setDiagnostico(string(data, "diagnostico"));
+        historial.setTratamiento(string(data, "tratamiento"));
+        historial.setObservaciones(string(data, "observaciones"));
+        historial.setFechaCreacion(date(data, "fechaCreacion"));
+        historial.setFechaActualizacion(date(data, "fechaActualizacion"));
+        historial.setEstado(string(data, "estado"));
+        historial.setPrecioTotal(primitiveDouble(data, "precioTotal"));
+
+        List<ServicioRealizado> realizados = new ArrayList<>();
+        for (Map<String, Object> item : maps(data, "serviciosRealizados")) {
+            ServicioRealizado servicio = new ServicioRealizado();
+            servicio.setServiceId(string(item, "serviceId"));
+            servicio.setServiceName(string(item, "serviceName"));
+            servicio.setPrecioBase(primitiveDouble(item, "precioBase"));
+            Number precioPersonalizado = number(item, "precioPersonalizado");
+            servicio.setPrecioPersonalizado(precioPersonalizado != null ? precioPersonalizado.doubleValue() : null);
+            servicio.setNotas(string(item, "notas"));
+            realizados.add(servicio);
+        }
+        historial.setServiciosRealizados(realizados);
+
+        List<ServicioAdicional> adicionales = new ArrayList<>();
+        for (Map<String, Object> item : maps(data, "serviciosAdicionales")) {
+            ServicioAdicional servicio = new ServicioAdicional();
+            servicio.setDescripcion(string(item, "descripcion"));
+            servicio.setPrecio(primitiveDouble(item, "precio"));
+            servicio.setNotas(string(item, "notas"));
+            adicionales.add(servicio);
+        }
+        historial.setServiciosAdicionales(adicionales);
+        return historial;
+    }
+
+    public static User toUser(DocumentSnapshot doc) {
+        Map<String, Object> data = doc.getData();
+        if (data == null) {
+            return null;
+        }
+        User user = new User();
+        user.setUid(string(data, "uid"));
+        user.setEmail(string(data, "email"));
+        user.setNombre(string(data, "nombre"));
+        user.setApellido(string(data, "apellido"));
+        user.setTelefono(string(data, "telefono"));
+        user.setDireccion(string(data, "direccion"));
+        user.setEnabled(bool(data, "enabled"));
+        user.setActive(bool(data, "active"));
+
+        Object roles = data.get("roles");
+        if (roles instanceof List<?> values) {
+            List<Role> mapped = new ArrayList<>(values.size());
+            for (Object value : values) {
+                if (value != null) {
+                    mapped.add(Role.valueOf(value.toString()));
+                }
+            }
+            user.setRoles(mapped);
+        }
+        return user;
+    }
+
+    public static Pet toPet(DocumentSnapshot doc) {
+        Map<String, Object> data = doc.getData();
+        if (data == null) {
+            return null;
+        }
+        Pet pet = new Pet();
+        pet.setId(string(data, "id"));
+        pet.setName(string(data, "name"));
+        pet.setSpecies(string(data, "species"));
+        pet.setBreed(string(data, "breed"));
+        pet.setAge(primitiveInt(data, "age"));
+        pet.setOwnerId(string(data, "ownerId"));
+        return pet;
+    }
+
+    public static InventoryItem toInventoryItem(DocumentSnapshot doc) {
+        Map<String, Object> data = doc.getData();
+        if (data == null) {
+            return null;
+        }
+        InventoryItem item = new InventoryItem();
+        item.setId(string(data, "id"));
+        item.setName(string(data, "name"));
+        item.setQuantity(primitiveInt(data, "quantity"));
+        item.setMinThreshold(primitiveInt(data, "minThreshold"));
+        item.setRecommendedOrderQuantity(primitiveInt(data, "recommendedOrderQuantity"));
+        item.setDateAdded(date(data, "dateAdded"));
+        item.setLastUpdated(date(data, "lastUpdated"));
+        item.setPrice(primitiveDouble(data, "price"));
+        return item;
+    }
+
+    private static String string(Map<String, Object> data, String field) {
+        Object value = data.get(field);
+        return value != null ? value.toString() : null;
+    }
+
+    private static Date date(Map<String, Object> data, String field) {
+        Object value = data.get(field);
+        if (value instanceof Timestamp timestamp) {
+            return timestamp.toDate();
+        }
+        return value instanceof Date date ? date : null;
+    }
+
+    private static Number number(Map<String, Object> data, String field) {
+        return data.get(field) instanceof Number value ? value : null;
+    }
+
+    private static double primitiveDouble(Map<String, Object> data, String field) {
+        Number value = number(data, field);
+        return value != null ? value.doubleValue() : 0;
+    }
+
+    private static int primitiveInt(Map<String, Object> data, String field) {
+        Number value = number(data, field);
+        return value != null ? value.intValue() : 0;
+    }
+
+    private static boolean bool(Map<String, Object> data, String field) {
+        return Boolean.TRUE.equals(data.get(field));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<Map<String, Object>> maps(Map<String, Object> data, String field) {
+        Object value = data.get(field);
+        if (!(value instanceof List<?> values)) {
+            return List.of();
+        }
+        List<Map<String, Object>> items = new ArrayList<>(values.size());
+        for (Object item : values) {
+            if (item instanceof Map<?, ?> map) {
+                items.add((Map<String, Object>) map);
+            }
+        }
+        return items;
+    }
+}
@@ -0,0 +1,158 @@
+package com.example.demo.util;
+
+import com.google.cloud.firestore.FirestoreException;
+import com.google.cloud.firestore.ListenerRegistration;
+import com.google.cloud.firestore.Query;
+import com.google.cloud.firestore.QuerySnapshot;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Listener de una consulta de Firestore que se vuelve a registrar cuando falla, esperando entre
+ * intentos un tiempo que se duplica hasta {@code maxDelayMs}. La consulta se construye en cada
+ * registro, de modo que puede depender del momento (por ejemplo, "desde hoy").
+ *
+ * <p>Las instantáneas de un registro ya retirado se descartan. La primera instantánea de cada
+ * registro contiene el estado completo de la consulta y se marca como tal.
+ */
+@Slf4j
+public final class ReconnectingSnapshotListener {
+
+    /**
+     * Receptor de las instantáneas y de las caídas del listener
+     */
+    public interface Handler {
+
+        /**
+         * @param initial {@code true} en la primera instantánea tras cada registro (estado completo)
+         */
+        void onSnapshot(QuerySnapshot snapshot, boolean initial);
+
+        /**
+         * Se llama cuando el listener falla, antes de programar el nuevo registro
+         */
+        default void onDisconnect(FirestoreException error) {
+        }
+    }
+
+    private final String name;
+    private final Supplier<Query> query;
+    private final ScheduledExecutorService scheduler;
+    private final long initialDelayMs;
+    private final long maxDelayMs;
+    private final Handler handler;
+
+    private ListenerRegistration registration;
+    private long generation;
+    private int failures;
+    private boolean awaitingInitial;
+    private boolean closed;
+
+    public ReconnectingSnapshotListener(String name, Supplier<Query> query, ScheduledExecutorService scheduler,
+                                        long initialDelayMs, long maxDelayMs, Handler handler) {
+        this.name = name;
+        this.query = query;
+        this.scheduler = scheduler;
+        this.initialDelayMs = Math.max(initialDelayMs, 1);
+        this.maxDelayMs = Math.max(maxDelayMs, this.initialDelayMs);
+        this.handler = handler;
+    }
+
+    /**
+     * Registra el listener si no está registrado ni a la espera de reconectar
+     */
+    public synchronized void start() {
+        if (closed || registration != null || failures > 0) {
+            return;
+        }
+        connect();
+    }
+
+    /**
+     * Retira el registro actual y registra uno nuevo con la consulta recalculada. Si el listener está
+     * a la espera de reconectar, el reintento programado ya usará la nueva consulta.
+     */
+    public synchronized void restart() {
+        if (closed || registration == null) {
+            return;
+        }
+        registration.remove();
+        registration = null;
+        connect();
+    }
+
+    public synchronized boolean isConnected() {
+        return registration != null && !awaitingInitial;
+    }
+
+    public synchronized void close() {
+        closed = true;
+        generation++;
+        if (registration != null) {
+            registration.remove();
+            registration = null;
+        }
+    }
+
+    private void connect() {
+        long current = ++generation;
+        awaitingInitial = true;
+        try {
+            registration = query.get().addSnapshotListener((snapshot, error) -> onEvent(current, snapshot, error));
+        } catch (RuntimeException e) {
+            log.warn("Could not register {} listener: {}", name, e.getMessage());
+            registration = null;
+            scheduleReconnect();
+        }
+    }
+
+    private void onEvent(long registrationGeneration, QuerySnapshot snapshot, FirestoreException error) {
+        boolean initial;
+        synchronized (this) {
+            if (registrationGeneration != generation) {
+                return;
+            }
+            if (error != null) {
+                generation++;
+                if (registration != null) {
+                    registration.remove();
+                    registration = null;
+                }
+                long delay = scheduleReconnect();
+                log.error("{} listener failed, reconnecting in {} ms: {}", name, delay, error.getMessage());
+            } else if (snapshot == null) {
+                return;
+            }
+            initial = awaitingInitial;
+            if (error == null) {
+                awaitingInitial = false;
+                failures = 0;
+            }
+        }
+        // Fuera del bloqueo: el receptor puede tomar los suyos y llamar a restart()
+        if (error != null) {
+            handler.onDisconnect(error);
+        } else {
+            handler.onSnapshot(snapshot, initial);
+        }
+    }
+
+    private long scheduleReconnect() {
+        long delay = Math.min(maxDelayMs, initialDelayMs << Math.min(failures, 20));
+        failures++;
+        if (!closed) {
+            scheduler.schedule(this::reconnect, delay, TimeUnit.MILLISECONDS);
+        }
+        return delay;
+    }
+
+    private synchronized void reconnect() {
+        if (closed || registration != null) {
+            return;
+        }
+        connect();
+    }
+}
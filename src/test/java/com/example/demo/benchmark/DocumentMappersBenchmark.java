@@ -0,0 +1,57 @@
+package com.example.demo.benchmark;
+
+import com.example.demo.model.Appointment;
+import com.example.demo.model.HistorialClinico;
+import com.example.demo.util.DocumentFixtures;
+import com.example.demo.util.DocumentMappers;
+import com.google.cloud.firestore.DocumentSnapshot;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Coste de {@link DocumentMappers} frente a {@code toObject} sobre los mismos documentos.
+ * Se ejecuta desde el IDE con {@link #main} o con
+ * {@code mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=com.example.demo.benchmark.DocumentMappersBenchmark}
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DocumentMappersBenchmark {
+
+    private DocumentSnapshot appointment;
+    private DocumentSnapshot historial;
+
+    @Setup
+    public void setUp() {
+        appointment = DocumentFixtures.snapshot(DocumentFixtures.appointment());
+        historial = DocumentFixtures.snapshot(DocumentFixtures.historial());
+    }
+
+    @Benchmark
+    public Appointment appointmentToObject() {
+        return appointment.toObject(Appointment.class);
+    }
+
+    @Benchmark
+    public Appointment appointmentMapper() {
+        return DocumentMappers.toAppointment(appointment);
+    }
+
+    @Benchmark
+    public HistorialClinico historialToObject() {
+        return historial.toObject(HistorialClinico.class);
+    }
+
+    @Benchmark
+    public HistorialClinico historialMapper() {
+        return DocumentMappers.toHistorialClinico(historial);
+    }
+
+    public static void main(String[] args) throws Exception {
+        org.openjdk.jmh.Main.main(new String[]{DocumentMappersBenchmark.class.getSimpleName()});
+    }
+}
@@ -0,0 +1,137 @@
+package com.example.demo.config;
+
+import com.example.demo.dto.ApiResponse;
+import com.example.demo.service.CacheInvalidationService;
+import com.example.demo.service.CatalogCacheService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+class CatalogCacheAdviceTest {
+
+    private CatalogCacheService catalogCacheService;
+    private CatalogController controller;
+    private MockMvc mockMvc;
+
+    @BeforeEach
+    void setUp() {
+        catalogCacheService = catalogCacheService();
+        controller = new CatalogController();
+        mockMvc = mockMvc(catalogCacheService, controller);
+    }
+
+    @Test
+    void servesTheTypedBodyWithValidators() throws Exception {
+        mockMvc.perform(get("/catalog"))
+                .andExpect(status().isOk())
+                .andExpect(header().exists(HttpHeaders.ETAG))
+                .andExpect(header().exists(HttpHeaders.LAST_MODIFIED))
+                .andExpect(header().string(HttpHeaders.CACHE_CONTROL, "no-cache, private"))
+                .andExpect(jsonPath("$.success").value(true))
+                .andExpect(jsonPath("$.data[0]").value("consulta"));
+    }
+
+    @Test
+    void answersNotModifiedWhileTheVersionIsCurrent() throws Exception {
+        String eTag = mockMvc.perform(get("/catalog"))
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+
+        mockMvc.perform(get("/catalog").header(HttpHeaders.IF_NONE_MATCH, eTag))
+                .andExpect(status().isNotModified())
+                .andExpect(header().string(HttpHeaders.ETAG, eTag))
+                .andExpect(content().string(""));
+    }
+
+    @Test
+    void changesTheETagWhenTheContentChanges() throws Exception {
+        String eTag = mockMvc.perform(get("/catalog"))
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+        controller.services = List.of("consulta", "vacuna", "cirugía");
+        catalogCacheService.bumpLocal(CatalogCacheService.SERVICES);
+
+        String refreshed = mockMvc.perform(get("/catalog").header(HttpHeaders.IF_NONE_MATCH, eTag))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+        assertThat(refreshed).isNotEqualTo(eTag);
+    }
+
+    @Test
+    void usesADifferentETagPerQueryVariant() throws Exception {
+        String first = mockMvc.perform(get("/catalog").queryParam("page", "0"))
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+        String second = mockMvc.perform(get("/catalog").queryParam("page", "1"))
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+        assertThat(first).isNotEqualTo(second);
+    }
+
+    @Test
+    void everyInstanceIssuesTheSameETagForTheSameContent() throws Exception {
+        // Otra instancia, con su propio contador de versión local
+        CatalogCacheService otherService = catalogCacheService();
+        otherService.bumpLocal(CatalogCacheService.SERVICES);
+        otherService.bumpLocal(CatalogCacheService.SERVICES);
+        MockMvc otherNode = mockMvc(otherService, new CatalogController());
+
+        String eTag = mockMvc.perform(get("/catalog").queryParam("page", "0"))
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+
+        otherNode.perform(get("/catalog").queryParam("page", "0").header(HttpHeaders.IF_NONE_MATCH, eTag))
+                .andExpect(status().isNotModified());
+    }
+
+    @Test
+    void leavesUnannotatedEndpointsAlone() throws Exception {
+        mockMvc.perform(get("/plain"))
+                .andExpect(status().isOk())
+                .andExpect(header().doesNotExist(HttpHeaders.ETAG));
+        assertThat(controller.plainCalls).hasValue(1);
+    }
+
+    private static CatalogCacheService catalogCacheService() {
+        CatalogCacheService service = new CatalogCacheService();
+        ReflectionTestUtils.setField(service, "cacheInvalidationService", mock(CacheInvalidationService.class));
+        ReflectionTestUtils.setField(service, "objectMapper", new ObjectMapper());
+        return service;
+    }
+
+    private static MockMvc mockMvc(CatalogCacheService service, CatalogController controller) {
+        CatalogCacheAdvice advice = new CatalogCacheAdvice();
+        ReflectionTestUtils.setField(advice, "catalogCacheService", service);
+        return MockMvcBuilders.standaloneSetup(controller)
+                .setControllerAdvice(advice)
+                .build();
+    }
+
+    @RestController
+    static class CatalogController {
+        final AtomicInteger plainCalls = new AtomicInteger();
+        volatile List<String> services = List.of("consulta", "vacuna");
+
+        @GetMapping("/catalog")
+        @CatalogCached(CatalogCacheService.SERVICES)
+        public ResponseEntity<ApiResponse<List<String>>> catalog() {
+            return ResponseEntity.ok(ApiResponse.success(services));
+        }
+
+        @GetMapping("/plain")
+        public ResponseEntity<ApiResponse<String>> plain() {
+            plainCalls.incrementAndGet();
+            return ResponseEntity.ok(ApiResponse.success("ok"));
+        }
+    }
+}
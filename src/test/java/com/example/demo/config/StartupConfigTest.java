@@ -0,0 +1,27 @@
+package com.example.demo.config;
+
+import com.example.demo.service.JobCoordinator;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.RootBeanDefinition;
+import org.springframework.boot.LazyInitializationExcludeFilter;
+import org.springframework.security.access.PermissionEvaluator;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class StartupConfigTest {
+
+    private final LazyInitializationExcludeFilter filter = StartupConfig.eagerStartupBeans();
+
+    @Test
+    void keepsThePermissionEvaluatorDeclaredBySecurityConfigEager() {
+        // Antes de crearse, el bean de SecurityConfig solo se conoce por el tipo de retorno del método @Bean
+        assertThat(filter.isExcluded("permissionEvaluator", new RootBeanDefinition(), PermissionEvaluator.class)).isTrue();
+        assertThat(filter.isExcluded("customPermissionEvaluator", new RootBeanDefinition(), CustomPermissionEvaluator.class)).isTrue();
+        assertThat(filter.isExcluded("jobCoordinator", new RootBeanDefinition(), JobCoordinator.class)).isTrue();
+    }
+
+    @Test
+    void leavesOtherBeansLazy() {
+        assertThat(filter.isExcluded("securityConfig", new RootBeanDefinition(), SecurityConfig.class)).isFalse();
+    }
+}
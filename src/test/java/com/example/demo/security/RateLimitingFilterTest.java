@@ -0,0 +1,86 @@
+package com.example.demo.security;
+
+import com.example.demo.service.RateLimiterService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.servlet.ReadListener;
+import jakarta.servlet.ServletInputStream;
+import jakarta.servlet.ServletRequest;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+import org.springframework.http.MediaType;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+class RateLimitingFilterTest {
+
+    private static final String BODY = "{\"email\":\"ana@example.com\",\"password\":\"secreto\"}";
+
+    private RateLimiterService rateLimiterService;
+    private RateLimitingFilter filter;
+
+    @BeforeEach
+    void setUp() {
+        rateLimiterService = mock(RateLimiterService.class);
+        when(rateLimiterService.tryAcquire(anyString(), anyString(), anyString()))
+                .thenReturn(new RateLimiterService.Decision(true, 0));
+
+        filter = new RateLimitingFilter();
+        ReflectionTestUtils.setField(filter, "rateLimiterService", rateLimiterService);
+        ReflectionTestUtils.setField(filter, "objectMapper", new ObjectMapper());
+        ReflectionTestUtils.setField(filter, "enabled", true);
+    }
+
+    @Test
+    void theForwardedBodyCanBeReadAgainAndNotifiesReadListeners() throws Exception {
+        ServletInputStream input = forwardedInputStream();
+        ReadListener listener = mock(ReadListener.class);
+        doAnswer(invocation -> {
+            assertThat(new String(input.readAllBytes(), StandardCharsets.UTF_8)).isEqualTo(BODY);
+            return null;
+        }).when(listener).onDataAvailable();
+
+        input.setReadListener(listener);
+
+        InOrder order = inOrder(listener);
+        order.verify(listener).onDataAvailable();
+        order.verify(listener).onAllDataRead();
+        assertThat(input.isFinished()).isTrue();
+        verify(rateLimiterService).tryAcquire("login", RateLimiterService.SCOPE_EMAIL, "ana@example.com");
+    }
+
+    @Test
+    void listenerErrorsAreWrapped() throws Exception {
+        ServletInputStream input = forwardedInputStream();
+        ReadListener listener = mock(ReadListener.class);
+        doThrow(new IOException("closed")).when(listener).onDataAvailable();
+
+        assertThatThrownBy(() -> input.setReadListener(listener))
+                .isInstanceOf(UncheckedIOException.class)
+                .hasRootCauseMessage("closed");
+        verify(listener, never()).onAllDataRead();
+    }
+
+    private ServletInputStream forwardedInputStream() throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/api/auth/login");
+        request.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        request.setContent(BODY.getBytes(StandardCharsets.UTF_8));
+        AtomicReference<ServletRequest> forwarded = new AtomicReference<>();
+
+        filter.doFilter(request, new MockHttpServletResponse(), (req, res) -> forwarded.set(req));
+
+        assertThat(forwarded.get()).isNotSameAs(request);
+        return forwarded.get().getInputStream();
+    }
+}
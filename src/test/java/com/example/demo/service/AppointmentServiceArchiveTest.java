@@ -0,0 +1,138 @@
+package com.example.demo.service;
+
+import com.example.demo.dto.AppointmentDTOs.AppointmentProjection;
+import com.example.demo.dto.AppointmentDTOs.AppointmentResponse;
+import com.example.demo.dto.PaginatedResponse;
+import com.example.demo.dto.PaginationRequest;
+import com.example.demo.model.Appointment;
+import com.google.api.core.ApiFutures;
+import com.google.cloud.firestore.*;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.*;
+import java.util.function.UnaryOperator;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class AppointmentServiceArchiveTest {
+
+    private static final LocalDate DAY = LocalDate.of(2023, 3, 14);
+
+    private Query live;
+    private ArchivalService archivalService;
+    private VetScheduleService vetScheduleService;
+    private AppointmentService service;
+
+    @BeforeEach
+    void setUp() {
+        Firestore firestore = mock(Firestore.class);
+        live = mock(CollectionReference.class, RETURNS_SELF);
+        when(firestore.collection("appointments")).thenReturn((CollectionReference) live);
+
+        archivalService = mock(ArchivalService.class);
+        vetScheduleService = mock(VetScheduleService.class);
+        service = new AppointmentService();
+        ReflectionTestUtils.setField(service, "firestore", firestore);
+        ReflectionTestUtils.setField(service, "archivalService", archivalService);
+        ReflectionTestUtils.setField(service, "vetScheduleService", vetScheduleService);
+    }
+
+    @Test
+    void archivedDaysMergeLiveAndArchivedAppointments() {
+        when(archivalService.appointmentRangeNeedsArchive(any(Date.class))).thenReturn(true);
+        QuerySnapshot liveDay = results(
+                document("a2", at(11), "COMPLETED"),
+                document("a1", at(9), "CANCELLED"));
+        when(live.get()).thenReturn(ApiFutures.immediateFuture(liveDay));
+        // a2 se está moviendo: aparece en ambos lados y se toma la copia viva
+        when(archivalService.findArchivedAppointments(any(Date.class), any(Date.class), any()))
+                .thenReturn(List.of(appointment("a2", at(11), "SCHEDULED"), appointment("a3", at(10), "COMPLETED")));
+
+        PaginatedResponse<AppointmentResponse> page = service.getVeterinarianDailyAppointments(
+                "vet", at(12), request("appointmentDate", "ASC"), AppointmentProjection.SUMMARY);
+
+        assertThat(page.getContent()).extracting(AppointmentResponse::getId).containsExactly("a1", "a3", "a2");
+        assertThat(page.getContent()).extracting(AppointmentResponse::getStatus)
+                .containsExactly("CANCELLED", "COMPLETED", "COMPLETED");
+        assertThat(page.getTotalElements()).isEqualTo(3);
+        verifyNoInteractions(vetScheduleService);
+    }
+
+    @Test
+    void theArchiveIsQueriedForTheWholeDayAndVeterinarian() {
+        when(archivalService.appointmentRangeNeedsArchive(any(Date.class))).thenReturn(true);
+        QuerySnapshot none = results();
+        when(live.get()).thenReturn(ApiFutures.immediateFuture(none));
+        when(archivalService.findArchivedAppointments(any(Date.class), any(Date.class), any())).thenReturn(List.of());
+
+        service.getDailyAppointments("vet", at(12), request("appointmentDate", "ASC"), AppointmentProjection.SUMMARY);
+
+        ArgumentCaptor<Date> start = ArgumentCaptor.forClass(Date.class);
+        ArgumentCaptor<Date> end = ArgumentCaptor.forClass(Date.class);
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        ArgumentCaptor<UnaryOperator<Query>> filter = (ArgumentCaptor) ArgumentCaptor.forClass(UnaryOperator.class);
+        verify(archivalService).findArchivedAppointments(start.capture(), end.capture(), filter.capture());
+        assertThat(start.getValue()).isEqualTo(at(0));
+        assertThat(end.getValue()).isEqualTo(new Date(at(24).getTime() - 1));
+
+        Query records = mock(Query.class);
+        filter.getValue().apply(records);
+        verify(records).whereEqualTo("veterinarianId", "vet");
+    }
+
+    @Test
+    void recentDaysKeepUsingTheSchedule() throws Exception {
+        when(archivalService.appointmentRangeNeedsArchive(any(Date.class))).thenReturn(false);
+        when(vetScheduleService.getDay(eq("vet"), any(Date.class))).thenReturn(List.of(appointment("a1", at(9), "SCHEDULED")));
+
+        PaginatedResponse<AppointmentResponse> page = service.getDailyAppointments(
+                "vet", at(12), request("appointmentDate", "ASC"), AppointmentProjection.SUMMARY);
+
+        assertThat(page.getContent()).extracting(AppointmentResponse::getId).containsExactly("a1");
+        verify(archivalService, never()).findArchivedAppointments(any(), any(), any());
+    }
+
+    private static PaginationRequest request(String sortBy, String direction) {
+        return new PaginationRequest(0, 10, sortBy, direction);
+    }
+
+    private static QuerySnapshot results(QueryDocumentSnapshot... documents) {
+        QuerySnapshot snapshot = mock(QuerySnapshot.class);
+        when(snapshot.getDocuments()).thenReturn(List.of(documents));
+        return snapshot;
+    }
+
+    private static QueryDocumentSnapshot document(String id, Date date, String status) {
+        Map<String, Object> data = new HashMap<>();
+        data.put("id", id);
+        data.put("veterinarianId", "vet");
+        data.put("appointmentDate", date);
+        data.put("status", status);
+        QueryDocumentSnapshot doc = mock(QueryDocumentSnapshot.class);
+        when(doc.getId()).thenReturn(id);
+        when(doc.getData()).thenReturn(data);
+        return doc;
+    }
+
+    private static Appointment appointment(String id, Date date, String status) {
+        Appointment appointment = new Appointment();
+        appointment.setId(id);
+        appointment.setVeterinarianId("vet");
+        appointment.setAppointmentDate(date);
+        appointment.setStatus(status);
+        return appointment;
+    }
+
+    private static Date at(int hour) {
+        return Date.from(DAY.atStartOfDay(ZoneId.systemDefault()).plusHours(hour).toInstant());
+    }
+}
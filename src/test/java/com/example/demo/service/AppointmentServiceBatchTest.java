@@ -0,0 +1,228 @@
+package com.example.demo.service;
+
+import com.example.demo.dto.AppointmentDTOs.*;
+import com.google.api.core.ApiFutures;
+import com.google.cloud.Timestamp;
+import com.google.cloud.firestore.*;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.*;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+class AppointmentServiceBatchTest {
+
+    private static final String CONFLICT = "El veterinario ya tiene una cita en ese horario";
+
+    private final Map<String, DocumentReference> refs = new HashMap<>();
+    private final Map<DocumentReference, Map<String, Object>> documents = new HashMap<>();
+    private final Map<DocumentReference, Long> versions = new HashMap<>();
+
+    private Firestore firestore;
+    private AppointmentService service;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        firestore = mock(Firestore.class);
+        for (String name : List.of("appointments", VetScheduleService.COLLECTION)) {
+            CollectionReference collection = mock(CollectionReference.class);
+            when(firestore.collection(name)).thenReturn(collection);
+            when(collection.document(anyString())).thenAnswer(invocation -> ref(name, invocation.getArgument(0)));
+        }
+        when(firestore.getAll(any(DocumentReference[].class))).thenAnswer(invocation -> read(invocation.getArguments()));
+
+        Transaction transaction = mock(Transaction.class);
+        when(transaction.getAll(any(DocumentReference[].class))).thenAnswer(invocation -> read(invocation.getArguments()));
+        when(transaction.update(any(DocumentReference.class), anyMap())).thenAnswer(invocation -> {
+            DocumentReference ref = invocation.getArgument(0);
+            Map<String, Object> fields = invocation.getArgument(1);
+            documents.get(ref).putAll(fields);
+            versions.merge(ref, 1L, Long::sum);
+            return transaction;
+        });
+        when(transaction.set(any(DocumentReference.class), anyMap())).thenAnswer(invocation -> {
+            DocumentReference ref = invocation.getArgument(0);
+            Map<String, Object> data = invocation.getArgument(1);
+            documents.put(ref, new HashMap<>(data));
+            versions.merge(ref, 1L, Long::sum);
+            return transaction;
+        });
+        when(firestore.runTransaction(any(Transaction.Function.class))).thenAnswer(invocation -> {
+            Transaction.Function<?> function = invocation.getArgument(0);
+            return ApiFutures.immediateFuture(function.updateCallback(transaction));
+        });
+
+        VetScheduleService vetScheduleService = new VetScheduleService();
+        ReflectionTestUtils.setField(vetScheduleService, "firestore", firestore);
+        ReflectionTestUtils.setField(vetScheduleService, "slotMinutes", 30);
+
+        service = new AppointmentService();
+        ReflectionTestUtils.setField(service, "firestore", firestore);
+        ReflectionTestUtils.setField(service, "vetScheduleService", vetScheduleService);
+        ReflectionTestUtils.setField(service, "notificationService", mock(NotificationService.class));
+        ReflectionTestUtils.setField(service, "maxBatchOperations", 500);
+        ReflectionTestUtils.setField(service, "batchChunkSize", 100);
+    }
+
+    @Test
+    void earlierOperationsWinTheSameSlot() {
+        appointment("a1", at(10));
+        appointment("a2", at(14));
+        appointment("a3", at(16));
+
+        BatchAppointmentResponse response = service.processBatch(request(
+                reschedule("a3", at(12)), reschedule("a1", at(12)), reschedule("a2", at(12, 15))));
+
+        assertThat(response.getResults()).extracting(BatchOperationResult::getAppointmentId)
+                .containsExactly("a3", "a1", "a2");
+        assertThat(response.getResults()).extracting(BatchOperationResult::isSuccess)
+                .containsExactly(true, false, false);
+        assertThat(response.getResults().get(1).getMessage()).isEqualTo(CONFLICT);
+        assertThat(document("a3").get("appointmentDate")).isEqualTo(at(12));
+        assertThat(document("a1").get("appointmentDate")).isEqualTo(at(10));
+        assertThat(document("a2").get("appointmentDate")).isEqualTo(at(14));
+    }
+
+    @Test
+    void slotsBookedAfterTheReadAreCheckedInsideTheTransaction() {
+        appointment("a1", at(10));
+        // Reserva concurrente que solo aparece en la agenda leída dentro de la transacción
+        scheduleEntry("other", at(12));
+
+        BatchAppointmentResponse response = service.processBatch(request(reschedule("a1", at(12))));
+
+        assertThat(response.getFailed()).isEqualTo(1);
+        assertThat(response.getResults().get(0).getMessage()).isEqualTo(CONFLICT);
+        assertThat(document("a1").get("appointmentDate")).isEqualTo(at(10));
+    }
+
+    @Test
+    void laterChunksSeeTheSlotsTakenByEarlierChunks() {
+        ReflectionTestUtils.setField(service, "batchChunkSize", 1);
+        appointment("a1", at(10));
+        appointment("a2", at(14));
+
+        BatchAppointmentResponse response = service.processBatch(request(
+                reschedule("a1", at(12)), reschedule("a2", at(12))));
+
+        assertThat(response.getResults()).extracting(BatchOperationResult::isSuccess).containsExactly(true, false);
+        assertThat(response.getResults().get(1).getMessage()).isEqualTo(CONFLICT);
+    }
+
+    @Test
+    void cancelledAppointmentsFreeTheirSlotForLaterOperations() {
+        appointment("a1", at(10));
+        appointment("a2", at(14));
+
+        BatchAppointmentResponse response = service.processBatch(request(
+                cancel("a1"), reschedule("a2", at(10))));
+
+        assertThat(response.getSucceeded()).isEqualTo(2);
+        assertThat(document("a1").get("status")).isEqualTo("CANCELLED");
+        assertThat(document("a2").get("appointmentDate")).isEqualTo(at(10));
+    }
+
+    private void appointment(String id, Date date) {
+        Map<String, Object> data = new HashMap<>();
+        data.put("id", id);
+        data.put("petId", "pet-" + id);
+        data.put("clientId", "client-" + id);
+        data.put("veterinarianId", "vet");
+        data.put("appointmentDate", date);
+        data.put("status", "SCHEDULED");
+        documents.put(ref("appointments", id), data);
+        scheduleEntry(id, date);
+    }
+
+    @SuppressWarnings("unchecked")
+    private void scheduleEntry(String id, Date date) {
+        DocumentReference day = ref(VetScheduleService.COLLECTION, VetScheduleService.DayKey.of("vet", date).id());
+        Map<String, Object> schedule = documents.computeIfAbsent(day, key -> new HashMap<>(Map.of("appointments", new ArrayList<>())));
+        Map<String, Object> entry = new HashMap<>();
+        entry.put("id", id);
+        entry.put("veterinarianId", "vet");
+        entry.put("appointmentDate", date);
+        entry.put("status", "SCHEDULED");
+        ((List<Map<String, Object>>) schedule.get("appointments")).add(entry);
+    }
+
+    private Map<String, Object> document(String id) {
+        return documents.get(ref("appointments", id));
+    }
+
+    private DocumentReference ref(String collection, String id) {
+        return refs.computeIfAbsent(collection + "/" + id, key -> {
+            DocumentReference ref = mock(DocumentReference.class);
+            when(ref.getId()).thenReturn(id);
+            return ref;
+        });
+    }
+
+    private Object read(Object[] arguments) {
+        List<DocumentSnapshot> snapshots = new ArrayList<>();
+        for (Object argument : arguments) {
+            DocumentReference ref = (DocumentReference) argument;
+            Map<String, Object> data = documents.get(ref);
+            if (data == null && refs.get(VetScheduleService.COLLECTION + "/" + ref.getId()) == ref) {
+                data = new HashMap<>(Map.of("appointments", new ArrayList<>()));
+                documents.put(ref, data);
+            }
+            snapshots.add(snapshot(ref, data == null ? null : new HashMap<>(data)));
+        }
+        return ApiFutures.immediateFuture(snapshots);
+    }
+
+    private DocumentSnapshot snapshot(DocumentReference ref, Map<String, Object> data) {
+        DocumentSnapshot snapshot = mock(DocumentSnapshot.class);
+        String id = ref.getId();
+        when(snapshot.getId()).thenReturn(id);
+        when(snapshot.getReference()).thenReturn(ref);
+        when(snapshot.exists()).thenReturn(data != null);
+        when(snapshot.getData()).thenReturn(data);
+        when(snapshot.getUpdateTime()).thenReturn(Timestamp.ofTimeSecondsAndNanos(versions.getOrDefault(ref, 0L), 0));
+        if (data != null) {
+            when(snapshot.get(anyString())).thenAnswer(invocation -> data.get(invocation.<String>getArgument(0)));
+            when(snapshot.getString(anyString())).thenAnswer(invocation -> (String) data.get(invocation.<String>getArgument(0)));
+            when(snapshot.getDate(anyString())).thenAnswer(invocation -> (Date) data.get(invocation.<String>getArgument(0)));
+        }
+        return snapshot;
+    }
+
+    private static Date at(int hour) {
+        return at(hour, 0);
+    }
+
+    private static Date at(int hour, int minute) {
+        return Date.from(LocalDate.now().plusDays(2).atTime(hour, minute).atZone(ZoneId.systemDefault()).toInstant());
+    }
+
+    private static BatchAppointmentRequest request(BatchOperation... operations) {
+        BatchAppointmentRequest request = new BatchAppointmentRequest();
+        request.setOperations(List.of(operations));
+        return request;
+    }
+
+    private static BatchOperation reschedule(String id, Date date) {
+        BatchOperation operation = new BatchOperation();
+        operation.setAppointmentId(id);
+        operation.setType(BatchOperationType.RESCHEDULE);
+        operation.setNewDate(date);
+        operation.setReason("Agenda del veterinario");
+        return operation;
+    }
+
+    private static BatchOperation cancel(String id) {
+        BatchOperation operation = new BatchOperation();
+        operation.setAppointmentId(id);
+        operation.setType(BatchOperationType.CANCEL);
+        return operation;
+    }
+}
@@ -0,0 +1,147 @@
+package com.example.demo.service;
+
+import com.google.api.core.ApiFuture;
+import com.google.api.core.ApiFutures;
+import com.google.api.gax.grpc.GrpcStatusCode;
+import com.google.api.gax.rpc.FailedPreconditionException;
+import com.google.cloud.Timestamp;
+import com.google.cloud.firestore.*;
+import io.grpc.Status;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.*;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class ArchivalServiceTest {
+
+    private static final long DAY_MS = 86_400_000L;
+
+    private CollectionReference live;
+    private DocumentReference partitionRef;
+    private BulkWriter writer;
+    private ArchivalService service;
+
+    @BeforeEach
+    void setUp() {
+        Firestore firestore = mock(Firestore.class);
+
+        // Límite de historiales publicado hace tiempo; las citas aún no tienen límite
+        Map<String, Object> watermarks = new HashMap<>();
+        watermarks.put("historialCutoff", new Date(System.currentTimeMillis() - 800 * DAY_MS));
+        watermarks.put("historialPublishedAt", new Date(System.currentTimeMillis() - DAY_MS));
+        DocumentSnapshot stored = mock(DocumentSnapshot.class);
+        when(stored.getDate(anyString())).thenAnswer(invocation -> (Date) watermarks.get(invocation.<String>getArgument(0)));
+        CollectionReference configurations = mock(CollectionReference.class);
+        DocumentReference watermarkRef = mock(DocumentReference.class);
+        when(firestore.collection(ArchivalService.WATERMARKS)).thenReturn(configurations);
+        when(configurations.document(ArchivalService.WATERMARK_DOC)).thenReturn(watermarkRef);
+        when(watermarkRef.get()).thenReturn(ApiFutures.immediateFuture(stored));
+        when(watermarkRef.set(anyMap(), any(SetOptions.class)))
+                .thenReturn(ApiFutures.immediateFuture(mock(WriteResult.class)));
+
+        live = mock(CollectionReference.class, RETURNS_SELF);
+        when(firestore.collection("historial_clinico")).thenReturn(live);
+        CollectionReference appointments = mock(CollectionReference.class, RETURNS_SELF);
+        when(firestore.collection("appointments")).thenReturn(appointments);
+
+        CollectionReference archive = mock(CollectionReference.class);
+        partitionRef = mock(DocumentReference.class);
+        CollectionReference records = mock(CollectionReference.class);
+        when(firestore.collection(ArchivalService.HISTORIAL_ARCHIVE)).thenReturn(archive);
+        when(archive.document(anyString())).thenReturn(partitionRef);
+        when(partitionRef.collection(ArchivalService.HISTORIAL_RECORDS)).thenReturn(records);
+        when(records.document(anyString())).thenAnswer(invocation -> mock(DocumentReference.class));
+
+        writer = mock(BulkWriter.class);
+        when(firestore.bulkWriter(any(BulkWriterOptions.class))).thenReturn(writer);
+        when(writer.set(any(DocumentReference.class), anyMap()))
+                .thenReturn(ApiFutures.immediateFuture(mock(WriteResult.class)));
+        when(writer.set(any(DocumentReference.class), anyMap(), any(SetOptions.class)))
+                .thenReturn(ApiFutures.immediateFuture(mock(WriteResult.class)));
+        when(writer.flush()).thenReturn(ApiFutures.immediateFuture(null));
+
+        service = new ArchivalService();
+        ReflectionTestUtils.setField(service, "firestore", firestore);
+        ReflectionTestUtils.setField(service, "enabled", true);
+        ReflectionTestUtils.setField(service, "historialMaxAgeDays", 730);
+        ReflectionTestUtils.setField(service, "appointmentsMaxAgeDays", 365);
+        ReflectionTestUtils.setField(service, "pageSize", 2);
+        ReflectionTestUtils.setField(service, "maxOpsPerSecond", 200);
+        ReflectionTestUtils.setField(service, "watermarkCacheMs", 60_000L);
+    }
+
+    @Test
+    void deletesOnlyTheVersionThatWasCopiedAndMovesOnPastDocumentsEditedMeanwhile() throws Exception {
+        QueryDocumentSnapshot edited = historial("h1", 10);
+        QueryDocumentSnapshot unchanged = historial("h2", 20);
+        DocumentReference editedRef = edited.getReference();
+        DocumentReference unchangedRef = unchanged.getReference();
+        ApiFuture<QuerySnapshot> first = page(edited, unchanged);
+        ApiFuture<QuerySnapshot> empty = page();
+        when(live.get()).thenReturn(first, empty);
+        FailedPreconditionException stale = new FailedPreconditionException("stale", null,
+                GrpcStatusCode.of(Status.Code.FAILED_PRECONDITION), false);
+        when(writer.delete(eq(editedRef), any(Precondition.class)))
+                .thenReturn(ApiFutures.immediateFailedFuture(stale));
+        when(writer.delete(eq(unchangedRef), any(Precondition.class)))
+                .thenReturn(ApiFutures.immediateFuture(mock(WriteResult.class)));
+
+        service.archive();
+
+        verify(writer).delete(editedRef, Precondition.updatedAt(Timestamp.ofTimeSecondsAndNanos(10, 0)));
+        verify(writer).delete(unchangedRef, Precondition.updatedAt(Timestamp.ofTimeSecondsAndNanos(20, 0)));
+        verify(writer, never()).delete(any(DocumentReference.class));
+        // La segunda página empieza después de la primera: el documento editado no se vuelve a leer
+        verify(live).startAfter(unchanged);
+        verify(live, times(2)).get();
+        verify(writer).close();
+    }
+
+    @Test
+    void resumingARunDoesNotChangeThePartitionMarker() throws Exception {
+        QueryDocumentSnapshot doc = historial("h1", 10);
+        ApiFuture<QuerySnapshot> first = page(doc);
+        ApiFuture<QuerySnapshot> resumed = page(doc);
+        when(live.get()).thenReturn(first, resumed);
+        when(writer.delete(any(DocumentReference.class), any(Precondition.class)))
+                .thenReturn(ApiFutures.immediateFuture(mock(WriteResult.class)));
+
+        // Dos ejecuciones reescriben la misma copia, como al reanudar una ejecución cortada
+        service.archive();
+        service.archive();
+
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        ArgumentCaptor<Map<String, Object>> marker = ArgumentCaptor.forClass((Class) Map.class);
+        verify(writer, times(2)).set(eq(partitionRef), marker.capture(), any(SetOptions.class));
+        assertThat(marker.getAllValues()).allSatisfy(data -> assertThat(data).containsOnlyKeys("month", "updatedAt"));
+    }
+
+    private QueryDocumentSnapshot historial(String id, long updatedSeconds) {
+        Map<String, Object> data = new HashMap<>();
+        data.put("petId", "pet-1");
+        data.put("fechaVisita", new Date(System.currentTimeMillis() - 900 * DAY_MS));
+        DocumentReference ref = mock(DocumentReference.class);
+        QueryDocumentSnapshot doc = mock(QueryDocumentSnapshot.class);
+        when(doc.getId()).thenReturn(id);
+        when(doc.getReference()).thenReturn(ref);
+        when(doc.getData()).thenReturn(data);
+        when(doc.getDate("fechaVisita")).thenReturn((Date) data.get("fechaVisita"));
+        when(doc.getUpdateTime()).thenReturn(Timestamp.ofTimeSecondsAndNanos(updatedSeconds, 0));
+        return doc;
+    }
+
+    private static ApiFuture<QuerySnapshot> page(QueryDocumentSnapshot... docs) {
+        QuerySnapshot snapshot = mock(QuerySnapshot.class);
+        when(snapshot.getDocuments()).thenReturn(List.of(docs));
+        return ApiFutures.immediateFuture(snapshot);
+    }
+}
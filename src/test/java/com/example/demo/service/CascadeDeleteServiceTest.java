@@ -0,0 +1,179 @@
+package com.example.demo.service;
+
+import com.example.demo.dto.CascadeDeleteDTOs.CascadeDeleteStatus;
+import com.example.demo.dto.CascadeDeleteDTOs.CascadeStatus;
+import com.example.demo.exception.CustomExceptions;
+import com.google.api.core.ApiFutures;
+import com.google.cloud.firestore.*;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class CascadeDeleteServiceTest {
+
+    private static final String JOB_ID = CascadeDeleteService.TYPE_PET + "_p1";
+
+    // Documento del trabajo en _cascade_deletes; nulo si no existe
+    private final AtomicReference<Map<String, Object>> job = new AtomicReference<>();
+
+    private DocumentReference jobRef;
+    private DocumentReference petRef;
+    private Query dependents;
+    private BulkWriter writer;
+    private CascadeDeleteService service;
+
+    @BeforeEach
+    void setUp() {
+        Firestore firestore = mock(Firestore.class);
+        // Todas las consultas de dependientes devuelven una página vacía
+        dependents = mock(CollectionReference.class, RETURNS_SELF);
+        QuerySnapshot empty = mock(QuerySnapshot.class);
+        when(empty.getDocuments()).thenReturn(List.of());
+        when(dependents.get()).thenReturn(ApiFutures.immediateFuture(empty));
+        CollectionGroup group = mock(CollectionGroup.class, RETURNS_SELF);
+        when(group.get()).thenReturn(ApiFutures.immediateFuture(empty));
+        when(firestore.collection(anyString())).thenReturn((CollectionReference) dependents);
+        when(firestore.collectionGroup(anyString())).thenReturn(group);
+
+        petRef = mock(DocumentReference.class);
+        when(petRef.collection(anyString())).thenReturn((CollectionReference) dependents);
+        when(((CollectionReference) dependents).document("p1")).thenReturn(petRef);
+
+        CollectionReference jobs = mock(CollectionReference.class);
+        jobRef = mock(DocumentReference.class);
+        when(jobRef.getId()).thenReturn(JOB_ID);
+        when(firestore.collection(CascadeDeleteService.JOBS)).thenReturn(jobs);
+        when(jobs.document(JOB_ID)).thenReturn(jobRef);
+        when(jobRef.get()).thenAnswer(invocation -> ApiFutures.immediateFuture(snapshot(job.get())));
+
+        Transaction transaction = mock(Transaction.class);
+        when(transaction.get(jobRef)).thenAnswer(invocation -> ApiFutures.immediateFuture(snapshot(job.get())));
+        when(transaction.set(eq(jobRef), anyMap(), any(SetOptions.class))).thenAnswer(invocation -> {
+            Map<String, Object> merged = job.get() != null ? new HashMap<>(job.get()) : new HashMap<>();
+            merged.putAll(invocation.getArgument(1));
+            job.set(merged);
+            return transaction;
+        });
+        when(transaction.update(eq(jobRef), anyMap())).thenAnswer(invocation -> {
+            Map<String, Object> updated = new HashMap<>(job.get());
+            updated.putAll(invocation.getArgument(1));
+            job.set(updated);
+            return transaction;
+        });
+        when(transaction.update(eq(jobRef), anyString(), any(), any(Object[].class))).thenAnswer(invocation -> {
+            Map<String, Object> updated = new HashMap<>(job.get());
+            Object[] args = invocation.getArguments();
+            for (int i = 1; i + 1 < args.length; i += 2) {
+                updated.put((String) args[i], args[i + 1]);
+            }
+            job.set(updated);
+            return transaction;
+        });
+        when(firestore.runTransaction(any(Transaction.Function.class))).thenAnswer(invocation -> {
+            Transaction.Function<?> function = invocation.getArgument(0);
+            try {
+                return ApiFutures.immediateFuture(function.updateCallback(transaction));
+            } catch (Exception e) {
+                return ApiFutures.immediateFailedFuture(e);
+            }
+        });
+
+        writer = mock(BulkWriter.class);
+        when(firestore.bulkWriter(any(BulkWriterOptions.class))).thenReturn(writer);
+        when(writer.delete(any(DocumentReference.class))).thenReturn(ApiFutures.immediateFuture(mock(WriteResult.class)));
+        when(writer.flush()).thenReturn(ApiFutures.immediateFuture(null));
+
+        service = new CascadeDeleteService();
+        ReflectionTestUtils.setField(service, "firestore", firestore);
+        ReflectionTestUtils.setField(service, "serviceReportCache", mock(ServiceReportCache.class));
+        ReflectionTestUtils.setField(service, "pageSize", 200);
+        ReflectionTestUtils.setField(service, "initialOpsPerSecond", 100);
+        ReflectionTestUtils.setField(service, "maxOpsPerSecond", 500);
+        ReflectionTestUtils.setField(service, "staleAfterMs", 600_000L);
+        ReflectionTestUtils.setField(service, "leaseMs", 60_000L);
+    }
+
+    @Test
+    void aJobWithALiveLeaseIsNotRunAgain() {
+        job.set(runningJob("other-owner", System.currentTimeMillis() + 30_000, 2));
+
+        assertThatThrownBy(() -> service.deletePet("p1")).isInstanceOf(CustomExceptions.ConflictException.class);
+
+        verify(writer, never()).delete(any(DocumentReference.class));
+        assertThat(job.get()).containsEntry("owner", "other-owner")
+                .containsEntry("status", CascadeStatus.RUNNING.name());
+    }
+
+    @Test
+    void anExpiredLeaseIsTakenOverAndResumedFromItsLastStep() {
+        job.set(runningJob("crashed-owner", System.currentTimeMillis() - 1_000, 6));
+
+        CascadeDeleteStatus status = service.deletePet("p1");
+
+        assertThat(status.getStatus()).isEqualTo(CascadeStatus.COMPLETED);
+        assertThat(job.get().get("owner")).isNotEqualTo("crashed-owner");
+        assertThat(job.get().get("leaseExpiresAt")).isNull();
+        // Solo quedaba el último paso: el documento de la mascota
+        verify(writer).delete(petRef);
+        verify(dependents, never()).get();
+    }
+
+    @Test
+    void losingTheLeaseStopsTheRunWithoutMarkingItFailed() {
+        when(dependents.get()).thenAnswer(invocation -> {
+            // Otra instancia toma el trabajo mientras se lee la primera página
+            Map<String, Object> takenOver = new HashMap<>(job.get());
+            takenOver.put("owner", "other-owner");
+            job.set(takenOver);
+            QuerySnapshot empty = mock(QuerySnapshot.class);
+            when(empty.getDocuments()).thenReturn(List.of());
+            return ApiFutures.immediateFuture(empty);
+        });
+
+        assertThatThrownBy(() -> service.deletePet("p1")).isInstanceOf(CustomExceptions.ConflictException.class);
+
+        verify(writer, never()).delete(petRef);
+        assertThat(job.get()).containsEntry("owner", "other-owner")
+                .containsEntry("status", CascadeStatus.RUNNING.name())
+                .containsEntry("completedSteps", 0);
+    }
+
+    private static Map<String, Object> runningJob(String owner, long leaseExpiresAt, int completedSteps) {
+        Map<String, Object> data = new HashMap<>();
+        data.put("rootType", CascadeDeleteService.TYPE_PET);
+        data.put("rootId", "p1");
+        data.put("status", CascadeStatus.RUNNING.name());
+        data.put("owner", owner);
+        data.put("leaseExpiresAt", new Date(leaseExpiresAt));
+        data.put("completedSteps", (long) completedSteps);
+        data.put("totalSteps", 7L);
+        data.put("deleted", 0L);
+        return data;
+    }
+
+    private static DocumentSnapshot snapshot(Map<String, Object> data) {
+        DocumentSnapshot snapshot = mock(DocumentSnapshot.class);
+        when(snapshot.exists()).thenReturn(data != null);
+        when(snapshot.getId()).thenReturn(JOB_ID);
+        if (data != null) {
+            when(snapshot.getString(anyString())).thenAnswer(invocation -> (String) data.get(invocation.<String>getArgument(0)));
+            when(snapshot.getDate(anyString())).thenAnswer(invocation -> (Date) data.get(invocation.<String>getArgument(0)));
+            when(snapshot.getLong(anyString())).thenAnswer(invocation -> {
+                Object value = data.get(invocation.<String>getArgument(0));
+                return value != null ? ((Number) value).longValue() : null;
+            });
+        }
+        return snapshot;
+    }
+}
@@ -0,0 +1,115 @@
+package com.example.demo.service;
+
+import com.google.api.core.ApiFutures;
+import com.google.api.core.SettableApiFuture;
+import com.google.cloud.firestore.*;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.*;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.Mockito.*;
+
+class ClientSearchIndexServiceTest {
+
+    private DocumentReference userRef;
+    private DocumentReference entryRef;
+    private ClientSearchIndexService service;
+
+    @BeforeEach
+    void setUp() {
+        Firestore firestore = mock(Firestore.class);
+        CollectionReference users = mock(CollectionReference.class);
+        CollectionReference pets = mock(CollectionReference.class);
+        CollectionReference entries = mock(CollectionReference.class);
+        userRef = mock(DocumentReference.class);
+        entryRef = mock(DocumentReference.class);
+        when(firestore.collection("users")).thenReturn(users);
+        when(firestore.collection("pets")).thenReturn(pets);
+        when(firestore.collection(ClientSearchIndexService.COLLECTION)).thenReturn(entries);
+        when(users.document("c1")).thenReturn(userRef);
+        when(entries.document("c1")).thenReturn(entryRef);
+
+        Query petsOfClient = mock(Query.class);
+        QuerySnapshot noPets = mock(QuerySnapshot.class);
+        when(noPets.getDocuments()).thenReturn(List.of());
+        when(pets.whereEqualTo("ownerId", "c1")).thenReturn(petsOfClient);
+        when(petsOfClient.get()).thenReturn(ApiFutures.immediateFuture(noPets));
+        when(entryRef.set(anyMap())).thenReturn(ApiFutures.immediateFuture(mock(WriteResult.class)));
+
+        service = new ClientSearchIndexService();
+        ReflectionTestUtils.setField(service, "firestore", firestore);
+    }
+
+    @Test
+    void fragmentsMatchTheSameNamesAsASubstringSearch() {
+        List<String> names = List.of("luna", "don gato", "sr. bigotes", "max-2", "princesa fiona de los bosques");
+        for (String name : names) {
+            Set<String> fragments = ClientSearchIndexService.nameFragments(name);
+            for (String query : List.of("una", "lu", "gato", "n g", "bigo", ". b", "x-2", "fiona de", "ana", "gata", "zz")) {
+                assertThat(fragments.contains(query)).as("%s in %s", query, name).isEqualTo(name.contains(query));
+            }
+        }
+        assertThat(ClientSearchIndexService.nameFragments("princesa fiona de los bosques"))
+                .allMatch(fragment -> fragment.length() <= ClientSearchIndexService.MAX_FRAGMENT_LENGTH)
+                .contains("a fiona de los ");
+    }
+
+    @Test
+    void refreshesOfTheSameClientDoNotOverlapAndTheLastOneReadsTheLatestData() throws Exception {
+        SettableApiFuture<DocumentSnapshot> slowRead = SettableApiFuture.create();
+        DocumentSnapshot renamed = user("Ana María");
+        when(userRef.get()).thenReturn(slowRead, ApiFutures.immediateFuture(renamed));
+
+        Thread first = new Thread(() -> {
+            try {
+                service.refreshClient("c1");
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        first.start();
+        verify(userRef, timeout(2000)).get();
+
+        // Llegan mientras el primero está leyendo: no leen ni escriben, solo piden otra pasada
+        service.refreshClient("c1");
+        service.refreshClient("c1");
+        verify(userRef, times(1)).get();
+
+        slowRead.set(user("Ana"));
+        first.join(2000);
+
+        @SuppressWarnings("rawtypes")
+        ArgumentCaptor<Map> written = ArgumentCaptor.forClass(Map.class);
+        verify(userRef, times(2)).get();
+        verify(entryRef, times(2)).set(written.capture());
+        assertThat(written.getAllValues()).extracting(data -> data.get("nombre")).containsExactly("Ana", "Ana María");
+    }
+
+    @Test
+    void aFailedRefreshDoesNotBlockTheNextOne() throws Exception {
+        DocumentSnapshot ana = user("Ana");
+        when(userRef.get()).thenThrow(new IllegalStateException("unavailable"))
+                .thenReturn(ApiFutures.immediateFuture(ana));
+
+        assertThatThrownBy(() -> service.refreshClient("c1")).isInstanceOf(IllegalStateException.class);
+        service.refreshClient("c1");
+
+        verify(entryRef).set(anyMap());
+    }
+
+    private static DocumentSnapshot user(String nombre) {
+        Map<String, Object> data = new HashMap<>();
+        data.put("uid", "c1");
+        data.put("nombre", nombre);
+        DocumentSnapshot snapshot = mock(DocumentSnapshot.class);
+        when(snapshot.exists()).thenReturn(true);
+        when(snapshot.getData()).thenReturn(data);
+        return snapshot;
+    }
+}
@@ -0,0 +1,104 @@
+package com.example.demo.service;
+
+import com.example.demo.dto.PaginationRequest;
+import com.example.demo.dto.UserDTOs;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.api.core.ApiFutures;
+import com.google.cloud.firestore.*;
+import org.junit.jupiter.api.Test;
+import org.mockito.stubbing.Answer;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.File;
+import java.time.LocalDate;
+import java.util.*;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.*;
+
+/**
+ * Cada forma de consulta que genera {@code searchClients} sobre {@code client_search} debe tener
+ * su índice compuesto en {@code firestore.indexes.json}; sin él Firestore rechaza la consulta
+ */
+class ClientSearchIndexesTest {
+
+    @Test
+    void everySearchShapeHasACompositeIndex() throws Exception {
+        Set<List<String>> indexes = clientSearchIndexes();
+        LocalDate day = LocalDate.of(2024, 6, 1);
+
+        assertThat(indexes).contains(
+                queryShape(new UserDTOs.ClientSearchCriteria(null, null, null), "ASC"),
+                queryShape(new UserDTOs.ClientSearchCriteria(null, null, null), "DESC"),
+                queryShape(new UserDTOs.ClientSearchCriteria("ana", null, null), "ASC"),
+                queryShape(new UserDTOs.ClientSearchCriteria("ana", null, null), "DESC"),
+                queryShape(new UserDTOs.ClientSearchCriteria(null, null, day), "ASC"),
+                queryShape(new UserDTOs.ClientSearchCriteria("ana", null, day), "DESC"),
+                queryShape(new UserDTOs.ClientSearchCriteria(null, "lu", null), "ASC"),
+                queryShape(new UserDTOs.ClientSearchCriteria("ana", "lu", null), "DESC"),
+                queryShape(new UserDTOs.ClientSearchCriteria(null, "lu", day), "ASC"));
+    }
+
+    /**
+     * Campos del índice que necesita la consulta: igualdades, el array-contains y el orden
+     */
+    private static List<String> queryShape(UserDTOs.ClientSearchCriteria criteria, String direction) {
+        List<String> equalities = new ArrayList<>();
+        List<String> arrays = new ArrayList<>();
+        List<String> orders = new ArrayList<>();
+        QuerySnapshot empty = mock(QuerySnapshot.class);
+        AggregateQuery count = mock(AggregateQuery.class);
+        AggregateQuerySnapshot counted = mock(AggregateQuerySnapshot.class);
+        when(count.get()).thenReturn(ApiFutures.immediateFuture(counted));
+
+        Answer<Object> recording = invocation -> {
+            String method = invocation.getMethod().getName();
+            switch (method) {
+                case "whereEqualTo" -> equalities.add(invocation.getArgument(0).toString() + ":ASCENDING");
+                case "whereArrayContains" -> arrays.add(invocation.getArgument(0).toString() + ":CONTAINS");
+                case "orderBy" -> orders.add(invocation.getArgument(0).toString() + ":" + invocation.getArgument(1));
+                case "get" -> {
+                    return ApiFutures.immediateFuture(empty);
+                }
+                case "count" -> {
+                    return count;
+                }
+                default -> {
+                }
+            }
+            return Query.class.isAssignableFrom(invocation.getMethod().getReturnType())
+                    ? invocation.getMock()
+                    : RETURNS_DEFAULTS.answer(invocation);
+        };
+        Firestore firestore = mock(Firestore.class);
+        CollectionReference clientSearch = mock(CollectionReference.class, recording);
+        when(firestore.collection(ClientSearchIndexService.COLLECTION)).thenReturn(clientSearch);
+
+        VeterinaryService service = new VeterinaryService();
+        ReflectionTestUtils.setField(service, "firestore", firestore);
+        service.searchClients(criteria, new PaginationRequest(0, 20, "nombre", direction));
+
+        List<String> shape = new ArrayList<>(equalities);
+        shape.addAll(arrays);
+        shape.addAll(orders);
+        return shape;
+    }
+
+    private static Set<List<String>> clientSearchIndexes() throws Exception {
+        JsonNode root = new ObjectMapper().readTree(new File("firestore.indexes.json"));
+        Set<List<String>> indexes = new HashSet<>();
+        for (JsonNode index : root.get("indexes")) {
+            if (!ClientSearchIndexService.COLLECTION.equals(index.get("collectionGroup").asText())) {
+                continue;
+            }
+            List<String> fields = new ArrayList<>();
+            for (JsonNode field : index.get("fields")) {
+                String mode = field.has("arrayConfig") ? field.get("arrayConfig").asText() : field.get("order").asText();
+                fields.add(field.get("fieldPath").asText() + ":" + mode);
+            }
+            indexes.add(fields);
+        }
+        return indexes;
+    }
+}
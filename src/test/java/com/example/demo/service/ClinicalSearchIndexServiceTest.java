@@ -0,0 +1,237 @@
+package com.example.demo.service;
+
+import com.example.demo.dto.ClinicalSearchDTOs.ClinicalSearchHit;
+import com.example.demo.dto.PaginatedResponse;
+import com.example.demo.dto.PaginationRequest;
+import com.example.demo.exception.CustomExceptions;
+import com.google.cloud.Timestamp;
+import com.google.cloud.firestore.*;
+import com.google.cloud.firestore.EventListener;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+/**
+ * Índice real en un directorio temporal, alimentado con instantáneas simuladas de los listeners
+ */
+class ClinicalSearchIndexServiceTest {
+
+    @TempDir
+    Path indexDir;
+
+    // Los reintentos registran desde el hilo del servicio
+    private final Map<Query, List<EventListener<QuerySnapshot>>> listeners = new ConcurrentHashMap<>();
+    private final Map<Query, List<ListenerRegistration>> registrations = new ConcurrentHashMap<>();
+    private final List<ClinicalSearchIndexService> services = new ArrayList<>();
+
+    private Firestore firestore;
+    private Query historial;
+    private CollectionGroup archive;
+    private CollectionGroup medicalRecords;
+
+    @BeforeEach
+    void setUp() {
+        firestore = mock(Firestore.class);
+        historial = listenable(mock(CollectionReference.class));
+        archive = listenable(mock(CollectionGroup.class));
+        medicalRecords = listenable(mock(CollectionGroup.class));
+        when(firestore.collection("historial_clinico")).thenReturn((CollectionReference) historial);
+        when(firestore.collectionGroup(ArchivalService.HISTORIAL_RECORDS)).thenReturn(archive);
+        when(firestore.collectionGroup("medicalRecords")).thenReturn(medicalRecords);
+    }
+
+    @AfterEach
+    void tearDown() {
+        services.forEach(ClinicalSearchIndexService::close);
+    }
+
+    @Test
+    void indexedRecordsAreFoundAndHighlighted() throws Exception {
+        ClinicalSearchIndexService service = start();
+        deliverInitial(historial, record("h1", "Fractura de fémur izquierdo", at(2024, 3, 10, 15), 1),
+                record("h2", "Otitis externa", at(2024, 3, 11, 10), 1));
+        refresh(service);
+
+        PaginatedResponse<ClinicalSearchHit> result = service.search("fractura", null, null, null, null, page());
+
+        assertThat(result.getTotalElements()).isEqualTo(1);
+        ClinicalSearchHit hit = result.getContent().get(0);
+        assertThat(hit.getId()).isEqualTo("h1");
+        assertThat(hit.getPetId()).isEqualTo("pet-h1");
+        assertThat(hit.getSource()).isEqualTo(ClinicalTimelineService.SOURCE_HISTORIAL);
+        assertThat(hit.getHighlights().get("diagnosis")).contains("<b>Fractura</b>");
+    }
+
+    @Test
+    void theUpperDateIncludesTheWholeDay() throws Exception {
+        ClinicalSearchIndexService service = start();
+        deliverInitial(historial, record("h1", "Fractura de fémur", at(2024, 3, 10, 15), 1));
+        refresh(service);
+
+        assertThat(service.search("fractura", null, null, day(2024, 3, 10), day(2024, 3, 10), page())
+                .getTotalElements()).isEqualTo(1);
+        assertThat(service.search("fractura", null, null, null, day(2024, 3, 9), page())
+                .getTotalElements()).isZero();
+        assertThat(service.search("fractura", null, null, day(2024, 3, 11), null, page())
+                .getTotalElements()).isZero();
+    }
+
+    @Test
+    void aReopenedIndexKeepsItsDocumentsAndDropsThoseDeletedMeanwhile() throws Exception {
+        ClinicalSearchIndexService first = start();
+        deliverInitial(historial, record("h1", "Fractura de fémur", at(2024, 3, 10, 15), 1),
+                record("h2", "Otitis externa", at(2024, 3, 11, 10), 1));
+        first.close();
+        services.remove(first);
+        listeners.clear();
+
+        ClinicalSearchIndexService reopened = start();
+        assertThat(reopened.status().getDocuments()).isEqualTo(2);
+
+        // h1 se borró mientras la aplicación estaba parada
+        deliverInitial(historial, record("h2", "Otitis externa", at(2024, 3, 11, 10), 1));
+        refresh(reopened);
+
+        assertThat(reopened.status().getDocuments()).isEqualTo(1);
+        assertThat(reopened.search("fractura", null, null, null, null, page()).getTotalElements()).isZero();
+        assertThat(reopened.search("otitis", null, null, null, null, page()).getTotalElements()).isEqualTo(1);
+    }
+
+    @Test
+    void aFailedListenerIsNotReadyUntilItReconnects() throws Exception {
+        ClinicalSearchIndexService service = start();
+        deliverInitial(historial, record("h1", "Fractura de fémur", at(2024, 3, 10, 15), 1));
+        deliverInitial(archive);
+        deliverInitial(medicalRecords);
+        assertThat(service.status().isHistorialReady()).isTrue();
+
+        listeners.get(historial).get(0).onEvent(null, mock(FirestoreException.class));
+
+        assertThat(service.status().isHistorialReady()).isFalse();
+        assertThat(service.status().isArchiveReady()).isTrue();
+        verify(registrations.get(historial).get(0)).remove();
+        awaitRegistrations(historial, 2);
+
+        // El nuevo registro entrega el estado completo: lo borrado durante la caída sale del índice
+        deliverInitial(historial, record("h2", "Otitis externa", at(2024, 3, 11, 10), 1));
+        refresh(service);
+
+        assertThat(service.status().isHistorialReady()).isTrue();
+        assertThat(service.search("fractura", null, null, null, null, page()).getTotalElements()).isZero();
+        assertThat(service.search("otitis", null, null, null, null, page()).getTotalElements()).isEqualTo(1);
+    }
+
+    @Test
+    void invalidSearchesAreRejectedAsBadRequests() throws Exception {
+        ClinicalSearchIndexService service = start();
+        PaginationRequest beyondWindow = page();
+        beyondWindow.setPage(1_000);
+
+        assertThatThrownBy(() -> service.search(" ", null, null, null, null, page()))
+                .isInstanceOf(CustomExceptions.BadRequestException.class);
+        assertThatThrownBy(() -> service.search("fractura", null, null, null, null, beyondWindow))
+                .isInstanceOf(CustomExceptions.BadRequestException.class);
+    }
+
+    private ClinicalSearchIndexService start() throws Exception {
+        ClinicalSearchIndexService service = new ClinicalSearchIndexService();
+        ReflectionTestUtils.setField(service, "firestore", firestore);
+        ReflectionTestUtils.setField(service, "enabled", true);
+        ReflectionTestUtils.setField(service, "indexDir", indexDir.toString());
+        ReflectionTestUtils.setField(service, "refreshMs", 60_000L);
+        ReflectionTestUtils.setField(service, "commitIntervalMs", 60_000L);
+        ReflectionTestUtils.setField(service, "reconnectDelayMs", 10L);
+        ReflectionTestUtils.setField(service, "maxReconnectDelayMs", 10L);
+        service.open();
+        service.startListeners();
+        services.add(service);
+        return service;
+    }
+
+    private <T extends Query> T listenable(T query) {
+        when(query.addSnapshotListener(any())).thenAnswer(invocation -> {
+            ListenerRegistration registration = mock(ListenerRegistration.class);
+            registrations.computeIfAbsent(query, q -> new CopyOnWriteArrayList<>()).add(registration);
+            listeners.computeIfAbsent(query, q -> new CopyOnWriteArrayList<>()).add(invocation.getArgument(0));
+            return registration;
+        });
+        return query;
+    }
+
+    /**
+     * Entrega al último registro de la consulta una instantánea completa con esos documentos
+     */
+    private void deliverInitial(Query query, QueryDocumentSnapshot... documents) {
+        List<DocumentChange> changes = new ArrayList<>();
+        for (QueryDocumentSnapshot document : documents) {
+            DocumentChange change = mock(DocumentChange.class);
+            when(change.getType()).thenReturn(DocumentChange.Type.ADDED);
+            when(change.getDocument()).thenReturn(document);
+            changes.add(change);
+        }
+        QuerySnapshot snapshot = mock(QuerySnapshot.class);
+        when(snapshot.getDocumentChanges()).thenReturn(changes);
+        when(snapshot.getDocuments()).thenReturn(List.of(documents));
+        List<EventListener<QuerySnapshot>> registered = listeners.get(query);
+        registered.get(registered.size() - 1).onEvent(snapshot, null);
+    }
+
+    private void awaitRegistrations(Query query, int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 2000;
+        while (listeners.get(query).size() < count) {
+            if (System.currentTimeMillis() > deadline) {
+                throw new AssertionError("Listener not registered again");
+            }
+            Thread.sleep(10);
+        }
+    }
+
+    private static QueryDocumentSnapshot record(String id, String diagnostico, Date fechaVisita, long version) {
+        Map<String, Object> data = new HashMap<>();
+        data.put("petId", "pet-" + id);
+        data.put("veterinarianId", "vet");
+        data.put("fechaVisita", fechaVisita);
+        data.put("motivoConsulta", "Control");
+        data.put("diagnostico", diagnostico);
+        QueryDocumentSnapshot snapshot = mock(QueryDocumentSnapshot.class);
+        when(snapshot.getId()).thenReturn(id);
+        when(snapshot.getUpdateTime()).thenReturn(Timestamp.ofTimeSecondsAndNanos(version, 0));
+        when(snapshot.getString(anyString())).thenAnswer(invocation -> (String) data.get(invocation.<String>getArgument(0)));
+        when(snapshot.getDate(anyString())).thenAnswer(invocation -> (Date) data.get(invocation.<String>getArgument(0)));
+        return snapshot;
+    }
+
+    private static void refresh(ClinicalSearchIndexService service) {
+        ReflectionTestUtils.invokeMethod(service, "refresh");
+    }
+
+    private static PaginationRequest page() {
+        PaginationRequest request = new PaginationRequest();
+        request.setSize(10);
+        return request;
+    }
+
+    private static Date at(int year, int month, int day, int hour) {
+        return Date.from(LocalDate.of(year, month, day).atTime(hour, 0).atZone(ZoneId.systemDefault()).toInstant());
+    }
+
+    // Así llega un parámetro ISO.DATE: medianoche del día en la zona del servidor
+    private static Date day(int year, int month, int day) {
+        return at(year, month, day, 0);
+    }
+}
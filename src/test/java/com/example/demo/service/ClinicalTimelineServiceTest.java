@@ -0,0 +1,235 @@
+package com.example.demo.service;
+
+import com.example.demo.dto.TimelineDTOs.BackfillResult;
+import com.example.demo.dto.TimelineDTOs.TimelinePage;
+import com.example.demo.exception.CustomExceptions;
+import com.example.demo.model.HistorialClinico;
+import com.example.demo.model.MedicalRecord;
+import com.example.demo.model.ServicioRealizado;
+import com.example.demo.model.TimelineEntry;
+import com.google.api.core.ApiFutures;
+import com.google.cloud.firestore.*;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatCode;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+class ClinicalTimelineServiceTest {
+
+    private Firestore firestore;
+    private CollectionReference pets;
+    private DocumentReference petRef;
+    private CollectionReference timeline;
+    private final Map<String, DocumentReference> entryRefs = new HashMap<>();
+    private ClinicalTimelineService service;
+
+    @BeforeEach
+    void setUp() {
+        firestore = mock(Firestore.class);
+
+        pets = mock(CollectionReference.class, RETURNS_SELF);
+        petRef = mock(DocumentReference.class);
+        DocumentSnapshot pet = document("p1", Map.of("name", "Luna"));
+        when(firestore.collection("pets")).thenReturn(pets);
+        when(pets.document("p1")).thenReturn(petRef);
+        when(petRef.get()).thenReturn(ApiFutures.immediateFuture(pet));
+
+        timeline = mock(CollectionReference.class, RETURNS_SELF);
+        when(petRef.collection("timeline")).thenReturn(timeline);
+        when(timeline.document(anyString())).thenAnswer(invocation -> entryRefs.computeIfAbsent(
+                invocation.getArgument(0), id -> mock(DocumentReference.class)));
+
+        CollectionReference users = mock(CollectionReference.class);
+        DocumentReference vetRef = mock(DocumentReference.class);
+        DocumentSnapshot vet = document("v1", Map.of("nombre", "Ana", "apellido", "Pérez"));
+        when(firestore.collection("users")).thenReturn(users);
+        when(users.document("v1")).thenReturn(vetRef);
+        when(vetRef.get()).thenReturn(ApiFutures.immediateFuture(vet));
+
+        service = new ClinicalTimelineService();
+        ReflectionTestUtils.setField(service, "firestore", firestore);
+        ReflectionTestUtils.setField(service, "maxPageSize", 100);
+    }
+
+    @Test
+    void writesTheHistorialEntryWithResolvedNames() {
+        DocumentReference entryRef = timeline.document("HISTORIAL_CLINICO_h1");
+        when(entryRef.set(any(TimelineEntry.class))).thenReturn(ApiFutures.immediateFuture(mock(WriteResult.class)));
+        Date visit = new Date(1_717_000_000_000L);
+
+        service.recordHistorial(HistorialClinico.builder()
+                .id("h1")
+                .petId("p1")
+                .veterinarianId("v1")
+                .fechaVisita(visit)
+                .diagnostico("Otitis")
+                .serviciosRealizados(List.of(ServicioRealizado.builder().serviceName("Consulta").build()))
+                .build());
+
+        ArgumentCaptor<Object> written = ArgumentCaptor.forClass(Object.class);
+        verify(entryRef).set(written.capture());
+        TimelineEntry entry = (TimelineEntry) written.getValue();
+        assertThat(entry.getId()).isEqualTo("HISTORIAL_CLINICO_h1");
+        assertThat(entry.getSource()).isEqualTo(ClinicalTimelineService.SOURCE_HISTORIAL);
+        assertThat(entry.getPetName()).isEqualTo("Luna");
+        assertThat(entry.getVeterinarianName()).isEqualTo("Ana Pérez");
+        assertThat(entry.getVisitDate()).isEqualTo(visit);
+        assertThat(entry.getServiceNames()).containsExactly("Consulta");
+    }
+
+    @Test
+    void aFailedTimelineWriteDoesNotFailTheSourceWrite() {
+        DocumentReference entryRef = timeline.document("MEDICAL_RECORD_m1");
+        when(entryRef.set(any(TimelineEntry.class))).thenReturn(ApiFutures.immediateFailedFuture(new IllegalStateException("unavailable")));
+
+        assertThatCode(() -> service.recordMedicalRecord("p1", MedicalRecord.builder()
+                .id("m1")
+                .date(new Date())
+                .veterinarianId("v1")
+                .diagnosis("Control")
+                .build()))
+                .doesNotThrowAnyException();
+        verify(entryRef).set(any(TimelineEntry.class));
+    }
+
+    @Test
+    void backfillWritesDeterministicEntriesAndCanBeRepeated() throws Exception {
+        QueryDocumentSnapshot petDoc = queryDocument("p1", Map.of("name", "Luna"));
+        QuerySnapshot petPage = page(List.of(petDoc));
+        when(pets.get()).thenReturn(ApiFutures.immediateFuture(petPage));
+
+        // Registro médico guardado sin el campo id: se toma el ID del documento
+        QueryDocumentSnapshot recordDoc = queryDocument("m1", Map.of());
+        when(recordDoc.toObject(MedicalRecord.class)).thenReturn(MedicalRecord.builder()
+                .date(new Date(1_717_000_000_000L))
+                .veterinarianId("v1")
+                .build());
+        QuerySnapshot records = page(List.of(recordDoc));
+        CollectionReference medicalRecords = mock(CollectionReference.class);
+        when(petRef.collection("medicalRecords")).thenReturn(medicalRecords);
+        when(medicalRecords.get()).thenReturn(ApiFutures.immediateFuture(records));
+
+        QueryDocumentSnapshot historialDoc = queryDocument("h1",
+                Map.of("id", "h1", "petId", "p1", "veterinarianId", "v1", "motivoConsulta", "Vacunación"));
+        QuerySnapshot historiales = page(List.of(historialDoc));
+        CollectionReference historialClinico = mock(CollectionReference.class, RETURNS_SELF);
+        when(firestore.collection("historial_clinico")).thenReturn(historialClinico);
+        when(historialClinico.get()).thenReturn(ApiFutures.immediateFuture(historiales));
+
+        WriteBatch batch = mock(WriteBatch.class);
+        when(firestore.batch()).thenReturn(batch);
+        when(batch.commit()).thenReturn(ApiFutures.immediateFuture(List.of()));
+
+        BackfillResult first = service.backfill();
+        BackfillResult second = service.backfill();
+
+        assertThat(first.getPets()).isEqualTo(1);
+        assertThat(first.getEntries()).isEqualTo(2);
+        assertThat(second.getEntries()).isEqualTo(2);
+        verify(historialClinico, times(2)).whereEqualTo("petId", "p1");
+
+        ArgumentCaptor<Object> written = ArgumentCaptor.forClass(Object.class);
+        verify(batch, times(4)).set(any(DocumentReference.class), written.capture());
+        assertThat(written.getAllValues())
+                .extracting(entry -> ((TimelineEntry) entry).getId())
+                .containsExactly("MEDICAL_RECORD_m1", "HISTORIAL_CLINICO_h1",
+                        "MEDICAL_RECORD_m1", "HISTORIAL_CLINICO_h1");
+        assertThat(written.getAllValues())
+                .extracting(entry -> ((TimelineEntry) entry).getVeterinarianName())
+                .containsOnly("Ana Pérez");
+        verify(batch, times(2)).commit();
+    }
+
+    @Test
+    void pagesResumeAfterTheLastReturnedEntry() throws Exception {
+        Date newest = new Date(1_717_300_000_000L);
+        Date middle = new Date(1_717_200_000_000L);
+        Date oldest = new Date(1_717_100_000_000L);
+        QuerySnapshot firstPage = page(List.of(timelineDoc("e3", newest), timelineDoc("e2", middle),
+                timelineDoc("e1", oldest)));
+        QuerySnapshot lastPage = page(List.of(timelineDoc("e1", oldest)));
+        when(timeline.get()).thenReturn(ApiFutures.immediateFuture(firstPage), ApiFutures.immediateFuture(lastPage));
+
+        TimelinePage first = service.getTimeline("p1", null, 2);
+
+        assertThat(first.getEntries()).extracting(TimelineEntry::getId).containsExactly("e3", "e2");
+        assertThat(first.isHasMore()).isTrue();
+        assertThat(first.getNextCursor()).isNotBlank();
+        verify(timeline).limit(3);
+        verify(timeline, never()).startAfter(any(), any());
+
+        TimelinePage second = service.getTimeline("p1", first.getNextCursor(), 2);
+
+        verify(timeline).startAfter(middle, "e2");
+        assertThat(second.getEntries()).extracting(TimelineEntry::getId).containsExactly("e1");
+        assertThat(second.isHasMore()).isFalse();
+        assertThat(second.getNextCursor()).isNull();
+    }
+
+    @Test
+    void aCursorAfterAnEntryWithoutVisitDateKeepsTheNullDate() throws Exception {
+        QuerySnapshot firstPage = page(List.of(timelineDoc("e2", null), timelineDoc("e1", null)));
+        QuerySnapshot lastPage = page(List.of(timelineDoc("e1", null)));
+        when(timeline.get()).thenReturn(ApiFutures.immediateFuture(firstPage), ApiFutures.immediateFuture(lastPage));
+
+        TimelinePage first = service.getTimeline("p1", null, 1);
+        service.getTimeline("p1", first.getNextCursor(), 1);
+
+        verify(timeline).startAfter(null, "e2");
+    }
+
+    @Test
+    void malformedCursorsAreRejectedAsBadRequests() {
+        for (String cursor : List.of("%%%", encode("abc:e1"), encode("1717000000000"), encode("1717000000000:"))) {
+            assertThatThrownBy(() -> service.getTimeline("p1", cursor, 10))
+                    .as(cursor)
+                    .isInstanceOf(CustomExceptions.BadRequestException.class);
+        }
+    }
+
+    private static String encode(String raw) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static QueryDocumentSnapshot timelineDoc(String id, Date visitDate) {
+        QueryDocumentSnapshot doc = queryDocument(id, Map.of());
+        TimelineEntry entry = TimelineEntry.builder().visitDate(visitDate).build();
+        when(doc.toObject(TimelineEntry.class)).thenReturn(entry);
+        return doc;
+    }
+
+    private static QuerySnapshot page(List<QueryDocumentSnapshot> docs) {
+        QuerySnapshot snapshot = mock(QuerySnapshot.class);
+        when(snapshot.getDocuments()).thenReturn(docs);
+        return snapshot;
+    }
+
+    private static QueryDocumentSnapshot queryDocument(String id, Map<String, Object> data) {
+        QueryDocumentSnapshot doc = mock(QueryDocumentSnapshot.class);
+        stub(doc, id, data);
+        return doc;
+    }
+
+    private static DocumentSnapshot document(String id, Map<String, Object> data) {
+        DocumentSnapshot doc = mock(DocumentSnapshot.class);
+        stub(doc, id, data);
+        return doc;
+    }
+
+    private static void stub(DocumentSnapshot doc, String id, Map<String, Object> data) {
+        when(doc.getId()).thenReturn(id);
+        when(doc.exists()).thenReturn(true);
+        when(doc.getData()).thenReturn(new HashMap<>(data));
+        when(doc.getString(anyString())).thenAnswer(invocation -> (String) data.get(invocation.<String>getArgument(0)));
+    }
+}
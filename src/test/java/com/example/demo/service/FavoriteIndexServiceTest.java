@@ -0,0 +1,106 @@
+package com.example.demo.service;
+
+import com.google.api.core.ApiFutures;
+import com.google.cloud.firestore.*;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.*;
+import java.util.function.Consumer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.*;
+
+class FavoriteIndexServiceTest {
+
+    // Favoritos guardados en Firestore: ID del documento → ID del item
+    private final Map<String, String> stored = new LinkedHashMap<>();
+    private Consumer<String> duringLoad = userId -> {
+    };
+    private CollectionReference favorites;
+    private FavoriteIndexService service;
+
+    @BeforeEach
+    void setUp() {
+        Firestore firestore = mock(Firestore.class);
+        favorites = mock(CollectionReference.class, RETURNS_SELF);
+        when(firestore.collection("favorites")).thenReturn(favorites);
+        when(favorites.get()).thenAnswer(invocation -> {
+            QuerySnapshot snapshot = snapshot();
+            // Lo que ocurra entre la lectura y el guardado en caché
+            duringLoad.accept("u1");
+            return ApiFutures.immediateFuture(snapshot);
+        });
+
+        CacheInvalidationService invalidation = new CacheInvalidationService();
+        ReflectionTestUtils.setField(invalidation, "transport", new LocalCacheEventTransport());
+
+        service = new FavoriteIndexService();
+        ReflectionTestUtils.setField(service, "firestore", firestore);
+        ReflectionTestUtils.setField(service, "cacheInvalidationService", invalidation);
+        ReflectionTestUtils.setField(service, "ttlMs", 300_000L);
+        service.registerInvalidationHandler();
+
+        stored.put("f1", "i1");
+    }
+
+    @Test
+    void answersFromTheCacheAfterTheFirstLoad() {
+        assertThat(service.isFavorite("u1", "INVENTORY", "i1")).isTrue();
+        assertThat(service.documentId("u1", "INVENTORY", "i1")).isEqualTo("f1");
+
+        verify(favorites, times(1)).get();
+    }
+
+    @Test
+    void doesNotCacheALoadThatRacedAnInvalidationOfTheUser() {
+        // El usuario agrega un favorito mientras se leía el conjunto anterior
+        duringLoad = userId -> {
+            stored.put("f2", "i2");
+            service.invalidate(userId);
+        };
+        assertThat(service.isFavorite("u1", "INVENTORY", "i2")).isFalse();
+
+        duringLoad = userId -> {
+        };
+        assertThat(service.isFavorite("u1", "INVENTORY", "i2")).isTrue();
+        assertThat(service.isFavorite("u1", "INVENTORY", "i2")).isTrue();
+        verify(favorites, times(2)).get();
+    }
+
+    @Test
+    void doesNotCacheALoadThatRacedAFullClear() {
+        duringLoad = userId -> service.invalidate(null);
+        service.isFavorite("u1", "INVENTORY", "i1");
+
+        duringLoad = userId -> {
+        };
+        service.isFavorite("u1", "INVENTORY", "i1");
+        service.isFavorite("u1", "INVENTORY", "i1");
+        verify(favorites, times(2)).get();
+    }
+
+    @Test
+    void anInvalidationOfAnotherUserDoesNotPreventCaching() {
+        duringLoad = userId -> service.invalidate("u2");
+        service.isFavorite("u1", "INVENTORY", "i1");
+
+        service.isFavorite("u1", "INVENTORY", "i1");
+        verify(favorites, times(1)).get();
+    }
+
+    private QuerySnapshot snapshot() {
+        List<QueryDocumentSnapshot> docs = new ArrayList<>();
+        stored.forEach((documentId, itemId) -> {
+            QueryDocumentSnapshot doc = mock(QueryDocumentSnapshot.class);
+            when(doc.getId()).thenReturn(documentId);
+            when(doc.getString("itemType")).thenReturn("INVENTORY");
+            when(doc.getString("itemId")).thenReturn(itemId);
+            docs.add(doc);
+        });
+        QuerySnapshot snapshot = mock(QuerySnapshot.class);
+        when(snapshot.getDocuments()).thenReturn(docs);
+        return snapshot;
+    }
+}
@@ -0,0 +1,148 @@
+package com.example.demo.service;
+
+import com.example.demo.dto.FavoriteDTOs.FavoriteResponse;
+import com.example.demo.model.Favorite;
+import com.example.demo.model.ItemType;
+import com.google.api.core.ApiFutures;
+import com.google.cloud.firestore.*;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.authentication.TestingAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.*;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class FavoriteServiceTest {
+
+    private static final String FAVORITE_ID = FavoriteService.favoriteId("u1", "INVENTORY", "i1");
+
+    private DocumentReference favoriteRef;
+    private Query legacyQuery;
+    private Transaction transaction;
+    private FavoriteIndexService favoriteIndexService;
+    private FavoriteService service;
+
+    @BeforeEach
+    void setUp() {
+        Firestore firestore = mock(Firestore.class);
+        CollectionReference favorites = mock(CollectionReference.class);
+        CollectionReference inventory = mock(CollectionReference.class);
+        when(firestore.collection("favorites")).thenReturn(favorites);
+        when(firestore.collection("inventory")).thenReturn(inventory);
+
+        favoriteRef = mock(DocumentReference.class);
+        when(favoriteRef.getId()).thenReturn(FAVORITE_ID);
+        when(favorites.document(FAVORITE_ID)).thenReturn(favoriteRef);
+
+        Query byUser = mock(Query.class);
+        Query byType = mock(Query.class);
+        legacyQuery = mock(Query.class);
+        when(favorites.whereEqualTo("userId", "u1")).thenReturn(byUser);
+        when(byUser.whereEqualTo("itemType", "INVENTORY")).thenReturn(byType);
+        when(byType.whereEqualTo("itemId", "i1")).thenReturn(legacyQuery);
+
+        DocumentReference itemRef = mock(DocumentReference.class);
+        DocumentSnapshot item = inventoryItem();
+        when(inventory.document("i1")).thenReturn(itemRef);
+        when(itemRef.get()).thenReturn(ApiFutures.immediateFuture(item));
+
+        transaction = mock(Transaction.class);
+        when(firestore.runTransaction(any(Transaction.Function.class))).thenAnswer(invocation -> {
+            Transaction.Function<?> function = invocation.getArgument(0);
+            return ApiFutures.immediateFuture(function.updateCallback(transaction));
+        });
+
+        favoriteIndexService = mock(FavoriteIndexService.class);
+        service = new FavoriteService();
+        ReflectionTestUtils.setField(service, "firestore", firestore);
+        ReflectionTestUtils.setField(service, "favoriteIndexService", favoriteIndexService);
+
+        SecurityContextHolder.getContext().setAuthentication(new TestingAuthenticationToken("u1", null));
+    }
+
+    @AfterEach
+    void tearDown() {
+        SecurityContextHolder.clearContext();
+    }
+
+    @Test
+    void removesALegacyFavoriteFoundInsideTheTransaction() {
+        DocumentSnapshot missing = document(false);
+        QueryDocumentSnapshot legacy = mock(QueryDocumentSnapshot.class);
+        DocumentReference legacyRef = mock(DocumentReference.class);
+        when(legacy.getId()).thenReturn("random-id");
+        when(legacy.getReference()).thenReturn(legacyRef);
+        QuerySnapshot legacyResults = results(legacy);
+        when(transaction.get(favoriteRef)).thenReturn(ApiFutures.immediateFuture(missing));
+        when(transaction.get(legacyQuery)).thenReturn(ApiFutures.immediateFuture(legacyResults));
+
+        FavoriteResponse response = service.toggleFavorite("i1", ItemType.INVENTORY);
+
+        assertThat(response).isNull();
+        verify(transaction).delete(legacyRef);
+        verify(transaction, never()).set(any(DocumentReference.class), any(Object.class));
+        verify(favoriteIndexService, never()).documentId(any(), any(), any());
+        verify(favoriteIndexService).invalidate("u1");
+    }
+
+    @Test
+    void createsTheFavoriteWhenNeitherDocumentExists() {
+        DocumentSnapshot missing = document(false);
+        QuerySnapshot none = results();
+        when(transaction.get(favoriteRef)).thenReturn(ApiFutures.immediateFuture(missing));
+        when(transaction.get(legacyQuery)).thenReturn(ApiFutures.immediateFuture(none));
+
+        FavoriteResponse response = service.toggleFavorite("i1", ItemType.INVENTORY);
+
+        assertThat(response.getId()).isEqualTo(FAVORITE_ID);
+        assertThat(response.getItemName()).isEqualTo("Vacuna");
+        verify(transaction).set(eq(favoriteRef), any(Favorite.class));
+    }
+
+    @Test
+    void theDeterministicDocumentIsDeletedOnce() {
+        DocumentSnapshot existing = document(true);
+        QueryDocumentSnapshot same = mock(QueryDocumentSnapshot.class);
+        when(same.getId()).thenReturn(FAVORITE_ID);
+        QuerySnapshot sameResults = results(same);
+        when(transaction.get(favoriteRef)).thenReturn(ApiFutures.immediateFuture(existing));
+        when(transaction.get(legacyQuery)).thenReturn(ApiFutures.immediateFuture(sameResults));
+
+        assertThat(service.toggleFavorite("i1", ItemType.INVENTORY)).isNull();
+
+        verify(transaction, times(1)).delete(any(DocumentReference.class));
+        verify(transaction).delete(favoriteRef);
+    }
+
+    private static DocumentSnapshot document(boolean exists) {
+        DocumentSnapshot snapshot = mock(DocumentSnapshot.class);
+        when(snapshot.exists()).thenReturn(exists);
+        return snapshot;
+    }
+
+    private static QuerySnapshot results(QueryDocumentSnapshot... documents) {
+        QuerySnapshot snapshot = mock(QuerySnapshot.class);
+        when(snapshot.getDocuments()).thenReturn(List.of(documents));
+        return snapshot;
+    }
+
+    private static DocumentSnapshot inventoryItem() {
+        Map<String, Object> data = new HashMap<>();
+        data.put("id", "i1");
+        data.put("name", "Vacuna");
+        data.put("quantity", 5L);
+        data.put("minThreshold", 2L);
+        data.put("price", 12.5);
+        DocumentSnapshot snapshot = mock(DocumentSnapshot.class);
+        when(snapshot.exists()).thenReturn(true);
+        when(snapshot.getData()).thenReturn(data);
+        return snapshot;
+    }
+}
@@ -0,0 +1,108 @@
+package com.example.demo.service;
+
+import com.example.demo.exception.CustomExceptions;
+import com.google.api.core.ApiFuture;
+import com.google.api.core.ApiFutures;
+import com.google.api.core.SettableApiFuture;
+import com.google.api.gax.grpc.GrpcStatusCode;
+import com.google.api.gax.rpc.FailedPreconditionException;
+import com.google.cloud.Timestamp;
+import com.google.cloud.firestore.DocumentReference;
+import com.google.cloud.firestore.Precondition;
+import com.google.cloud.firestore.WriteResult;
+import io.grpc.Status;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.Mockito.*;
+
+class FieldUpdateWriterTest {
+
+    private static final long WINDOW_MS = 50;
+    private static final Timestamp READ_AT = Timestamp.ofTimeSecondsAndNanos(1_700_000_000, 0);
+
+    private DocumentReference ref;
+    private FieldUpdateWriter writer;
+
+    @BeforeEach
+    void setUp() {
+        ref = mock(DocumentReference.class);
+        when(ref.getPath()).thenReturn("inventory/p1");
+
+        writer = new FieldUpdateWriter();
+        ReflectionTestUtils.setField(writer, "coalesceWindowMs", WINDOW_MS);
+        writer.init();
+    }
+
+    @AfterEach
+    void tearDown() {
+        writer.shutdown();
+    }
+
+    @Test
+    void disjointFieldsExpectingTheSameVersionShareOneWrite() throws Exception {
+        WriteResult written = mock(WriteResult.class);
+        when(ref.update(anyMap(), any(Precondition.class))).thenReturn(ApiFutures.immediateFuture(written));
+
+        ApiFuture<WriteResult> threshold = writer.update(ref, Map.of("minThreshold", 5), READ_AT);
+        ApiFuture<WriteResult> location = writer.update(ref, Map.of("location", "B2"), READ_AT);
+
+        assertThat(FieldUpdateWriter.await(threshold)).isSameAs(written);
+        assertThat(FieldUpdateWriter.await(location)).isSameAs(written);
+        assertThat(sentFields(1)).containsExactly(Map.of("minThreshold", 5, "location", "B2"));
+    }
+
+    @Test
+    void writesOfTheSameDocumentAreSentInOrder() throws Exception {
+        SettableApiFuture<WriteResult> first = SettableApiFuture.create();
+        when(ref.update(anyMap(), any(Precondition.class))).thenReturn(first);
+        when(ref.update(anyMap())).thenReturn(ApiFutures.immediateFuture(mock(WriteResult.class)));
+
+        writer.update(ref, Map.of("minThreshold", 5), READ_AT);
+        // Otra versión esperada: no se combina y envía lo acumulado
+        ApiFuture<WriteResult> second = writer.update(ref, Map.of("location", "B2"), null);
+        verify(ref).update(anyMap(), any(Precondition.class));
+
+        Thread.sleep(WINDOW_MS * 3);
+        verify(ref, never()).update(anyMap());
+
+        first.set(mock(WriteResult.class));
+        FieldUpdateWriter.await(second);
+        verify(ref).update(Map.of("location", "B2"));
+    }
+
+    @Test
+    void theSameFieldExpectingTheSameVersionConflictsInsteadOfMerging() throws Exception {
+        SettableApiFuture<WriteResult> first = SettableApiFuture.create();
+        FailedPreconditionException stale = new FailedPreconditionException("stale", null,
+                GrpcStatusCode.of(Status.Code.FAILED_PRECONDITION), false);
+        when(ref.update(anyMap(), any(Precondition.class)))
+                .thenReturn(first, ApiFutures.immediateFailedFuture(stale));
+
+        ApiFuture<WriteResult> winner = writer.update(ref, Map.of("minThreshold", 5), READ_AT);
+        ApiFuture<WriteResult> loser = writer.update(ref, Map.of("minThreshold", 8), READ_AT);
+
+        first.set(mock(WriteResult.class));
+        assertThat(FieldUpdateWriter.await(winner)).isNotNull();
+        assertThatThrownBy(() -> FieldUpdateWriter.await(loser))
+                .isInstanceOf(CustomExceptions.ConflictException.class);
+        assertThat(sentFields(2)).containsExactly(Map.of("minThreshold", 5), Map.of("minThreshold", 8));
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private List<Map> sentFields(int writes) {
+        ArgumentCaptor<Map> fields = ArgumentCaptor.forClass(Map.class);
+        verify(ref, timeout(1000).times(writes)).update(fields.capture(), any(Precondition.class));
+        return fields.getAllValues();
+    }
+}
@@ -0,0 +1,89 @@
+package com.example.demo.service;
+
+import com.google.cloud.firestore.Firestore;
+import com.google.cloud.firestore.FirestoreOptions;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfEnvironmentVariable;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Invalidaciones entre dos nodos a través de {@code _cache_events} en el emulador de Firestore
+ * ({@code FIRESTORE_EMULATOR_HOST}); cada nodo tiene su propio cliente, transporte y servicio
+ */
+@EnabledIfEnvironmentVariable(named = "FIRESTORE_EMULATOR_HOST", matches = ".+")
+class FirestoreCacheEventTransportEmulatorTest {
+
+    private final List<Node> nodes = new ArrayList<>();
+
+    private Node nodeA;
+    private Node nodeB;
+
+    @BeforeEach
+    void setUp() {
+        nodeA = node();
+        nodeB = node();
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        for (Node node : nodes) {
+            node.transport.shutdown();
+            node.firestore.close();
+        }
+    }
+
+    @Test
+    void anInvalidationReachesTheOtherNode() throws Exception {
+        nodeA.invalidation.invalidate(CacheInvalidationService.USERS, "u1");
+
+        assertThat(nodeA.invalidated.poll()).isEqualTo("u1");
+        assertThat(nodeB.invalidated.poll(10, TimeUnit.SECONDS)).isEqualTo("u1");
+
+        nodeB.invalidation.invalidate(CacheInvalidationService.USERS, "u2");
+
+        assertThat(nodeB.invalidated.poll()).isEqualTo("u2");
+        assertThat(nodeA.invalidated.poll(10, TimeUnit.SECONDS)).isEqualTo("u2");
+    }
+
+    @Test
+    void aNodeDoesNotApplyItsOwnEventsTwice() throws Exception {
+        nodeA.invalidation.invalidate(CacheInvalidationService.USERS, "u3");
+        assertThat(nodeB.invalidated.poll(10, TimeUnit.SECONDS)).isEqualTo("u3");
+
+        // Cuando B ya recibió el evento, A también lo vio en su listener y debió descartarlo
+        assertThat(nodeA.invalidated.poll()).isEqualTo("u3");
+        assertThat(nodeA.invalidated.poll(500, TimeUnit.MILLISECONDS)).isNull();
+    }
+
+    private Node node() {
+        Node node = new Node();
+        nodes.add(node);
+        return node;
+    }
+
+    private static final class Node {
+        private final Firestore firestore = FirestoreOptions.newBuilder().setProjectId("demo-cache-events")
+                .build().getService();
+        private final FirestoreCacheEventTransport transport = new FirestoreCacheEventTransport();
+        private final CacheInvalidationService invalidation = new CacheInvalidationService();
+        private final BlockingQueue<String> invalidated = new LinkedBlockingQueue<>();
+
+        Node() {
+            ReflectionTestUtils.setField(transport, "firestore", firestore);
+            ReflectionTestUtils.setField(transport, "retentionMs", 3_600_000L);
+            ReflectionTestUtils.setField(transport, "reconnectDelayMs", 1000L);
+            ReflectionTestUtils.setField(invalidation, "transport", transport);
+            invalidation.onInvalidate(CacheInvalidationService.USERS, invalidated::add);
+        }
+    }
+}
@@ -0,0 +1,182 @@
+package com.example.demo.service;
+
+import com.example.demo.exception.CustomExceptions;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.api.core.ApiFutures;
+import com.google.cloud.firestore.*;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class IdempotencyServiceTest {
+
+    private static final long LOCK_MS = 90;
+
+    // Registro de la clave en _idempotency_keys; nulo si no existe
+    private final AtomicReference<Map<String, Object>> record = new AtomicReference<>();
+
+    private DocumentReference ref;
+    private IdempotencyService service;
+
+    @BeforeEach
+    void setUp() {
+        Firestore firestore = mock(Firestore.class);
+        CollectionReference keys = mock(CollectionReference.class);
+        ref = mock(DocumentReference.class);
+        when(firestore.collection(IdempotencyService.COLLECTION)).thenReturn(keys);
+        when(keys.document(anyString())).thenReturn(ref);
+
+        Transaction transaction = mock(Transaction.class);
+        when(transaction.get(ref)).thenAnswer(invocation -> ApiFutures.immediateFuture(snapshot(record.get())));
+        when(transaction.set(eq(ref), anyMap())).thenAnswer(invocation -> {
+            record.set(new HashMap<>(invocation.<Map<String, Object>>getArgument(1)));
+            return transaction;
+        });
+        when(transaction.update(eq(ref), anyString(), any(), any(Object[].class))).thenAnswer(invocation -> {
+            Map<String, Object> updated = new HashMap<>(record.get());
+            Object[] args = invocation.getArguments();
+            for (int i = 1; i + 1 < args.length; i += 2) {
+                updated.put((String) args[i], args[i + 1]);
+            }
+            record.set(updated);
+            return transaction;
+        });
+        when(transaction.delete(ref)).thenAnswer(invocation -> {
+            record.set(null);
+            return transaction;
+        });
+        // Las transacciones se serializan y sus errores llegan en el futuro, como en Firestore
+        when(firestore.runTransaction(any(Transaction.Function.class))).thenAnswer(invocation -> {
+            Transaction.Function<?> function = invocation.getArgument(0);
+            synchronized (record) {
+                try {
+                    return ApiFutures.immediateFuture(function.updateCallback(transaction));
+                } catch (Exception e) {
+                    return ApiFutures.immediateFailedFuture(e);
+                }
+            }
+        });
+
+        service = new IdempotencyService();
+        ReflectionTestUtils.setField(service, "firestore", firestore);
+        ReflectionTestUtils.setField(service, "objectMapper", new ObjectMapper());
+        ReflectionTestUtils.setField(service, "ttlHours", 24L);
+        ReflectionTestUtils.setField(service, "lockMs", LOCK_MS);
+    }
+
+    @AfterEach
+    void tearDown() {
+        service.shutdown();
+    }
+
+    @Test
+    void repeatedRequestsReplayTheStoredResponse() {
+        AtomicInteger runs = new AtomicInteger();
+
+        String first = service.execute("test", "k1", "body", String.class, () -> "done-" + runs.incrementAndGet());
+        String second = service.execute("test", "k1", "body", String.class, () -> "done-" + runs.incrementAndGet());
+
+        assertThat(first).isEqualTo("done-1");
+        assertThat(second).isEqualTo("done-1");
+        assertThat(runs).hasValue(1);
+        assertThat(record.get()).containsEntry("status", "COMPLETED");
+    }
+
+    @Test
+    void aRunningRequestKeepsItsLockPastLockMs() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch finish = new CountDownLatch(1);
+        CompletableFuture<String> slow = CompletableFuture.supplyAsync(() ->
+                service.execute("test", "k1", "body", String.class, () -> {
+                    started.countDown();
+                    await(finish);
+                    return "slow";
+                }));
+        assertThat(started.await(2, TimeUnit.SECONDS)).isTrue();
+        Thread.sleep(LOCK_MS * 4);
+
+        AtomicInteger retries = new AtomicInteger();
+        assertThatThrownBy(() -> service.execute("test", "k1", "body", String.class, () -> "retry-" + retries.incrementAndGet()))
+                .isInstanceOf(CustomExceptions.ConflictException.class);
+
+        finish.countDown();
+        assertThat(slow.get(2, TimeUnit.SECONDS)).isEqualTo("slow");
+        assertThat(retries).hasValue(0);
+        assertThat(record.get()).containsEntry("response", "\"slow\"");
+    }
+
+    @Test
+    void aDisplacedOwnerDoesNotOverwriteTheNewOwnersRecord() {
+        String result = service.execute("test", "k1", "body", String.class, () -> {
+            // Otro proceso tomó la clave mientras este estaba detenido
+            Map<String, Object> takenOver = new HashMap<>(record.get());
+            takenOver.put("owner", "other-owner");
+            record.set(takenOver);
+            return "late";
+        });
+
+        assertThat(result).isEqualTo("late");
+        assertThat(record.get())
+                .containsEntry("owner", "other-owner")
+                .containsEntry("status", "IN_PROGRESS")
+                .doesNotContainKey("response");
+    }
+
+    @Test
+    void aFailedRequestReleasesOnlyItsOwnReservation() {
+        assertThatThrownBy(() -> service.execute("test", "k1", "body", String.class, () -> {
+            throw new IllegalStateException("boom");
+        })).isInstanceOf(IllegalStateException.class);
+        assertThat(record.get()).isNull();
+
+        assertThatThrownBy(() -> service.execute("test", "k2", "body", String.class, () -> {
+            Map<String, Object> takenOver = new HashMap<>(record.get());
+            takenOver.put("owner", "other-owner");
+            record.set(takenOver);
+            throw new IllegalStateException("boom");
+        })).isInstanceOf(IllegalStateException.class);
+        assertThat(record.get()).containsEntry("owner", "other-owner");
+    }
+
+    @Test
+    void reusingAKeyWithADifferentBodyIsRejected() {
+        service.execute("test", "k1", "body", String.class, () -> "done");
+
+        assertThatThrownBy(() -> service.execute("test", "k1", "other body", String.class, () -> "done"))
+                .isInstanceOf(CustomExceptions.ConflictException.class);
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static DocumentSnapshot snapshot(Map<String, Object> data) {
+        DocumentSnapshot snapshot = mock(DocumentSnapshot.class);
+        when(snapshot.exists()).thenReturn(data != null);
+        if (data != null) {
+            when(snapshot.getString(anyString())).thenAnswer(invocation -> (String) data.get(invocation.<String>getArgument(0)));
+            when(snapshot.getDate(anyString())).thenAnswer(invocation -> (Date) data.get(invocation.<String>getArgument(0)));
+        }
+        return snapshot;
+    }
+}
@@ -0,0 +1,136 @@
+package com.example.demo.service;
+
+import com.example.demo.dto.JobDTOs.JobStatus;
+import com.google.cloud.firestore.Firestore;
+import com.google.cloud.firestore.FirestoreOptions;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfEnvironmentVariable;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Leases de trabajos contra el emulador de Firestore ({@code FIRESTORE_EMULATOR_HOST}), con dos
+ * coordinadores que hacen de nodos distintos
+ */
+@EnabledIfEnvironmentVariable(named = "FIRESTORE_EMULATOR_HOST", matches = ".+")
+class JobCoordinatorEmulatorTest {
+
+    private static final String JOB = "emulator-job";
+    private static final long LEASE_MS = 600;
+
+    private final CountDownLatch finish = new CountDownLatch(1);
+    private final List<JobCoordinator> coordinators = new ArrayList<>();
+
+    private Firestore firestore;
+    private ThreadPoolTaskScheduler scheduler;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        firestore = FirestoreOptions.newBuilder().setProjectId("demo-jobs").build().getService();
+        firestore.collection(JobCoordinator.LEASES).document(JOB).delete().get();
+
+        scheduler = new ThreadPoolTaskScheduler();
+        scheduler.setPoolSize(2);
+        scheduler.initialize();
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        finish.countDown();
+        coordinators.forEach(JobCoordinator::shutdown);
+        scheduler.shutdown();
+        firestore.close();
+    }
+
+    @Test
+    void aRenewedLeaseKeepsOtherNodesOutPastItsDuration() throws Exception {
+        JobCoordinator nodeA = coordinator("node-a");
+        JobCoordinator nodeB = coordinator("node-b");
+
+        nodeA.trigger(JOB, true);
+        awaitHolder("node-a");
+        Thread.sleep(LEASE_MS * 3);
+
+        nodeB.trigger(JOB, true);
+        JobStatus skipped = awaitStatus(nodeB, status -> status.getSkipped() == 1);
+        assertThat(skipped.getRuns()).isZero();
+
+        finish.countDown();
+        JobStatus done = awaitStatus(nodeA, status -> "success".equals(status.getLastOutcome()));
+        assertThat(done.getRuns()).isEqualTo(1);
+    }
+
+    @Test
+    void losingTheLeaseAbortsTheRun() throws Exception {
+        JobCoordinator nodeA = coordinator("node-a");
+
+        nodeA.trigger(JOB, true);
+        awaitHolder("node-a");
+
+        Map<String, Object> stolen = new HashMap<>();
+        stolen.put("holder", "node-b");
+        stolen.put("lastStartedAt", new Date());
+        stolen.put("expiresAt", new Date(System.currentTimeMillis() + 60_000));
+        firestore.collection(JobCoordinator.LEASES).document(JOB).set(stolen).get();
+
+        JobStatus aborted = awaitStatus(nodeA, status -> "aborted".equals(status.getLastOutcome()));
+        assertThat(aborted.getRuns()).isZero();
+        assertThat(firestore.collection(JobCoordinator.LEASES).document(JOB).get().get().getString("holder"))
+                .isEqualTo("node-b");
+    }
+
+    private JobCoordinator coordinator(String nodeId) {
+        JobDefinition job = new JobDefinition(JOB, JobDefinition.Priority.NORMAL, 1, 60_000, 0, LEASE_MS, () -> {
+            try {
+                finish.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                throw new IllegalStateException("interrupted", e);
+            }
+        });
+        JobCoordinator coordinator = new JobCoordinator();
+        ReflectionTestUtils.setField(coordinator, "firestore", firestore);
+        ReflectionTestUtils.setField(coordinator, "taskScheduler", scheduler);
+        ReflectionTestUtils.setField(coordinator, "meterRegistry", new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(coordinator, "definitions", List.of(job));
+        ReflectionTestUtils.setField(coordinator, "enabled", false);
+        ReflectionTestUtils.setField(coordinator, "poolSize", 1);
+        ReflectionTestUtils.setField(coordinator, "configuredNodeId", nodeId);
+        coordinator.init();
+        coordinators.add(coordinator);
+        return coordinator;
+    }
+
+    private void awaitHolder(String nodeId) throws Exception {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (System.currentTimeMillis() < deadline) {
+            if (nodeId.equals(firestore.collection(JobCoordinator.LEASES).document(JOB).get().get().getString("holder"))) {
+                return;
+            }
+            Thread.sleep(20);
+        }
+        throw new AssertionError("Lease not taken by " + nodeId);
+    }
+
+    private static JobStatus awaitStatus(JobCoordinator coordinator, Predicate<JobStatus> condition)
+            throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (System.currentTimeMillis() < deadline) {
+            JobStatus status = coordinator.getStatuses().get(0);
+            if (condition.test(status)) {
+                return status;
+            }
+            Thread.sleep(20);
+        }
+        throw new AssertionError("Job status not reached: " + coordinator.getStatuses());
+    }
+}
@@ -0,0 +1,138 @@
+package com.example.demo.service;
+
+import com.example.demo.dto.JobDTOs.JobStatus;
+import com.google.api.core.ApiFutures;
+import com.google.cloud.firestore.*;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Predicate;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class JobCoordinatorTest {
+
+    private static final long LEASE_MS = 150;
+
+    private final AtomicReference<Map<String, Object>> lease = new AtomicReference<>();
+    private final CountDownLatch finish = new CountDownLatch(1);
+
+    private Transaction transaction;
+    private DocumentReference leaseRef;
+    private ThreadPoolTaskScheduler scheduler;
+    private JobCoordinator coordinator;
+
+    @BeforeEach
+    void setUp() {
+        Firestore firestore = mock(Firestore.class);
+        CollectionReference leases = mock(CollectionReference.class);
+        leaseRef = mock(DocumentReference.class);
+        when(firestore.collection(JobCoordinator.LEASES)).thenReturn(leases);
+        when(leases.document("sample")).thenReturn(leaseRef);
+
+        transaction = mock(Transaction.class);
+        when(transaction.get(leaseRef)).thenAnswer(invocation -> ApiFutures.immediateFuture(snapshot(lease.get())));
+        when(transaction.set(eq(leaseRef), anyMap())).thenAnswer(invocation -> {
+            lease.set(new HashMap<>(invocation.<Map<String, Object>>getArgument(1)));
+            return transaction;
+        });
+        when(firestore.runTransaction(any(Transaction.Function.class))).thenAnswer(invocation -> {
+            Transaction.Function<?> function = invocation.getArgument(0);
+            return ApiFutures.immediateFuture(function.updateCallback(transaction));
+        });
+
+        scheduler = new ThreadPoolTaskScheduler();
+        scheduler.setPoolSize(1);
+        scheduler.initialize();
+
+        JobDefinition job = new JobDefinition("sample", JobDefinition.Priority.NORMAL, 1, 60_000, 0, LEASE_MS, () -> {
+            try {
+                finish.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                throw new IllegalStateException("interrupted", e);
+            }
+        });
+
+        coordinator = new JobCoordinator();
+        ReflectionTestUtils.setField(coordinator, "firestore", firestore);
+        ReflectionTestUtils.setField(coordinator, "taskScheduler", scheduler);
+        ReflectionTestUtils.setField(coordinator, "meterRegistry", new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(coordinator, "definitions", List.of(job));
+        ReflectionTestUtils.setField(coordinator, "enabled", false);
+        ReflectionTestUtils.setField(coordinator, "poolSize", 2);
+        ReflectionTestUtils.setField(coordinator, "configuredNodeId", "node-a");
+        coordinator.init();
+    }
+
+    @AfterEach
+    void tearDown() {
+        finish.countDown();
+        coordinator.shutdown();
+        scheduler.shutdown();
+    }
+
+    @Test
+    void renewsTheLeaseWhileTheJobRuns() throws Exception {
+        coordinator.trigger("sample", true);
+
+        verify(transaction, timeout(2000).atLeast(3))
+                .update(eq(leaseRef), eq("expiresAt"), any(), any(Object[].class));
+        finish.countDown();
+
+        JobStatus status = awaitStatus(s -> "success".equals(s.getLastOutcome()));
+        assertThat(status.getRuns()).isEqualTo(1);
+        verify(transaction, timeout(2000)).update(eq(leaseRef), eq("expiresAt"), any(), eq("releasedAt"), any());
+    }
+
+    @Test
+    void abortsTheRunWhenAnotherNodeTakesTheLease() throws Exception {
+        coordinator.trigger("sample", true);
+        awaitStatus(s -> s.getRunning() == 1);
+        verify(transaction, timeout(2000)).set(eq(leaseRef), anyMap());
+
+        Map<String, Object> stolen = new HashMap<>(lease.get());
+        stolen.put("holder", "node-b");
+        lease.set(stolen);
+
+        JobStatus status = awaitStatus(s -> "aborted".equals(s.getLastOutcome()));
+        assertThat(status.getRuns()).isZero();
+        assertThat(status.getFailures()).isZero();
+        // El lease ya no es de este nodo: no se libera
+        verify(transaction, never()).update(eq(leaseRef), eq("expiresAt"), any(), eq("releasedAt"), any());
+    }
+
+    private JobStatus awaitStatus(Predicate<JobStatus> condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 3000;
+        while (System.currentTimeMillis() < deadline) {
+            JobStatus status = coordinator.getStatuses().get(0);
+            if (condition.test(status)) {
+                return status;
+            }
+            Thread.sleep(10);
+        }
+        throw new AssertionError("Job status not reached: " + coordinator.getStatuses());
+    }
+
+    private static DocumentSnapshot snapshot(Map<String, Object> data) {
+        DocumentSnapshot snapshot = mock(DocumentSnapshot.class);
+        when(snapshot.exists()).thenReturn(data != null);
+        if (data != null) {
+            when(snapshot.getString(anyString())).thenAnswer(invocation -> (String) data.get(invocation.<String>getArgument(0)));
+            when(snapshot.getDate(anyString())).thenAnswer(invocation -> (Date) data.get(invocation.<String>getArgument(0)));
+        }
+        return snapshot;
+    }
+}
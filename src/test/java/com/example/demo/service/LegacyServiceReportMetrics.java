@@ -0,0 +1,118 @@
+package com.example.demo.service;
+
+import com.example.demo.dto.ServiceReportDTOs.MonthlyMetric;
+import com.example.demo.dto.ServiceReportDTOs.ServiceMetricsDTO;
+import com.example.demo.model.HistorialClinico;
+import com.example.demo.model.ServicioAdicional;
+import com.example.demo.model.ServicioRealizado;
+
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * Cálculo de métricas anterior a {@link ServiceReportAggregator} (agrupación con streams, claves
+ * "año-mes" y {@link Calendar} por registro), conservado como referencia para las pruebas y el benchmark
+ */
+final class LegacyServiceReportMetrics {
+
+    private LegacyServiceReportMetrics() {
+    }
+
+    static List<ServiceMetricsDTO> regularMetrics(List<HistorialClinico> historiales) {
+        List<ServicioRealizado> servicios = historiales.stream()
+                .filter(h -> h.getServiciosRealizados() != null)
+                .flatMap(h -> h.getServiciosRealizados().stream())
+                .collect(Collectors.toList());
+        Map<String, List<ServicioRealizado>> serviciosPorId = servicios.stream()
+                .collect(Collectors.groupingBy(ServicioRealizado::getServiceId));
+
+        Map<String, List<Date>> fechasPorServicio = new HashMap<>();
+        for (HistorialClinico historial : historiales) {
+            Date fecha = historial.getFechaVisita();
+            if (fecha == null || historial.getServiciosRealizados() == null) {
+                continue;
+            }
+            for (ServicioRealizado servicio : historial.getServiciosRealizados()) {
+                if (servicio != null && serviciosPorId.containsKey(servicio.getServiceId())) {
+                    fechasPorServicio.computeIfAbsent(servicio.getServiceId(), k -> new ArrayList<>()).add(fecha);
+                }
+            }
+        }
+
+        return serviciosPorId.entrySet().stream()
+                .map(entry -> {
+                    List<ServicioRealizado> usos = entry.getValue();
+                    List<Date> fechas = fechasPorServicio.get(entry.getKey());
+                    double totalRevenue = usos.stream().mapToDouble(LegacyServiceReportMetrics::amount).sum();
+
+                    Map<String, MonthlyMetric> monthly = new HashMap<>();
+                    for (int i = 0; i < usos.size(); i++) {
+                        addMonthly(monthly, fechas.get(i), amount(usos.get(i)));
+                    }
+                    return ServiceMetricsDTO.builder()
+                            .serviceId(entry.getKey())
+                            .serviceName(usos.get(0).getServiceName())
+                            .totalUsage(usos.size())
+                            .totalRevenue(totalRevenue)
+                            .averageRevenue(totalRevenue / usos.size())
+                            .monthlyMetrics(sorted(monthly))
+                            .build();
+                })
+                .collect(Collectors.toList());
+    }
+
+    static List<ServiceMetricsDTO> additionalMetrics(List<HistorialClinico> historiales) {
+        Map<String, List<Map.Entry<ServicioAdicional, Date>>> porDescripcion = new HashMap<>();
+        for (HistorialClinico historial : historiales) {
+            if (historial.getServiciosAdicionales() == null) {
+                continue;
+            }
+            for (ServicioAdicional servicio : historial.getServiciosAdicionales()) {
+                porDescripcion.computeIfAbsent(servicio.getDescripcion(), k -> new ArrayList<>())
+                        .add(new AbstractMap.SimpleEntry<>(servicio, historial.getFechaVisita()));
+            }
+        }
+
+        List<ServiceMetricsDTO> metrics = new ArrayList<>();
+        porDescripcion.forEach((descripcion, servicios) -> {
+            double revenue = servicios.stream().mapToDouble(entry -> entry.getKey().getPrecio()).sum();
+            Map<String, MonthlyMetric> monthly = new HashMap<>();
+            for (Map.Entry<ServicioAdicional, Date> entry : servicios) {
+                if (entry.getValue() != null) {
+                    addMonthly(monthly, entry.getValue(), entry.getKey().getPrecio());
+                }
+            }
+            metrics.add(ServiceMetricsDTO.builder()
+                    .serviceId("adicional-" + UUID.randomUUID())
+                    .serviceName(descripcion)
+                    .totalUsage(servicios.size())
+                    .totalRevenue(revenue)
+                    .averageRevenue(revenue / servicios.size())
+                    .monthlyMetrics(sorted(monthly))
+                    .build());
+        });
+        return metrics;
+    }
+
+    private static double amount(ServicioRealizado servicio) {
+        return servicio.getPrecioPersonalizado() != null ? servicio.getPrecioPersonalizado() : servicio.getPrecioBase();
+    }
+
+    private static void addMonthly(Map<String, MonthlyMetric> monthly, Date fecha, double amount) {
+        Calendar cal = Calendar.getInstance();
+        cal.setTime(fecha);
+        String key = cal.get(Calendar.YEAR) + "-" + cal.get(Calendar.MONTH);
+        MonthlyMetric metric = monthly.computeIfAbsent(key, k -> MonthlyMetric.builder()
+                .year(cal.get(Calendar.YEAR))
+                .month(cal.get(Calendar.MONTH))
+                .build());
+        metric.setUsage(metric.getUsage() + 1);
+        metric.setRevenue(metric.getRevenue() + amount);
+    }
+
+    private static List<MonthlyMetric> sorted(Map<String, MonthlyMetric> monthly) {
+        return monthly.values().stream()
+                .sorted(Comparator.comparingInt(MonthlyMetric::getYear).thenComparingInt(MonthlyMetric::getMonth))
+                .collect(Collectors.toList());
+    }
+}
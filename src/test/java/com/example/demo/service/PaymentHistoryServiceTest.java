@@ -0,0 +1,82 @@
+package com.example.demo.service;
+
+import com.example.demo.dto.PetDTOs.PetResponse;
+import com.google.api.core.ApiFutures;
+import com.google.cloud.firestore.*;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.security.authentication.TestingAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.*;
+import java.util.function.UnaryOperator;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class PaymentHistoryServiceTest {
+
+    private ArchivalService archivalService;
+    private PetService petService;
+    private PaymentHistoryService service;
+
+    @BeforeEach
+    void setUp() {
+        Firestore firestore = mock(Firestore.class);
+        CollectionReference historiales = mock(CollectionReference.class, RETURNS_SELF);
+        QuerySnapshot none = mock(QuerySnapshot.class);
+        when(none.getDocuments()).thenReturn(List.of());
+        when(historiales.get()).thenReturn(ApiFutures.immediateFuture(none));
+        when(firestore.collection("historial_clinico")).thenReturn(historiales);
+
+        archivalService = mock(ArchivalService.class);
+        when(archivalService.findArchivedHistoriales(any(), any(), any())).thenReturn(List.of());
+        petService = mock(PetService.class);
+
+        service = new PaymentHistoryService();
+        ReflectionTestUtils.setField(service, "firestore", firestore);
+        ReflectionTestUtils.setField(service, "archivalService", archivalService);
+        ReflectionTestUtils.setField(service, "petService", petService);
+
+        SecurityContextHolder.getContext().setAuthentication(new TestingAuthenticationToken("c1", null));
+    }
+
+    @AfterEach
+    void tearDown() {
+        SecurityContextHolder.clearContext();
+    }
+
+    @Test
+    void archivedHistorialesAreQueriedInGroupsOfThirtyPets() {
+        List<PetResponse> pets = new ArrayList<>();
+        for (int i = 0; i < 65; i++) {
+            PetResponse pet = new PetResponse();
+            pet.setId("p" + i);
+            pets.add(pet);
+        }
+        when(petService.getCurrentUserPets()).thenReturn(pets);
+
+        service.getPaymentSummary(new Date(0), new Date());
+
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        ArgumentCaptor<UnaryOperator<Query>> filters = (ArgumentCaptor) ArgumentCaptor.forClass(UnaryOperator.class);
+        verify(archivalService, times(3)).findArchivedHistoriales(any(), any(), filters.capture());
+
+        List<Object> queried = new ArrayList<>();
+        for (UnaryOperator<Query> filter : filters.getAllValues()) {
+            Query records = mock(Query.class);
+            filter.apply(records);
+            @SuppressWarnings({"unchecked", "rawtypes"})
+            ArgumentCaptor<List<Object>> values = (ArgumentCaptor) ArgumentCaptor.forClass(List.class);
+            verify(records).whereIn(eq("petId"), values.capture());
+            assertThat(values.getValue()).hasSizeLessThanOrEqualTo(30);
+            queried.addAll(values.getValue());
+        }
+        assertThat(queried).hasSize(65).doesNotHaveDuplicates();
+    }
+}
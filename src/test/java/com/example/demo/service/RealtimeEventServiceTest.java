@@ -0,0 +1,219 @@
+package com.example.demo.service;
+
+import com.google.api.core.ApiFutures;
+import com.google.cloud.firestore.*;
+import com.google.cloud.firestore.EventListener;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.time.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class RealtimeEventServiceTest {
+
+    private static final ZoneId ZONE = ZoneId.of("America/La_Paz");
+    private static final LocalDate DAY = LocalDate.of(2026, 3, 10);
+
+    private final List<EventListener<QuerySnapshot>> appointmentListeners = new CopyOnWriteArrayList<>();
+    private final List<EventListener<QuerySnapshot>> inventoryListeners = new CopyOnWriteArrayList<>();
+
+    private CollectionReference appointments;
+    private CollectionReference inventory;
+    private RealtimeEventService service;
+
+    @BeforeEach
+    void setUp() {
+        Firestore firestore = mock(Firestore.class);
+        appointments = mock(CollectionReference.class);
+        inventory = mock(CollectionReference.class);
+        Query appointmentsQuery = mock(Query.class);
+        when(firestore.collection("appointments")).thenReturn(appointments);
+        when(appointments.whereGreaterThanOrEqualTo(eq("appointmentDate"), any())).thenReturn(appointmentsQuery);
+        when(appointmentsQuery.addSnapshotListener(any())).thenAnswer(invocation -> {
+            appointmentListeners.add(invocation.getArgument(0));
+            return mock(ListenerRegistration.class);
+        });
+        when(firestore.collection("inventory")).thenReturn(inventory);
+        when(inventory.addSnapshotListener(any())).thenAnswer(invocation -> {
+            inventoryListeners.add(invocation.getArgument(0));
+            return mock(ListenerRegistration.class);
+        });
+
+        CollectionReference users = mock(CollectionReference.class);
+        DocumentReference userRef = mock(DocumentReference.class);
+        DocumentSnapshot userDoc = mock(DocumentSnapshot.class);
+        when(firestore.collection("users")).thenReturn(users);
+        when(users.document(anyString())).thenReturn(userRef);
+        when(userRef.get()).thenReturn(ApiFutures.immediateFuture(userDoc));
+        when(userDoc.exists()).thenReturn(true);
+        when(userDoc.get("roles")).thenReturn(List.of("ADMINISTRADOR"));
+
+        service = new RealtimeEventService();
+        ReflectionTestUtils.setField(service, "firestore", firestore);
+        ReflectionTestUtils.setField(service, "heartbeatSeconds", 3600L);
+        ReflectionTestUtils.setField(service, "maxPendingEvents", 2);
+        ReflectionTestUtils.setField(service, "reconnectDelayMs", 10L);
+        ReflectionTestUtils.setField(service, "maxReconnectDelayMs", 100L);
+        service.clock = Clock.fixed(DAY.atTime(9, 0).atZone(ZONE).toInstant(), ZONE);
+    }
+
+    @AfterEach
+    void tearDown() {
+        service.shutdown();
+    }
+
+    @Test
+    void reRegistersTheListenerAfterAnErrorAndKeepsDelivering() throws Exception {
+        RecordingEmitter emitter = new RecordingEmitter();
+        service.subscribe("admin", emitter);
+        inventoryListeners.get(0).onEvent(snapshot(), null);
+
+        inventoryListeners.get(0).onEvent(null, mock(FirestoreException.class));
+        verify(inventory, timeout(2000).times(2)).addSnapshotListener(any());
+
+        // La instantánea completa tras reconectar trae un producto que bajó del mínimo mientras tanto
+        inventoryListeners.get(1).onEvent(snapshot(added(item("gasas", 1, 5))), null);
+        assertThat(emitter.next()).contains("event:STOCK_LOW");
+    }
+
+    @Test
+    void aBlockedSubscriberDoesNotDelayOthersAndIsDroppedWhenItFallsBehind() throws Exception {
+        BlockingEmitter slow = new BlockingEmitter();
+        RecordingEmitter fast = new RecordingEmitter();
+        service.subscribe("admin-1", slow);
+        service.subscribe("admin-2", fast);
+        inventoryListeners.get(0).onEvent(snapshot(added(item("gasas", 10, 5))), null);
+
+        // Se espera cada evento en el cliente rápido antes de generar el siguiente: así nunca acumula
+        // pendientes, mientras el lento sigue bloqueado en el primero
+        for (int i = 0; i < 4; i++) {
+            boolean low = i % 2 == 0;
+            QuerySnapshot change = snapshot(modified(item("gasas", low ? 1 : 10, 5)));
+            inventoryListeners.get(0).onEvent(change, null);
+            assertThat(fast.next()).contains(low ? "event:STOCK_LOW" : "event:STOCK_RESTORED");
+        }
+
+        assertThat(slow.dropped.await(5, TimeUnit.SECONDS)).isTrue();
+        slow.release.countDown();
+    }
+
+    @Test
+    void followsTheNewDayAfterMidnight() throws Exception {
+        RecordingEmitter emitter = new RecordingEmitter();
+        service.subscribe("admin", emitter);
+        Date today = date(DAY.atTime(10, 0));
+        Date tomorrow = date(DAY.plusDays(1).atTime(10, 0));
+        appointmentListeners.get(0).onEvent(snapshot(
+                added(appointment("a-today", today)),
+                added(appointment("a-tomorrow", tomorrow))), null);
+
+        service.clock = Clock.fixed(DAY.plusDays(1).atTime(0, 0, 1).atZone(ZONE).toInstant(), ZONE);
+        service.rollOverDay();
+
+        verify(appointments).whereGreaterThanOrEqualTo("appointmentDate", date(DAY.plusDays(1).atStartOfDay()));
+        // La cita de ayer sale de la consulta sin aviso; la de hoy falta porque se borró
+        appointmentListeners.get(1).onEvent(snapshot(), null);
+        String event = emitter.next();
+        assertThat(event).contains("event:APPOINTMENT_REMOVED").contains("a-tomorrow");
+        assertThat(emitter.events.poll(200, TimeUnit.MILLISECONDS)).isNull();
+    }
+
+    private static Date date(LocalDateTime dateTime) {
+        return Date.from(dateTime.atZone(ZONE).toInstant());
+    }
+
+    private static QueryDocumentSnapshot item(String id, int quantity, int minThreshold) {
+        return document(id, Map.of("name", id, "quantity", quantity, "minThreshold", minThreshold));
+    }
+
+    private static QueryDocumentSnapshot appointment(String id, Date appointmentDate) {
+        return document(id, Map.of("clientId", "client-1", "veterinarianId", "vet-1",
+                "appointmentDate", appointmentDate, "status", "SCHEDULED"));
+    }
+
+    private static QueryDocumentSnapshot document(String id, Map<String, Object> data) {
+        QueryDocumentSnapshot doc = mock(QueryDocumentSnapshot.class);
+        when(doc.getId()).thenReturn(id);
+        when(doc.getData()).thenReturn(new HashMap<>(data));
+        return doc;
+    }
+
+    private static DocumentChange added(QueryDocumentSnapshot doc) {
+        return change(DocumentChange.Type.ADDED, doc);
+    }
+
+    private static DocumentChange modified(QueryDocumentSnapshot doc) {
+        return change(DocumentChange.Type.MODIFIED, doc);
+    }
+
+    private static DocumentChange change(DocumentChange.Type type, QueryDocumentSnapshot doc) {
+        DocumentChange change = mock(DocumentChange.class);
+        when(change.getType()).thenReturn(type);
+        when(change.getDocument()).thenReturn(doc);
+        return change;
+    }
+
+    private static QuerySnapshot snapshot(DocumentChange... changes) {
+        QuerySnapshot snapshot = mock(QuerySnapshot.class);
+        when(snapshot.getDocumentChanges()).thenReturn(List.of(changes));
+        List<QueryDocumentSnapshot> documents = Arrays.stream(changes)
+                .filter(change -> change.getType() != DocumentChange.Type.REMOVED)
+                .map(DocumentChange::getDocument)
+                .collect(Collectors.toList());
+        when(snapshot.getDocuments()).thenReturn(documents);
+        return snapshot;
+    }
+
+    /**
+     * Emisor que guarda el texto de cada evento enviado
+     */
+    private static class RecordingEmitter extends SseEmitter {
+        final BlockingQueue<String> events = new LinkedBlockingQueue<>();
+
+        @Override
+        public void send(SseEventBuilder builder) {
+            Set<ResponseBodyEmitter.DataWithMediaType> parts = builder.build();
+            events.add(parts.stream().map(part -> String.valueOf(part.getData())).collect(Collectors.joining()));
+        }
+
+        String next() throws InterruptedException {
+            String event = events.poll(5, TimeUnit.SECONDS);
+            assertThat(event).as("event received").isNotNull();
+            return event;
+        }
+    }
+
+    /**
+     * Emisor cuyo envío se queda bloqueado, como un cliente que no lee
+     */
+    private static class BlockingEmitter extends SseEmitter {
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch dropped = new CountDownLatch(1);
+
+        @Override
+        public void send(SseEventBuilder builder) {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        @Override
+        public void completeWithError(Throwable ex) {
+            dropped.countDown();
+        }
+    }
+}
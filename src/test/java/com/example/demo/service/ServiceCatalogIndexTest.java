@@ -0,0 +1,123 @@
+package com.example.demo.service;
+
+import com.example.demo.dto.ServiceDTO;
+import com.example.demo.model.ServiceCategory;
+import com.example.demo.model.ServiceVeterinary;
+import com.google.api.core.ApiFutures;
+import com.google.cloud.firestore.*;
+import com.google.cloud.firestore.EventListener;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class ServiceCatalogIndexTest {
+
+    private final List<EventListener<QuerySnapshot>> listeners = new CopyOnWriteArrayList<>();
+
+    private CollectionReference services;
+    private CatalogCacheService catalogCacheService;
+    private ServiceCatalogIndex index;
+
+    @BeforeEach
+    void setUp() {
+        Firestore firestore = mock(Firestore.class);
+        services = mock(CollectionReference.class);
+        when(firestore.collection("veterinary_services")).thenReturn(services);
+        when(services.addSnapshotListener(any())).thenAnswer(invocation -> {
+            listeners.add(invocation.getArgument(0));
+            return mock(ListenerRegistration.class);
+        });
+
+        catalogCacheService = new CatalogCacheService();
+        ReflectionTestUtils.setField(catalogCacheService, "cacheInvalidationService", mock(CacheInvalidationService.class));
+
+        index = new ServiceCatalogIndex();
+        ReflectionTestUtils.setField(index, "firestore", firestore);
+        ReflectionTestUtils.setField(index, "catalogCacheService", catalogCacheService);
+        ReflectionTestUtils.setField(index, "initialLoadTimeout", 2000L);
+        ReflectionTestUtils.setField(index, "reconnectDelayMs", 10L);
+        ReflectionTestUtils.setField(index, "maxReconnectDelayMs", 100L);
+    }
+
+    @AfterEach
+    void tearDown() {
+        index.shutdown();
+    }
+
+    @Test
+    void answersFromTheListenerSnapshot() throws Exception {
+        startWith(snapshot(service("s1", "Vacuna antirrábica", 80), service("s2", "Consulta general", 40)));
+
+        assertThat(names(index.current().search("vac", null, null, null))).containsExactly("Vacuna antirrábica");
+        assertThat(index.isReady()).isTrue();
+        verify(services, never()).get();
+    }
+
+    @Test
+    void fallsBackToDirectReadsWhileTheListenerIsDown() throws Exception {
+        startWith(snapshot(service("s1", "Vacuna antirrábica", 80)));
+        QuerySnapshot direct = snapshot(service("s1", "Vacuna antirrábica", 80), service("s3", "Vacuna triple", 90));
+        when(services.get()).thenReturn(ApiFutures.immediateFuture(direct));
+
+        listeners.get(0).onEvent(null, mock(FirestoreException.class));
+
+        assertThat(index.isReady()).isFalse();
+        assertThat(catalogCacheService.isValidationSuspended(CatalogCacheService.SERVICES)).isTrue();
+        assertThat(names(index.current().search("vacuna", null, null, null)))
+                .containsExactly("Vacuna antirrábica", "Vacuna triple");
+        verify(services).get();
+    }
+
+    @Test
+    void resumesTheIndexAndBumpsTheVersionAfterReconnecting() throws Exception {
+        startWith(snapshot(service("s1", "Vacuna antirrábica", 80)));
+        long version = catalogCacheService.currentVersion(CatalogCacheService.SERVICES);
+        listeners.get(0).onEvent(null, mock(FirestoreException.class));
+
+        verify(services, timeout(2000).times(2)).addSnapshotListener(any());
+        listeners.get(1).onEvent(snapshot(service("s1", "Vacuna antirrábica", 80), service("s3", "Vacuna triple", 90)), null);
+
+        assertThat(index.isReady()).isTrue();
+        assertThat(catalogCacheService.isValidationSuspended(CatalogCacheService.SERVICES)).isFalse();
+        assertThat(catalogCacheService.currentVersion(CatalogCacheService.SERVICES)).isGreaterThan(version);
+        assertThat(index.current().services()).hasSize(2);
+    }
+
+    private void startWith(QuerySnapshot initial) throws Exception {
+        Thread loader = new Thread(index::current);
+        loader.start();
+        verify(services, timeout(2000)).addSnapshotListener(any());
+        listeners.get(0).onEvent(initial, null);
+        loader.join(2000);
+    }
+
+    private static List<String> names(List<ServiceDTO> services) {
+        return services.stream().map(ServiceDTO::getName).toList();
+    }
+
+    private static QueryDocumentSnapshot service(String id, String name, double price) {
+        QueryDocumentSnapshot doc = mock(QueryDocumentSnapshot.class);
+        when(doc.getId()).thenReturn(id);
+        when(doc.toObject(ServiceVeterinary.class)).thenReturn(ServiceVeterinary.builder()
+                .name(name)
+                .price(price)
+                .isActive(true)
+                .category(ServiceCategory.OTROS)
+                .build());
+        return doc;
+    }
+
+    private static QuerySnapshot snapshot(QueryDocumentSnapshot... documents) {
+        QuerySnapshot snapshot = mock(QuerySnapshot.class);
+        when(snapshot.getDocuments()).thenReturn(List.of(documents));
+        return snapshot;
+    }
+}
@@ -0,0 +1,54 @@
+package com.example.demo.service;
+
+import com.example.demo.dto.ServiceReportDTOs.ServiceMetricsDTO;
+import com.example.demo.model.HistorialClinico;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Métricas del reporte de servicios con {@link ServiceReportAggregator} frente al cálculo anterior
+ * ({@link LegacyServiceReportMetrics}) sobre los mismos historiales. Está en el paquete del
+ * acumulador porque este es privado del paquete. Se ejecuta desde el IDE con {@link #main} o con
+ * {@code mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=com.example.demo.service.ServiceReportAggregatorBenchmark}
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ServiceReportAggregatorBenchmark {
+
+    @Param({"1000", "20000"})
+    private int historialCount;
+
+    private List<HistorialClinico> historiales;
+
+    @Setup
+    public void setUp() {
+        historiales = ServiceReportFixtures.historiales(historialCount, 40, 42);
+    }
+
+    @Benchmark
+    public List<ServiceMetricsDTO> aggregator() {
+        ServiceReportAggregator aggregator = ServiceReportFixtures.aggregate(
+                ServiceReportFixtures.start(), ServiceReportFixtures.end(), historiales);
+        List<ServiceMetricsDTO> metrics = new ArrayList<>(aggregator.regularMetrics());
+        metrics.addAll(aggregator.additionalMetrics());
+        return metrics;
+    }
+
+    @Benchmark
+    public List<ServiceMetricsDTO> legacy() {
+        List<ServiceMetricsDTO> metrics = new ArrayList<>(LegacyServiceReportMetrics.regularMetrics(historiales));
+        metrics.addAll(LegacyServiceReportMetrics.additionalMetrics(historiales));
+        return metrics;
+    }
+
+    public static void main(String[] args) throws Exception {
+        org.openjdk.jmh.Main.main(new String[]{ServiceReportAggregatorBenchmark.class.getSimpleName()});
+    }
+}
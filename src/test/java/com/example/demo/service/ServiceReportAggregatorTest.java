@@ -0,0 +1,110 @@
+package com.example.demo.service;
+
+import com.example.demo.dto.ServiceReportDTOs.ServiceMetricsDTO;
+import com.example.demo.model.HistorialClinico;
+import org.assertj.core.api.recursive.comparison.RecursiveComparisonConfiguration;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+import java.util.stream.Collectors;
+
+import static com.example.demo.service.ServiceReportFixtures.*;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.within;
+
+class ServiceReportAggregatorTest {
+
+    // Las sumas en otro orden pueden diferir en el último bit
+    private static final RecursiveComparisonConfiguration SAME_METRICS = RecursiveComparisonConfiguration.builder()
+            .withComparatorForType((a, b) -> Math.abs(a - b) < 1e-6 ? 0 : Double.compare(a, b), Double.class)
+            .build();
+
+    @Test
+    void regularMetricsMatchTheLegacyCalculation() {
+        List<HistorialClinico> historiales = historiales(3_000, 25, 42);
+
+        List<ServiceMetricsDTO> expected = byKey(LegacyServiceReportMetrics.regularMetrics(historiales), ServiceMetricsDTO::getServiceId);
+        List<ServiceMetricsDTO> actual = byKey(aggregate(start(), end(), historiales).regularMetrics(), ServiceMetricsDTO::getServiceId);
+
+        assertThat(actual).usingRecursiveComparison(SAME_METRICS).isEqualTo(expected);
+    }
+
+    @Test
+    void additionalMetricsMatchTheLegacyCalculationExceptTheirIds() {
+        List<HistorialClinico> historiales = historiales(3_000, 25, 7);
+        ServiceReportAggregator aggregator = aggregate(start(), end(), historiales);
+
+        List<ServiceMetricsDTO> expected = byKey(LegacyServiceReportMetrics.additionalMetrics(historiales), ServiceMetricsDTO::getServiceName);
+        List<ServiceMetricsDTO> actual = byKey(aggregator.additionalMetrics(), ServiceMetricsDTO::getServiceName);
+
+        assertThat(actual).usingRecursiveComparison(SAME_METRICS).ignoringFields("serviceId").isEqualTo(expected);
+        assertThat(actual).extracting(ServiceMetricsDTO::getServiceId).allMatch(id -> id.startsWith("adicional-"));
+        assertThat(aggregator.additionalUsage()).isEqualTo(expected.stream().mapToLong(ServiceMetricsDTO::getTotalUsage).sum());
+        assertThat(aggregator.additionalRevenue())
+                .isCloseTo(expected.stream().mapToDouble(ServiceMetricsDTO::getTotalRevenue).sum(), within(1e-6));
+    }
+
+    @Test
+    void mergingMonthlyPartialsEqualsASinglePass() {
+        List<HistorialClinico> historiales = historiales(2_000, 12, 99);
+        ServiceReportAggregator single = aggregate(start(), end(), historiales);
+
+        // Un parcial por mes, como los que guarda la caché de reportes
+        ServiceReportAggregator merged = new ServiceReportAggregator(start(), end(), ZONE);
+        for (int month = 0; month < MONTHS; month++) {
+            Date from = Date.from(FIRST_DAY.plusMonths(month).atStartOfDay(ZONE).toInstant());
+            Date to = new Date(Date.from(FIRST_DAY.plusMonths(month + 1).atStartOfDay(ZONE).toInstant()).getTime() - 1);
+            List<HistorialClinico> inMonth = historiales.stream()
+                    .filter(h -> !h.getFechaVisita().before(from) && !h.getFechaVisita().after(to))
+                    .collect(Collectors.toList());
+            merged.merge(aggregate(from, to, inMonth));
+        }
+
+        assertThat(merged.historiales()).isEqualTo(single.historiales());
+        assertThat(byKey(merged.regularMetrics(), ServiceMetricsDTO::getServiceId))
+                .usingRecursiveComparison(SAME_METRICS)
+                .isEqualTo(byKey(single.regularMetrics(), ServiceMetricsDTO::getServiceId));
+        assertThat(byKey(merged.additionalMetrics(), ServiceMetricsDTO::getServiceName))
+                .usingRecursiveComparison(SAME_METRICS).ignoringFields("serviceId")
+                .isEqualTo(byKey(single.additionalMetrics(), ServiceMetricsDTO::getServiceName));
+    }
+
+    @Test
+    void mergingLeavesThePartialUntouched() {
+        List<HistorialClinico> historiales = historiales(200, 5, 3);
+        ServiceReportAggregator partial = aggregate(start(), end(), historiales);
+        List<ServiceMetricsDTO> before = partial.regularMetrics();
+
+        new ServiceReportAggregator(start(), end(), ZONE).merge(partial).merge(partial);
+
+        assertThat(partial.regularMetrics()).usingRecursiveComparison().isEqualTo(before);
+    }
+
+    @Test
+    void partialsOutsideTheRangeAreRejected() {
+        Date midRange = Date.from(FIRST_DAY.plusMonths(3).atStartOfDay(ZONE).toInstant());
+        ServiceReportAggregator shorter = new ServiceReportAggregator(midRange, end(), ZONE);
+        ServiceReportAggregator full = new ServiceReportAggregator(start(), end(), ZONE);
+
+        assertThatThrownBy(() -> shorter.merge(full)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void filtersRegularServicesAndSkipsAdditionalOnesWhenAsked() {
+        List<HistorialClinico> historiales = historiales(500, 10, 5);
+        ServiceReportAggregator aggregator = new ServiceReportAggregator(start(), end(), ZONE);
+        for (HistorialClinico historial : historiales) {
+            aggregator.add(historial, true, Set.of("s1", "s2"), false);
+        }
+
+        assertThat(aggregator.regularServiceIds()).containsExactlyInAnyOrder("s1", "s2");
+        assertThat(aggregator.additionalMetrics()).isEmpty();
+        assertThat(aggregator.historiales()).isEqualTo(500);
+    }
+
+    private static List<ServiceMetricsDTO> byKey(List<ServiceMetricsDTO> metrics,
+                                                 java.util.function.Function<ServiceMetricsDTO, String> key) {
+        return metrics.stream().sorted(Comparator.comparing(key)).collect(Collectors.toList());
+    }
+}
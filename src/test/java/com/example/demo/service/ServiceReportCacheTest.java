@@ -0,0 +1,128 @@
+package com.example.demo.service;
+
+import com.example.demo.dto.ServiceReportDTOs.MonthlyMetric;
+import com.example.demo.dto.ServiceReportDTOs.ServiceMetricsDTO;
+import com.example.demo.dto.ServiceReportDTOs.ServiceReportResponse;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.*;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ServiceReportCacheTest {
+
+    private static final Date JAN = Date.from(Instant.parse("2024-01-01T00:00:00Z"));
+    private static final Date FEB = Date.from(Instant.parse("2024-02-01T00:00:00Z"));
+    private static final Date MAR = Date.from(Instant.parse("2024-03-01T00:00:00Z"));
+
+    private LocalCacheEventTransport transport;
+    private ServiceReportCache cache;
+
+    @BeforeEach
+    void setUp() {
+        transport = new LocalCacheEventTransport();
+        CacheInvalidationService invalidation = new CacheInvalidationService();
+        ReflectionTestUtils.setField(invalidation, "transport", transport);
+
+        cache = new ServiceReportCache();
+        ReflectionTestUtils.setField(cache, "cacheInvalidationService", invalidation);
+        ReflectionTestUtils.setField(cache, "enabled", true);
+        ReflectionTestUtils.setField(cache, "maxEntries", 2);
+        ReflectionTestUtils.setField(cache, "maxMonths", 2);
+        cache.init();
+    }
+
+    @AfterEach
+    void tearDown() {
+        transport.shutdown();
+    }
+
+    @Test
+    void callersCannotChangeTheCachedReport() {
+        ServiceReportResponse report = report(100);
+        cache.putResult(JAN, FEB, null, report, cache.generation());
+        // Quien guardó el reporte lo sigue modificando
+        report.getServicesMetrics().get(0).setTotalUsage(999);
+        report.getRevenueByCategory().put("CONSULTA", 0.0);
+
+        ServiceReportResponse first = cache.getResult(JAN, FEB, null);
+        first.getServicesMetrics().get(0).getMonthlyMetrics().get(0).setUsage(999);
+        first.getServicesMetrics().add(ServiceMetricsDTO.builder().serviceId("otro").build());
+        first.setTotalRevenue(0);
+
+        ServiceReportResponse second = cache.getResult(JAN, FEB, null);
+        assertThat(second).isNotSameAs(first);
+        assertThat(second).usingRecursiveComparison().isEqualTo(report(100));
+    }
+
+    @Test
+    void aFullCacheEvictsTheLeastRecentlyUsedReport() {
+        cache.putResult(JAN, FEB, null, report(1), cache.generation());
+        cache.putResult(JAN, MAR, null, report(2), cache.generation());
+        cache.getResult(JAN, FEB, null);
+
+        cache.putResult(FEB, MAR, null, report(3), cache.generation());
+
+        assertThat(cache.getResult(JAN, FEB, null)).isNotNull();
+        assertThat(cache.getResult(JAN, MAR, null)).isNull();
+        assertThat(cache.getResult(FEB, MAR, null)).isNotNull();
+        assertThat(cache.stats().getEntries()).isEqualTo(2);
+    }
+
+    @Test
+    void aFullMonthCacheEvictsTheLeastRecentlyUsedMonth() {
+        ServiceReportAggregator january = new ServiceReportAggregator(JAN, JAN, ZoneOffset.UTC);
+        cache.putMonth("2024-01", january, cache.generation());
+        cache.putMonth("2024-02", new ServiceReportAggregator(FEB, FEB, ZoneOffset.UTC), cache.generation());
+        cache.getMonth("2024-01");
+
+        cache.putMonth("2024-03", new ServiceReportAggregator(MAR, MAR, ZoneOffset.UTC), cache.generation());
+
+        assertThat(cache.getMonth("2024-01")).isSameAs(january);
+        assertThat(cache.getMonth("2024-02")).isNull();
+        assertThat(cache.stats().getCachedMonths()).isEqualTo(2);
+    }
+
+    @Test
+    void aHistorialWriteEvictsOnlyReportsContainingItsVisit() {
+        cache.putResult(JAN, FEB, null, report(1), cache.generation());
+        cache.putResult(FEB, MAR, null, report(2), cache.generation());
+        long before = cache.generation();
+
+        cache.historialWritten(Date.from(Instant.parse("2024-02-20T10:00:00Z")));
+
+        assertThat(cache.getResult(JAN, FEB, null)).isNotNull();
+        assertThat(cache.getResult(FEB, MAR, null)).isNull();
+        // Un cálculo que empezó antes de la invalidación no se guarda
+        cache.putResult(FEB, MAR, null, report(2), before);
+        assertThat(cache.getResult(FEB, MAR, null)).isNull();
+    }
+
+    private static ServiceReportResponse report(long usage) {
+        MonthlyMetric month = MonthlyMetric.builder().year(2024).month(0).usage(usage).revenue(usage * 10.0).build();
+        ServiceMetricsDTO metric = ServiceMetricsDTO.builder()
+                .serviceId("s1")
+                .serviceName("Consulta")
+                .totalUsage(usage)
+                .totalRevenue(usage * 10.0)
+                .averageRevenue(10.0)
+                .monthlyMetrics(new ArrayList<>(List.of(month)))
+                .build();
+        Map<String, Double> revenue = new HashMap<>(Map.of("CONSULTA", usage * 10.0));
+        Map<String, Long> used = new HashMap<>(Map.of("CONSULTA", usage));
+        return ServiceReportResponse.builder()
+                .startDate(JAN)
+                .endDate(FEB)
+                .totalRevenue(usage * 10.0)
+                .totalServicesUsed(usage)
+                .servicesMetrics(new ArrayList<>(List.of(metric)))
+                .revenueByCategory(revenue)
+                .usageByCategory(used)
+                .build();
+    }
+}
@@ -0,0 +1,78 @@
+package com.example.demo.service;
+
+import com.example.demo.model.HistorialClinico;
+import com.example.demo.model.ServicioAdicional;
+import com.example.demo.model.ServicioRealizado;
+
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.*;
+
+/**
+ * Historiales generados con una semilla fija para comparar implementaciones del reporte de servicios
+ */
+final class ServiceReportFixtures {
+
+    static final ZoneId ZONE = ZoneId.systemDefault();
+    static final LocalDate FIRST_DAY = LocalDate.of(2023, 11, 1);
+    static final int MONTHS = 14;
+
+    private static final String[] ADDITIONAL = {"Collar isabelino", "Vendaje", "Baño", "Corte de uñas", "Microchip"};
+
+    private ServiceReportFixtures() {
+    }
+
+    static Date start() {
+        return Date.from(FIRST_DAY.atStartOfDay(ZONE).toInstant());
+    }
+
+    /**
+     * Último milisegundo del rango de {@link #MONTHS} meses
+     */
+    static Date end() {
+        return new Date(FIRST_DAY.plusMonths(MONTHS).atStartOfDay(ZONE).toInstant().toEpochMilli() - 1);
+    }
+
+    static List<HistorialClinico> historiales(int count, int services, long seed) {
+        Random random = new Random(seed);
+        long from = start().getTime();
+        long span = end().getTime() - from;
+        List<HistorialClinico> historiales = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            HistorialClinico historial = new HistorialClinico();
+            historial.setId("h" + i);
+            historial.setFechaVisita(new Date(from + (long) (random.nextDouble() * span)));
+
+            List<ServicioRealizado> realizados = new ArrayList<>();
+            for (int s = random.nextInt(4); s > 0; s--) {
+                int service = random.nextInt(services);
+                ServicioRealizado servicio = new ServicioRealizado();
+                servicio.setServiceId("s" + service);
+                servicio.setServiceName("Servicio " + service);
+                servicio.setPrecioBase(10 + service);
+                servicio.setPrecioPersonalizado(random.nextInt(4) == 0 ? 5.0 + random.nextInt(50) : null);
+                realizados.add(servicio);
+            }
+            historial.setServiciosRealizados(realizados);
+
+            List<ServicioAdicional> adicionales = new ArrayList<>();
+            for (int a = random.nextInt(3); a > 0; a--) {
+                ServicioAdicional adicional = new ServicioAdicional();
+                adicional.setDescripcion(ADDITIONAL[random.nextInt(ADDITIONAL.length)]);
+                adicional.setPrecio(random.nextInt(2000) / 100.0);
+                adicionales.add(adicional);
+            }
+            historial.setServiciosAdicionales(adicionales);
+            historiales.add(historial);
+        }
+        return historiales;
+    }
+
+    static ServiceReportAggregator aggregate(Date start, Date end, List<HistorialClinico> historiales) {
+        ServiceReportAggregator aggregator = new ServiceReportAggregator(start, end, ZONE);
+        for (HistorialClinico historial : historiales) {
+            aggregator.add(historial, true, null, true);
+        }
+        return aggregator;
+    }
+}
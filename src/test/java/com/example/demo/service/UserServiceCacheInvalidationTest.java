@@ -0,0 +1,212 @@
+package com.example.demo.service;
+
+import com.example.demo.config.CustomPermissionEvaluator;
+import com.example.demo.dto.AuthDTOs.RegisterRequest;
+import com.example.demo.model.Role;
+import com.example.demo.model.User;
+import com.google.api.core.ApiFutures;
+import com.google.cloud.firestore.*;
+import com.google.firebase.auth.FirebaseAuth;
+import com.google.firebase.auth.UserRecord;
+import com.google.firebase.cloud.FirestoreClient;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.MockedStatic;
+import org.springframework.security.authentication.TestingAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+/**
+ * Dos nodos en la misma JVM unidos por {@link LocalCacheEventTransport}: los cambios de roles hechos
+ * en uno deben verse en la caché de permisos del otro
+ */
+class UserServiceCacheInvalidationTest {
+
+    private static final String PERMISSION = "write_medical_records";
+
+    // Roles guardados en la colección "users", por UID
+    private final Map<String, List<String>> storedRoles = new ConcurrentHashMap<>();
+    private final Map<String, String> emails = new ConcurrentHashMap<>();
+
+    private Firestore firestore;
+    private Node nodeA;
+    private Node nodeB;
+    private MockedStatic<FirestoreClient> firestoreClient;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        firestore = mock(Firestore.class);
+        CollectionReference users = mock(CollectionReference.class);
+        CollectionReference roles = mock(CollectionReference.class);
+        when(firestore.collection("users")).thenReturn(users);
+        when(firestore.collection("roles")).thenReturn(roles);
+        when(users.document(anyString())).thenAnswer(invocation -> userRef(invocation.getArgument(0)));
+        when(users.whereEqualTo(eq("email"), any())).thenAnswer(invocation -> byEmail(invocation.getArgument(1)));
+        when(roles.whereEqualTo(eq("name"), any())).thenAnswer(invocation -> role(invocation.getArgument(1)));
+
+        firestoreClient = mockStatic(FirestoreClient.class);
+        firestoreClient.when(FirestoreClient::getFirestore).thenReturn(firestore);
+
+        nodeA = new Node(firestore);
+        nodeB = new Node(firestore);
+    }
+
+    @AfterEach
+    void tearDown() {
+        firestoreClient.close();
+        nodeA.transport.shutdown();
+        nodeB.transport.shutdown();
+    }
+
+    @Test
+    void updatingTheRolesOfAnExistingUserInvalidatesEveryNode() {
+        storedRoles.put("u1", List.of("CLIENTE"));
+        emails.put("ana@example.com", "u1");
+        assertThat(nodeA.canWrite("u1")).isFalse();
+        assertThat(nodeB.canWrite("u1")).isFalse();
+
+        nodeA.userService.createUser(request("u1", "ana@example.com", Role.VETERINARIO));
+
+        assertThat(storedRoles.get("u1")).containsExactly("VETERINARIO");
+        assertThat(nodeA.canWrite("u1")).isTrue();
+        assertThat(nodeB.canWrite("u1")).isTrue();
+    }
+
+    @Test
+    void recreatingADeletedUserReplacesTheRolesCachedForItsUid() {
+        storedRoles.put("u2", List.of("CLIENTE"));
+        assertThat(nodeB.canWrite("u2")).isFalse();
+        // El documento se borra por fuera (por ejemplo desde la consola) y el usuario se vuelve a registrar
+        storedRoles.remove("u2");
+
+        nodeA.userService.createUser(request("u2", "bruno@example.com", Role.VETERINARIO));
+
+        assertThat(nodeB.canWrite("u2")).isTrue();
+    }
+
+    @Test
+    void creatingAUserWithRolesInvalidatesEveryNode() throws Exception {
+        assertThat(nodeB.canWrite("u3")).isFalse();
+
+        FirebaseAuth auth = mock(FirebaseAuth.class);
+        UserRecord record = mock(UserRecord.class);
+        when(record.getUid()).thenReturn("u3");
+        when(auth.createUser(any(UserRecord.CreateRequest.class))).thenReturn(record);
+        try (MockedStatic<FirebaseAuth> firebaseAuth = mockStatic(FirebaseAuth.class)) {
+            firebaseAuth.when(FirebaseAuth::getInstance).thenReturn(auth);
+            nodeA.userService.createUserWithRoles(request(null, "carla@example.com", Role.VETERINARIO));
+        }
+
+        assertThat(nodeB.canWrite("u3")).isTrue();
+    }
+
+    /**
+     * Instancia de la aplicación con su propio transporte, servicio de invalidación y cachés
+     */
+    private static final class Node {
+        private final LocalCacheEventTransport transport = new LocalCacheEventTransport();
+        private final CustomPermissionEvaluator permissions = new CustomPermissionEvaluator();
+        private final UserService userService = new UserService();
+
+        Node(Firestore firestore) {
+            CacheInvalidationService invalidation = new CacheInvalidationService();
+            ReflectionTestUtils.setField(invalidation, "transport", transport);
+
+            ReflectionTestUtils.setField(permissions, "firestore", firestore);
+            ReflectionTestUtils.setField(permissions, "cacheInvalidationService", invalidation);
+            ReflectionTestUtils.setField(permissions, "ttlMs", 300_000L);
+            permissions.registerInvalidationHandlers();
+
+            ReflectionTestUtils.setField(userService, "firestore", firestore);
+            ReflectionTestUtils.setField(userService, "cacheInvalidationService", invalidation);
+        }
+
+        boolean canWrite(String uid) {
+            Authentication authentication = new TestingAuthenticationToken(uid, null);
+            return permissions.hasPermission(authentication, null, null, PERMISSION);
+        }
+    }
+
+    private DocumentReference userRef(String uid) {
+        DocumentReference ref = mock(DocumentReference.class);
+        when(ref.get()).thenAnswer(invocation -> ApiFutures.immediateFuture(userSnapshot(uid)));
+        when(ref.set(any(Object.class))).thenAnswer(invocation -> {
+            User user = invocation.getArgument(0);
+            storedRoles.put(uid, user.getRoles().stream().map(Role::name).toList());
+            // updateUserData guarda el usuario sin email
+            if (user.getEmail() != null) {
+                emails.put(user.getEmail(), uid);
+            }
+            return ApiFutures.immediateFuture(mock(WriteResult.class));
+        });
+        return ref;
+    }
+
+    private DocumentSnapshot userSnapshot(String uid) {
+        Map<String, Object> data = userData(uid);
+        DocumentSnapshot snapshot = mock(DocumentSnapshot.class);
+        when(snapshot.exists()).thenReturn(data != null);
+        if (data != null) {
+            when(snapshot.get("roles")).thenReturn(data.get("roles"));
+            when(snapshot.getData()).thenReturn(data);
+        }
+        return snapshot;
+    }
+
+    private Map<String, Object> userData(String uid) {
+        List<String> roles = storedRoles.get(uid);
+        if (roles == null) {
+            return null;
+        }
+        Map<String, Object> data = new HashMap<>();
+        data.put("uid", uid);
+        data.put("roles", roles);
+        return data;
+    }
+
+    private Query byEmail(String email) {
+        String uid = emails.get(email);
+        QuerySnapshot result = mock(QuerySnapshot.class);
+        when(result.isEmpty()).thenReturn(uid == null);
+        if (uid != null) {
+            QueryDocumentSnapshot document = mock(QueryDocumentSnapshot.class);
+            when(document.getData()).thenReturn(userData(uid));
+            when(result.getDocuments()).thenReturn(List.of(document));
+        }
+        Query query = mock(Query.class);
+        when(query.get()).thenReturn(ApiFutures.immediateFuture(result));
+        return query;
+    }
+
+    private Query role(String name) {
+        List<String> granted = "VETERINARIO".equals(name) ? List.of("read_pets", PERMISSION) : List.of("read_pets");
+        QueryDocumentSnapshot document = mock(QueryDocumentSnapshot.class);
+        when(document.get("permissions")).thenReturn(granted);
+        QuerySnapshot result = mock(QuerySnapshot.class);
+        when(result.getDocuments()).thenReturn(List.of(document));
+        Query query = mock(Query.class);
+        when(query.get()).thenReturn(ApiFutures.immediateFuture(result));
+        return query;
+    }
+
+    private static RegisterRequest request(String uid, String email, Role role) {
+        RegisterRequest request = new RegisterRequest();
+        request.setUid(uid);
+        request.setEmail(email);
+        request.setPassword("secreto123");
+        request.setNombre("Nombre");
+        request.setApellido("Apellido");
+        request.setRoles(List.of(role));
+        return request;
+    }
+}
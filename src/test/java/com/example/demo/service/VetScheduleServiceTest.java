@@ -0,0 +1,131 @@
+package com.example.demo.service;
+
+import com.example.demo.model.Appointment;
+import com.google.api.core.ApiFutures;
+import com.google.cloud.firestore.*;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.*;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class VetScheduleServiceTest {
+
+    private final List<Map<String, Object>> entries = new ArrayList<>();
+
+    private Transaction transaction;
+    private DocumentReference dayRef;
+    private VetScheduleService service;
+
+    @BeforeEach
+    void setUp() {
+        Firestore firestore = mock(Firestore.class);
+        CollectionReference schedules = mock(CollectionReference.class);
+        dayRef = mock(DocumentReference.class);
+        when(firestore.collection(VetScheduleService.COLLECTION)).thenReturn(schedules);
+        when(schedules.document(anyString())).thenReturn(dayRef);
+
+        DocumentSnapshot day = mock(DocumentSnapshot.class);
+        when(day.exists()).thenReturn(true);
+        when(day.get("appointments")).thenReturn(entries);
+        transaction = mock(Transaction.class);
+        when(transaction.getAll(any(DocumentReference[].class))).thenAnswer(invocation -> {
+            List<DocumentSnapshot> snapshots = new ArrayList<>();
+            for (int i = 0; i < invocation.getArguments().length; i++) {
+                snapshots.add(day);
+            }
+            return ApiFutures.immediateFuture(snapshots);
+        });
+        when(firestore.runTransaction(any(Transaction.Function.class))).thenAnswer(invocation -> {
+            Transaction.Function<?> function = invocation.getArgument(0);
+            return ApiFutures.immediateFuture(function.updateCallback(transaction));
+        });
+
+        service = new VetScheduleService();
+        ReflectionTestUtils.setField(service, "firestore", firestore);
+        ReflectionTestUtils.setField(service, "slotMinutes", 30);
+    }
+
+    @Test
+    void saveRejectsABookingInsideAnotherSlot() throws Exception {
+        entries.add(entry("other", at(12, 0), "SCHEDULED"));
+        DocumentReference appointmentRef = mock(DocumentReference.class);
+
+        boolean saved = service.save(appointmentRef, appointment("a1", at(12, 20)), null, true);
+
+        assertThat(saved).isFalse();
+        verify(transaction, never()).set(eq(appointmentRef), any(Object.class));
+        verify(transaction, never()).set(any(DocumentReference.class), anyMap());
+    }
+
+    @Test
+    void saveIgnoresCancelledEntriesAndItsOwnEntry() throws Exception {
+        entries.add(entry("cancelled", at(12, 0), "CANCELLED"));
+        entries.add(entry("a1", at(9, 0), "SCHEDULED"));
+        DocumentReference appointmentRef = mock(DocumentReference.class);
+        Appointment appointment = appointment("a1", at(12, 0));
+
+        boolean saved = service.save(appointmentRef, appointment, at(9, 0), true);
+
+        assertThat(saved).isTrue();
+        verify(transaction).set(appointmentRef, appointment);
+        assertThat(writtenEntries()).extracting(entry -> entry.get("id")).containsExactly("cancelled", "a1");
+    }
+
+    @Test
+    void batchAndSingleWritesShareTheSameCheck() throws Exception {
+        entries.add(entry("other", at(12, 0), "SCHEDULED"));
+
+        VetScheduleService.Editor editor = service.open(transaction,
+                List.of(VetScheduleService.DayKey.of("vet", at(12, 0))));
+        Appointment first = appointment("a1", at(14, 0));
+        Appointment second = appointment("a2", at(14, 10));
+
+        assertThat(editor.place(appointment("a0", at(12, 15)), null, true)).isFalse();
+        assertThat(editor.place(first, null, true)).isTrue();
+        assertThat(editor.place(second, null, true)).isFalse();
+        assertThat(editor.place(second, null, false)).isTrue();
+        assertThat(editor.appointments("vet", at(0, 40))).extracting(Appointment::getId)
+                .containsExactly("other", "a1", "a2");
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<Map<String, Object>> writtenEntries() {
+        @SuppressWarnings("rawtypes")
+        ArgumentCaptor<Map> data = ArgumentCaptor.forClass(Map.class);
+        verify(transaction, atLeastOnce()).set(eq(dayRef), data.capture());
+        return (List<Map<String, Object>>) data.getValue().get("appointments");
+    }
+
+    private static Appointment appointment(String id, Date date) {
+        Appointment appointment = new Appointment();
+        appointment.setId(id);
+        appointment.setVeterinarianId("vet");
+        appointment.setAppointmentDate(date);
+        appointment.setStatus("SCHEDULED");
+        return appointment;
+    }
+
+    private static Map<String, Object> entry(String id, Date date, String status) {
+        Map<String, Object> entry = new HashMap<>();
+        entry.put("id", id);
+        entry.put("veterinarianId", "vet");
+        entry.put("appointmentDate", date);
+        entry.put("status", status);
+        return entry;
+    }
+
+    private static Date at(int hour, int minute) {
+        return Date.from(LocalDate.now().plusDays(2).atTime(hour, minute).atZone(ZoneId.systemDefault()).toInstant());
+    }
+}
@@ -0,0 +1,127 @@
+package com.example.demo.util;
+
+import com.google.cloud.Timestamp;
+import com.google.cloud.firestore.DocumentSnapshot;
+
+import java.util.*;
+
+import static org.mockito.Mockito.*;
+
+/**
+ * Documentos de ejemplo con los tipos que devuelve Firestore (Timestamp, Long, Double, listas de
+ * mapas) para comparar {@link DocumentMappers} con {@code toObject}
+ */
+public final class DocumentFixtures {
+
+    private static final Timestamp CREATED = Timestamp.ofTimeSecondsAndNanos(1_717_000_000L, 123_000_000);
+    private static final Timestamp UPDATED = Timestamp.ofTimeSecondsAndNanos(1_717_086_400L, 0);
+
+    private DocumentFixtures() {
+    }
+
+    /**
+     * Instantánea cuyo {@code toObject} es el real de Firestore y cuyos campos son {@code data}
+     */
+    public static DocumentSnapshot snapshot(Map<String, Object> data) {
+        DocumentSnapshot snapshot = mock(DocumentSnapshot.class, withSettings().defaultAnswer(CALLS_REAL_METHODS));
+        doReturn(data).when(snapshot).getData();
+        return snapshot;
+    }
+
+    public static Map<String, Object> appointment() {
+        Map<String, Object> data = new HashMap<>();
+        data.put("id", "a1");
+        data.put("petId", "p1");
+        data.put("clientId", "c1");
+        data.put("veterinarianId", "v1");
+        data.put("appointmentDate", UPDATED);
+        data.put("reason", "Vacunación anual");
+        data.put("status", "SCHEDULED");
+        data.put("notes", "Traer cartilla");
+        data.put("createdAt", CREATED);
+        data.put("updatedAt", UPDATED);
+        return data;
+    }
+
+    public static Map<String, Object> user() {
+        Map<String, Object> data = new HashMap<>();
+        data.put("uid", "u1");
+        data.put("email", "ana@example.com");
+        data.put("nombre", "Ana");
+        data.put("apellido", "Pérez");
+        data.put("telefono", "+34 600 000 000");
+        data.put("direccion", "Calle Mayor 1");
+        data.put("roles", List.of("CLIENTE", "VETERINARIO"));
+        data.put("enabled", true);
+        data.put("active", true);
+        return data;
+    }
+
+    public static Map<String, Object> pet() {
+        Map<String, Object> data = new HashMap<>();
+        data.put("id", "p1");
+        data.put("name", "Luna");
+        data.put("species", "Perro");
+        data.put("breed", "Mestizo");
+        data.put("age", 7L);
+        data.put("ownerId", "u1");
+        return data;
+    }
+
+    public static Map<String, Object> inventoryItem() {
+        Map<String, Object> data = new HashMap<>();
+        data.put("id", "i1");
+        data.put("name", "Vacuna antirrábica");
+        data.put("quantity", 40L);
+        data.put("minThreshold", 10L);
+        data.put("recommendedOrderQuantity", 50L);
+        data.put("dateAdded", CREATED);
+        data.put("lastUpdated", UPDATED);
+        data.put("price", 12.5);
+        return data;
+    }
+
+    public static Map<String, Object> historial() {
+        Map<String, Object> realizado = new HashMap<>();
+        realizado.put("serviceId", "s1");
+        realizado.put("serviceName", "Consulta general");
+        realizado.put("precioBase", 40.0);
+        realizado.put("precioPersonalizado", 35L);
+        realizado.put("notas", "Descuento cliente habitual");
+        Map<String, Object> sinPersonalizar = new HashMap<>();
+        sinPersonalizar.put("serviceId", "s2");
+        sinPersonalizar.put("serviceName", "Vacuna");
+        sinPersonalizar.put("precioBase", 25L);
+        Map<String, Object> adicional = new HashMap<>();
+        adicional.put("descripcion", "Collar isabelino");
+        adicional.put("precio", 8.75);
+
+        Map<String, Object> data = new HashMap<>();
+        data.put("id", "h1");
+        data.put("petId", "p1");
+        data.put("veterinarianId", "v1");
+        data.put("fechaVisita", UPDATED);
+        data.put("motivoConsulta", "Cojera");
+        data.put("diagnostico", "Esguince leve");
+        data.put("tratamiento", "Reposo");
+        data.put("observaciones", "Revisar en una semana");
+        data.put("fechaCreacion", CREATED);
+        data.put("fechaActualizacion", UPDATED);
+        data.put("estado", "COMPLETADO");
+        data.put("serviciosRealizados", List.of(realizado, sinPersonalizar));
+        data.put("serviciosAdicionales", List.of(adicional));
+        data.put("precioTotal", 68.75);
+        return data;
+    }
+
+    /**
+     * Copia sin los campos indicados, para comprobar los valores por defecto
+     */
+    public static Map<String, Object> without(Map<String, Object> data, String... fields) {
+        Map<String, Object> copy = new HashMap<>(data);
+        for (String field : fields) {
+            copy.remove(field);
+        }
+        return copy;
+    }
+}
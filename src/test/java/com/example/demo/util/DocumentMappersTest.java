@@ -0,0 +1,67 @@
+package com.example.demo.util;
+
+import com.example.demo.model.*;
+import com.google.cloud.firestore.DocumentSnapshot;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+import java.util.function.Function;
+
+import static com.example.demo.util.DocumentFixtures.*;
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Los mapeadores deben dar el mismo objeto que {@code toObject} sobre el mismo documento
+ */
+class DocumentMappersTest {
+
+    @Test
+    void appointmentsMatchToObject() {
+        assertParity(appointment(), Appointment.class, DocumentMappers::toAppointment);
+        assertParity(without(appointment(), "notes", "createdAt", "updatedAt"), Appointment.class,
+                DocumentMappers::toAppointment);
+    }
+
+    @Test
+    void usersMatchToObject() {
+        assertParity(user(), User.class, DocumentMappers::toUser);
+        assertParity(without(user(), "roles", "enabled", "active", "telefono"), User.class, DocumentMappers::toUser);
+    }
+
+    @Test
+    void petsMatchToObject() {
+        assertParity(pet(), Pet.class, DocumentMappers::toPet);
+        assertParity(without(pet(), "age", "breed"), Pet.class, DocumentMappers::toPet);
+    }
+
+    @Test
+    void inventoryItemsMatchToObject() {
+        assertParity(inventoryItem(), InventoryItem.class, DocumentMappers::toInventoryItem);
+        assertParity(without(inventoryItem(), "price", "lastUpdated"), InventoryItem.class,
+                DocumentMappers::toInventoryItem);
+    }
+
+    @Test
+    void clinicalRecordsMatchToObjectIncludingNestedServices() {
+        assertParity(historial(), HistorialClinico.class, DocumentMappers::toHistorialClinico);
+        assertParity(without(historial(), "observaciones", "precioTotal"), HistorialClinico.class,
+                DocumentMappers::toHistorialClinico);
+    }
+
+    @Test
+    void missingDocumentsMapToNull() {
+        DocumentSnapshot missing = snapshot(null);
+
+        assertThat(missing.toObject(User.class)).isNull();
+        assertThat(DocumentMappers.toUser(missing)).isNull();
+        assertThat(DocumentMappers.toAppointment(missing)).isNull();
+        assertThat(DocumentMappers.toHistorialClinico(missing)).isNull();
+    }
+
+    private static <T> void assertParity(Map<String, Object> data, Class<T> type, Function<DocumentSnapshot, T> mapper) {
+        DocumentSnapshot snapshot = snapshot(data);
+        T expected = snapshot.toObject(type);
+
+        assertThat(mapper.apply(snapshot)).usingRecursiveComparison().isEqualTo(expected);
+    }
+}
@@ -0,0 +1,141 @@
+package com.example.demo.util;
+
+import com.google.cloud.firestore.*;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class ReconnectingSnapshotListenerTest {
+
+    private final List<EventListener<QuerySnapshot>> listeners = new ArrayList<>();
+    private final List<ListenerRegistration> registrations = new ArrayList<>();
+    private final List<Boolean> snapshots = new ArrayList<>();
+    private final AtomicInteger disconnects = new AtomicInteger();
+    private final AtomicInteger queriesBuilt = new AtomicInteger();
+
+    private ScheduledExecutorService scheduler;
+    private ReconnectingSnapshotListener listener;
+
+    @BeforeEach
+    void setUp() {
+        Query query = mock(Query.class);
+        when(query.addSnapshotListener(any())).thenAnswer(invocation -> {
+            listeners.add(invocation.getArgument(0));
+            ListenerRegistration registration = mock(ListenerRegistration.class);
+            registrations.add(registration);
+            return registration;
+        });
+        scheduler = mock(ScheduledExecutorService.class);
+        listener = new ReconnectingSnapshotListener("test", () -> {
+            queriesBuilt.incrementAndGet();
+            return query;
+        }, scheduler, 100, 350, new ReconnectingSnapshotListener.Handler() {
+            @Override
+            public void onSnapshot(QuerySnapshot snapshot, boolean initial) {
+                snapshots.add(initial);
+            }
+
+            @Override
+            public void onDisconnect(FirestoreException error) {
+                disconnects.incrementAndGet();
+            }
+        });
+    }
+
+    @Test
+    void marksOnlyTheFirstSnapshotOfEachRegistrationAsInitial() {
+        listener.start();
+        listeners.get(0).onEvent(mock(QuerySnapshot.class), null);
+        listeners.get(0).onEvent(mock(QuerySnapshot.class), null);
+
+        assertThat(snapshots).containsExactly(true, false);
+        assertThat(listener.isConnected()).isTrue();
+    }
+
+    @Test
+    void reRegistersAfterAnErrorWithExponentialBackoff() {
+        listener.start();
+
+        long[] delays = new long[4];
+        for (int attempt = 0; attempt < delays.length; attempt++) {
+            listeners.get(attempt).onEvent(null, mock(FirestoreException.class));
+            verify(registrations.get(attempt)).remove();
+            assertThat(listener.isConnected()).isFalse();
+            delays[attempt] = runScheduledReconnect();
+        }
+
+        assertThat(delays).containsExactly(100, 200, 350, 350);
+        assertThat(disconnects).hasValue(4);
+        assertThat(listeners).hasSize(5);
+        assertThat(queriesBuilt).hasValue(5);
+    }
+
+    @Test
+    void resetsBackoffOnceASnapshotArrives() {
+        listener.start();
+        listeners.get(0).onEvent(null, mock(FirestoreException.class));
+        runScheduledReconnect();
+        listeners.get(1).onEvent(mock(QuerySnapshot.class), null);
+        listeners.get(1).onEvent(null, mock(FirestoreException.class));
+
+        assertThat(runScheduledReconnect()).isEqualTo(100);
+    }
+
+    @Test
+    void ignoresEventsFromRetiredRegistrations() {
+        listener.start();
+        listeners.get(0).onEvent(null, mock(FirestoreException.class));
+        runScheduledReconnect();
+
+        listeners.get(0).onEvent(mock(QuerySnapshot.class), null);
+        listeners.get(0).onEvent(null, mock(FirestoreException.class));
+
+        assertThat(snapshots).isEmpty();
+        assertThat(disconnects).hasValue(1);
+        verify(scheduler, times(1)).schedule(any(Runnable.class), anyLong(), eq(TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    void restartRebuildsTheQuery() {
+        listener.start();
+        listener.restart();
+
+        verify(registrations.get(0)).remove();
+        assertThat(queriesBuilt).hasValue(2);
+        listeners.get(1).onEvent(mock(QuerySnapshot.class), null);
+        assertThat(snapshots).containsExactly(true);
+    }
+
+    @Test
+    void doesNotReconnectAfterClose() {
+        listener.start();
+        listeners.get(0).onEvent(null, mock(FirestoreException.class));
+        listener.close();
+
+        runScheduledReconnect();
+        assertThat(listeners).hasSize(1);
+    }
+
+    /**
+     * Ejecuta el último reintento programado y devuelve su espera
+     */
+    private long runScheduledReconnect() {
+        ArgumentCaptor<Runnable> task = ArgumentCaptor.forClass(Runnable.class);
+        ArgumentCaptor<Long> delay = ArgumentCaptor.forClass(Long.class);
+        verify(scheduler, atLeastOnce()).schedule(task.capture(), delay.capture(), eq(TimeUnit.MILLISECONDS));
+        task.getValue().run();
+        return delay.getValue();
+    }
+}